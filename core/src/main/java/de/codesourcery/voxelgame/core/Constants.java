@@ -12,9 +12,42 @@ public class Constants
 
 	public static final boolean USE_PERSISTENT_STORAGE = true;
 
+	// pack chunks into region files (RegionChunkStorage) instead of using one file per chunk (DefaultChunkStorage)
+	public static final boolean USE_REGION_FILE_STORAGE = true;
+
+	// load chunks from memory-mapped region files (only applies to RegionChunkStorage)
+	public static final boolean USE_MEMORY_MAPPED_IO = true;
+
+	// save chunks asynchronously on a dedicated I/O thread (WriteBehindChunkStorage)
+	public static final boolean USE_WRITE_BEHIND = true;
+
+	// max. number of bytes queued for writing before saving a chunk blocks
+	public static final long WRITE_BEHIND_QUEUE_SIZE_BYTES = 16*1024*1024;
+
+	// only persist edits made to generated chunks , chunks get re-generated and edits replayed on load
+	public static final boolean USE_DELTA_PERSISTENCE = true;
+
+	// max. number of edits per chunk to persist , chunks with more edits are stored as full snapshots
+	public static final int MAX_DELTA_EDITS = 1024;
+
         public static final File CHUNK_STORAGE = new File("/home/tobi/tmp/chunks");
 
         public static final File ASSETS_PATH = new File("/home/tobi/luna_workspace/voxelgame/assets");
 
 	public static final boolean USE_CHUNK_POOL = true;
+
+	// merge adjacent coplanar block faces with the same type and light level into larger quads when building chunk meshes
+	public static final boolean USE_GREEDY_MESHING = true;
+
+	// store chunk mesh vertices in a packed 8-byte format instead of 10 floats , see BlockRenderer#PACKED_INTS_PER_VERTEX
+	public static final boolean USE_PACKED_VERTICES = true;
+
+	// max. number of bytes (heap and off-heap) used for block data of cached chunks , chunks out of view range get evicted when exceeded
+	public static final long CHUNK_DATA_BUDGET_BYTES = 256*1024*1024;
+
+	// max. number of bytes (heap and VBO) used for meshes of cached chunks , meshes of chunks out of view range get released when exceeded
+	public static final long CHUNK_MESH_BUDGET_BYTES = 256*1024*1024;
+
+	// store chunk light levels in off-heap memory (see OffHeapSlabAllocator) instead of on the Java heap
+	public static final boolean USE_OFF_HEAP_LIGHT_LEVELS = true;
 }
@@ -28,6 +28,7 @@ import de.codesourcery.voxelgame.core.render.BlockRenderer;
 import de.codesourcery.voxelgame.core.render.ChunkRenderer;
 import de.codesourcery.voxelgame.core.render.IChunkRenderer;
 import de.codesourcery.voxelgame.core.util.TextureAtlasUtil;
+import de.codesourcery.voxelgame.core.world.AbstractChunkStorage;
 import de.codesourcery.voxelgame.core.world.Bullet;
 import de.codesourcery.voxelgame.core.world.Chunk;
 import de.codesourcery.voxelgame.core.world.ChunkManager;
@@ -35,7 +36,10 @@ import de.codesourcery.voxelgame.core.world.ChunkManager.Hit;
 import de.codesourcery.voxelgame.core.world.DebugChunkFactory;
 import de.codesourcery.voxelgame.core.world.DefaultChunkStorage;
 import de.codesourcery.voxelgame.core.world.IChunkFactory;
+import de.codesourcery.voxelgame.core.world.IChunkStorage;
+import de.codesourcery.voxelgame.core.world.RegionChunkStorage;
 import de.codesourcery.voxelgame.core.world.TickListenerContainer;
+import de.codesourcery.voxelgame.core.world.WriteBehindChunkStorage;
 
 public class Main implements ApplicationListener {
 
@@ -106,11 +110,17 @@ public class Main implements ApplicationListener {
 
 		font = new BitmapFont();
 
-		final DefaultChunkStorage chunkStorage;
+		final IChunkStorage chunkStorage;
 		try {
 //			final IChunkFactory chunkFactory = new NoiseChunkFactory( 0xdeadbeef );
 			final IChunkFactory chunkFactory =  new DebugChunkFactory();
-			chunkStorage = new DefaultChunkStorage( Constants.CHUNK_STORAGE ,chunkFactory );
+			final AbstractChunkStorage storage;
+			if ( Constants.USE_REGION_FILE_STORAGE ) {
+				storage = new RegionChunkStorage( Constants.CHUNK_STORAGE ,chunkFactory );
+			} else {
+				storage = new DefaultChunkStorage( Constants.CHUNK_STORAGE ,chunkFactory );
+			}
+			chunkStorage = Constants.USE_WRITE_BEHIND ? new WriteBehindChunkStorage( storage ) : storage;
 		}
 		catch (final IOException e)
 		{
@@ -409,9 +419,23 @@ public class Main implements ApplicationListener {
 		font.draw(spriteBatch, "Chunk : "+chunkManager.cameraChunkX+" / "+chunkManager.cameraChunkY+" / "+chunkManager.cameraChunkZ, 10, y);
 		y -= fontHeight;
 		font.draw(spriteBatch, "Camera pos: "+camera.position, 10, y );
+		y -= fontHeight;
+		font.draw(spriteBatch, "Meshes published/discarded/skipped: "+chunkManager.getMeshesPublished()+" / "+chunkManager.getMeshesDiscarded()+" / "+chunkManager.getRebuildsSkipped(), 10, y );
+		y -= fontHeight;
+		font.draw(spriteBatch, "Chunk loads queued/done/cancelled/wasted: "+chunkManager.getLoadQueueDepth()+" / "+chunkManager.getChunksLoaded()+" / "+chunkManager.getLoadsCancelled()+" / "+chunkManager.getWastedLoads(), 10, y );
+		y -= fontHeight;
+		font.draw(spriteBatch, "Chunk data: "+chunkManager.getCachedChunkCount()+" chunks , heap "+toMegabytes( chunkManager.getBlockDataBytes() )+" MB , off-heap "+toMegabytes( chunkManager.getOffHeapBytes() )+
+				" MB / budget "+toMegabytes( chunkManager.getDataBudget() )+" MB", 10, y );
+		y -= fontHeight;
+		font.draw(spriteBatch, "Chunk meshes: "+chunkManager.getMeshedChunkCount()+" chunks , heap "+toMegabytes( chunkManager.getMeshBytes() )+" MB , VBO "+toMegabytes( chunkManager.getBufferBytes() )+
+				" MB / budget "+toMegabytes( chunkManager.getMeshBudget() )+" MB , released: "+chunkManager.getMeshesReleased(), 10, y );
 		spriteBatch.end();
 	}
 
+	private static long toMegabytes(long bytes) {
+		return bytes / (1024*1024);
+	}
+
 	@Override
 	public void dispose ()
 	{
@@ -1,5 +1,7 @@
 package de.codesourcery.voxelgame.core.render;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL11;
 import com.badlogic.gdx.graphics.GL20;
@@ -33,14 +35,40 @@ public final class BlockRenderer implements Disposable {
 
 	public static volatile boolean DEBUG_RENDER_WIREFRAME = false;
 
+	static final int ELEMENTS_PER_VERTEX = 3 + 3 + 2 + 1 + 1; // vec3(position) + vec3(normal) + vec2(texture UV) + light factor + atlas tile
+
 	/*
-			vertexBuilder.put( centerX-halfBlockSize , centerY + halfBlockSize ,centerZ - halfBlockSize , // position
-					0,1,0, // normal
-					textureUV[TEX_OFFSET_TOP+TEX_OFFSET_VERTEX_TOP_LEFT], // texture U
-					textureUV[TEX_OFFSET_TOP+TEX_OFFSET_VERTEX_TOP_LEFT+1], // texture V
-					lightFactor );
+	 * Attributes of the regular vertex format , in the order they're stored in each vertex (see createVBO()).
+	 */
+	private static final String[] VERTEX_ATTRIBUTES = { ShaderProgram.POSITION_ATTRIBUTE , ShaderProgram.NORMAL_ATTRIBUTE ,
+		ShaderProgram.TEXCOORD_ATTRIBUTE , "a_lightFactor" , "a_tile" };
+	private static final int[] VERTEX_ATTRIBUTE_SIZES = { 3 , 3 , 2 , 1 , 1 };
+
+	/*
+	 * Packed vertex format , 2 ints (8 bytes) per vertex instead of ELEMENTS_PER_VERTEX floats.
+	 *
+	 * Each int is made up of 4 unsigned bytes (lowest byte first) that the shader receives as a vec4:
+	 *
+	 * a_position: X , Y , Z (in blocks , relative to the chunk's origin) , face (FACE_* constant)
+	 * a_data    : block type , light level , unused , unused
+	 *
+	 * Normals , texture coordinates and light factors get derived from these in flat_vertex_packed.glsl.
+	 */
+	static final int PACKED_INTS_PER_VERTEX = 2;
+
+	/*
+	 * Meshes are plain lists of quads , so all renderers share the same index buffers:
+	 *
+	 * - triangles: 0,1,2 , 0,2,3 , then the same +4 for each following quad
+	 * - wireframe: 0,1 , 1,2 , 2,3 , 3,0 , then the same +4 for each following quad
+	 *
+	 * Indices are unsigned shorts , so a single draw call can render at most MAX_QUADS_PER_DRAW quads.
 	 */
-	private static final int ELEMENTS_PER_VERTEX = 3 + 3 + 2 + 1; // vec3(position) + vec3(normal) + vec4(color)
+	private static final int MAX_QUADS_PER_DRAW = 65536 / 4;
+
+	// shared index buffers , created on first use and only accessed by the OpenGL rendering thread
+	private static IndexBufferObject quadIndices;
+	private static IndexBufferObject quadLineIndices;
 
 	// Worst-case: checker-style "swiss cheese" with every 2nd block being empty.
 	private static final int WORST_CASE_CUBE_COUNT = Chunk.BLOCKS_X*Chunk.BLOCKS_Y*Chunk.BLOCKS_Z;
@@ -52,68 +80,82 @@ public final class BlockRenderer implements Disposable {
 	@SuppressWarnings("unused")
 	private static final int WORST_CASE_VERTEX_COUNT = WORST_CASE_CUBE_COUNT*36;
 
-	/* Array with UV coordinates (that index into a texture atlas texture) for triangles on each block face.
-	 *
-	 * float[blockType][uv coordinates array]
-	 *
-	 * UV coordinates for vertices are stored in counter-clockwise vertex order:
-	 *
-	 *  0 --3
-	 *  |   |
-	 *  |   |
-	 *  1---2
-	 *
-	 * So the UV coordinates for Vertex 1 in the FRONT triangle of the front of a SOLID block start at
+	/*
+	 * Block faces , in the order their textures are stored in each row of the texture atlas:
 	 *
-	 *  blockTextureCoords[Block.Type.SOLID][TEX_OFFSET_FRONT+TEX_OFFSET_VERTEX_BOTTOM_LEFT] , the UV coordinates for Vertex 3 in the BACK triangle of the front of a SOLID block start at
+	 *  FRONT BACK LEFT RIGHT TOP BOTTOM
 	 *
-	 *  blockTextureCoords[Block.Type.SOLID][TEX_OFFSET_BACK+TEX_OFFSET_VERTEX_TOP_RIGHT]
+	 * The texture atlas holds one row per block type , so the atlas tile for a face of a block is
+	 * (blockType*FACES_PER_BLOCK + face).
 	 */
-	private static float[][] blockTextureCoords;
+	static final int FACE_FRONT = 0;
+	static final int FACE_BACK = 1;
+	static final int FACE_LEFT = 2;
+	static final int FACE_RIGHT = 3;
+	static final int FACE_TOP = 4;
+	static final int FACE_BOTTOM = 5;
 
-	private static final int TEX_OFFSET_FRONT  = 0;
-	private static final int TEX_OFFSET_BACK= 1*4*2; // index into UV-texture coordinates for back quad
-	private static final int TEX_OFFSET_LEFT = 2*4*2; // index into UV-texture coordinates for left quad
-	private static final int TEX_OFFSET_RIGHT = 3*4*2; // index into UV-texture coordinates for right quad
-	private static final int TEX_OFFSET_TOP = 4*4*2; // index into UV-texture coordinates for top quad
-	private static final int TEX_OFFSET_BOTTOM = 5*4*2; // index into UV-texture coordinates for bottom quad
+	static final int FACES_PER_BLOCK = 6;
 
-	private static final int TEX_OFFSET_VERTEX_TOP_LEFT = 0;
-	private static final int TEX_OFFSET_VERTEX_TOP_RIGHT = 2;
-	private static final int TEX_OFFSET_VERTEX_BOTTOM_RIGHT = 4;
-	private static final int TEX_OFFSET_VERTEX_BOTTOM_LEFT = 6;
+	/*
+	 * Layout of the texture atlas in texture coordinates , passed to the shader as 'u_atlasLayout'.
+	 *
+	 * Vertices do not carry absolute texture coordinates but the atlas tile index and UV coordinates
+	 * counted in tiles (0...1 for a single block face , 0...n for a face spanning n blocks) so that
+	 * merged faces can repeat their texture. The fragment shader wraps the UV coordinates
+	 * and maps them into the tile.
+	 */
+	private static float atlasTileOffset; // space between texture atlas' borders and the first tile
+	private static float atlasTileStride; // distance between the top-left corners of two adjacent tiles
+	private static float atlasTileSize; // width/height of a single tile (without spacing)
 
-	private final ShortArrayBuilder indexBuilder;
-	private final FloatArrayBuilder vertexBuilder;
+	// mesh published by publish() that has not been uploaded to the GPU yet , NULL if there is none
+	private final AtomicReference<MeshData> pendingMesh = new AtomicReference<>();
 
+	// only accessed by the OpenGL rendering thread , only one of the vertex buffers is used depending on the vertex format
 	private VertexBufferObject vbo;
-	private IndexBufferObject ibo;
-	
-	public int maxIndexArraySize = 0;
-	public int maxVertexArraySize = 0;
-
+	private PackedVertexBuffer packedVbo;
+	// number of bytes allocated for the VBO
+	private volatile int bufferSizeInBytes;
+	private int uploadedQuadCount;
 
-	private volatile boolean uploadDataToGPU = true;
+	/**
+	 * A finished mesh , handed from the thread building the mesh to the OpenGL rendering thread.
+	 */
+	public static final class MeshData
+	{
+		// vertices in the regular format , NULL when using the packed format
+		public final float[] vertices;
+		// vertices in the packed format , NULL when using the regular format
+		public final int[] packedVertices;
+		// number of vertices , each 4 consecutive vertices form a quad
+		public final int vertexCount;
+
+		public MeshData(float[] vertices)
+		{
+			this.vertices = vertices;
+			this.packedVertices = null;
+			this.vertexCount = vertices.length / ELEMENTS_PER_VERTEX;
+		}
 
-	private int vertexCount = 0;
+		public MeshData(int[] packedVertices)
+		{
+			this.vertices = null;
+			this.packedVertices = packedVertices;
+			this.vertexCount = packedVertices.length / PACKED_INTS_PER_VERTEX;
+		}
 
-	public BlockRenderer(int indexArraySize,int vertexArraySize)
-	{
-		indexBuilder = new ShortArrayBuilder(indexArraySize,1000);
-		vertexBuilder = new FloatArrayBuilder(vertexArraySize,1000*ELEMENTS_PER_VERTEX);
-	}
+		public int getQuadCount() {
+			return vertexCount / 4;
+		}
 
-	public BlockRenderer()
-	{
-		this(20000,100000);
-	}
+		public boolean isPacked() {
+			return packedVertices != null;
+		}
 
-	public BlockRenderer begin()
-	{
-		indexBuilder.begin();
-		vertexBuilder.begin();
-		vertexCount = 0;
-		return this;
+		public int getSizeInBytes() {
+			return ( isPacked() ? packedVertices.length : vertices.length ) * 4;
+		}
 	}
 
 	/**
@@ -127,401 +169,163 @@ public final class BlockRenderer implements Disposable {
 	 */
 	public static void setupTextureCoordinates(int textureSize,int faceSize,int textureSpacing)
 	{
-		if ( blockTextureCoords == null ) {
-			blockTextureCoords = createTextureCoordinates(textureSize,faceSize,textureSpacing);
+		atlasTileOffset = textureSpacing/(float) textureSize;
+		atlasTileStride = (faceSize+textureSpacing)/(float) textureSize;
+		atlasTileSize = faceSize/(float) textureSize;
+
+		if (DEBUG_TEXTURE_COORDS) {
+			System.out.println("---- Texture atlas: tile offset = "+atlasTileOffset+" , stride = "+atlasTileStride+" , size = "+atlasTileSize);
 		}
 	}
 
 	/**
+	 * Packs the position of a vertex (see {@link #PACKED_INTS_PER_VERTEX}).
 	 *
-	 * @param textureSize texture size in pixels (texture is assumed to be rectangular)
-	 * @param faceSize size of a single block face texture (rectangular)
-	 * @param textureSpacing space in pixels between any two adjacent textures and to the texture atlas' borders
+	 * @param x in blocks , relative to the chunk origin
+	 * @param y in blocks , relative to the chunk origin
+	 * @param z in blocks , relative to the chunk origin
+	 * @param face
 	 * @return
 	 */
-	private static float[][] createTextureCoordinates(int textureSize,int faceSize,int textureSpacing)
-	{
-		/*
-		 * The texture atlas is assumed to hold
-		 * 6 textures (one for each block face) per row
-		 * in the following order
-		 *
-		 *  FRONT BACK LEFT RIGHT TOP BOTTOM
-		 */
-		final float textureSpacingWidth=textureSpacing/(float) textureSize;  // width of a single block texture in texture coordinates (including spacing
-		final float textureSpacingHeight=textureSpacing/(float) textureSize; // height of a single block texture in texture coordinates
-
-		final float xOrigin = textureSpacingWidth; // X coordinate of top-left corner of front face texture for block type 0
-		final float yOrigin = textureSpacingHeight; // X coordinate of top-left corner of front face texture for block type 0
-
-		final float innerTextureWidth=faceSize/(float) textureSize;  // width of a single block texture in texture coordinates
-		final float innerTextureHeight=faceSize/(float) textureSize; // height of a single block texture in texture coordinates
-
-		final float[][] result = new float[ (Block.Type.MAX+1) ][];
-		for ( byte type = 0 ; type <= Block.Type.MAX ; type++)
-		{
-			final float[] tmp = new float[6*4*2 ]; // 6 faces * 4 VerticesPerQuad * 2 UV-coordinates floats
-			result[type] = tmp;
-			int ptr = 0;
-			for ( int face = 0 ; face < 6 ; face++ )
-			{
-				// top-left corner of quad texture
-				final float topLeftX = xOrigin + face*innerTextureWidth + face*textureSpacingWidth;
-				final float topLeftY = yOrigin + type*innerTextureHeight + type*textureSpacingHeight;
-
-				// bottom-left corner of quad texture
-				final float bottomLeftX = topLeftX;
-				final float bottomLeftY = topLeftY + innerTextureHeight;
-
-				// bottom-right corner of quad texture
-				final float bottomRightX = topLeftX+innerTextureWidth;
-				final float bottomRightY = topLeftY + innerTextureHeight;
-
-				// bottom-right corner of quad texture
-				final float topRightX = topLeftX+innerTextureWidth;
-				final float topRightY = topLeftY;
+	static int packPosition(int x,int y,int z,int face) {
+		return x | y << 8 | z << 16 | face << 24;
+	}
 
-				// store UV-coordinates of each quad corner,
-				// order MUST be TOP_LEFT,TOP_RIGHT,BOTTOM_RIGHT,BOTTOM_LEFT so it matches with code in BlockRenderer#addBlock() !!!
-				tmp[ptr++]=topLeftX;
-				tmp[ptr++]=topLeftY;
+	/**
+	 * Packs block type and light level of a vertex (see {@link #PACKED_INTS_PER_VERTEX}).
+	 *
+	 * @param blockType
+	 * @param lightLevel
+	 * @return
+	 */
+	static int packData(byte blockType,int lightLevel) {
+		return ( blockType & 0xff ) | lightLevel << 8;
+	}
 
-				tmp[ptr++]=topRightX;
-				tmp[ptr++]=topRightY;
+	/**
+	 * Sets the 'u_atlasLayout' uniform the shader uses to map tile-relative UV coordinates
+	 * into the texture atlas.
+	 *
+	 * @param shader
+	 * @see #setupTextureCoordinates(int, int, int)
+	 */
+	public static void setAtlasLayout(ShaderProgram shader) {
+		shader.setUniformf( "u_atlasLayout" , atlasTileOffset , atlasTileStride , atlasTileSize );
+	}
 
-				tmp[ptr++]=bottomRightX;
-				tmp[ptr++]=bottomRightY;
 
-				tmp[ptr++]=bottomLeftX;
-				tmp[ptr++]=bottomLeftY;
+	/**
+	 * Publishes a mesh , the next call to {@link #render(ShaderProgram)} will upload it to the GPU.
+	 *
+	 * <p>Until then , the previously published mesh keeps getting rendered. Meshes may be published from
+	 * any thread.</p>
+	 *
+	 * @param mesh
+	 * @see MeshBuilder
+	 */
+	public void publish(MeshData mesh)
+	{
+		pendingMesh.set( mesh );
+	}
 
-				if (DEBUG_TEXTURE_COORDS) {
-					System.out.println("---- Block type: "+type+" , face "+face+" , TOP_LEFT     = ("+topLeftX+","+topLeftY+")");
-					System.out.println("---- Block type: "+type+" , face "+face+" , TOP_RIGHT    = ("+topRightX+","+topRightY+")");
-					System.out.println("---- Block type: "+type+" , face "+face+" , BOTTOM_RIGHT = ("+bottomRightX+","+bottomRightY+")");
-					System.out.println("---- Block type: "+type+" , face "+face+" , BOTTOM_LEFT  = ("+bottomLeftX+","+bottomLeftY+")");
-				}
-			}
-		}
-		return result;
+	/**
+	 * Releases a published mesh that has not been uploaded to the GPU yet.
+	 *
+	 * @see #releaseGPUBuffers()
+	 */
+	public void releaseMeshData() {
+		pendingMesh.set( null );
 	}
 
-	public void addBlock(float centerX,float centerY,float centerZ, float halfBlockSize, float lightFactor,byte blockType ,int sideMask )
+	/**
+	 * Releases the VBO , nothing gets rendered until a new mesh has been published.
+	 *
+	 * <p>Must be called from the OpenGL rendering thread.</p>
+	 */
+	public void releaseGPUBuffers()
 	{
-		final float[] textureUV = blockTextureCoords[ blockType ];
-
-		if ( vertexCount > 65535 ) {
-			System.err.println("More than 65535 vertices ?");
-		}
-		int p0,p1,p2,p3;
-		if ( (sideMask & SIDE_FRONT ) != 0 ) {
-
-			p0 = vertexCount;
-			p1 = vertexCount+1;
-			p2 = vertexCount+2;
-			p3 = vertexCount+3;
-			vertexCount += 4;
-
-			// top left
-			vertexBuilder.put( centerX-halfBlockSize , centerY + halfBlockSize ,centerZ + halfBlockSize , // position
-					0,0,1, // normal
-					textureUV[TEX_OFFSET_FRONT+TEX_OFFSET_VERTEX_TOP_LEFT], // texture U
-					textureUV[TEX_OFFSET_FRONT+TEX_OFFSET_VERTEX_TOP_LEFT+1], // texture V
-					1.0f ); // lightFactor
-
-			vertexBuilder.put( centerX+halfBlockSize , centerY + halfBlockSize ,centerZ + halfBlockSize , // position
-					0,0,1, // normal
-					textureUV[TEX_OFFSET_FRONT+TEX_OFFSET_VERTEX_TOP_RIGHT], // texture U
-					textureUV[TEX_OFFSET_FRONT+TEX_OFFSET_VERTEX_TOP_RIGHT+1], // texture V
-					1.0f); // lightFactor
-
-			vertexBuilder.put( centerX+halfBlockSize , centerY - halfBlockSize ,centerZ + halfBlockSize , // position
-					0,0,1, // normal
-					textureUV[TEX_OFFSET_FRONT+TEX_OFFSET_VERTEX_BOTTOM_RIGHT], // texture U
-					textureUV[TEX_OFFSET_FRONT+TEX_OFFSET_VERTEX_BOTTOM_RIGHT+1], // texture V
-					1.0f ); // lightFactor
-
-			vertexBuilder.put( centerX-halfBlockSize , centerY - halfBlockSize ,centerZ + halfBlockSize , // position
-					0,0,1, // normal
-					textureUV[TEX_OFFSET_FRONT+TEX_OFFSET_VERTEX_BOTTOM_LEFT], // texture U
-					textureUV[TEX_OFFSET_FRONT+TEX_OFFSET_VERTEX_BOTTOM_LEFT+1], // texture V
-					1.0f ); // lightFactor
-
-			if ( DEBUG_RENDER_WIREFRAME )
-			{
-				indexBuilder.put( (short) p0 , (short) p3,
-						          (short) p3 , (short) p2,
-						          (short) p2 , (short) p1 ,
-						          (short) p1 , (short) p0) ;
-			} else {
-				indexBuilder.put( (short) p0,(short) p3, (short) p2 , (short) p0 , (short) p2 , (short) p1 );
-			}
-		}
-
-		if ( (sideMask & SIDE_BACK ) != 0 ) {
-
-			p0 = vertexCount;
-			p1 = vertexCount+1;
-			p2 = vertexCount+2;
-			p3 = vertexCount+3;
-			vertexCount += 4;
-
-			vertexBuilder.put( centerX-halfBlockSize , centerY + halfBlockSize ,centerZ - halfBlockSize , // position
-					0,0,-1, // normal
-					textureUV[TEX_OFFSET_BACK+TEX_OFFSET_VERTEX_TOP_RIGHT], // texture U
-					textureUV[TEX_OFFSET_BACK+TEX_OFFSET_VERTEX_TOP_RIGHT+1], // texture V
-					1.0f ); // lightFactor
-
-			vertexBuilder.put( centerX+halfBlockSize , centerY + halfBlockSize ,centerZ - halfBlockSize , // position
-					0,0,-1, // normal
-					textureUV[TEX_OFFSET_BACK+TEX_OFFSET_VERTEX_TOP_LEFT], // texture U
-					textureUV[TEX_OFFSET_BACK+TEX_OFFSET_VERTEX_TOP_LEFT+1], // texture V
-					1.0f ); // lightFactor
-
-			vertexBuilder.put( centerX+halfBlockSize , centerY - halfBlockSize ,centerZ - halfBlockSize , // position
-					0,0,-1, // normal
-					textureUV[TEX_OFFSET_BACK+TEX_OFFSET_VERTEX_BOTTOM_LEFT], // texture U
-					textureUV[TEX_OFFSET_BACK+TEX_OFFSET_VERTEX_BOTTOM_LEFT+1], // texture V
-					1.0f ); // lightFactor
-
-			vertexBuilder.put( centerX-halfBlockSize , centerY - halfBlockSize ,centerZ - halfBlockSize , // position
-					0,0,-1, // normal
-					textureUV[TEX_OFFSET_BACK+TEX_OFFSET_VERTEX_BOTTOM_RIGHT], // texture UV
-					textureUV[TEX_OFFSET_BACK+TEX_OFFSET_VERTEX_BOTTOM_RIGHT+1], // texture V
-					1.0f );  // lightFactor
-
-			if ( DEBUG_RENDER_WIREFRAME )
-			{
-				indexBuilder.put( (short) p2 , (short) p3,
-						          (short) p3 , (short) p0,
-						          (short) p0 , (short) p1 ,
-						          (short) p1 , (short) p2) ;
-			} else {
-				indexBuilder.put( (short) p2,(short) p3, (short) p1 , (short) p1 , (short) p3 , (short) p0 );
-			}
-		}
-
-		if ( (sideMask & SIDE_LEFT ) != 0 ) {
-
-			p0 = vertexCount;
-			p1 = vertexCount+1;
-			p2 = vertexCount+2;
-			p3 = vertexCount+3;
-			vertexCount += 4;
-
-			vertexBuilder.put( centerX-halfBlockSize  , centerY + halfBlockSize ,centerZ - halfBlockSize , // position
-					-1,0,0, // normal
-					textureUV[TEX_OFFSET_LEFT+TEX_OFFSET_VERTEX_TOP_LEFT], // texture U
-					textureUV[TEX_OFFSET_LEFT+TEX_OFFSET_VERTEX_TOP_LEFT+1], // texture V
-					1.0f ); // lightFactor
-
-			vertexBuilder.put( centerX-halfBlockSize , centerY + halfBlockSize ,centerZ + halfBlockSize , // position
-					-1,0,0, // normal
-					textureUV[TEX_OFFSET_LEFT+TEX_OFFSET_VERTEX_TOP_RIGHT], // texture U
-					textureUV[TEX_OFFSET_LEFT+TEX_OFFSET_VERTEX_TOP_RIGHT+1], // texture V
-					1.0f ); // lightFactor
-
-			vertexBuilder.put( centerX-halfBlockSize , centerY - halfBlockSize ,centerZ + halfBlockSize , // position
-					-1,0,0, // normal
-					textureUV[TEX_OFFSET_LEFT+TEX_OFFSET_VERTEX_BOTTOM_RIGHT], // texture U
-					textureUV[TEX_OFFSET_LEFT+TEX_OFFSET_VERTEX_BOTTOM_RIGHT+1], // texture V
-					1.0f ); // lightFactor
-
-			vertexBuilder.put( centerX-halfBlockSize , centerY - halfBlockSize ,centerZ - halfBlockSize , // position
-					-1,0,0, // normal
-					textureUV[TEX_OFFSET_LEFT+TEX_OFFSET_VERTEX_BOTTOM_LEFT], // texture U
-					textureUV[TEX_OFFSET_LEFT+TEX_OFFSET_VERTEX_BOTTOM_LEFT+1], // texture V
-					1.0f ); // lightFactor
-
-			if ( DEBUG_RENDER_WIREFRAME )
-			{
-				indexBuilder.put( (short) p0 , (short) p3,
-						          (short) p3 , (short) p2,
-						          (short) p2 , (short) p1 ,
-						          (short) p1 , (short) p0) ;
-			} else {
-				indexBuilder.put( (short) p0,(short) p3, (short) p2 , (short) p0 , (short) p2 , (short) p1 );
-			}
-		}
+		releaseVertexBuffers();
+		uploadedQuadCount = 0;
+		bufferSizeInBytes = 0;
+	}
 
-		if ( (sideMask & SIDE_RIGHT ) != 0 ) {
-
-			p0 = vertexCount;
-			p1 = vertexCount+1;
-			p2 = vertexCount+2;
-			p3 = vertexCount+3;
-			vertexCount += 4;
-
-			vertexBuilder.put( centerX+halfBlockSize  , centerY + halfBlockSize ,centerZ + halfBlockSize , // position
-					1,0,0, // normal
-					textureUV[TEX_OFFSET_RIGHT+TEX_OFFSET_VERTEX_TOP_LEFT], // texture U
-					textureUV[TEX_OFFSET_RIGHT+TEX_OFFSET_VERTEX_TOP_LEFT+1], // texture V
-					1.0f );  // lightFactor
-
-			vertexBuilder.put( centerX+halfBlockSize , centerY + halfBlockSize ,centerZ - halfBlockSize , // position
-					1,0,0, // normal
-					textureUV[TEX_OFFSET_RIGHT+TEX_OFFSET_VERTEX_TOP_RIGHT], // texture U
-					textureUV[TEX_OFFSET_RIGHT+TEX_OFFSET_VERTEX_TOP_RIGHT+1], // texture V
-					1.0f );  // lightFactor
-
-			vertexBuilder.put( centerX+halfBlockSize , centerY - halfBlockSize ,centerZ - halfBlockSize , // position
-					1,0,0, // normal
-					textureUV[TEX_OFFSET_RIGHT+TEX_OFFSET_VERTEX_BOTTOM_RIGHT], // texture U
-					textureUV[TEX_OFFSET_RIGHT+TEX_OFFSET_VERTEX_BOTTOM_RIGHT+1], // texture V
-					1.0f );  // lightFactor
-
-			vertexBuilder.put( centerX+halfBlockSize , centerY - halfBlockSize ,centerZ + halfBlockSize , // position
-					1,0,0, // normal
-					textureUV[TEX_OFFSET_RIGHT+TEX_OFFSET_VERTEX_BOTTOM_LEFT], // texture U
-					textureUV[TEX_OFFSET_RIGHT+TEX_OFFSET_VERTEX_BOTTOM_LEFT+1], // texture V
-					1.0f );  // lightFactor
-
-			if ( DEBUG_RENDER_WIREFRAME )
-			{
-				indexBuilder.put( (short) p0 , (short) p3,
-						          (short) p3 , (short) p2,
-						          (short) p2 , (short) p1 ,
-						          (short) p1 , (short) p0) ;
-			} else {
-				indexBuilder.put( (short) p0,(short) p3, (short) p2 , (short) p0 , (short) p2 , (short) p1 );
-			}
+	/**
+	 * Releases the index buffers shared by all block renderers.
+	 *
+	 * <p>Must be called from the OpenGL rendering thread.</p>
+	 */
+	public static void disposeSharedBuffers()
+	{
+		if ( quadIndices != null ) {
+			quadIndices.dispose();
+			quadIndices = null;
 		}
-
-		if ( (sideMask & SIDE_TOP ) != 0 ) {
-
-			p0 = vertexCount;
-			p1 = vertexCount+1;
-			p2 = vertexCount+2;
-			p3 = vertexCount+3;
-			vertexCount += 4;
-
-			vertexBuilder.put( centerX-halfBlockSize , centerY + halfBlockSize ,centerZ - halfBlockSize , // position
-					0,1,0, // normal
-					textureUV[TEX_OFFSET_TOP+TEX_OFFSET_VERTEX_TOP_LEFT], // texture U
-					textureUV[TEX_OFFSET_TOP+TEX_OFFSET_VERTEX_TOP_LEFT+1], // texture V
-					lightFactor );
-
-			vertexBuilder.put( centerX+halfBlockSize , centerY + halfBlockSize ,centerZ - halfBlockSize , // position
-					0,1,0, // normal
-					textureUV[TEX_OFFSET_TOP+TEX_OFFSET_VERTEX_TOP_RIGHT], // texture U
-					textureUV[TEX_OFFSET_TOP+TEX_OFFSET_VERTEX_TOP_RIGHT+1], // texture V
-					lightFactor );
-
-			vertexBuilder.put( centerX+halfBlockSize , centerY + halfBlockSize ,centerZ + halfBlockSize , // position
-					0,1,0, // normal
-					textureUV[TEX_OFFSET_TOP+TEX_OFFSET_VERTEX_BOTTOM_RIGHT], // texture U
-					textureUV[TEX_OFFSET_TOP+TEX_OFFSET_VERTEX_BOTTOM_RIGHT+1], // texture V
-					lightFactor );
-
-			vertexBuilder.put( centerX-halfBlockSize , centerY + halfBlockSize ,centerZ + halfBlockSize , // position
-					0,1,0, // normal
-					textureUV[TEX_OFFSET_TOP+TEX_OFFSET_VERTEX_BOTTOM_LEFT], // texture U
-					textureUV[TEX_OFFSET_TOP+TEX_OFFSET_VERTEX_BOTTOM_LEFT+1], // texture V
-					lightFactor );
-
-			if ( DEBUG_RENDER_WIREFRAME )
-			{
-				indexBuilder.put( (short) p0 , (short) p3,
-						          (short) p3 , (short) p2,
-						          (short) p2 , (short) p1 ,
-						          (short) p1 , (short) p0) ;
-			} else {
-				indexBuilder.put( (short) p0,(short) p3, (short) p2 , (short) p0 , (short) p2 , (short) p1 );
-			}
+		if ( quadLineIndices != null ) {
+			quadLineIndices.dispose();
+			quadLineIndices = null;
 		}
+	}
 
-		if ( (sideMask & SIDE_BOTTOM ) != 0 ) {
-
-			p0 = vertexCount;
-			p1 = vertexCount+1;
-			p2 = vertexCount+2;
-			p3 = vertexCount+3;
-			vertexCount += 4;
-
-			vertexBuilder.put( centerX-halfBlockSize , centerY - halfBlockSize ,centerZ - halfBlockSize , // position
-					0,-1,0, // normal
-					textureUV[TEX_OFFSET_BOTTOM+TEX_OFFSET_VERTEX_TOP_LEFT], // texture UV
-					textureUV[TEX_OFFSET_BOTTOM+TEX_OFFSET_VERTEX_TOP_LEFT+1], // texture UV
-					lightFactor );
-
-			vertexBuilder.put( centerX+halfBlockSize , centerY - halfBlockSize ,centerZ - halfBlockSize , // position
-					0,-1,0, // normal
-					textureUV[TEX_OFFSET_BOTTOM+TEX_OFFSET_VERTEX_TOP_RIGHT], // texture UV
-					textureUV[TEX_OFFSET_BOTTOM+TEX_OFFSET_VERTEX_TOP_RIGHT+1], // texture UV
-					lightFactor );
-
-			vertexBuilder.put( centerX+halfBlockSize , centerY - halfBlockSize ,centerZ + halfBlockSize , // position
-					0,-1,0, // normal
-					textureUV[TEX_OFFSET_BOTTOM+TEX_OFFSET_VERTEX_BOTTOM_RIGHT], // texture UV
-					textureUV[TEX_OFFSET_BOTTOM+TEX_OFFSET_VERTEX_BOTTOM_RIGHT+1], // texture UV
-					lightFactor ); // color BLUE
-
-			vertexBuilder.put( centerX-halfBlockSize , centerY - halfBlockSize ,centerZ + halfBlockSize , // position
-					0,-1,0, // normal
-					textureUV[TEX_OFFSET_BOTTOM+TEX_OFFSET_VERTEX_BOTTOM_LEFT], // texture UV
-					textureUV[TEX_OFFSET_BOTTOM+TEX_OFFSET_VERTEX_BOTTOM_LEFT+1], // texture UV
-					lightFactor ); // color WHITE
-
-			if ( DEBUG_RENDER_WIREFRAME )
+	private static IndexBufferObject getQuadIndices()
+	{
+		if ( quadIndices == null )
+		{
+			final short[] indices = new short[ MAX_QUADS_PER_DRAW * 6 ];
+			int ptr = 0;
+			for ( int quad = 0 ; quad < MAX_QUADS_PER_DRAW ; quad++ )
 			{
-				indexBuilder.put( (short) p0 , (short) p3,
-						          (short) p3 , (short) p2,
-						          (short) p2 , (short) p1 ,
-						          (short) p1 , (short) p0) ;
-			} else {
-				indexBuilder.put( (short) p3,(short) p0, (short) p1 , (short) p3 , (short) p1 , (short) p2 );
+				final int p0 = quad * 4;
+				indices[ptr++] = (short) p0;
+				indices[ptr++] = (short) (p0+1);
+				indices[ptr++] = (short) (p0+2);
+				indices[ptr++] = (short) p0;
+				indices[ptr++] = (short) (p0+2);
+				indices[ptr++] = (short) (p0+3);
 			}
+			quadIndices = createIBO( indices );
 		}
+		return quadIndices;
 	}
 
-	public BlockRenderer end()
+	private static IndexBufferObject getQuadLineIndices()
 	{
-		indexBuilder.end();
-		vertexBuilder.end();
-
-		if ( indexBuilder.actualSize() > maxIndexArraySize ) {
-			maxIndexArraySize = indexBuilder.actualSize();
-		}
-		if ( vertexBuilder.actualSize() > maxVertexArraySize ) {
-			maxVertexArraySize = vertexBuilder.actualSize();
+		if ( quadLineIndices == null )
+		{
+			final short[] indices = new short[ MAX_QUADS_PER_DRAW * 8 ];
+			int ptr = 0;
+			for ( int quad = 0 ; quad < MAX_QUADS_PER_DRAW ; quad++ )
+			{
+				final int p0 = quad * 4;
+				for ( int i = 0 ; i < 4 ; i++ )
+				{
+					indices[ptr++] = (short) ( p0 + i );
+					indices[ptr++] = (short) ( p0 + ( i + 1 ) % 4 );
+				}
+			}
+			quadLineIndices = createIBO( indices );
 		}
-
-		uploadDataToGPU = true;
-		return this;
+		return quadLineIndices;
 	}
 
+	/**
+	 * Renders the most recently published mesh.
+	 *
+	 * <p>Must be called from the OpenGL rendering thread , never blocks.</p>
+	 *
+	 * @param shader
+	 */
 	public void render(ShaderProgram shader)
 	{
-		final int vertexCount = vertexBuilder.actualSize() / ELEMENTS_PER_VERTEX;
-		if ( vertexCount == 0 ) {
-			return;
+		final MeshData mesh = pendingMesh.getAndSet( null );
+		if ( mesh != null ) {
+			uploadedQuadCount = mesh.getQuadCount();
 		}
-
-		if ( vbo == null ||  vbo.getNumMaxVertices() < vertexCount  )
-		{
-			if ( vbo != null ) {
-				vbo.dispose();
-				vbo = null;
-			}
-			if ( DEBUG_PERFORMANCE ) {
-				System.out.println("Creating VBO for "+vertexCount+" vertices.");
-			}
-			vbo = createVBO( vertexCount );
-			uploadDataToGPU = true;
+		if ( uploadedQuadCount == 0 ) {
+			return;
 		}
 
-		final int indexCount = indexBuilder.actualSize();
-		if ( ibo == null ||  ibo.getNumMaxIndices() < indexCount  )
-		{
-			if ( ibo != null ) {
-				ibo.dispose();
-				ibo = null;
-			}
-			if ( DEBUG_PERFORMANCE ) {
-				System.out.println("Creating VBO for "+indexCount+" indices.");
-			}
-			ibo = createIBO( indexCount );
-			uploadDataToGPU = true;
+		if ( mesh != null ) {
+			prepareBuffers( mesh );
 		}
 
 		if ( CULL_FACES ) {
@@ -531,26 +335,39 @@ public final class BlockRenderer implements Disposable {
 			Gdx.graphics.getGL20().glEnable(GL11.GL_DEPTH_TEST);
 		}
 
-		vbo.bind( shader );
-		ibo.bind();
+		if ( packedVbo != null ) {
+			packedVbo.bind( shader );
+		} else {
+			vbo.bind( shader );
+		}
 
-		if ( uploadDataToGPU ) {
-			vbo.setVertices( vertexBuilder.array , 0 , vertexBuilder.actualSize() );
-			ibo.setIndices( indexBuilder.array , 0 , indexBuilder.actualSize() );
-			uploadDataToGPU = false;
+		if ( mesh != null )
+		{
+			if ( mesh.isPacked() ) {
+				packedVbo.setVertices( mesh.packedVertices , mesh.packedVertices.length );
+			} else {
+				vbo.setVertices( mesh.vertices , 0 , mesh.vertices.length );
+			}
 		}
 
-		int indicesRemaining = indexCount;
-		while ( indicesRemaining > 0 )
+		final IndexBufferObject ibo = DEBUG_RENDER_WIREFRAME ? getQuadLineIndices() : getQuadIndices();
+		final int mode = DEBUG_RENDER_WIREFRAME ? GL20.GL_LINES : GL20.GL_TRIANGLES;
+		final int indicesPerQuad = DEBUG_RENDER_WIREFRAME ? 8 : 6;
+		ibo.bind();
+
+		// draw large meshes in batches , moving the start of the vertex attributes to the first quad of each batch
+		for ( int firstQuad = 0 ; firstQuad < uploadedQuadCount ; firstQuad += MAX_QUADS_PER_DRAW )
 		{
-			final int indicesToDraw = indicesRemaining > 65535 ? 65535 : indicesRemaining;
-			if ( DEBUG_RENDER_WIREFRAME )
+			if ( firstQuad > 0 )
 			{
-				Gdx.graphics.getGL20().glDrawElements(GL20.GL_LINES , indicesToDraw , GL20.GL_UNSIGNED_SHORT , 0);
-			} else {
-				Gdx.graphics.getGL20().glDrawElements(GL20.GL_TRIANGLES, indicesToDraw , GL20.GL_UNSIGNED_SHORT , 0);
+				if ( packedVbo != null ) {
+					packedVbo.bind( shader , firstQuad * 4 );
+				} else {
+					bindVertexAttributes( shader , firstQuad * 4 );
+				}
 			}
-			indicesRemaining -= indicesToDraw;
+			final int quadsToDraw = Math.min( uploadedQuadCount - firstQuad , MAX_QUADS_PER_DRAW );
+			Gdx.graphics.getGL20().glDrawElements( mode , quadsToDraw * indicesPerQuad , GL20.GL_UNSIGNED_SHORT , 0 );
 		}
 
 		if ( DEPTH_BUFFER ) {
@@ -562,22 +379,110 @@ public final class BlockRenderer implements Disposable {
 		}
 
 		ibo.unbind();
-		vbo.unbind(shader);
+		if ( packedVbo != null ) {
+			packedVbo.unbind( shader );
+		} else {
+			vbo.unbind(shader);
+		}
 	}
 
-	private IndexBufferObject createIBO(int indexCount) {
-		return new IndexBufferObject(true,indexCount);
+	/**
+	 * Returns the number of bytes of heap memory used by this renderer , which
+	 * is the size of the mesh waiting to be uploaded to the GPU (if any).
+	 *
+	 * @return
+	 */
+	public int getHeapSizeInBytes()
+	{
+		final MeshData mesh = pendingMesh.get();
+		return mesh != null ? mesh.getSizeInBytes() : 0;
+	}
+
+	/**
+	 * Returns the number of bytes allocated for the VBO or , if a
+	 * larger mesh is waiting to be uploaded , the number of bytes it will need.
+	 *
+	 * @return
+	 */
+	public int getBufferSizeInBytes()
+	{
+		final MeshData mesh = pendingMesh.get();
+		final int pending = mesh != null ? mesh.getSizeInBytes() : 0;
+		return Math.max( bufferSizeInBytes , pending );
+	}
+
+	/*
+	 * Points the vertex attributes of the bound regular VBO at a given vertex. libgdx' VertexBufferObject always
+	 * starts at the first vertex , so this talks to OpenGL directly (like PackedVertexBuffer#bind(ShaderProgram,int)).
+	 */
+	private static void bindVertexAttributes(ShaderProgram shader,int firstVertex)
+	{
+		int offset = firstVertex * ELEMENTS_PER_VERTEX * 4;
+		for ( int i = 0 ; i < VERTEX_ATTRIBUTES.length ; i++ )
+		{
+			final int location = shader.getAttributeLocation( VERTEX_ATTRIBUTES[i] );
+			if ( location >= 0 ) { // shader might not use it
+				Gdx.graphics.getGL20().glVertexAttribPointer( location , VERTEX_ATTRIBUTE_SIZES[i] , GL20.GL_FLOAT , false , ELEMENTS_PER_VERTEX * 4 , offset );
+			}
+			offset += VERTEX_ATTRIBUTE_SIZES[i] * 4;
+		}
+	}
+
+	// make sure the VBO is large enough and matches the mesh's vertex format
+	private void prepareBuffers(MeshData mesh)
+	{
+		final int vertexCount = mesh.vertexCount;
+		if ( mesh.isPacked() )
+		{
+			if ( packedVbo == null || packedVbo.getNumMaxVertices() < vertexCount )
+			{
+				releaseVertexBuffers();
+				if ( DEBUG_PERFORMANCE ) {
+					System.out.println("Creating packed VBO for "+vertexCount+" vertices.");
+				}
+				packedVbo = new PackedVertexBuffer( vertexCount );
+			}
+		}
+		else if ( vbo == null ||  vbo.getNumMaxVertices() < vertexCount  )
+		{
+			releaseVertexBuffers();
+			if ( DEBUG_PERFORMANCE ) {
+				System.out.println("Creating VBO for "+vertexCount+" vertices.");
+			}
+			vbo = createVBO( vertexCount );
+		}
+
+		bufferSizeInBytes = packedVbo != null ? packedVbo.getSizeInBytes() : vbo.getNumMaxVertices() * ELEMENTS_PER_VERTEX * 4;
+	}
+
+	private void releaseVertexBuffers()
+	{
+		if ( vbo != null ) {
+			vbo.dispose();
+			vbo = null;
+		}
+		if ( packedVbo != null ) {
+			packedVbo.dispose();
+			packedVbo = null;
+		}
+	}
+
+	private static IndexBufferObject createIBO(short[] indices)
+	{
+		final IndexBufferObject result = new IndexBufferObject(true,indices.length);
+		result.setIndices( indices , 0 , indices.length );
+		return result;
 	}
 	
     private VertexBufferObject createVBO(int vertexCount)
     {
-        final VertexAttribute lightFactorAttribute  = new VertexAttribute( 250 , 1 , "a_lightFactor" ); // value in the range 0...1
         final VertexAttribute[] attrs = new VertexAttribute[]
                 {
-                new VertexAttribute(Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE),
-                new VertexAttribute(Usage.Normal, 3, ShaderProgram.NORMAL_ATTRIBUTE),
-                new VertexAttribute(Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE),
-                lightFactorAttribute // a float in the range [0...1] (no light ... full light)
+                new VertexAttribute(Usage.Position, VERTEX_ATTRIBUTE_SIZES[0], VERTEX_ATTRIBUTES[0]), // in blocks , relative to the chunk origin
+                new VertexAttribute(Usage.Normal, VERTEX_ATTRIBUTE_SIZES[1], VERTEX_ATTRIBUTES[1]),
+                new VertexAttribute(Usage.TextureCoordinates, VERTEX_ATTRIBUTE_SIZES[2], VERTEX_ATTRIBUTES[2]),
+                new VertexAttribute( 250 , VERTEX_ATTRIBUTE_SIZES[3] , VERTEX_ATTRIBUTES[3] ), // a float in the range [0...1] (no light ... full light)
+                new VertexAttribute( 251 , VERTEX_ATTRIBUTE_SIZES[4] , VERTEX_ATTRIBUTES[4] ) // index of texture atlas tile , see setupTextureCoordinates()
                 };
         return new VertexBufferObject(true, vertexCount , attrs );
     }	
@@ -585,16 +490,7 @@ public final class BlockRenderer implements Disposable {
 	@Override
 	public void dispose()
 	{
-		if ( vbo != null ) {
-			vbo.dispose();
-			vbo = null;
-		}
-		if ( ibo != null ) {
-			ibo.dispose();
-			ibo = null;
-		}
-
-		uploadDataToGPU = true;
-		maxVertexArraySize = maxIndexArraySize = 0;
+		releaseGPUBuffers();
+		pendingMesh.set( null );
 	}
 }
@@ -0,0 +1,221 @@
+package de.codesourcery.voxelgame.core.render;
+
+import de.codesourcery.voxelgame.core.world.Chunk;
+import de.codesourcery.voxelgame.core.world.ChunkSnapshot;
+
+/**
+ * Turns the visible block faces of a chunk into a mesh.
+ *
+ * <p>Visible faces are determined by {@link FaceCuller}. Faces are either added block by block or , when using
+ * greedy meshing , adjacent coplanar faces of the same block type and light level are merged into
+ * rectangles first so that each rectangle only needs a single quad. The block texture gets repeated across
+ * merged faces (see {@link MeshBuilder#addBox(int, int, int, int, int, int, int, byte, int)}) ,
+ * so both produce the same image.</p>
+ *
+ * <p>Greedy meshing looks at each direction separately. Visible faces pointing in that direction are written into a
+ * grid , one 2D slice per layer of blocks along the face normal. Each slice gets swept row by row , each
+ * face not merged yet is extended along the row as far as possible and the resulting strip is then extended across
+ * as many rows as possible.</p>
+ *
+ * <p>Thread-safety: This class is thread-safe , scratch buffers are kept per thread.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class ChunkMesher
+{
+	// number of bits used for the light level in grid cells
+	private static final int LIGHT_BITS = 4;
+
+	private static final class Scratch
+	{
+		// visible faces , see FaceCuller#findVisibleFaces()
+		public final int[] faces = new int[ Chunk.BLOCK_COUNT ];
+
+		// block type and light level of faces pointing in a single direction , ( blockType << LIGHT_BITS ) | lightLevel
+		public final int[] grid = new int[ Chunk.BLOCK_COUNT ];
+
+		// one bit per grid cell that holds a face not merged yet , one int per grid row (so rows must not be longer than 32 blocks)
+		public final int[] rows = new int[ Chunk.BLOCK_COUNT / Math.min( Chunk.BLOCKS_X , Chunk.BLOCKS_Z ) ];
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	private ChunkMesher() {
+	}
+
+	/**
+	 * Adds the visible faces of a chunk to a mesh builder.
+	 *
+	 * @param chunk chunk to build the mesh for , used to look up block light levels
+	 * @param snapshot snapshot of the chunk's blocks
+	 * @param skyLightLevels sky light levels of the chunk's blocks , may differ from the ones currently stored in the chunk
+	 * @param left adjacent chunk along the negative X axis or <code>null</code>
+	 * @param right adjacent chunk along the positive X axis or <code>null</code>
+	 * @param below adjacent chunk along the negative Y axis or <code>null</code>
+	 * @param above adjacent chunk along the positive Y axis or <code>null</code>
+	 * @param back adjacent chunk along the negative Z axis or <code>null</code>
+	 * @param front adjacent chunk along the positive Z axis or <code>null</code>
+	 * @param builder builder to add faces to , {@link MeshBuilder#begin()} needs to have been called
+	 * @param greedy whether to merge adjacent faces
+	 * @return number of blocks with visible faces
+	 */
+	public static int buildMesh(Chunk chunk,ChunkSnapshot snapshot,byte[] skyLightLevels,Chunk left,Chunk right,Chunk below,Chunk above,Chunk back,Chunk front,MeshBuilder builder,boolean greedy)
+	{
+		if ( snapshot.isEmpty() ) {
+			return 0;
+		}
+
+		final Scratch scratch = SCRATCH.get();
+		final int faceCount = FaceCuller.findVisibleFaces( snapshot , left , right , below , above , back , front , scratch.faces );
+		if ( greedy )
+		{
+			for ( int side = BlockRenderer.SIDE_FRONT ; side <= BlockRenderer.SIDE_BOTTOM ; side <<= 1 ) {
+				addMergedFaces( chunk , snapshot , skyLightLevels , side , faceCount , scratch , builder );
+			}
+		} else {
+			addBlocks( chunk , snapshot , skyLightLevels , faceCount , scratch.faces , builder );
+		}
+		return faceCount;
+	}
+
+	private static void addBlocks(Chunk chunk,ChunkSnapshot snapshot,byte[] skyLightLevels,int faceCount,int[] faces,MeshBuilder builder)
+	{
+		for ( int i = 0 ; i < faceCount ; i++ )
+		{
+			final int currentIndex = faces[i] >>> FaceCuller.SIDES_BITS;
+			final int sidesMask = faces[i] & BlockRenderer.ALL_SIDES;
+
+			final int x = currentIndex % Chunk.BLOCKS_X;
+			final int y = ( currentIndex / Chunk.BLOCKS_X ) % Chunk.BLOCKS_Y;
+			final int z = currentIndex / ( Chunk.BLOCKS_X * Chunk.BLOCKS_Y );
+			builder.addBlock( x , y , z , getLightLevel( chunk , skyLightLevels , currentIndex ) , snapshot.getBlockType( currentIndex ) , sidesMask );
+		}
+	}
+
+	/*
+	 * Merges and adds all faces pointing in one direction.
+	 *
+	 * Grid axes depend on the direction:
+	 *
+	 * TOP/BOTTOM : slice = Y , u = X , v = Z
+	 * FRONT/BACK : slice = Z , u = X , v = Y
+	 * LEFT/RIGHT : slice = X , u = Z , v = Y
+	 */
+	private static void addMergedFaces(Chunk chunk,ChunkSnapshot snapshot,byte[] skyLightLevels,int side,int faceCount,Scratch scratch,MeshBuilder builder)
+	{
+		final boolean vertical = side == BlockRenderer.SIDE_TOP || side == BlockRenderer.SIDE_BOTTOM;
+		final boolean alongZ = side == BlockRenderer.SIDE_FRONT || side == BlockRenderer.SIDE_BACK;
+		final boolean alongX = side == BlockRenderer.SIDE_LEFT || side == BlockRenderer.SIDE_RIGHT;
+
+		final int sliceCount = vertical ? Chunk.BLOCKS_Y : alongZ ? Chunk.BLOCKS_Z : Chunk.BLOCKS_X;
+		final int uSize = alongX ? Chunk.BLOCKS_Z : Chunk.BLOCKS_X;
+		final int vSize = vertical ? Chunk.BLOCKS_Z : Chunk.BLOCKS_Y;
+
+		final int[] faces = scratch.faces;
+		final int[] grid = scratch.grid;
+		final int[] rows = scratch.rows;
+
+		int facesInGrid = 0;
+		for ( int i = 0 ; i < faceCount ; i++ )
+		{
+			if ( ( faces[i] & side ) == 0 ) {
+				continue;
+			}
+			final int blockIndex = faces[i] >>> FaceCuller.SIDES_BITS;
+			final int x = blockIndex % Chunk.BLOCKS_X;
+			final int y = ( blockIndex / Chunk.BLOCKS_X ) % Chunk.BLOCKS_Y;
+			final int z = blockIndex / ( Chunk.BLOCKS_X * Chunk.BLOCKS_Y );
+
+			final int slice = vertical ? y : alongZ ? z : x;
+			final int u = alongX ? z : x;
+			final int v = vertical ? z : y;
+			final int row = slice * vSize + v;
+
+			// side faces are always rendered with full light , so only top and bottom faces need to match the light level
+			final int lightLevel = vertical ? getLightLevel( chunk , skyLightLevels , blockIndex ) : 0;
+			grid[ row * uSize + u ] = ( ( snapshot.getBlockType( blockIndex ) & 0xff ) << LIGHT_BITS ) | lightLevel;
+			rows[ row ] |= 1 << u;
+			facesInGrid++;
+		}
+
+		if ( facesInGrid == 0 ) {
+			return;
+		}
+
+		for ( int slice = 0 ; slice < sliceCount ; slice++ )
+		{
+			for ( int v = 0 ; v < vSize ; v++ )
+			{
+				final int row = slice * vSize + v;
+				// cells of merged faces get cleared from the row masks , this leaves all rows empty once the slice has been processed
+				while ( rows[ row ] != 0 )
+				{
+					final int u = Integer.numberOfTrailingZeros( rows[ row ] );
+					final int key = grid[ row * uSize + u ];
+
+					// extend along the row
+					int width = 1;
+					while ( u + width < uSize && ( rows[ row ] & ( 1 << ( u + width ) ) ) != 0 && grid[ row * uSize + u + width ] == key ) {
+						width++;
+					}
+					// width may be 32 , so shift twice
+					final int span = ( ( 1 << ( width - 1 ) << 1 ) - 1 ) << u;
+
+					// extend across rows
+					int height = 1;
+					while ( v + height < vSize && isSpanOf( grid , rows , row + height , span , u , width , uSize , key ) ) {
+						height++;
+					}
+
+					for ( int j = 0 ; j < height ; j++ ) {
+						rows[ row + j ] &= ~span;
+					}
+
+					// box spanning the merged blocks
+					final int minX = alongX ? slice : u;
+					final int minY = vertical ? slice : v;
+					final int minZ = vertical ? v : alongZ ? slice : u;
+					final int sizeX = alongX ? 1 : width;
+					final int sizeY = vertical ? 1 : height;
+					final int sizeZ = vertical ? height : alongZ ? 1 : width;
+
+					final byte blockType = (byte) ( key >>> LIGHT_BITS );
+					final int lightLevel = key & ( ( 1 << LIGHT_BITS ) - 1 );
+					builder.addBox( minX , minY , minZ , sizeX , sizeY , sizeZ , lightLevel , blockType , side );
+				}
+			}
+		}
+	}
+
+	/*
+	 * Returns the light level used for rendering a block , see Chunk#getLightLevel(int).
+	 */
+	private static int getLightLevel(Chunk chunk,byte[] skyLightLevels,int blockIndex)
+	{
+		return Math.max( skyLightLevels[ blockIndex ] , chunk.getBlockLightLevel( blockIndex ) );
+	}
+
+	/*
+	 * Checks whether all cells of a grid row covered by a span hold faces not merged yet with the given key.
+	 */
+	private static boolean isSpanOf(int[] grid,int[] rows,int row,int span,int u,int width,int uSize,int key)
+	{
+		if ( ( rows[ row ] & span ) != span ) {
+			return false;
+		}
+		final int start = row * uSize + u;
+		for ( int i = 0 ; i < width ; i++ )
+		{
+			if ( grid[ start + i ] != key ) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
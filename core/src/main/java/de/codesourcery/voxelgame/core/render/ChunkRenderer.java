@@ -14,11 +14,13 @@ import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.utils.Disposable;
 
-import de.codesourcery.voxelgame.core.Block;
+import de.codesourcery.voxelgame.core.Constants;
 import de.codesourcery.voxelgame.core.FPSCameraController;
 import de.codesourcery.voxelgame.core.Main;
+import de.codesourcery.voxelgame.core.render.BlockRenderer.MeshData;
 import de.codesourcery.voxelgame.core.world.Chunk;
 import de.codesourcery.voxelgame.core.world.ChunkManager;
+import de.codesourcery.voxelgame.core.world.ChunkSnapshot;
 import de.codesourcery.voxelgame.core.world.IChunkVisitor;
 
 public class ChunkRenderer implements Disposable , IChunkRenderer {
@@ -46,6 +48,9 @@ public class ChunkRenderer implements Disposable , IChunkRenderer {
 
 	private static ShaderProgram loadRegularShader()
 	{
+		if ( Constants.USE_PACKED_VERTICES ) {
+			return loadShader("/flat_vertex_packed.glsl","/flat_fragment.glsl");
+		}
 		return loadShader("/flat_vertex.glsl","/flat_fragment.glsl");
 	}
 
@@ -158,9 +163,13 @@ public class ChunkRenderer implements Disposable , IChunkRenderer {
 
 //		shader.setUniformf("u_cameraPosition" , cameraController.camera.position );
 		shader.setUniformMatrix("u_modelViewProjection", cameraController.camera.combined );
+		// vertex positions are given in blocks relative to the chunk
+		shader.setUniformf("u_chunkOrigin" , chunk.boundingBox.min );
+		shader.setUniformf("u_blockSize" , Chunk.BLOCK_WIDTH , Chunk.BLOCK_HEIGHT , Chunk.BLOCK_DEPTH );
 		if ( ! BlockRenderer.DEBUG_RENDER_WIREFRAME ) {
 			shader.setUniformMatrix("u_modelView", cameraController.camera.view );
 			shader.setUniformMatrix("u_cameraRotation" , cameraController.normalMatrix );
+			BlockRenderer.setAtlasLayout( shader );
 		}
 
 		chunk.blockRenderer.render( shader );
@@ -194,176 +203,57 @@ public class ChunkRenderer implements Disposable , IChunkRenderer {
 		wireframeShader.dispose();
 		regularShader.dispose();
 		shapeRenderer.dispose();
+		BlockRenderer.disposeSharedBuffers();
 	}
 
 	/**
 	 * Initializes the mesh for a given chunk
 	 * @param chunk
+	 * @param snapshot
+	 * @param skyLightLevels
 	 * @return
 	 */
 	@Override
-	public int setupMesh(Chunk chunk) {
-
-		int quadCount = 0; // debug
-		int renderedBlocks = 0; // debug
-
-		final float xOrig = chunk.boundingBox.min.x;
-		final float yOrig = chunk.boundingBox.min.y;
-		final float zOrig = chunk.boundingBox.min.z;
-
+	public int setupMesh(Chunk chunk,ChunkSnapshot snapshot,byte[] skyLightLevels)
+	{
 		final BlockRenderer renderer = chunk.blockRenderer;
-		renderer.begin();
 
-		if ( ! chunk.isEmpty() )
+		// the render thread never locks the block renderer , it only picks up meshes published by publish().
+		// Holding the lock keeps concurrent rebuilds of the same chunk from doing the same work twice
+		synchronized( renderer )
 		{
-			final byte[] blocks = chunk.blockType;
+			if ( chunk.getVersion() != snapshot.getVersion() ) {
+				return -1; // already outdated , don't waste any time
+			}
 
-			for ( int x = 0 ; x < Chunk.BLOCKS_X ; x++ )
+			final MeshBuilder builder = MeshBuilder.get();
+			final int renderedBlocks = buildMesh( chunk , snapshot , skyLightLevels , builder );
+			final MeshData mesh = builder.end();
+			synchronized( chunk )
 			{
-				final float blockCenterX = xOrig + x * Chunk.BLOCK_WIDTH+(Chunk.BLOCK_WIDTH*0.5f);
-
-				for ( int y = 0 ; y < Chunk.BLOCKS_Y ; y++ )
-				{
-					final float blockCenterY = yOrig + y * Chunk.BLOCK_HEIGHT+(Chunk.BLOCK_HEIGHT*0.5f);
-					for ( int z = 0 ; z < Chunk.BLOCKS_Z ; z++ )
-					{
-						final int currentIndex = (x) + Chunk.BLOCKS_X * ( y ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( z );
-						final byte blockType = blocks[ currentIndex ];
-						if ( Block.isNoAirBlock( blockType ) )
-						{
-							int sidesMask;
-							// TODO: Rendering translucent blocks needs fixing
-							// see http://stackoverflow.com/questions/3388294/opengl-question-about-the-usage-of-gldepthmask/3390094#3390094
-							// and http://www.opengl.org/wiki/Transparency_Sorting
-							// need to use separate VBOs for translucent blocks and render them
-							// back-to-front with depth buffer disabled
-							if ( x != 0 && blockType == Block.Type.WATER )
-							{
-								if ( y == Chunk.BLOCKS_Y-1 || Block.isAirBlock( blocks[ (x) + Chunk.BLOCKS_X * ( y+1 ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( z ) ] ) ) {
-									sidesMask = BlockRenderer.SIDE_TOP;
-								} else {
-									sidesMask = 0;
-								}
-							} else {
-								sidesMask = determineSidesToRender( chunk , x , y, z );
-							}
-							if ( sidesMask  != 0 )
-							{
-								final float blockCenterZ = zOrig + z * Chunk.BLOCK_DEPTH+(Chunk.BLOCK_DEPTH*0.5f);
-
-								if ( DEBUG_PERFORMANCE ) {
-									quadCount += Integer.bitCount( sidesMask );
-								}
-								final float lightLevel = chunk.lightLevel[ currentIndex ];
-								final float lightFactor = 0.3f + lightLevel*(0.7f/(Block.MAX_LIGHT_LEVEL+1));
-								// final float lightFactor = 0.7f;
-								renderer.addBlock( blockCenterX , blockCenterY , blockCenterZ , Chunk.BLOCK_DEPTH/2.0f ,lightFactor, blockType , sidesMask );
-								if ( DEBUG_PERFORMANCE ) {
-									renderedBlocks++;
-								}
-							}
-						}
-					}
+				if ( chunk.getVersion() != snapshot.getVersion() ) {
+					// chunk got modified , invalidated or disposed while building the mesh , another rebuild will follow
+					return -1;
 				}
+				chunk.setSkyLightLevels( skyLightLevels );
+				renderer.publish( mesh );
+				chunk.setMeshVersion( snapshot.getVersion() );
+				chunk.renderedBlockCount = renderedBlocks;
 			}
+			return renderedBlocks;
 		}
-
-		renderer.end();
-
-		chunk.setMeshRebuildRequired( false );
-		chunk.renderedBlockCount = renderedBlocks;
-
-		if ( DEBUG_PERFORMANCE && (frame%60)==0)
-		{
-			System.out.println("Triangle count: "+quadCount*2);
-		}
-		return renderedBlocks;
 	}
 
-	private int determineSidesToRender(Chunk chunk,int blockX,int blockY,int blockZ)
+	private int buildMesh(Chunk chunk,ChunkSnapshot snapshot,byte[] skyLightLevels,MeshBuilder builder)
 	{
-		final byte[] blocks = chunk.blockType;
-
-		int sideMask = 0;
-
-		// check along X axis
-		if ( blockX == 0 )
-		{
-			// check adjacent chunk left of this one
-			final Chunk adj = chunkManager.maybeGetChunk( chunk.x-1 ,  chunk.y ,  chunk.z );
-			if ( adj == null || adj.isEmpty() || Block.isTranslucentBlock( adj.blockType[ (Chunk.BLOCKS_X-1) + Chunk.BLOCKS_X * ( blockY ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( blockZ ) ] ) )
-			{
-				sideMask = BlockRenderer.SIDE_LEFT;
-			}
-		}
-		else if ( Block.isTranslucentBlock( blocks[ (blockX-1) + Chunk.BLOCKS_X * ( blockY ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( blockZ ) ] ) )
-		{
-			sideMask = BlockRenderer.SIDE_LEFT;
-		}
-
-		if ( blockX == Chunk.BLOCKS_X-1 ) { // check adjacent chunk right of this one
-			final Chunk adj = chunkManager.maybeGetChunk( chunk.x+1 ,  chunk.y ,  chunk.z );
-			if ( adj == null || adj.isEmpty() || Block.isTranslucentBlock( adj.blockType[ (0) + Chunk.BLOCKS_X * ( blockY ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( blockZ ) ] ) )
-			{
-				sideMask |= BlockRenderer.SIDE_RIGHT;
-			}
-		}
-		else if ( Block.isTranslucentBlock( blocks[ (blockX+1) + Chunk.BLOCKS_X * ( blockY ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( blockZ ) ] ) )
-		{
-			sideMask |= BlockRenderer.SIDE_RIGHT;
-		}
-
-		// check along Y axis
-		if ( blockY == 0 ) {
-			final Chunk adj = chunkManager.maybeGetChunk( chunk.x ,  chunk.y+1 ,  chunk.z );
-			if ( adj == null || adj.isEmpty() || Block.isTranslucentBlock( adj.blockType[ (blockX) + Chunk.BLOCKS_X * ( 0 ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( blockZ ) ] ) )
-			{
-				sideMask |= BlockRenderer.SIDE_BOTTOM;
-			}
-		}
-		else if ( Block.isTranslucentBlock( blocks[ (blockX) + Chunk.BLOCKS_X * ( blockY-1 ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( blockZ ) ] ) )
-		{
-			sideMask |= BlockRenderer.SIDE_BOTTOM;
-		}
-
-		if ( blockY == Chunk.BLOCKS_Y-1 )
-		{
-			// check adjacent chunk
-			final Chunk adj = chunkManager.maybeGetChunk( chunk.x ,  chunk.y-1 ,  chunk.z );
-			if ( adj == null || adj.isEmpty() || Block.isTranslucentBlock( adj.blockType[ (blockX) + Chunk.BLOCKS_X * ( Chunk.BLOCKS_Y-1 ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( blockZ ) ] ) )
-			{
-				sideMask |= BlockRenderer.SIDE_TOP;
-			}
-		}
-		else if ( Block.isTranslucentBlock( blocks[ (blockX) + Chunk.BLOCKS_X * ( blockY+1 ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( blockZ ) ] ) )
-		{
-			sideMask |= BlockRenderer.SIDE_TOP;
-		}
-
-		// check along Z axis
-		if ( blockZ == 0 ) { // check adjacent chunk
-			final Chunk adj = chunkManager.maybeGetChunk( chunk.x ,  chunk.y ,  chunk.z-1 );
-			if ( adj == null || adj.isEmpty() || Block.isTranslucentBlock( adj.blockType[ (blockX) + Chunk.BLOCKS_X * ( blockY ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( Chunk.BLOCKS_Z-1 ) ] ) )
-			{
-				sideMask |= BlockRenderer.SIDE_BACK;
-			}
-		}
-		else if ( Block.isTranslucentBlock( blocks[ (blockX) + Chunk.BLOCKS_X * ( blockY ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( blockZ-1 ) ] ) )
-		{
-			sideMask |= BlockRenderer.SIDE_BACK;
-		}
-
-		if ( blockZ == Chunk.BLOCKS_Z-1 ) { // check adjacent chunk
-			final Chunk adj = chunkManager.maybeGetChunk( chunk.x ,  chunk.y ,  chunk.z+1 );
-			if ( adj == null || adj.isEmpty() || Block.isTranslucentBlock( adj.blockType[ (blockX) + Chunk.BLOCKS_X * ( blockY ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( 0 ) ] ) )
-			{
-				sideMask |= BlockRenderer.SIDE_FRONT;
-			}
-		}
-		else if ( Block.isTranslucentBlock( blocks[ (blockX) + Chunk.BLOCKS_X * ( blockY ) + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * ( blockZ+1 ) ] ) )
-		{
-			sideMask |= BlockRenderer.SIDE_FRONT;
-		}
-		return sideMask;
+		builder.begin();
+		return ChunkMesher.buildMesh( chunk , snapshot , skyLightLevels ,
+				chunk.maybeGetLeftNeighbour( chunkManager ) ,
+				chunk.maybeGetRightNeighbour( chunkManager ) ,
+				chunk.maybeGetBottomNeighbour( chunkManager ) ,
+				chunk.maybeGetTopNeighbour( chunkManager ) ,
+				chunk.maybeGetBackNeighbour( chunkManager ) ,
+				chunk.maybeGetFrontNeighbour( chunkManager ) ,
+				builder , Constants.USE_GREEDY_MESHING );
 	}
-}
\ No newline at end of file
+}
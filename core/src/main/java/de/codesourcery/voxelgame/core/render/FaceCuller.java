@@ -0,0 +1,165 @@
+package de.codesourcery.voxelgame.core.render;
+
+import de.codesourcery.voxelgame.core.world.Chunk;
+import de.codesourcery.voxelgame.core.world.ChunkSnapshot;
+import de.codesourcery.voxelgame.core.world.OpacityMask;
+
+/**
+ * Determines which block faces of a chunk are visible , using the chunk's {@link OpacityMask}.
+ *
+ * <p>A face of a block is visible if the adjacent block is not opaque , faces of translucent blocks are also
+ * hidden by adjacent translucent blocks. Instead of looking at each
+ * block and its six neighbours individually , whole rows of blocks along the X axis are compared
+ * against the neighbouring rows with a few bit operations. Blocks on the chunk's borders are checked against
+ * the rows of adjacent chunks , missing adjacent chunks are treated as if they only contained air.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class FaceCuller
+{
+	// number of bits used for the side mask in each result entry
+	public static final int SIDES_BITS = 6;
+
+	private FaceCuller() {
+	}
+
+	/**
+	 * Finds all blocks with visible faces.
+	 *
+	 * <p>Each block with at least one visible face is stored in the result array as
+	 * <code>( blockIndex << SIDES_BITS ) | sidesMask</code> , with <code>sidesMask</code> being a combination of
+	 * <code>BlockRenderer.SIDE_*</code> constants.</p>
+	 *
+	 * @param chunk snapshot of the chunk to check
+	 * @param left adjacent chunk along the negative X axis or <code>null</code>
+	 * @param right adjacent chunk along the positive X axis or <code>null</code>
+	 * @param below adjacent chunk along the negative Y axis or <code>null</code>
+	 * @param above adjacent chunk along the positive Y axis or <code>null</code>
+	 * @param back adjacent chunk along the negative Z axis or <code>null</code>
+	 * @param front adjacent chunk along the positive Z axis or <code>null</code>
+	 * @param result array to store blocks in , needs to hold at least {@link Chunk#BLOCK_COUNT} elements
+	 * @return number of blocks stored in the result array
+	 */
+	public static int findVisibleFaces(ChunkSnapshot chunk,Chunk left,Chunk right,Chunk below,Chunk above,Chunk back,Chunk front,int[] result)
+	{
+		final boolean hasTranslucentBlocks = chunk.hasTranslucentBlocks();
+
+		int count = 0;
+		for ( int z = 0 ; z < Chunk.BLOCKS_Z ; z++ )
+		{
+			for ( int y = 0 ; y < Chunk.BLOCKS_Y ; y++ )
+			{
+				final int row = OpacityMask.rowIndex( y , z );
+				final int opaque = chunk.getOpaqueRow( row );
+				final int translucent = hasTranslucentBlocks ? chunk.getTranslucentRow( row ) : 0;
+				if ( ( opaque | translucent ) == 0 ) {
+					continue;
+				}
+
+				// bit x is set if the adjacent block of block x in the given direction is opaque
+				final int leftOpaque = ( opaque << 1 ) | ( left != null ? left.getOpaqueRow( row ) >>> ( Chunk.BLOCKS_X-1 ) : 0 );
+				final int rightOpaque = ( opaque >>> 1 ) | ( right != null ? right.getOpaqueRow( row ) << ( Chunk.BLOCKS_X-1 ) : 0 );
+
+				final int belowOpaque;
+				if ( y > 0 ) {
+					belowOpaque = chunk.getOpaqueRow( row - 1 );
+				} else {
+					belowOpaque = below != null ? below.getOpaqueRow( OpacityMask.rowIndex( Chunk.BLOCKS_Y-1 , z ) ) : 0;
+				}
+
+				final int aboveOpaque;
+				if ( y < Chunk.BLOCKS_Y-1 ) {
+					aboveOpaque = chunk.getOpaqueRow( row + 1 );
+				} else {
+					aboveOpaque = above != null ? above.getOpaqueRow( OpacityMask.rowIndex( 0 , z ) ) : 0;
+				}
+
+				final int backOpaque;
+				if ( z > 0 ) {
+					backOpaque = chunk.getOpaqueRow( row - Chunk.BLOCKS_Y );
+				} else {
+					backOpaque = back != null ? back.getOpaqueRow( OpacityMask.rowIndex( y , Chunk.BLOCKS_Z-1 ) ) : 0;
+				}
+
+				final int frontOpaque;
+				if ( z < Chunk.BLOCKS_Z-1 ) {
+					frontOpaque = chunk.getOpaqueRow( row + Chunk.BLOCKS_Y );
+				} else {
+					frontOpaque = front != null ? front.getOpaqueRow( OpacityMask.rowIndex( y , 0 ) ) : 0;
+				}
+
+				// bit x is set if the face of block x in the given direction is hidden. Faces of translucent blocks are
+				// also hidden by adjacent translucent blocks (water is the only translucent type besides air , so these are of the same type)
+				int leftHidden = leftOpaque;
+				int rightHidden = rightOpaque;
+				int belowHidden = belowOpaque;
+				int aboveHidden = aboveOpaque;
+				int backHidden = backOpaque;
+				int frontHidden = frontOpaque;
+				if ( translucent != 0 )
+				{
+					leftHidden |= translucent & ( ( translucent << 1 ) | ( left != null ? left.getTranslucentRow( row ) >>> ( Chunk.BLOCKS_X-1 ) : 0 ) );
+					rightHidden |= translucent & ( ( translucent >>> 1 ) | ( right != null ? right.getTranslucentRow( row ) << ( Chunk.BLOCKS_X-1 ) : 0 ) );
+					if ( y > 0 ) {
+						belowHidden |= translucent & chunk.getTranslucentRow( row - 1 );
+					} else if ( below != null ) {
+						belowHidden |= translucent & below.getTranslucentRow( OpacityMask.rowIndex( Chunk.BLOCKS_Y-1 , z ) );
+					}
+					if ( y < Chunk.BLOCKS_Y-1 ) {
+						aboveHidden |= translucent & chunk.getTranslucentRow( row + 1 );
+					} else if ( above != null ) {
+						aboveHidden |= translucent & above.getTranslucentRow( OpacityMask.rowIndex( 0 , z ) );
+					}
+					if ( z > 0 ) {
+						backHidden |= translucent & chunk.getTranslucentRow( row - Chunk.BLOCKS_Y );
+					} else if ( back != null ) {
+						backHidden |= translucent & back.getTranslucentRow( OpacityMask.rowIndex( y , Chunk.BLOCKS_Z-1 ) );
+					}
+					if ( z < Chunk.BLOCKS_Z-1 ) {
+						frontHidden |= translucent & chunk.getTranslucentRow( row + Chunk.BLOCKS_Y );
+					} else if ( front != null ) {
+						frontHidden |= translucent & front.getTranslucentRow( OpacityMask.rowIndex( y , 0 ) );
+					}
+				}
+
+				// blocks with at least one visible face
+				// TODO: Rendering translucent blocks needs fixing
+				// see http://stackoverflow.com/questions/3388294/opengl-question-about-the-usage-of-gldepthmask/3390094#3390094
+				// and http://www.opengl.org/wiki/Transparency_Sorting
+				// need to use separate VBOs for translucent blocks and render them
+				// back-to-front with depth buffer disabled
+				int visible = ( opaque | translucent ) & ~( leftHidden & rightHidden & belowHidden & aboveHidden & backHidden & frontHidden );
+
+				final int firstIndex = row * Chunk.BLOCKS_X;
+				while ( visible != 0 )
+				{
+					final int x = Integer.numberOfTrailingZeros( visible );
+					final int bit = 1 << x;
+					visible &= ~bit;
+
+					int sidesMask = 0;
+					if ( ( leftHidden & bit ) == 0 ) {
+						sidesMask |= BlockRenderer.SIDE_LEFT;
+					}
+					if ( ( rightHidden & bit ) == 0 ) {
+						sidesMask |= BlockRenderer.SIDE_RIGHT;
+					}
+					if ( ( belowHidden & bit ) == 0 ) {
+						sidesMask |= BlockRenderer.SIDE_BOTTOM;
+					}
+					if ( ( aboveHidden & bit ) == 0 ) {
+						sidesMask |= BlockRenderer.SIDE_TOP;
+					}
+					if ( ( backHidden & bit ) == 0 ) {
+						sidesMask |= BlockRenderer.SIDE_BACK;
+					}
+					if ( ( frontHidden & bit ) == 0 ) {
+						sidesMask |= BlockRenderer.SIDE_FRONT;
+					}
+					result[ count++ ] = ( ( firstIndex + x ) << SIDES_BITS ) | sidesMask;
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,160 @@
+package de.codesourcery.voxelgame.core.render;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import de.codesourcery.voxelgame.core.render.BlockRenderer.MeshData;
+import de.codesourcery.voxelgame.core.world.Chunk;
+import de.codesourcery.voxelgame.core.world.ChunkManager;
+import de.codesourcery.voxelgame.core.world.DebugChunkFactory;
+import de.codesourcery.voxelgame.core.world.IChunkFactory;
+import de.codesourcery.voxelgame.core.world.NoiseChunkFactory;
+
+/**
+ * Benchmark comparing meshes built by {@link ChunkMesher} with and without greedy meshing.
+ *
+ * <p>Reports vertex and quad counts of all meshes along with the time it takes to build them and the size
+ * of the vertex data in the regular and the packed vertex format. All meshes are checked to cover the same area of block faces.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public class GreedyMeshingBenchmark {
+
+	private static final int CHUNKS_X = 6;
+	private static final int CHUNKS_Y = 2;
+	private static final int CHUNKS_Z = 6;
+
+	private static final int ROUNDS = 5;
+	private static final int ITERATIONS = 10;
+
+	private final Map<Long,Chunk> chunks = new HashMap<>();
+
+	private final byte[] skyLightLevels = new byte[ Chunk.BLOCK_COUNT ];
+
+	public static void main(String[] args)
+	{
+		new GreedyMeshingBenchmark().run( "DebugChunkFactory" , new DebugChunkFactory() );
+		new GreedyMeshingBenchmark().run( "NoiseChunkFactory" , new NoiseChunkFactory( 0xdeadbeef ) );
+	}
+
+	private void run(String name,IChunkFactory factory)
+	{
+		System.out.println("=== "+name+": Generating "+(CHUNKS_X*CHUNKS_Y*CHUNKS_Z)+" chunks...");
+		for ( int x = 0 ; x < CHUNKS_X ; x++ ) {
+			for ( int y = 0 ; y < CHUNKS_Y ; y++ ) {
+				for ( int z = 0 ; z < CHUNKS_Z ; z++ ) {
+					final Chunk chunk = factory.createChunk( x , y , z );
+					// light levels are only calculated when building a mesh , the ChunkManager does this before meshing
+					chunk.setSkyLightLevels( ChunkManager.recalculateLighting( chunk.snapshot() ) );
+					chunks.put( Chunk.calcChunkKey( x , y , z ) , chunk );
+				}
+			}
+		}
+
+		final long[] perBlock = countElements( false , false );
+		final long[] greedy = countElements( true , false );
+		final long[] perBlockPacked = countElements( false , true );
+		final long[] greedyPacked = countElements( true , true );
+		for ( final long[] counts : new long[][] { greedy , perBlockPacked , greedyPacked } )
+		{
+			if ( perBlock[2] != counts[2] ) {
+				throw new RuntimeException("Meshes differ: "+perBlock[2]+" block faces expected , got "+counts[2]);
+			}
+		}
+		System.out.println("Block faces: "+perBlock[2]);
+		System.out.println("per-block : "+perBlock[0]+" vertices , "+perBlock[1]+" quads , vertex data: "+
+				( perBlock[3] / 1024 )+" KB regular / "+( perBlockPacked[3] / 1024 )+" KB packed");
+		System.out.println("greedy    : "+greedy[0]+" vertices , "+greedy[1]+" quads , vertex data: "+
+				( greedy[3] / 1024 )+" KB regular / "+( greedyPacked[3] / 1024 )+" KB packed ("+( perBlock[0] / (float) greedy[0] )+"x fewer vertices)");
+
+		for ( int round = 1 ; round <= ROUNDS ; round++ )
+		{
+			System.out.println("--- Round "+round+" / "+ROUNDS+" ---");
+			long perBlockTime = -System.nanoTime();
+			int blackhole = 0;
+			for ( int i = 0 ; i < ITERATIONS ; i++ ) {
+				for ( final Chunk chunk : chunks.values() ) {
+					blackhole += buildMesh( chunk , false , true ).vertexCount;
+				}
+			}
+			perBlockTime += System.nanoTime();
+
+			long greedyTime = -System.nanoTime();
+			for ( int i = 0 ; i < ITERATIONS ; i++ ) {
+				for ( final Chunk chunk : chunks.values() ) {
+					blackhole += buildMesh( chunk , true , true ).vertexCount;
+				}
+			}
+			greedyTime += System.nanoTime();
+
+			final int meshes = ITERATIONS * chunks.size();
+			System.out.println("per-block : "+( perBlockTime / meshes / 1000f )+" us/chunk");
+			System.out.println("greedy    : "+( greedyTime / meshes / 1000f )+" us/chunk , "+blackhole);
+		}
+	}
+
+	/*
+	 * Returns vertex count , quad count , the number of block faces covered by all meshes and the size of all vertices in bytes.
+	 */
+	private long[] countElements(boolean greedy,boolean packed)
+	{
+		long vertices = 0;
+		long quads = 0;
+		long blockFaces = 0;
+		long vertexBytes = 0;
+		for ( final Chunk chunk : chunks.values() )
+		{
+			final MeshData mesh = buildMesh( chunk , greedy , packed );
+			vertices += mesh.vertexCount;
+			quads += mesh.getQuadCount();
+			vertexBytes += packed ? mesh.packedVertices.length * 4 : mesh.vertices.length * 4;
+
+			// each quad covers as many block faces as the area it spans
+			for ( int quad = 0 ; quad < mesh.vertexCount ; quad += 4 )
+			{
+				final int[] min = { Integer.MAX_VALUE , Integer.MAX_VALUE , Integer.MAX_VALUE };
+				final int[] max = { Integer.MIN_VALUE , Integer.MIN_VALUE , Integer.MIN_VALUE };
+				for ( int vertex = quad ; vertex < quad + 4 ; vertex++ )
+				{
+					for ( int axis = 0 ; axis < 3 ; axis++ )
+					{
+						final int value = getPosition( mesh , vertex , axis );
+						min[axis] = Math.min( min[axis] , value );
+						max[axis] = Math.max( max[axis] , value );
+					}
+				}
+				long area = 1;
+				for ( int axis = 0 ; axis < 3 ; axis++ ) {
+					if ( max[axis] != min[axis] ) {
+						area *= max[axis] - min[axis];
+					}
+				}
+				blockFaces += area;
+			}
+		}
+		return new long[] { vertices , quads , blockFaces , vertexBytes };
+	}
+
+	private static int getPosition(MeshData mesh,int vertex,int axis)
+	{
+		if ( mesh.isPacked() ) {
+			return ( mesh.packedVertices[ vertex * BlockRenderer.PACKED_INTS_PER_VERTEX ] >>> ( axis * 8 ) ) & 0xff;
+		}
+		return (int) mesh.vertices[ vertex * BlockRenderer.ELEMENTS_PER_VERTEX + axis ];
+	}
+
+	private MeshData buildMesh(Chunk chunk,boolean greedy,boolean packed)
+	{
+		final MeshBuilder builder = MeshBuilder.get().begin( packed );
+		chunk.getSkyLightLevels( skyLightLevels );
+		ChunkMesher.buildMesh( chunk , chunk.snapshot() , skyLightLevels ,
+				chunks.get( Chunk.calcChunkKey( chunk.x-1 , chunk.y , chunk.z ) ) ,
+				chunks.get( Chunk.calcChunkKey( chunk.x+1 , chunk.y , chunk.z ) ) ,
+				chunks.get( Chunk.calcChunkKey( chunk.x , chunk.y-1 , chunk.z ) ) ,
+				chunks.get( Chunk.calcChunkKey( chunk.x , chunk.y+1 , chunk.z ) ) ,
+				chunks.get( Chunk.calcChunkKey( chunk.x , chunk.y , chunk.z-1 ) ) ,
+				chunks.get( Chunk.calcChunkKey( chunk.x , chunk.y , chunk.z+1 ) ) ,
+				builder , greedy );
+		return builder.end();
+	}
+}
@@ -1,6 +1,7 @@
 package de.codesourcery.voxelgame.core.render;
 
 import de.codesourcery.voxelgame.core.world.Chunk;
+import de.codesourcery.voxelgame.core.world.ChunkSnapshot;
 
 public interface IChunkRenderer {
 
@@ -11,11 +12,19 @@ public interface IChunkRenderer {
 	public boolean isWireframe();
 
 	/**
+	 * Builds a chunk's mesh from a snapshot of its blocks.
+	 *
+	 * <p>Does not hold the chunk's lock while building the mesh. The finished mesh
+	 * is discarded if the chunk has been modified after the snapshot was taken. The sky light levels
+	 * get stored in the chunk together with the mesh , so they are discarded as well.</p>
 	 *
 	 * @param chunk
-	 * @return number of rendered blocks
+	 * @param snapshot snapshot of the chunk's blocks , see {@link Chunk#snapshot()}
+	 * @param skyLightLevels sky light levels calculated from the snapshot
+	 * @return number of rendered blocks or -1 if the mesh was discarded because the snapshot is outdated
+	 * @see Chunk#getVersion()
 	 */
-	public int setupMesh(Chunk chunk);
+	public int setupMesh(Chunk chunk,ChunkSnapshot snapshot,byte[] skyLightLevels);
 
 	public void dispose();
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+package de.codesourcery.voxelgame.core.render;
+
+public final class IntArrayBuilder {
+
+	public int[] array;
+	private int currentOffset=0;
+	private final int sizeIncrement;
+
+	public IntArrayBuilder(int initialSize,int sizeIncrement)
+	{
+		if ( initialSize < 1 ) {
+			throw new IllegalArgumentException("initial size must be >= 1");
+		}
+		if ( sizeIncrement < 1 ) {
+			throw new IllegalArgumentException("size increment must be >= 1");
+		}
+		this.array = new int[ initialSize ];
+		this.sizeIncrement = sizeIncrement;
+	}
+
+	public IntArrayBuilder begin()
+	{
+		currentOffset = 0;
+		return this;
+	}
+
+	public int end()
+	{
+		return currentOffset;
+	}
+
+	public int actualSize() {
+		return currentOffset;
+	}
+
+	public void put(int value)
+	{
+		if ( currentOffset == array.length-1) {
+			extendArray(1);
+		}
+		array[currentOffset++]=value;
+	}
+
+	public void put(int value1,int value2)
+	{
+		if ( currentOffset+2 >= array.length-1) {
+			extendArray(2);
+		}
+		array[currentOffset++]=value1;
+		array[currentOffset++]=value2;
+	}
+
+	private void extendArray(int minIncrement)
+	{
+		int newSize = sizeIncrement < minIncrement ? minIncrement : sizeIncrement;
+		int[] tmp = new int[ array.length + newSize ];
+		System.arraycopy(array, 0 , tmp , 0 , currentOffset);
+		array=tmp;
+	}
+}
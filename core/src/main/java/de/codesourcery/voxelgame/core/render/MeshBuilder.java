@@ -0,0 +1,244 @@
+package de.codesourcery.voxelgame.core.render;
+
+import java.util.Arrays;
+
+import de.codesourcery.voxelgame.core.Block;
+import de.codesourcery.voxelgame.core.Constants;
+import de.codesourcery.voxelgame.core.render.BlockRenderer.MeshData;
+
+/**
+ * Builds chunk meshes.
+ *
+ * <p>Building a mesh needs large scratch arrays. Instead of each chunk owning a set of them , each thread that
+ * builds meshes uses its own builder (see {@link #get()}) and chunks only keep the compact , finished
+ * mesh until it has been uploaded to the GPU (see {@link BlockRenderer#publish(MeshData)}).</p>
+ *
+ * <p>Thread-safety: This class is NOT thread-safe.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class MeshBuilder
+{
+	// initial size of the scratch arrays , they grow as needed
+	private static final int INITIAL_VERTEX_ARRAY_SIZE = 100000;
+
+	private static final MeshData EMPTY_MESH = new MeshData( new float[0] );
+	private static final MeshData EMPTY_PACKED_MESH = new MeshData( new int[0] );
+
+	// face normals , indexed by BlockRenderer.FACE_* constants
+	private static final float[][] NORMALS = { {0,0,1} , {0,0,-1} , {-1,0,0} , {1,0,0} , {0,1,0} , {0,-1,0} };
+
+	private static final ThreadLocal<MeshBuilder> BUILDERS = new ThreadLocal<MeshBuilder>() {
+
+		@Override
+		protected MeshBuilder initialValue() {
+			return new MeshBuilder();
+		}
+	};
+
+	// scratch arrays for both vertex formats , only created once a mesh in the respective format gets built
+	private FloatArrayBuilder vertexBuilder;
+	private IntArrayBuilder packedVertexBuilder;
+
+	private int vertexCount = 0;
+	private boolean packedVertices;
+
+	/**
+	 * Returns the builder for the current thread.
+	 *
+	 * @return
+	 */
+	public static MeshBuilder get() {
+		return BUILDERS.get();
+	}
+
+	/**
+	 * Starts building a mesh using the vertex format selected by {@link Constants#USE_PACKED_VERTICES}.
+	 *
+	 * @return
+	 */
+	public MeshBuilder begin() {
+		return begin( Constants.USE_PACKED_VERTICES );
+	}
+
+	/**
+	 * Starts building a mesh.
+	 *
+	 * @param packedVertices whether to use the packed vertex format (see {@link BlockRenderer#PACKED_INTS_PER_VERTEX})
+	 * @return
+	 */
+	public MeshBuilder begin(boolean packedVertices)
+	{
+		if ( packedVertices )
+		{
+			if ( packedVertexBuilder == null ) {
+				packedVertexBuilder = new IntArrayBuilder( INITIAL_VERTEX_ARRAY_SIZE / BlockRenderer.ELEMENTS_PER_VERTEX * BlockRenderer.PACKED_INTS_PER_VERTEX ,
+						1000*BlockRenderer.PACKED_INTS_PER_VERTEX );
+			}
+			packedVertexBuilder.begin();
+		}
+		else
+		{
+			if ( vertexBuilder == null ) {
+				vertexBuilder = new FloatArrayBuilder( INITIAL_VERTEX_ARRAY_SIZE , 1000*BlockRenderer.ELEMENTS_PER_VERTEX );
+			}
+			vertexBuilder.begin();
+		}
+		vertexCount = 0;
+		this.packedVertices = packedVertices;
+		return this;
+	}
+
+	/**
+	 * Returns the light factor used for rendering top and bottom faces.
+	 *
+	 * <p>Must match the calculation in flat_vertex_packed.glsl.</p>
+	 *
+	 * @param lightLevel
+	 * @return
+	 */
+	static float lightFactor(int lightLevel) {
+		return 0.3f + lightLevel*(0.7f/(Block.MAX_LIGHT_LEVEL+1));
+	}
+
+	/**
+	 * Adds the faces of a single block.
+	 *
+	 * @param x block position , relative to the chunk
+	 * @param y block position , relative to the chunk
+	 * @param z block position , relative to the chunk
+	 * @param lightLevel light level used for the top and bottom face
+	 * @param blockType
+	 * @param sideMask faces to add , combination of <code>BlockRenderer.SIDE_*</code> constants
+	 */
+	public void addBlock(int x,int y,int z,int lightLevel,byte blockType ,int sideMask )
+	{
+		addBox( x , y , z , 1 , 1 , 1 , lightLevel , blockType , sideMask );
+	}
+
+	/**
+	 * Adds the faces of an axis-aligned box made up of blocks of the same type.
+	 *
+	 * <p>Each face is a single quad , the block texture gets repeated once per block
+	 * along each axis of the face.</p>
+	 *
+	 * <p>Positions are given in blocks relative to the chunk's origin , the shader scales
+	 * them by the block size and adds the chunk's origin.</p>
+	 *
+	 * @param minX corner of the box with the lowest coordinates
+	 * @param minY corner of the box with the lowest coordinates
+	 * @param minZ corner of the box with the lowest coordinates
+	 * @param sizeX size of the box along the X axis , in blocks
+	 * @param sizeY size of the box along the Y axis , in blocks
+	 * @param sizeZ size of the box along the Z axis , in blocks
+	 * @param lightLevel light level used for the top and bottom face
+	 * @param blockType
+	 * @param sideMask faces to add , combination of <code>BlockRenderer.SIDE_*</code> constants
+	 */
+	public void addBox(int minX,int minY,int minZ,int sizeX,int sizeY,int sizeZ,int lightLevel,byte blockType ,int sideMask )
+	{
+		final int maxX = minX + sizeX;
+		final int maxY = minY + sizeY;
+		final int maxZ = minZ + sizeZ;
+
+		final float lightFactor = lightFactor( lightLevel );
+
+		// texture coordinates are given in blocks , 0/0 is the top-left corner of a face's texture.
+		// Vertices of each quad are given counter-clockwise when looking at its front (top left , bottom left , bottom right , top right) ,
+		// matching the shared quad index buffer (see BlockRenderer#render())
+		if ( (sideMask & BlockRenderer.SIDE_FRONT ) != 0 )
+		{
+			putVertex( minX , maxY , maxZ , BlockRenderer.FACE_FRONT , 0     , 0     , 1.0f , lightLevel , blockType ); // top left
+			putVertex( minX , minY , maxZ , BlockRenderer.FACE_FRONT , 0     , sizeY , 1.0f , lightLevel , blockType ); // bottom left
+			putVertex( maxX , minY , maxZ , BlockRenderer.FACE_FRONT , sizeX , sizeY , 1.0f , lightLevel , blockType ); // bottom right
+			putVertex( maxX , maxY , maxZ , BlockRenderer.FACE_FRONT , sizeX , 0     , 1.0f , lightLevel , blockType ); // top right
+		}
+
+		if ( (sideMask & BlockRenderer.SIDE_BACK ) != 0 )
+		{
+			putVertex( maxX , maxY , minZ , BlockRenderer.FACE_BACK , 0     , 0     , 1.0f , lightLevel , blockType ); // top left
+			putVertex( maxX , minY , minZ , BlockRenderer.FACE_BACK , 0     , sizeY , 1.0f , lightLevel , blockType ); // bottom left
+			putVertex( minX , minY , minZ , BlockRenderer.FACE_BACK , sizeX , sizeY , 1.0f , lightLevel , blockType ); // bottom right
+			putVertex( minX , maxY , minZ , BlockRenderer.FACE_BACK , sizeX , 0     , 1.0f , lightLevel , blockType ); // top right
+		}
+
+		if ( (sideMask & BlockRenderer.SIDE_LEFT ) != 0 )
+		{
+			putVertex( minX , maxY , minZ , BlockRenderer.FACE_LEFT , 0     , 0     , 1.0f , lightLevel , blockType ); // top left
+			putVertex( minX , minY , minZ , BlockRenderer.FACE_LEFT , 0     , sizeY , 1.0f , lightLevel , blockType ); // bottom left
+			putVertex( minX , minY , maxZ , BlockRenderer.FACE_LEFT , sizeZ , sizeY , 1.0f , lightLevel , blockType ); // bottom right
+			putVertex( minX , maxY , maxZ , BlockRenderer.FACE_LEFT , sizeZ , 0     , 1.0f , lightLevel , blockType ); // top right
+		}
+
+		if ( (sideMask & BlockRenderer.SIDE_RIGHT ) != 0 )
+		{
+			putVertex( maxX , maxY , maxZ , BlockRenderer.FACE_RIGHT , 0     , 0     , 1.0f , lightLevel , blockType ); // top left
+			putVertex( maxX , minY , maxZ , BlockRenderer.FACE_RIGHT , 0     , sizeY , 1.0f , lightLevel , blockType ); // bottom left
+			putVertex( maxX , minY , minZ , BlockRenderer.FACE_RIGHT , sizeZ , sizeY , 1.0f , lightLevel , blockType ); // bottom right
+			putVertex( maxX , maxY , minZ , BlockRenderer.FACE_RIGHT , sizeZ , 0     , 1.0f , lightLevel , blockType ); // top right
+		}
+
+		if ( (sideMask & BlockRenderer.SIDE_TOP ) != 0 )
+		{
+			putVertex( minX , maxY , minZ , BlockRenderer.FACE_TOP , 0     , 0     , lightFactor , lightLevel , blockType ); // top left
+			putVertex( minX , maxY , maxZ , BlockRenderer.FACE_TOP , 0     , sizeZ , lightFactor , lightLevel , blockType ); // bottom left
+			putVertex( maxX , maxY , maxZ , BlockRenderer.FACE_TOP , sizeX , sizeZ , lightFactor , lightLevel , blockType ); // bottom right
+			putVertex( maxX , maxY , minZ , BlockRenderer.FACE_TOP , sizeX , 0     , lightFactor , lightLevel , blockType ); // top right
+		}
+
+		if ( (sideMask & BlockRenderer.SIDE_BOTTOM ) != 0 )
+		{
+			// texture is mapped just like on the top face , so it appears mirrored when looking at the bottom face
+			putVertex( minX , minY , maxZ , BlockRenderer.FACE_BOTTOM , 0     , sizeZ , lightFactor , lightLevel , blockType );
+			putVertex( minX , minY , minZ , BlockRenderer.FACE_BOTTOM , 0     , 0     , lightFactor , lightLevel , blockType );
+			putVertex( maxX , minY , minZ , BlockRenderer.FACE_BOTTOM , sizeX , 0     , lightFactor , lightLevel , blockType );
+			putVertex( maxX , minY , maxZ , BlockRenderer.FACE_BOTTOM , sizeX , sizeZ , lightFactor , lightLevel , blockType );
+		}
+	}
+
+	/*
+	 * Adds a vertex in the selected format , the packed format only stores position , face , block type and light level ,
+	 * flat_vertex_packed.glsl derives everything else from these.
+	 */
+	private void putVertex(int x,int y,int z,int face,float u,float v,float lightFactor,int lightLevel,byte blockType)
+	{
+		vertexCount++;
+		if ( packedVertices ) {
+			packedVertexBuilder.put( BlockRenderer.packPosition( x , y , z , face ) , BlockRenderer.packData( blockType , lightLevel ) );
+			return;
+		}
+		final float[] normal = NORMALS[ face ];
+		vertexBuilder.put( x , y , z , normal[0] , normal[1] , normal[2] , u , v , lightFactor , ( blockType & 0xff ) * BlockRenderer.FACES_PER_BLOCK + face );
+	}
+
+	/**
+	 * Returns whether the mesh built so far contains any vertices.
+	 *
+	 * @return
+	 */
+	public boolean hasVertices() {
+		return vertexCount != 0;
+	}
+
+	/**
+	 * Finishes building the mesh.
+	 *
+	 * @return copy of the mesh that is just large enough to hold it
+	 */
+	public MeshData end()
+	{
+		if ( packedVertices )
+		{
+			packedVertexBuilder.end();
+			if ( vertexCount == 0 ) {
+				return EMPTY_PACKED_MESH;
+			}
+			return new MeshData( Arrays.copyOf( packedVertexBuilder.array , packedVertexBuilder.actualSize() ) );
+		}
+		vertexBuilder.end();
+		if ( vertexCount == 0 ) {
+			return EMPTY_MESH;
+		}
+		return new MeshData( Arrays.copyOf( vertexBuilder.array , vertexBuilder.actualSize() ) );
+	}
+}
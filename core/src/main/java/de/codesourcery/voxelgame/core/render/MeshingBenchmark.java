@@ -0,0 +1,193 @@
+package de.codesourcery.voxelgame.core.render;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.codesourcery.voxelgame.core.Block;
+import de.codesourcery.voxelgame.core.world.BrickBlockStorage;
+import de.codesourcery.voxelgame.core.world.Chunk;
+import de.codesourcery.voxelgame.core.world.ChunkSnapshot;
+import de.codesourcery.voxelgame.core.world.IChunkFactory;
+import de.codesourcery.voxelgame.core.world.NoiseChunkFactory;
+
+/**
+ * Benchmark comparing the face visibility part of {@link ChunkRenderer#setupMesh(Chunk, ChunkSnapshot, byte[])} using {@link FaceCuller}
+ * against looking at the neighbours of each block individually (the way meshes used to be built).
+ *
+ * <p>Results of both implementations are compared to make sure they find the same faces.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public class MeshingBenchmark {
+
+	private static final int CHUNKS_X = 6;
+	private static final int CHUNKS_Y = 2;
+	private static final int CHUNKS_Z = 6;
+
+	private static final int ROUNDS = 5;
+	private static final int ITERATIONS = 20;
+
+	// generated chunks , access is synchronized just like ChunkManager#maybeGetChunk()
+	private final Map<Long,Chunk> chunks = new HashMap<>();
+
+	private final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+	private final int[] faces = new int[ Chunk.BLOCK_COUNT ];
+	private final int[] expectedFaces = new int[ Chunk.BLOCK_COUNT ];
+
+	public static void main(String[] args)
+	{
+		new MeshingBenchmark().run();
+	}
+
+	private void run()
+	{
+		System.out.println("Generating "+(CHUNKS_X*CHUNKS_Y*CHUNKS_Z)+" chunks...");
+		final IChunkFactory factory = new NoiseChunkFactory( 0xdeadbeef );
+		for ( int x = 0 ; x < CHUNKS_X ; x++ ) {
+			for ( int y = 0 ; y < CHUNKS_Y ; y++ ) {
+				for ( int z = 0 ; z < CHUNKS_Z ; z++ ) {
+					chunks.put( Chunk.calcChunkKey( x , y , z ) , factory.createChunk( x , y , z ) );
+				}
+			}
+		}
+
+		// sanity check
+		int totalFaces = 0;
+		for ( final Chunk chunk : chunks.values() )
+		{
+			final int expected = findVisibleFacesPerBlock( chunk , expectedFaces );
+			final int actual = findVisibleFacesBitwise( chunk , faces );
+			Arrays.sort( expectedFaces , 0 , expected );
+			Arrays.sort( faces , 0 , actual );
+			if ( expected != actual || ! Arrays.equals( Arrays.copyOf( expectedFaces , expected ) , Arrays.copyOf( faces , actual ) ) ) {
+				throw new RuntimeException("Results differ for "+chunk+": "+expected+" blocks expected , got "+actual);
+			}
+			totalFaces += actual;
+		}
+		System.out.println("Blocks with visible faces: "+totalFaces);
+
+		for ( int round = 1 ; round <= ROUNDS ; round++ )
+		{
+			System.out.println("=== Round "+round+" / "+ROUNDS+" ===");
+			long perBlock = -System.nanoTime();
+			int blackhole = 0;
+			for ( int i = 0 ; i < ITERATIONS ; i++ ) {
+				for ( final Chunk chunk : chunks.values() ) {
+					blackhole += findVisibleFacesPerBlock( chunk , faces );
+				}
+			}
+			perBlock += System.nanoTime();
+
+			long bitwise = -System.nanoTime();
+			for ( int i = 0 ; i < ITERATIONS ; i++ ) {
+				for ( final Chunk chunk : chunks.values() ) {
+					blackhole += findVisibleFacesBitwise( chunk , faces );
+				}
+			}
+			bitwise += System.nanoTime();
+
+			final int meshes = ITERATIONS * chunks.size();
+			System.out.println("per-block : "+( perBlock / meshes / 1000f )+" us/chunk");
+			System.out.println("bitwise   : "+( bitwise / meshes / 1000f )+" us/chunk ("+( perBlock / (float) bitwise )+"x faster) , "+blackhole);
+		}
+	}
+
+	private Chunk maybeGetChunk(int x,int y,int z)
+	{
+		synchronized( chunks ) {
+			return chunks.get( Chunk.calcChunkKey( x , y , z ) );
+		}
+	}
+
+	private int findVisibleFacesBitwise(Chunk chunk,int[] result)
+	{
+		return FaceCuller.findVisibleFaces( chunk.snapshot() ,
+				maybeGetChunk( chunk.x-1 , chunk.y , chunk.z ) ,
+				maybeGetChunk( chunk.x+1 , chunk.y , chunk.z ) ,
+				maybeGetChunk( chunk.x , chunk.y-1 , chunk.z ) ,
+				maybeGetChunk( chunk.x , chunk.y+1 , chunk.z ) ,
+				maybeGetChunk( chunk.x , chunk.y , chunk.z-1 ) ,
+				maybeGetChunk( chunk.x , chunk.y , chunk.z+1 ) ,
+				result );
+	}
+
+	private int findVisibleFacesPerBlock(Chunk chunk,int[] result)
+	{
+		int count = 0;
+		chunk.getBlockTypes( blocks );
+		final long occupiedBricks = chunk.getOccupiedBricks();
+		for ( int brick = 0 ; brick < BrickBlockStorage.BRICK_COUNT ; brick++ )
+		{
+			if ( ( occupiedBricks & ( 1L << brick ) ) == 0 ) {
+				continue;
+			}
+			final int x0 = ( brick % BrickBlockStorage.BRICKS_X ) * BrickBlockStorage.BRICK_SIZE;
+			final int y0 = ( ( brick / BrickBlockStorage.BRICKS_X ) % BrickBlockStorage.BRICKS_Y ) * BrickBlockStorage.BRICK_SIZE;
+			final int z0 = ( brick / ( BrickBlockStorage.BRICKS_X * BrickBlockStorage.BRICKS_Y ) ) * BrickBlockStorage.BRICK_SIZE;
+			for ( int x = x0 ; x < x0 + BrickBlockStorage.BRICK_SIZE ; x++ ) {
+				for ( int y = y0 ; y < y0 + BrickBlockStorage.BRICK_SIZE ; y++ ) {
+					for ( int z = z0 ; z < z0 + BrickBlockStorage.BRICK_SIZE ; z++ )
+					{
+						final int index = Chunk.blockIndex( x , y , z );
+						final byte blockType = blocks[ index ];
+						if ( Block.isNoAirBlock( blockType ) )
+						{
+							final int sidesMask = determineSidesToRender( chunk , x , y , z , Block.isTranslucentBlock( blockType ) );
+							if ( sidesMask != 0 ) {
+								result[ count++ ] = ( index << FaceCuller.SIDES_BITS ) | sidesMask;
+							}
+						}
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	private int determineSidesToRender(Chunk chunk,int blockX,int blockY,int blockZ,boolean translucent)
+	{
+		int sideMask = 0;
+		if ( isFaceVisible( chunk , blockX-1 , blockY , blockZ , translucent ) ) {
+			sideMask |= BlockRenderer.SIDE_LEFT;
+		}
+		if ( isFaceVisible( chunk , blockX+1 , blockY , blockZ , translucent ) ) {
+			sideMask |= BlockRenderer.SIDE_RIGHT;
+		}
+		if ( isFaceVisible( chunk , blockX , blockY-1 , blockZ , translucent ) ) {
+			sideMask |= BlockRenderer.SIDE_BOTTOM;
+		}
+		if ( isFaceVisible( chunk , blockX , blockY+1 , blockZ , translucent ) ) {
+			sideMask |= BlockRenderer.SIDE_TOP;
+		}
+		if ( isFaceVisible( chunk , blockX , blockY , blockZ-1 , translucent ) ) {
+			sideMask |= BlockRenderer.SIDE_BACK;
+		}
+		if ( isFaceVisible( chunk , blockX , blockY , blockZ+1 , translucent ) ) {
+			sideMask |= BlockRenderer.SIDE_FRONT;
+		}
+		return sideMask;
+	}
+
+	private boolean isFaceVisible(Chunk chunk,int blockX,int blockY,int blockZ,boolean translucent)
+	{
+		final byte adjacent;
+		if ( blockX >= 0 && blockX < Chunk.BLOCKS_X && blockY >= 0 && blockY < Chunk.BLOCKS_Y && blockZ >= 0 && blockZ < Chunk.BLOCKS_Z ) {
+			adjacent = blocks[ Chunk.blockIndex( blockX , blockY , blockZ ) ];
+		}
+		else
+		{
+			// block is in adjacent chunk
+			final int dx = blockX < 0 ? -1 : blockX >= Chunk.BLOCKS_X ? 1 : 0;
+			final int dy = blockY < 0 ? -1 : blockY >= Chunk.BLOCKS_Y ? 1 : 0;
+			final int dz = blockZ < 0 ? -1 : blockZ >= Chunk.BLOCKS_Z ? 1 : 0;
+			final Chunk adj = maybeGetChunk( chunk.x + dx , chunk.y + dy , chunk.z + dz );
+			if ( adj == null || adj.isEmpty() ) {
+				return true;
+			}
+			adjacent = adj.getBlockType( blockX - dx * Chunk.BLOCKS_X , blockY - dy * Chunk.BLOCKS_Y , blockZ - dz * Chunk.BLOCKS_Z );
+		}
+		// translucent blocks hide each other's faces
+		return Block.isTranslucentBlock( adjacent ) && ! ( translucent && Block.isNoAirBlock( adjacent ) );
+	}
+}
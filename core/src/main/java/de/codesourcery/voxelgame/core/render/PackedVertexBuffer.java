@@ -0,0 +1,132 @@
+package de.codesourcery.voxelgame.core.render;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Vertex buffer holding vertices in the packed format (see {@link BlockRenderer#PACKED_INTS_PER_VERTEX}).
+ *
+ * <p>libgdx' {@link com.badlogic.gdx.graphics.glutils.VertexBufferObject} only supports float attributes , so this
+ * class talks to OpenGL directly. Each vertex consists of two attributes made up of four unsigned bytes each ,
+ * <code>a_position</code> and <code>a_data</code> , that the shader receives as (not normalized) <code>vec4</code>s.</p>
+ *
+ * <p>Thread-safety: Must only be used from the OpenGL rendering thread.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class PackedVertexBuffer implements Disposable
+{
+	private static final String POSITION_ATTRIBUTE = "a_position";
+	private static final String DATA_ATTRIBUTE = "a_data";
+
+	// staging buffer used to upload vertices , shared by all instances since they're only used by the rendering thread
+	private static ByteBuffer stagingBuffer = newBuffer( 64*1024 );
+
+	private final int maxVertices;
+	private int handle;
+
+	public PackedVertexBuffer(int maxVertices)
+	{
+		this.maxVertices = maxVertices;
+
+		final IntBuffer tmp = newBuffer( 4 ).asIntBuffer();
+		Gdx.graphics.getGL20().glGenBuffers( 1 , tmp );
+		this.handle = tmp.get( 0 );
+
+		Gdx.graphics.getGL20().glBindBuffer( GL20.GL_ARRAY_BUFFER , handle );
+		Gdx.graphics.getGL20().glBufferData( GL20.GL_ARRAY_BUFFER , getSizeInBytes() , null , GL20.GL_STATIC_DRAW );
+		Gdx.graphics.getGL20().glBindBuffer( GL20.GL_ARRAY_BUFFER , 0 );
+	}
+
+	private static ByteBuffer newBuffer(int sizeInBytes) {
+		// vertex attributes are made up of bytes , so byte order needs to be fixed
+		return ByteBuffer.allocateDirect( sizeInBytes ).order( ByteOrder.LITTLE_ENDIAN );
+	}
+
+	public int getNumMaxVertices() {
+		return maxVertices;
+	}
+
+	public int getSizeInBytes() {
+		return maxVertices * BlockRenderer.PACKED_INTS_PER_VERTEX * 4;
+	}
+
+	/**
+	 * Uploads vertices , the buffer needs to be bound.
+	 *
+	 * @param vertices
+	 * @param count number of ints (not vertices) to upload
+	 */
+	public void setVertices(int[] vertices,int count)
+	{
+		if ( stagingBuffer.capacity() < count * 4 ) {
+			stagingBuffer = newBuffer( Math.max( count * 4 , stagingBuffer.capacity() * 2 ) );
+		}
+		stagingBuffer.clear();
+		stagingBuffer.asIntBuffer().put( vertices , 0 , count );
+		stagingBuffer.limit( count * 4 );
+		Gdx.graphics.getGL20().glBufferData( GL20.GL_ARRAY_BUFFER , count * 4 , stagingBuffer , GL20.GL_STATIC_DRAW );
+	}
+
+	public void bind(ShaderProgram shader) {
+		bind( shader , 0 );
+	}
+
+	/**
+	 * Binds the buffer , with vertex attributes starting at a given vertex.
+	 *
+	 * <p>Used to draw meshes with more vertices than can be addressed using short indices in batches.</p>
+	 *
+	 * @param shader
+	 * @param firstVertex vertex that index 0 refers to
+	 */
+	public void bind(ShaderProgram shader,int firstVertex)
+	{
+		final int offset = firstVertex * BlockRenderer.PACKED_INTS_PER_VERTEX * 4;
+		Gdx.graphics.getGL20().glBindBuffer( GL20.GL_ARRAY_BUFFER , handle );
+		bindAttribute( shader , POSITION_ATTRIBUTE , offset );
+		bindAttribute( shader , DATA_ATTRIBUTE , offset + 4 );
+	}
+
+	private static void bindAttribute(ShaderProgram shader,String name,int offset)
+	{
+		final int location = shader.getAttributeLocation( name );
+		if ( location >= 0 ) { // shader might not use it
+			Gdx.graphics.getGL20().glEnableVertexAttribArray( location );
+			Gdx.graphics.getGL20().glVertexAttribPointer( location , 4 , GL20.GL_UNSIGNED_BYTE , false , BlockRenderer.PACKED_INTS_PER_VERTEX * 4 , offset );
+		}
+	}
+
+	public void unbind(ShaderProgram shader)
+	{
+		unbindAttribute( shader , POSITION_ATTRIBUTE );
+		unbindAttribute( shader , DATA_ATTRIBUTE );
+		Gdx.graphics.getGL20().glBindBuffer( GL20.GL_ARRAY_BUFFER , 0 );
+	}
+
+	private static void unbindAttribute(ShaderProgram shader,String name)
+	{
+		final int location = shader.getAttributeLocation( name );
+		if ( location >= 0 ) {
+			Gdx.graphics.getGL20().glDisableVertexAttribArray( location );
+		}
+	}
+
+	@Override
+	public void dispose()
+	{
+		if ( handle != 0 )
+		{
+			final IntBuffer tmp = newBuffer( 4 ).asIntBuffer();
+			tmp.put( 0 , handle );
+			Gdx.graphics.getGL20().glDeleteBuffers( 1 , tmp );
+			handle = 0;
+		}
+	}
+}
@@ -3,19 +3,20 @@ package de.codesourcery.voxelgame.core.util;
 import java.util.NoSuchElementException;
 
 import com.badlogic.gdx.utils.Disposable;
-import com.badlogic.gdx.utils.IntMap;
 
 /**
  * A thread-safe bounded LIFO queue that only holds unique elements.
  * 
+ * Elements are considered equal if they have the same {@link IHasKey#getKey() key}.
+ * 
  * @author tgierke
  *
  * @param <T>
  */
-public final class BoundedUniqueLIFOQueue<T> implements Disposable {
+public final class BoundedUniqueLIFOQueue<T extends IHasKey> implements Disposable {
 
 	private final LIFOArray<T> data;
-	private final IntMap<T> map;
+	private final LongMap<T> map;
 	private final int maxSize;
 	private volatile boolean terminate;
 	private int size;
@@ -33,7 +34,7 @@ public final class BoundedUniqueLIFOQueue<T> implements Disposable {
 			throw new IllegalArgumentException("Invalid size(s)");
 		}
 		this.data = new LIFOArray<T>(initialSize,false);
-		this.map = new IntMap<T>(initialSize);
+		this.map = new LongMap<T>(initialSize);
 		this.maxSize = maxSize;
 	}
 
@@ -50,9 +51,8 @@ public final class BoundedUniqueLIFOQueue<T> implements Disposable {
 		}		
 		synchronized(data) 
 		{
-			final int hashCode = obj.hashCode();
-			T existing = map.get( hashCode ); 
-			if ( existing != null && existing.equals( obj ) ) // check equals() as well to properly handle hash collision
+			final long key = obj.getKey();
+			if ( map.containsKey( key ) )
 			{
 				// System.err.println("Already queued: "+obj);
 				return;
@@ -62,12 +62,12 @@ public final class BoundedUniqueLIFOQueue<T> implements Disposable {
 			{
 				// discard element from tail
 				T removed = data.removeOldest();
-				map.remove( removed.hashCode() );
+				map.remove( removed.getKey() );
 				size--;
 			}
 
 			data.put(obj);
-			map.put( hashCode , obj );
+			map.put( key , obj );
 
 			size++;
 
@@ -90,7 +90,7 @@ public final class BoundedUniqueLIFOQueue<T> implements Disposable {
 			}
 			try {
 				final T removed = data.removeLatest();
-				map.remove( removed.hashCode() );
+				map.remove( removed.getKey() );
 				size--;
 				return removed;
 			} 
@@ -0,0 +1,319 @@
+package de.codesourcery.voxelgame.core.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread-safe hash map with primitive <code>long</code> keys , optimized for lots of concurrent reads
+ * and comparatively few writes.
+ *
+ * <p>Reads are wait-free: Each slot of the open-addressing table holds an immutable entry (or <code>NULL</code>
+ * or a tombstone) that is read with a single volatile load , so readers never take a lock and never see
+ * half-written entries. Writers are serialized by a lock that readers never touch. Removed entries are
+ * replaced by tombstones (entries can't be moved around like in {@link LongMap} without confusing concurrent readers) ,
+ * tombstones get dropped when the table is rehashed.</p>
+ *
+ * <p>{@link #values()} returns a consistent snapshot of all values that stays valid until the next write.</p>
+ *
+ * <p><code>NULL</code> values are not supported.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ *
+ * @param <T>
+ */
+public final class ConcurrentLongMap<T>
+{
+	// maximum ratio of used slots (including tombstones) before the table gets rehashed
+	private static final float LOAD_FACTOR = 0.5f;
+
+	// golden ratio , used to spread keys that only differ in their high bits
+	private static final long MIX = 0x9E3779B97F4A7C15L;
+
+	// marks slots of removed entries
+	private static final Entry<Object> TOMBSTONE = new Entry<Object>( 0 , null );
+
+	private static final class Entry<T>
+	{
+		public final long key;
+		public final T value;
+
+		public Entry(long key, T value)
+		{
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	private static final class Table<T>
+	{
+		public final AtomicReferenceArray<Entry<T>> slots;
+		public final int mask;
+		public final int shift;
+
+		public Table(int capacity)
+		{
+			this.slots = new AtomicReferenceArray<>( capacity );
+			this.mask = capacity - 1;
+			this.shift = 64 - Integer.numberOfTrailingZeros( capacity );
+		}
+
+		public int slot(long key) {
+			return (int) ( ( key * MIX ) >>> shift );
+		}
+	}
+
+	private volatile Table<T> table;
+
+	// number of entries
+	private volatile int size;
+
+	// @GuardedBy( writeLock )
+	private int usedSlots; // entries + tombstones
+
+	// snapshot of all values , NULL if it needs to be recreated
+	private volatile List<T> values;
+
+	private final Object writeLock = new Object();
+
+	public ConcurrentLongMap() {
+		this(16);
+	}
+
+	public ConcurrentLongMap(int initialCapacity)
+	{
+		if ( initialCapacity < 0 ) {
+			throw new IllegalArgumentException("Invalid initial capacity: "+initialCapacity);
+		}
+		this.table = new Table<>( capacityFor( initialCapacity ) );
+	}
+
+	private static int capacityFor(int entries)
+	{
+		int capacity = 2;
+		while ( capacity * LOAD_FACTOR < entries ) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Look up a value (wait-free).
+	 *
+	 * @param key
+	 * @return value or <code>null</code>
+	 */
+	public T get(long key)
+	{
+		final Table<T> current = table;
+		final AtomicReferenceArray<Entry<T>> slots = current.slots;
+		// table is never full , so there always is an empty slot that terminates the loop
+		for ( int i = current.slot( key ) ; ; i = ( i + 1 ) & current.mask )
+		{
+			final Entry<T> entry = slots.get( i );
+			if ( entry == null ) {
+				return null;
+			}
+			if ( entry.key == key && entry != TOMBSTONE ) {
+				return entry.value;
+			}
+		}
+	}
+
+	public boolean containsKey(long key) {
+		return get( key ) != null;
+	}
+
+	/**
+	 * Associates a key with a value.
+	 *
+	 * @param key
+	 * @param value value , never <code>null</code>
+	 * @return previous value or <code>null</code>
+	 */
+	public T put(long key,T value) {
+		return put( key , value , false );
+	}
+
+	/**
+	 * Associates a key with a value unless the key is already present.
+	 *
+	 * @param key
+	 * @param value value , never <code>null</code>
+	 * @return current value (nothing was changed) or <code>null</code> if the value has been added
+	 */
+	public T putIfAbsent(long key,T value) {
+		return put( key , value , true );
+	}
+
+	private T put(long key,T value,boolean onlyIfAbsent)
+	{
+		if ( value == null ) {
+			throw new IllegalArgumentException("value must not be NULL");
+		}
+		synchronized( writeLock )
+		{
+			final Table<T> current = table;
+			final AtomicReferenceArray<Entry<T>> slots = current.slots;
+			int free = -1;
+			int i = current.slot( key );
+			for ( Entry<T> entry ; ( entry = slots.get( i ) ) != null ; i = ( i + 1 ) & current.mask )
+			{
+				if ( entry == TOMBSTONE )
+				{
+					if ( free == -1 ) {
+						free = i;
+					}
+				}
+				else if ( entry.key == key )
+				{
+					if ( ! onlyIfAbsent )
+					{
+						slots.set( i , new Entry<>( key , value ) );
+						values = null;
+					}
+					return entry.value;
+				}
+			}
+			if ( free == -1 ) {
+				free = i;
+				usedSlots++;
+			}
+			slots.set( free , new Entry<>( key , value ) );
+			size++;
+			values = null;
+
+			if ( usedSlots > current.slots.length() * LOAD_FACTOR ) {
+				rehash();
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Removes a key.
+	 *
+	 * @param key
+	 * @return value the key was associated with or <code>null</code>
+	 */
+	public T remove(long key) {
+		return remove( key , null );
+	}
+
+	/**
+	 * Removes a key if it is associated with a given value.
+	 *
+	 * @param key
+	 * @param expected value to remove (compared by identity) , <code>null</code> to remove any value
+	 * @return value the key was associated with or <code>null</code> if nothing was removed
+	 */
+	@SuppressWarnings("unchecked")
+	public T remove(long key,T expected)
+	{
+		synchronized( writeLock )
+		{
+			final Table<T> current = table;
+			final AtomicReferenceArray<Entry<T>> slots = current.slots;
+			for ( int i = current.slot( key ) ; ; i = ( i + 1 ) & current.mask )
+			{
+				final Entry<T> entry = slots.get( i );
+				if ( entry == null ) {
+					return null;
+				}
+				if ( entry.key == key && entry != TOMBSTONE )
+				{
+					if ( expected != null && entry.value != expected ) {
+						return null;
+					}
+					slots.set( i , (Entry<T>) TOMBSTONE );
+					size--;
+					values = null;
+					return entry.value;
+				}
+			}
+		}
+	}
+
+	// @GuardedBy( writeLock )
+	private void rehash()
+	{
+		final AtomicReferenceArray<Entry<T>> oldSlots = table.slots;
+		// grow unless most used slots were tombstones
+		final Table<T> newTable = new Table<>( capacityFor( size * 2 ) );
+		for ( int j = 0 ; j < oldSlots.length() ; j++ )
+		{
+			final Entry<T> entry = oldSlots.get( j );
+			if ( entry != null && entry != TOMBSTONE )
+			{
+				int i = newTable.slot( entry.key );
+				while ( newTable.slots.get( i ) != null ) {
+					i = ( i + 1 ) & newTable.mask;
+				}
+				newTable.slots.set( i , entry );
+			}
+		}
+		usedSlots = size;
+		// concurrent readers still using the old table will see its state as of now
+		table = newTable;
+	}
+
+	/**
+	 * Returns a snapshot of all values.
+	 *
+	 * <p>The snapshot is only recreated after the map got modified , so calling this
+	 * method repeatedly is cheap.</p>
+	 *
+	 * @return immutable list
+	 */
+	public List<T> values()
+	{
+		List<T> result = values;
+		if ( result == null )
+		{
+			synchronized( writeLock )
+			{
+				result = values;
+				if ( result == null )
+				{
+					final AtomicReferenceArray<Entry<T>> slots = table.slots;
+					final ArrayList<T> tmp = new ArrayList<>( size );
+					for ( int i = 0 ; i < slots.length() ; i++ )
+					{
+						final Entry<T> entry = slots.get( i );
+						if ( entry != null && entry != TOMBSTONE ) {
+							tmp.add( entry.value );
+						}
+					}
+					result = Collections.unmodifiableList( tmp );
+					values = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear()
+	{
+		synchronized( writeLock )
+		{
+			table = new Table<>( table.slots.length() );
+			size = 0;
+			usedSlots = 0;
+			values = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrentLongMap[ size: "+size+" , capacity: "+table.slots.length()+" ]";
+	}
+}
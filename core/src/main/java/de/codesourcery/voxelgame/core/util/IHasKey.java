@@ -0,0 +1,12 @@
+package de.codesourcery.voxelgame.core.util;
+
+/**
+ * An object that is uniquely identified by a <code>long</code> key.
+ *
+ * @author tobias.gierke@voipfuture.com
+ * @see LongMap
+ */
+public interface IHasKey
+{
+	public long getKey();
+}
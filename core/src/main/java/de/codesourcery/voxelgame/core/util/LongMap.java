@@ -0,0 +1,214 @@
+package de.codesourcery.voxelgame.core.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Hash map with primitive <code>long</code> keys.
+ *
+ * <p>Uses open addressing with linear probing , keys and values are kept in two parallel arrays
+ * so neither lookups nor insertions allocate any objects (except when the map needs to grow).
+ * Removal shifts subsequent entries of a probe sequence back instead of leaving tombstones behind , so
+ * a map with lots of insertions and removals (like the chunk cache) does not degrade over time.</p>
+ *
+ * <p><code>NULL</code> values are not supported , a slot is empty if its value is <code>NULL</code>.</p>
+ *
+ * <p>Thread-safety: This class is NOT thread-safe.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ *
+ * @param <T>
+ */
+public final class LongMap<T>
+{
+	// maximum ratio of used slots before the map grows , kept low since linear probing degrades quickly
+	private static final float LOAD_FACTOR = 0.5f;
+
+	// golden ratio , used to spread keys that only differ in their high bits
+	private static final long MIX = 0x9E3779B97F4A7C15L;
+
+	private long[] keys;
+	private Object[] values;
+
+	// 64 minus the number of bits in a slot index , hash codes are shifted right by this amount
+	private int shift;
+	private int mask;
+	private int threshold;
+	private int size;
+
+	public LongMap() {
+		this(16);
+	}
+
+	public LongMap(int initialCapacity)
+	{
+		if ( initialCapacity < 0 ) {
+			throw new IllegalArgumentException("Invalid initial capacity: "+initialCapacity);
+		}
+		int capacity = 2;
+		while ( capacity * LOAD_FACTOR < initialCapacity ) {
+			capacity <<= 1;
+		}
+		allocate( capacity );
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new long[ capacity ];
+		values = new Object[ capacity ];
+		mask = capacity - 1;
+		shift = 64 - Integer.numberOfTrailingZeros( capacity );
+		threshold = (int) ( capacity * LOAD_FACTOR );
+	}
+
+	private int slot(long key) {
+		return (int) ( ( key * MIX ) >>> shift );
+	}
+
+	/**
+	 * Returns the slot holding a key.
+	 *
+	 * @param key
+	 * @return slot index or -1
+	 */
+	private int find(long key)
+	{
+		final long[] keys = this.keys;
+		final Object[] values = this.values;
+		for ( int i = slot( key ) ; values[i] != null ; i = ( i + 1 ) & mask )
+		{
+			if ( keys[i] == key ) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(long key)
+	{
+		final int index = find( key );
+		return index != -1 ? (T) values[index] : null;
+	}
+
+	public boolean containsKey(long key) {
+		return find( key ) != -1;
+	}
+
+	/**
+	 * Associates a key with a value.
+	 *
+	 * @param key
+	 * @param value value , never <code>null</code>
+	 * @return previous value or <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public T put(long key,T value)
+	{
+		if ( value == null ) {
+			throw new IllegalArgumentException("value must not be NULL");
+		}
+		int i = slot( key );
+		for ( ; values[i] != null ; i = ( i + 1 ) & mask )
+		{
+			if ( keys[i] == key )
+			{
+				final T previous = (T) values[i];
+				values[i] = value;
+				return previous;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if ( ++size > threshold ) {
+			resize( keys.length << 1 );
+		}
+		return null;
+	}
+
+	/**
+	 * Removes a key.
+	 *
+	 * @param key
+	 * @return value the key was associated with or <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public T remove(long key)
+	{
+		int hole = find( key );
+		if ( hole == -1 ) {
+			return null;
+		}
+		final T previous = (T) values[hole];
+		size--;
+
+		// move entries of the same probe sequence into the hole so lookups never hit an empty slot too early
+		for ( int i = ( hole + 1 ) & mask ; values[i] != null ; i = ( i + 1 ) & mask )
+		{
+			final int home = slot( keys[i] );
+			// entry can only be moved if its home slot is not located (cyclically) between the hole and its current slot
+			if ( ( ( i - home ) & mask ) >= ( ( i - hole ) & mask ) )
+			{
+				keys[hole] = keys[i];
+				values[hole] = values[i];
+				hole = i;
+			}
+		}
+		values[hole] = null;
+		return previous;
+	}
+
+	private void resize(int newCapacity)
+	{
+		final long[] oldKeys = keys;
+		final Object[] oldValues = values;
+		allocate( newCapacity );
+		for ( int j = 0 ; j < oldValues.length ; j++ )
+		{
+			if ( oldValues[j] != null )
+			{
+				int i = slot( oldKeys[j] );
+				while ( values[i] != null ) {
+					i = ( i + 1 ) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	/**
+	 * Adds all values to a collection.
+	 *
+	 * @param result
+	 */
+	@SuppressWarnings("unchecked")
+	public void values(Collection<? super T> result)
+	{
+		for ( final Object value : values )
+		{
+			if ( value != null ) {
+				result.add( (T) value );
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear()
+	{
+		Arrays.fill( values , null );
+		size = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "LongMap[ size: "+size+" , capacity: "+keys.length+" ]";
+	}
+}
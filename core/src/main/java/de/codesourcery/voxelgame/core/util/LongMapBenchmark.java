@@ -0,0 +1,125 @@
+package de.codesourcery.voxelgame.core.util;
+
+import com.badlogic.gdx.utils.IntMap;
+
+import de.codesourcery.voxelgame.core.world.Chunk;
+
+/**
+ * Benchmark comparing {@link LongMap} with packed chunk keys against libgdx's {@link IntMap}
+ * with the 32-bit chunk hashes that used to be used as keys.
+ *
+ * <p>Simulates the camera flying along the Z axis: For each camera move , all chunks in view range
+ * are looked up (just like <code>ChunkManager#cameraMovedToNewChunk()</code> does) and missing chunks
+ * get inserted. Chunks stay cached until the camera is {@link #CACHED_MOVES} moves away , so the cache
+ * covers enough chunks along the Z axis for the old keys to collide (e.g. (x,y,z) and (x,y+1,z-31)).</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public class LongMapBenchmark {
+
+	private static final int RANGE = 4; // same as ChunkManager#LOAD_SURROUNDING_CHUNKS
+	private static final int MOVES = 2000;
+	private static final int CACHED_MOVES = 40;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args)
+	{
+		new LongMapBenchmark().run();
+	}
+
+	// the way chunk keys used to be calculated
+	private static int oldChunkKey(int chunkX,int chunkY,int chunkZ)
+	{
+		int result = 31  + chunkX;
+		result = 31 * result + chunkY;
+		result = 31 * result + chunkZ;
+		return result;
+	}
+
+	private void run()
+	{
+		final int size = 2*RANGE+1;
+		final int total = size*size*size*MOVES;
+
+		for ( int round = 1 ; round <= ROUNDS ; round++ )
+		{
+			System.out.println("=== Round "+round+" / "+ROUNDS+" ===");
+
+			long time = -System.nanoTime();
+			int lost = runIntMap();
+			time += System.nanoTime();
+			System.out.println("IntMap  : "+( time / (float) total )+" ns/lookup , "+lost+" lookups returned the wrong chunk");
+
+			time = -System.nanoTime();
+			lost = runLongMap();
+			time += System.nanoTime();
+			System.out.println("LongMap : "+( time / (float) total )+" ns/lookup , "+lost+" lookups returned the wrong chunk");
+		}
+	}
+
+	private int runIntMap()
+	{
+		final IntMap<long[]> map = new IntMap<>();
+		int wrong = 0;
+		for ( int cam = 0 ; cam < MOVES ; cam++ )
+		{
+			for ( int y = -RANGE ; y <= RANGE ; y++ ) {
+				for ( int x = -RANGE ; x <= RANGE ; x++ ) {
+					for ( int z = cam-RANGE ; z <= cam+RANGE ; z++ )
+					{
+						final int key = oldChunkKey( x , y , z );
+						final long[] existing = map.get( key );
+						if ( existing == null ) {
+							map.put( key , new long[] { Chunk.calcChunkKey( x , y , z ) } );
+						} else if ( existing[0] != Chunk.calcChunkKey( x , y , z ) ) {
+							wrong++;
+						}
+					}
+				}
+			}
+			// evict chunks around an old camera position
+			final int old = cam-CACHED_MOVES;
+			for ( int y = -RANGE ; y <= RANGE ; y++ ) {
+				for ( int x = -RANGE ; x <= RANGE ; x++ ) {
+					for ( int z = old-RANGE ; z <= old+RANGE ; z++ ) {
+						map.remove( oldChunkKey( x , y , z ) );
+					}
+				}
+			}
+		}
+		return wrong;
+	}
+
+	private int runLongMap()
+	{
+		final LongMap<long[]> map = new LongMap<>();
+		int wrong = 0;
+		for ( int cam = 0 ; cam < MOVES ; cam++ )
+		{
+			for ( int y = -RANGE ; y <= RANGE ; y++ ) {
+				for ( int x = -RANGE ; x <= RANGE ; x++ ) {
+					for ( int z = cam-RANGE ; z <= cam+RANGE ; z++ )
+					{
+						final long key = Chunk.calcChunkKey( x , y , z );
+						final long[] existing = map.get( key );
+						if ( existing == null ) {
+							map.put( key , new long[] { key } );
+						} else if ( existing[0] != key ) {
+							wrong++;
+						}
+					}
+				}
+			}
+			// evict chunks around an old camera position
+			final int old = cam-CACHED_MOVES;
+			for ( int y = -RANGE ; y <= RANGE ; y++ ) {
+				for ( int x = -RANGE ; x <= RANGE ; x++ ) {
+					for ( int z = old-RANGE ; z <= old+RANGE ; z++ ) {
+						map.remove( Chunk.calcChunkKey( x , y , z ) );
+					}
+				}
+			}
+		}
+		return wrong;
+	}
+}
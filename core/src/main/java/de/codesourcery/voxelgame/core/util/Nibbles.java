@@ -0,0 +1,107 @@
+package de.codesourcery.voxelgame.core.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helper methods for storing 4-bit values (nibbles) packed two per byte inside a {@link ByteBuffer}.
+ *
+ * <p>The value with index <code>n</code> is stored in byte <code>n/2</code> , even indices use the
+ * lower four bits , odd indices the upper four bits. All methods use absolute
+ * positions and never modify the buffer's position or limit.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class Nibbles
+{
+	private Nibbles() {
+	}
+
+	/**
+	 * Returns the number of bytes required to store a number of nibbles.
+	 *
+	 * @param count
+	 * @return
+	 */
+	public static int bytesRequired(int count) {
+		return ( count + 1 ) / 2;
+	}
+
+	public static byte get(ByteBuffer buffer,int index)
+	{
+		final int value = buffer.get( index >>> 1 );
+		return (byte) ( ( value >>> ( ( index & 1 ) << 2 ) ) & 0x0f );
+	}
+
+	/**
+	 * Stores a nibble.
+	 *
+	 * @param buffer
+	 * @param index
+	 * @param value value , only the lower four bits are used
+	 */
+	public static void set(ByteBuffer buffer,int index,byte value)
+	{
+		final int offset = index >>> 1;
+		final int shift = ( index & 1 ) << 2;
+		final int current = buffer.get( offset );
+		buffer.put( offset , (byte) ( ( current & ~( 0x0f << shift ) ) | ( ( value & 0x0f ) << shift ) ) );
+	}
+
+	/**
+	 * Sets the first <code>count</code> nibbles to the same value.
+	 *
+	 * @param buffer
+	 * @param count
+	 * @param value value , only the lower four bits are used
+	 */
+	public static void fill(ByteBuffer buffer,int count,byte value)
+	{
+		final byte packed = (byte) ( ( value & 0x0f ) | ( ( value & 0x0f ) << 4 ) );
+		final int bytes = count >>> 1;
+		for ( int i = 0 ; i < bytes ; i++ ) {
+			buffer.put( i , packed );
+		}
+		if ( ( count & 1 ) != 0 ) {
+			set( buffer , count - 1 , value );
+		}
+	}
+
+	/**
+	 * Packs values into a buffer.
+	 *
+	 * @param values values to store , only the lower four bits of each value are used
+	 * @param buffer
+	 * @param count number of values to store
+	 */
+	public static void pack(byte[] values,ByteBuffer buffer,int count)
+	{
+		final int bytes = count >>> 1;
+		for ( int i = 0 , j = 0 ; i < bytes ; i++ , j += 2 ) {
+			buffer.put( i , (byte) ( ( values[j] & 0x0f ) | ( ( values[j+1] & 0x0f ) << 4 ) ) );
+		}
+		if ( ( count & 1 ) != 0 ) {
+			set( buffer , count - 1 , values[ count - 1 ] );
+		}
+	}
+
+	/**
+	 * Unpacks values from a buffer.
+	 *
+	 * @param buffer
+	 * @param values array to store the values in
+	 * @param count number of values to unpack
+	 */
+	public static void unpack(ByteBuffer buffer,byte[] values,int count)
+	{
+		final int bytes = count >>> 1;
+		for ( int i = 0 , j = 0 ; i < bytes ; i++ , j += 2 )
+		{
+			final int value = buffer.get( i );
+			values[j] = (byte) ( value & 0x0f );
+			values[j+1] = (byte) ( ( value >>> 4 ) & 0x0f );
+		}
+		if ( ( count & 1 ) != 0 ) {
+			values[ count - 1 ] = get( buffer , count - 1 );
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package de.codesourcery.voxelgame.core.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Hands out fixed-size segments of off-heap memory.
+ *
+ * <p>Memory is allocated in large slabs (direct {@link ByteBuffer}s) that are cut into segments
+ * of equal size. Segments returned through {@link #free(ByteBuffer)} are recycled , slabs are never
+ * released. Since the data lives outside of the Java heap , the garbage collector never has to scan or
+ * move it.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class OffHeapSlabAllocator
+{
+	// default segment size , large enough to hold one nibble per block of a chunk
+	public static final int DEFAULT_SEGMENT_SIZE = 16*1024;
+
+	// default number of segments per slab
+	public static final int DEFAULT_SEGMENTS_PER_SLAB = 64;
+
+	private final int segmentSize;
+	private final int segmentsPerSlab;
+
+	// @GuardedBy( this )
+	private final ArrayDeque<ByteBuffer> freeSegments = new ArrayDeque<>();
+	// @GuardedBy( this )
+	private int slabCount;
+	// @GuardedBy( this )
+	private int segmentsInUse;
+
+	public OffHeapSlabAllocator()
+	{
+		this( DEFAULT_SEGMENT_SIZE , DEFAULT_SEGMENTS_PER_SLAB );
+	}
+
+	public OffHeapSlabAllocator(int segmentSize,int segmentsPerSlab)
+	{
+		if ( segmentSize < 1 || segmentsPerSlab < 1 ) {
+			throw new IllegalArgumentException("Segment size and segments per slab must be >= 1");
+		}
+		this.segmentSize = segmentSize;
+		this.segmentsPerSlab = segmentsPerSlab;
+	}
+
+	/**
+	 * Returns a segment.
+	 *
+	 * <p>The segment's contents are undefined.</p>
+	 *
+	 * @return buffer with position 0 and limit/capacity {@link #getSegmentSize()}
+	 */
+	public synchronized ByteBuffer allocate()
+	{
+		if ( freeSegments.isEmpty() )
+		{
+			final ByteBuffer slab = ByteBuffer.allocateDirect( segmentSize * segmentsPerSlab );
+			for ( int i = 0 ; i < segmentsPerSlab ; i++ )
+			{
+				slab.limit( ( i + 1 ) * segmentSize );
+				slab.position( i * segmentSize );
+				freeSegments.add( slab.slice() );
+			}
+			slabCount++;
+		}
+		segmentsInUse++;
+		final ByteBuffer result = freeSegments.removeLast();
+		result.clear();
+		return result;
+	}
+
+	/**
+	 * Returns a segment to this allocator.
+	 *
+	 * <p>The segment must not be used afterwards.</p>
+	 *
+	 * @param segment segment obtained from {@link #allocate()}
+	 */
+	public synchronized void free(ByteBuffer segment)
+	{
+		if ( segment.capacity() != segmentSize || ! segment.isDirect() ) {
+			throw new IllegalArgumentException("Not a segment of this allocator");
+		}
+		segmentsInUse--;
+		freeSegments.add( segment );
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	public synchronized int getSegmentsInUse() {
+		return segmentsInUse;
+	}
+
+	/**
+	 * Returns the total number of bytes of off-heap memory
+	 * allocated so far.
+	 *
+	 * @return
+	 */
+	public synchronized long getReservedBytes() {
+		return slabCount * (long) segmentSize * segmentsPerSlab;
+	}
+}
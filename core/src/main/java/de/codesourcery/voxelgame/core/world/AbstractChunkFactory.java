@@ -4,6 +4,7 @@ import com.badlogic.gdx.utils.Pool;
 
 import de.codesourcery.voxelgame.core.Block;
 import de.codesourcery.voxelgame.core.Constants;
+import de.codesourcery.voxelgame.core.util.OffHeapSlabAllocator;
 
 public abstract class AbstractChunkFactory implements IChunkFactory
 {
@@ -11,19 +12,53 @@ public abstract class AbstractChunkFactory implements IChunkFactory
 
 		@Override
 		protected Chunk newObject() {
-			return new Chunk();
+			return new Chunk( offHeapAllocator );
 		}
 	};
 
+	private static final ThreadLocal<byte[]> BLOCK_TYPES = new ThreadLocal<byte[]>() {
+
+		@Override
+		protected byte[] initialValue() {
+			return new byte[ Chunk.BLOCK_COUNT ];
+		}
+	};
+
+	// allocator for off-heap light levels , NULL if light levels are kept on the heap
+	private final OffHeapSlabAllocator offHeapAllocator;
+
 	public AbstractChunkFactory()
 	{
+		this( Constants.USE_OFF_HEAP_LIGHT_LEVELS ? new OffHeapSlabAllocator() : null );
+	}
+
+	/**
+	 * Create instance.
+	 *
+	 * @param offHeapAllocator allocator used by chunks created by this factory to store their light levels off-heap
+	 * or <code>null</code> to keep light levels on the heap
+	 */
+	public AbstractChunkFactory(OffHeapSlabAllocator offHeapAllocator)
+	{
+		this.offHeapAllocator = offHeapAllocator;
+	}
+
+	/**
+	 * Returns the allocator used to store light levels off-heap.
+	 *
+	 * @return allocator or <code>null</code> if light levels are kept on the heap
+	 */
+	public final OffHeapSlabAllocator getOffHeapAllocator() {
+		return offHeapAllocator;
 	}
 
 	@Override
 	public final Chunk createChunk(int x,int y,int z)
 	{
 		final Chunk result = getChunkFromPool(x,y,z);
-		initializeChunk(result);
+		final byte[] blockTypes = BLOCK_TYPES.get();
+		initializeChunk(result,blockTypes);
+		result.setBlockTypes( blockTypes );
 		return result;
 	}
 
@@ -38,7 +73,7 @@ public abstract class AbstractChunkFactory implements IChunkFactory
 			result.initialize( chunkX,chunkY,chunkZ);
 			return result;
 		}
-		return new Chunk(chunkX,chunkY,chunkZ);
+		return new Chunk(chunkX,chunkY,chunkZ,offHeapAllocator);
 	}
 
 	@Override
@@ -65,18 +100,15 @@ public abstract class AbstractChunkFactory implements IChunkFactory
 	public final Chunk createSolidChunk(int x,int y,int z)
 	{
 		final Chunk result = getChunkFromPool(x,y,z);
-		for ( int xx = 0 ; xx < Chunk.BLOCKS_X ; xx++ )
-		{
-			for ( int zz = 0 ; zz < Chunk.BLOCKS_Z ; zz++ )
-			{
-				for ( int yy = 0 ; yy < Chunk.BLOCKS_Y ; yy++ )
-				{
-					result.blockType[xx+Chunk.BLOCKS_X*yy+(Chunk.BLOCKS_X*Chunk.BLOCKS_Y)*zz] = Block.Type.SOLID;
-				}
-			}
-		}
+		result.fillBlockTypes( Block.Type.SOLID );
 		return result;
 	}
 
-	protected abstract void initializeChunk(Chunk chunk);
+	/**
+	 * Generates a chunk's blocks.
+	 *
+	 * @param chunk the chunk (coordinates and bounding box are already initialized)
+	 * @param blockTypes array to store the generated block types in , needs to be completely overwritten
+	 */
+	protected abstract void initializeChunk(Chunk chunk,byte[] blockTypes);
 }
\ No newline at end of file
@@ -0,0 +1,296 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.codesourcery.voxelgame.core.Block;
+import de.codesourcery.voxelgame.core.Constants;
+
+/**
+ * Abstract base class for chunk storage backends.
+ *
+ * <p>Implements the common 'load from disk or generate using a {@link IChunkFactory}' logic
+ * as well as encoding/decoding chunk data (see {@link ChunkFormat}) , subclasses
+ * only need to implement the actual reading and writing of chunk records.</p>
+ *
+ * <p>When {@link Constants#USE_DELTA_PERSISTENCE delta persistence} is enabled, generated chunks
+ * are not written at all and chunks that have been edited are stored as a list of edits (see {@link Chunk#getEditLog()})
+ * that gets replayed on top of a freshly generated chunk when loading. Chunks with too many edits fall back to
+ * full snapshots. This requires the {@link IChunkFactory} to always generate the same chunk for the same coordinates.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public abstract class AbstractChunkStorage implements IChunkStorage
+{
+	public static boolean DELETE_CHUNK_CACHE_ON_START = true;
+
+	/**
+	 * Name of a file in the chunk directory that keeps the directory from being deleted on startup
+	 * (see {@link #DELETE_CHUNK_CACHE_ON_START}) , written by {@link ChunkPregenerator}.
+	 */
+	public static final String KEEP_ON_START_MARKER = "pregenerated.marker";
+
+	protected final IChunkFactory chunkFactory;
+	protected final File chunkDirectory;
+
+	private static final ThreadLocal<byte[]> BLOCK_BUFFER = new ThreadLocal<byte[]>() {
+
+		@Override
+		protected byte[] initialValue() {
+			return new byte[ Chunk.BLOCK_COUNT ];
+		}
+	};
+
+	private static final ThreadLocal<byte[]> READ_BUFFER = new ThreadLocal<byte[]>() {
+
+		@Override
+		protected byte[] initialValue() {
+			return new byte[ ChunkFormat.MAX_RECORD_SIZE ];
+		}
+	};
+
+	protected AbstractChunkStorage(File chunkDirectory, IChunkFactory chunkFactory) throws IOException
+	{
+		if ( DELETE_CHUNK_CACHE_ON_START && ! new File( chunkDirectory , KEEP_ON_START_MARKER ).exists() )
+		{
+			System.out.println("Deleting chunk cache folder "+chunkDirectory);
+			deleteFolder( chunkDirectory );
+		}
+		if ( ! chunkDirectory.exists() ) {
+			if ( ! chunkDirectory.mkdirs() ) {
+				throw new IOException("Failed to create directory "+chunkDirectory.getAbsolutePath());
+			}
+		}
+		this.chunkDirectory = chunkDirectory.getAbsoluteFile();
+		this.chunkFactory = chunkFactory;
+	}
+
+	private static void deleteFolder(File file) throws IOException
+	{
+		if ( file.isFile() ){
+			file.delete();
+			return;
+		}
+
+		final File[] listFiles = file.listFiles();
+		if ( listFiles != null ) {
+			for ( final File f : listFiles  ) {
+				deleteFolder(f);
+			}
+		}
+		file.delete();
+	}
+
+	@Override
+	public Chunk loadChunk(int chunkX, int chunkY,int chunkZ) throws IOException
+	{
+		Chunk result = null;
+		if ( Constants.USE_PERSISTENT_STORAGE )
+		{
+			try {
+				result = tryLoadFromDisk(chunkX, chunkY, chunkZ);
+			}
+			catch(final IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if ( result == null ) {
+			result = chunkFactory.createChunk(chunkX, chunkY,chunkZ);
+			if ( Constants.USE_PERSISTENT_STORAGE && ! Constants.USE_DELTA_PERSISTENCE )
+			{
+				try {
+					writeToDisk( result );
+				} catch(final IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void saveChunk(Chunk chunk) throws IOException
+	{
+		if ( Constants.USE_PERSISTENT_STORAGE && chunk.hasChangedSinceLoad() )
+		{
+			writeToDisk( chunk );
+			chunk.setChangedSinceLoad(false);
+		}
+	}
+
+	@Override
+	public void releaseChunk(Chunk chunk) throws IOException
+	{
+		chunkFactory.returnChunkToPool( chunk ); // chunk implements Poolable so dispose() will be called by libGDX pool implementation
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+	}
+
+	/**
+	 * Try to load a chunk from persistent storage.
+	 *
+	 * @param chunkX
+	 * @param chunkY
+	 * @param chunkZ
+	 * @return the chunk (obtained through {@link IChunkFactory#getChunkFromPool(int, int, int)}) or <code>null</code>
+	 * if the chunk has never been written to disk
+	 * @throws IOException
+	 */
+	protected Chunk tryLoadFromDisk(int chunkX, int chunkY,int chunkZ) throws IOException
+	{
+		final ByteBuffer record = readRecord( chunkX , chunkY , chunkZ );
+		if ( record == null ) {
+			return null;
+		}
+
+		return decode( chunkX , chunkY , chunkZ , record );
+	}
+
+	/**
+	 * Creates a chunk from a chunk record.
+	 *
+	 * @param chunkX
+	 * @param chunkY
+	 * @param chunkZ
+	 * @param record
+	 * @return the chunk (obtained through {@link IChunkFactory#getChunkFromPool(int, int, int)})
+	 * @throws IOException if the record is malformed
+	 * @see #encode(int, int, int, BrickBlockStorage, int[])
+	 */
+	protected Chunk decode(int chunkX, int chunkY,int chunkZ,ByteBuffer record) throws IOException
+	{
+		if ( ChunkFormat.isDelta( record ) )
+		{
+			final int[] edits;
+			try {
+				edits = ChunkFormat.decodeDelta( record );
+			}
+			catch(final IOException e) {
+				throw new IOException("Failed to load chunk ("+chunkX+","+chunkY+","+chunkZ+"): "+e.getMessage(),e);
+			}
+
+			final Chunk result = chunkFactory.createChunk( chunkX , chunkY , chunkZ );
+			boolean isEmpty = result.isEmpty();
+			for ( final int edit : edits )
+			{
+				final byte newType = (byte) edit;
+				result.putBlockType( edit >>> 8 , newType );
+				isEmpty &= newType == Block.Type.AIR;
+			}
+			result.setEmpty( isEmpty );
+			result.setEditLog( edits );
+			return result;
+		}
+
+		final Chunk result = chunkFactory.getChunkFromPool( chunkX , chunkY , chunkZ );
+		if ( ChunkFormat.isUniform( record ) ) {
+			result.fillBlockTypes( record.get() );
+			result.setEditLog( null );
+			return result;
+		}
+
+		try {
+			final byte[] blockTypes = BLOCK_BUFFER.get();
+			ChunkFormat.decode( record , blockTypes );
+			result.setBlockTypes( blockTypes );
+		}
+		catch(final IOException e)
+		{
+			chunkFactory.returnChunkToPool( result );
+			throw new IOException("Failed to load chunk ("+chunkX+","+chunkY+","+chunkZ+"): "+e.getMessage(),e);
+		}
+		result.setEditLog( null ); // we don't know what the chunk looked like when it was generated
+		return result;
+	}
+
+	/**
+	 * Creates a chunk record.
+	 *
+	 * @param chunkX
+	 * @param chunkY
+	 * @param chunkZ
+	 * @param blockTypes the chunk's block types
+	 * @param edits the chunk's edit log (see {@link Chunk#getEditLog()})
+	 * @return record or <code>null</code> if nothing needs to be written
+	 * @see #decode(int, int, int, ByteBuffer)
+	 */
+	protected byte[] encode(int chunkX, int chunkY,int chunkZ,BrickBlockStorage blockTypes,int[] edits)
+	{
+		if ( Constants.USE_DELTA_PERSISTENCE && edits != null ) {
+			return edits.length == 0 ? null : ChunkFormat.encodeDelta( edits );
+		}
+		if ( blockTypes.isUniform() ) {
+			return ChunkFormat.encodeUniform( blockTypes.get( 0 ) );
+		}
+		final byte[] buffer = BLOCK_BUFFER.get();
+		blockTypes.getAll( buffer );
+		return ChunkFormat.encode( buffer );
+	}
+
+	/**
+	 * Writes a chunk to persistent storage, overwriting any data that
+	 * might've been stored for the same chunk previously.
+	 *
+	 * @param chunk
+	 * @throws IOException
+	 */
+	protected void writeToDisk(Chunk chunk) throws IOException
+	{
+		final byte[] record = encode( chunk.x , chunk.y , chunk.z , chunk.copyBlockTypes() , chunk.getEditLog() );
+		if ( record != null ) {
+			writeRecord( chunk.x , chunk.y , chunk.z , record , 0 , record.length );
+		}
+	}
+
+	/**
+	 * Returns a (thread-local) buffer that is large enough to hold
+	 * any chunk record.
+	 *
+	 * @return
+	 * @see ChunkFormat#MAX_RECORD_SIZE
+	 */
+	protected static byte[] getReadBuffer() {
+		return READ_BUFFER.get();
+	}
+
+	/**
+	 * Reads a chunk record.
+	 *
+	 * @param chunkX
+	 * @param chunkY
+	 * @param chunkZ
+	 * @return buffer holding the record (may be the one returned by {@link #getReadBuffer()}) or <code>null</code>
+	 * if the chunk has never been written to disk
+	 * @throws IOException
+	 */
+	protected abstract ByteBuffer readRecord(int chunkX, int chunkY,int chunkZ) throws IOException;
+
+	/**
+	 * Checks whether a chunk record exists , without reading it.
+	 *
+	 * @param chunkX
+	 * @param chunkY
+	 * @param chunkZ
+	 * @return
+	 * @throws IOException
+	 */
+	protected abstract boolean containsRecord(int chunkX, int chunkY,int chunkZ) throws IOException;
+
+	/**
+	 * Writes a chunk record, overwriting any record that
+	 * might've been stored for the same chunk previously.
+	 *
+	 * @param chunkX
+	 * @param chunkY
+	 * @param chunkZ
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	protected abstract void writeRecord(int chunkX, int chunkY,int chunkZ,byte[] data,int offset,int length) throws IOException;
+}
@@ -0,0 +1,367 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.util.Arrays;
+
+import de.codesourcery.voxelgame.core.Block;
+
+/**
+ * Storage for the block types of a chunk , split into 8x8x8 bricks.
+ *
+ * <p>Each brick is stored in its own {@link PaletteBlockStorage}. Bricks where all blocks have the same type
+ * (most bricks above or below the surface) do not allocate any storage of their own but share a single
+ * , never modified instance per block type.</p>
+ *
+ * <p>Bricks are numbered <code>brickX + BRICKS_X * brickY + (BRICKS_X*BRICKS_Y) * brickZ</code> , the
+ * bit mask returned by {@link #getOccupiedBricks()} tells which bricks contain any non-air blocks
+ * so callers can skip empty bricks without looking at individual blocks.</p>
+ *
+ * <p>{@link #snapshot()} creates an independent copy in constant time , both instances share their
+ * bricks until one of them modifies a brick , which then gets copied (copy-on-write).</p>
+ *
+ * <p>Thread-safety: Writes (including {@link #snapshot()}) need to be synchronized externally, reads may happen concurrently
+ * with writes without any locking.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class BrickBlockStorage
+{
+	// number of blocks along each axis of a brick
+	public static final int BRICK_SIZE = 8;
+
+	// number of bricks along X axis
+	public static final int BRICKS_X = Chunk.BLOCKS_X / BRICK_SIZE;
+
+	// number of bricks along Y axis
+	public static final int BRICKS_Y = Chunk.BLOCKS_Y / BRICK_SIZE;
+
+	// number of bricks along Z axis
+	public static final int BRICKS_Z = Chunk.BLOCKS_Z / BRICK_SIZE;
+
+	// total number of bricks in a chunk , must not exceed 64 (see getOccupiedBricks())
+	public static final int BRICK_COUNT = BRICKS_X * BRICKS_Y * BRICKS_Z;
+
+	// number of blocks in a brick
+	public static final int BLOCKS_PER_BRICK = BRICK_SIZE * BRICK_SIZE * BRICK_SIZE;
+
+	// shared bricks for uniform bricks , indexed by block type. These must NEVER be modified
+	private static final PaletteBlockStorage[] UNIFORM_BRICKS = new PaletteBlockStorage[256];
+
+	static
+	{
+		for ( int i = 0 ; i < UNIFORM_BRICKS.length ; i++ ) {
+			UNIFORM_BRICKS[i] = new PaletteBlockStorage( BLOCKS_PER_BRICK , (byte) i );
+		}
+	}
+
+	private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+
+		@Override
+		protected byte[] initialValue() {
+			return new byte[ BLOCKS_PER_BRICK ];
+		}
+	};
+
+	// copy-on-write , array gets replaced whenever a shared brick is replaced by a private one
+	private volatile PaletteBlockStorage[] bricks;
+
+	// bricks only referenced by this instance that may be modified in-place , bit n is set if brick n is owned
+	// @GuardedBy( writer )
+	private long ownedBricks;
+
+	/**
+	 * Create instance.
+	 *
+	 * @param initialValue initial type of all blocks
+	 */
+	public BrickBlockStorage(byte initialValue)
+	{
+		fill( initialValue );
+	}
+
+	private BrickBlockStorage(PaletteBlockStorage[] bricks,long ownedBricks)
+	{
+		this.bricks = bricks;
+		this.ownedBricks = ownedBricks;
+	}
+
+	/**
+	 * Returns the brick containing a block.
+	 *
+	 * @param blockIndex block index , see {@link Chunk#blockIndex(int, int, int)}
+	 * @return
+	 */
+	public static int brickIndex(int blockIndex)
+	{
+		final int x = blockIndex & (Chunk.BLOCKS_X-1);
+		final int y = ( blockIndex / Chunk.BLOCKS_X ) & (Chunk.BLOCKS_Y-1);
+		final int z = blockIndex / ( Chunk.BLOCKS_X * Chunk.BLOCKS_Y );
+		return brickIndex( x / BRICK_SIZE , y / BRICK_SIZE , z / BRICK_SIZE );
+	}
+
+	public static int brickIndex(int brickX,int brickY,int brickZ) {
+		return brickX + BRICKS_X * brickY + (BRICKS_X*BRICKS_Y) * brickZ;
+	}
+
+	private static int localIndex(int blockIndex)
+	{
+		final int x = blockIndex & (BRICK_SIZE-1);
+		final int y = ( blockIndex / Chunk.BLOCKS_X ) & (BRICK_SIZE-1);
+		final int z = ( blockIndex / ( Chunk.BLOCKS_X * Chunk.BLOCKS_Y ) ) & (BRICK_SIZE-1);
+		return x + BRICK_SIZE * y + (BRICK_SIZE*BRICK_SIZE) * z;
+	}
+
+	/**
+	 * Returns the index of a brick's first block (the one with the smallest X,Y and Z coordinates).
+	 *
+	 * @param brickIndex
+	 * @return
+	 */
+	private static int firstBlockIndex(int brickIndex)
+	{
+		final int x = ( brickIndex % BRICKS_X ) * BRICK_SIZE;
+		final int y = ( ( brickIndex / BRICKS_X ) % BRICKS_Y ) * BRICK_SIZE;
+		final int z = ( brickIndex / ( BRICKS_X * BRICKS_Y ) ) * BRICK_SIZE;
+		return Chunk.blockIndex( x , y , z );
+	}
+
+	private static boolean isShared(PaletteBlockStorage brick) {
+		return brick.isUniform() && UNIFORM_BRICKS[ brick.get( 0 ) & 0xff ] == brick;
+	}
+
+	public byte get(int blockIndex) {
+		return bricks[ brickIndex( blockIndex ) ].get( localIndex( blockIndex ) );
+	}
+
+	public void set(int blockIndex,byte value)
+	{
+		if ( blockIndex < 0 || blockIndex >= Chunk.BLOCK_COUNT ) {
+			throw new ArrayIndexOutOfBoundsException( blockIndex );
+		}
+
+		final int brickIndex = brickIndex( blockIndex );
+		final PaletteBlockStorage[] current = bricks;
+		final PaletteBlockStorage brick = current[ brickIndex ];
+		final long brickBit = 1L << brickIndex;
+		if ( ( ownedBricks & brickBit ) != 0 ) {
+			brick.set( localIndex( blockIndex ) , value );
+			return;
+		}
+		if ( brick.get( localIndex( blockIndex ) ) == value ) {
+			return;
+		}
+
+		// brick is either one of the shared uniform bricks or also referenced by a snapshot
+		final PaletteBlockStorage newBrick = brick.copy();
+		newBrick.set( localIndex( blockIndex ) , value );
+		final PaletteBlockStorage[] copy = current.clone();
+		copy[ brickIndex ] = newBrick;
+		bricks = copy;
+		ownedBricks |= brickBit;
+	}
+
+	/**
+	 * Sets all blocks to the same type.
+	 *
+	 * @param value
+	 */
+	public void fill(byte value)
+	{
+		final PaletteBlockStorage[] result = new PaletteBlockStorage[ BRICK_COUNT ];
+		Arrays.fill( result , UNIFORM_BRICKS[ value & 0xff ] );
+		bricks = result;
+		ownedBricks = 0;
+	}
+
+	/**
+	 * Replaces all block types.
+	 *
+	 * @param values array holding at least {@link Chunk#BLOCK_COUNT} block types
+	 */
+	public void setAll(byte[] values)
+	{
+		final byte[] scratch = SCRATCH.get();
+		final PaletteBlockStorage[] result = new PaletteBlockStorage[ BRICK_COUNT ];
+		long owned = 0;
+		for ( int brick = 0 ; brick < BRICK_COUNT ; brick++ )
+		{
+			// gather rows of 8 blocks
+			final int start = firstBlockIndex( brick );
+			int ptr = 0;
+			for ( int z = 0 ; z < BRICK_SIZE ; z++ ) {
+				for ( int y = 0 ; y < BRICK_SIZE ; y++ , ptr += BRICK_SIZE ) {
+					System.arraycopy( values , start + Chunk.BLOCKS_X * y + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * z , scratch , ptr , BRICK_SIZE );
+				}
+			}
+
+			final byte first = scratch[0];
+			boolean uniform = true;
+			for ( int i = 1 ; i < BLOCKS_PER_BRICK ; i++ ) {
+				if ( scratch[i] != first ) {
+					uniform = false;
+					break;
+				}
+			}
+			if ( uniform ) {
+				result[brick] = UNIFORM_BRICKS[ first & 0xff ];
+			} else {
+				final PaletteBlockStorage storage = new PaletteBlockStorage( BLOCKS_PER_BRICK , first );
+				storage.setAll( scratch );
+				result[brick] = storage;
+				owned |= 1L << brick;
+			}
+		}
+		bricks = result;
+		ownedBricks = owned;
+	}
+
+	/**
+	 * Replaces all block types with the block types of another storage.
+	 *
+	 * @param other
+	 */
+	public void setAll(BrickBlockStorage other)
+	{
+		final PaletteBlockStorage[] result = copyBricks( other.bricks );
+		bricks = result;
+		ownedBricks = ownedMask( result );
+	}
+
+	/**
+	 * Copies all block types into an array.
+	 *
+	 * @param values array to store the block types in , must be able to hold at least {@link Chunk#BLOCK_COUNT} values
+	 */
+	public void getAll(byte[] values)
+	{
+		final byte[] scratch = SCRATCH.get();
+		final PaletteBlockStorage[] current = bricks;
+		for ( int brick = 0 ; brick < BRICK_COUNT ; brick++ )
+		{
+			final PaletteBlockStorage storage = current[brick];
+			final int start = firstBlockIndex( brick );
+			if ( storage.isUniform() )
+			{
+				final byte value = storage.get( 0 );
+				for ( int z = 0 ; z < BRICK_SIZE ; z++ ) {
+					for ( int y = 0 ; y < BRICK_SIZE ; y++ ) {
+						final int offset = start + Chunk.BLOCKS_X * y + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * z;
+						Arrays.fill( values , offset , offset + BRICK_SIZE , value );
+					}
+				}
+				continue;
+			}
+
+			// scatter rows of 8 blocks
+			storage.getAll( scratch );
+			int ptr = 0;
+			for ( int z = 0 ; z < BRICK_SIZE ; z++ ) {
+				for ( int y = 0 ; y < BRICK_SIZE ; y++ , ptr += BRICK_SIZE ) {
+					System.arraycopy( scratch , ptr , values , start + Chunk.BLOCKS_X * y + (Chunk.BLOCKS_X*Chunk.BLOCKS_Y) * z , BRICK_SIZE );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a bit mask of all bricks that (may) contain blocks other than air.
+	 *
+	 * <p>Bit <code>n</code> is set if brick <code>n</code> is occupied , see {@link #brickIndex(int, int, int)}.
+	 * A brick that is only made of air blocks after edits may still be reported as occupied.</p>
+	 * @return
+	 */
+	public long getOccupiedBricks()
+	{
+		final PaletteBlockStorage[] current = bricks;
+		final PaletteBlockStorage air = UNIFORM_BRICKS[ Block.Type.AIR & 0xff ];
+		long result = 0;
+		for ( int brick = 0 ; brick < BRICK_COUNT ; brick++ ) {
+			if ( current[brick] != air ) {
+				result |= 1L << brick;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns whether all blocks have the same type.
+	 *
+	 * <p>Note that this method may return <code>false</code> even though all
+	 * blocks have the same type if they became the same through {@link #set(int, byte)}.</p>
+	 * @return
+	 */
+	public boolean isUniform()
+	{
+		final PaletteBlockStorage[] current = bricks;
+		final PaletteBlockStorage first = current[0];
+		if ( ! isShared( first ) ) {
+			return false;
+		}
+		for ( int brick = 1 ; brick < BRICK_COUNT ; brick++ ) {
+			if ( current[brick] != first ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the (approximate) number of bytes of heap memory used.
+	 *
+	 * @return
+	 */
+	public int getSizeInBytes()
+	{
+		int result = BRICK_COUNT * 4;
+		for ( final PaletteBlockStorage brick : bricks ) {
+			if ( ! isShared( brick ) ) {
+				result += brick.getSizeInBytes();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates an independent copy of this storage.
+	 *
+	 * @return
+	 */
+	public BrickBlockStorage copy()
+	{
+		final PaletteBlockStorage[] result = copyBricks( bricks );
+		return new BrickBlockStorage( result , ownedMask( result ) );
+	}
+
+	/**
+	 * Creates an independent copy of this storage in constant time.
+	 *
+	 * <p>Both storages share all bricks , a brick gets copied as soon as either storage modifies it.
+	 * Since this method changes the state of this storage , it needs to be synchronized like any other write.</p>
+	 *
+	 * @return
+	 */
+	public BrickBlockStorage snapshot()
+	{
+		ownedBricks = 0;
+		return new BrickBlockStorage( bricks , 0 );
+	}
+
+	private static long ownedMask(PaletteBlockStorage[] bricks)
+	{
+		long result = 0;
+		for ( int brick = 0 ; brick < BRICK_COUNT ; brick++ ) {
+			if ( ! isShared( bricks[brick] ) ) {
+				result |= 1L << brick;
+			}
+		}
+		return result;
+	}
+
+	private static PaletteBlockStorage[] copyBricks(PaletteBlockStorage[] bricks)
+	{
+		final PaletteBlockStorage[] result = new PaletteBlockStorage[ BRICK_COUNT ];
+		for ( int brick = 0 ; brick < BRICK_COUNT ; brick++ ) {
+			result[brick] = isShared( bricks[brick] ) ? bricks[brick] : bricks[brick].copy();
+		}
+		return result;
+	}
+}
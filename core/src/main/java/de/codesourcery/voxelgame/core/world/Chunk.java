@@ -1,5 +1,7 @@
 package de.codesourcery.voxelgame.core.world;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.badlogic.gdx.math.Intersector;
@@ -9,7 +11,11 @@ import com.badlogic.gdx.math.collision.Ray;
 import com.badlogic.gdx.utils.Pool.Poolable;
 
 import de.codesourcery.voxelgame.core.Block;
+import de.codesourcery.voxelgame.core.Constants;
 import de.codesourcery.voxelgame.core.render.BlockRenderer;
+import de.codesourcery.voxelgame.core.util.IHasKey;
+import de.codesourcery.voxelgame.core.util.Nibbles;
+import de.codesourcery.voxelgame.core.util.OffHeapSlabAllocator;
 import de.codesourcery.voxelgame.core.world.ChunkManager.Hit;
 
 /**
@@ -17,7 +23,7 @@ import de.codesourcery.voxelgame.core.world.ChunkManager.Hit;
  *
  * @author tobias.gierke@voipfuture.com
  */
-public final class Chunk implements Poolable
+public final class Chunk implements Poolable, IHasKey
 {
 	// number of blocks along X axis
 	public static final int BLOCKS_X = 32;
@@ -28,6 +34,9 @@ public final class Chunk implements Poolable
 	// number of blocks along Z axis
 	public static final int BLOCKS_Z = 32;
 
+	// total number of blocks in a chunk
+	public static final int BLOCK_COUNT = BLOCKS_X*BLOCKS_Y*BLOCKS_Z;
+
 	// block width in world coordinates
 	public static final float BLOCK_WIDTH = 10f;
 
@@ -45,6 +54,14 @@ public final class Chunk implements Poolable
 	public static final float HALF_CHUNK_HEIGHT = CHUNK_HEIGHT/2.0f;
 	public static final float HALF_CHUNK_DEPTH = CHUNK_DEPTH/2.0f;
 
+	// number of bits per coordinate in chunk keys
+	public static final int KEY_BITS = 21;
+	private static final long KEY_MASK = ( 1L << KEY_BITS ) - 1;
+
+	// range of chunk coordinates that can be represented by chunk keys
+	public static final int MIN_CHUNK_COORDINATE = -( 1 << ( KEY_BITS - 1 ) );
+	public static final int MAX_CHUNK_COORDINATE = ( 1 << ( KEY_BITS - 1 ) ) - 1;
+
 	// FLAGS
 	public static final class ChunkKey
 	{
@@ -59,10 +76,8 @@ public final class Chunk implements Poolable
 			this.y = y;
 			this.z = z;
 
-			int result = 31  + x;
-			result = 31 * result + y;
-			result = 31 * result + z;
-			hashCode = result;
+			final long key = calcChunkKey( x , y , z );
+			hashCode = (int) ( key ^ ( key >>> 32 ) );
 		}
 
 		@Override
@@ -153,28 +168,97 @@ public final class Chunk implements Poolable
 	// used as temporary storage
 	private final BoundingBox TMP_BB = new BoundingBox();
 
-	public long accessCounter = 0;
-
-	public final byte[] blockType;
-	public final byte[] lightLevel;
+	// position in the ChunkManager's eviction ring , -1 if not part of it
+	// @GuardedBy( ChunkManager#cacheLock )
+	int clockIndex = -1;
+
+	// set whenever this chunk gets accessed , cleared by the eviction ring's clock hand
+	private volatile boolean referenced;
+
+	// memory usage as last accounted for by ChunkMemoryUsage
+	// @GuardedBy( ChunkManager#cacheLock )
+	int accountedBlockDataBytes;
+	// @GuardedBy( ChunkManager#cacheLock )
+	int accountedOffHeapBytes;
+	// @GuardedBy( ChunkManager#cacheLock )
+	int accountedMeshBytes;
+	// @GuardedBy( ChunkManager#cacheLock )
+	int accountedBufferBytes;
+
+	// @GuardedBy( this ) for writes , reads are lock-free
+	private final BrickBlockStorage blockTypes = new BrickBlockStorage( Block.Type.AIR );
+	// kept in sync with 'blockTypes'
+	// @GuardedBy( this ) for writes , reads are lock-free
+	private final OpacityMask opacity = new OpacityMask();
+
+	// modification stamp , incremented whenever block types change , the mesh gets invalidated
+	// or the chunk gets (re-)initialized or disposed
+	// @GuardedBy( this ) for writes , reads are lock-free
+	private volatile long version;
+
+	// version the currently published mesh was built from , -1 if there is none
+	// @GuardedBy( this ) for writes , reads are lock-free
+	private volatile long meshVersion = -1;
+	// light levels are split into two channels: light coming from the sky and light emitted by blocks.
+	// Each channel is kept in a PaletteBlockStorage on the heap or , if the chunk has an off-heap allocator and
+	// not all blocks have the same light level , packed into nibbles inside an off-heap segment
+
+	// @GuardedBy( this ) for writes , reads are lock-free
+	private final PaletteBlockStorage skyLight = new PaletteBlockStorage( BLOCK_COUNT , Block.MIN_LIGHT_LEVEL );
+	// @GuardedBy( this ) for writes , reads are lock-free
+	private final PaletteBlockStorage blockLight = new PaletteBlockStorage( BLOCK_COUNT , Block.MIN_LIGHT_LEVEL );
+
+	// allocator used for off-heap light levels , NULL if light levels are always kept on the heap
+	private final OffHeapSlabAllocator offHeapAllocator;
+
+	// off-heap sky light levels (one nibble per block) , NULL if 'skyLight' is used
+	// @GuardedBy( this ) for writes , reads are lock-free
+	private volatile ByteBuffer skyLightSegment;
+
+	// off-heap block light levels (one nibble per block) , NULL if 'blockLight' is used
+	// @GuardedBy( this ) for writes , reads are lock-free
+	private volatile ByteBuffer blockLightSegment;
 
 	public final BlockRenderer blockRenderer;
 	public int renderedBlockCount=0; // TODO: Remove debug code
 
+	// edits made through setBlockType() since this chunk got generated , each edit
+	// is stored as ( blockIndex << 8 | newType ). NULL if edits are not tracked
+	// (because there were too many or the chunk was loaded from a full snapshot)
+	// @GuardedBy( this )
+	private int[] edits = new int[0];
+	// @GuardedBy( this )
+	private int editCount;
+	// open-addressing hash table mapping block indices to their position in 'edits' , so that repeated
+	// edits of the same block don't need to scan the edit log. Holds ( position + 1 ) , 0 marks an empty slot.
+	// NULL if there are no edits
+	// @GuardedBy( this )
+	private short[] editSlots;
+
 	// hint: Need to use CAS here because using synchronize(this) causes random dead-locks
 	// because of ChunkRenderer#determineSidesToRender() accessing adjacent chunks
 	// in a random order and thus causing inconsistent lock order
 	private final AtomicInteger flags = new AtomicInteger( FLAG_MESH_REBUILD_REQUIRED );
 
-	private int hashCode;
+	// packed chunk coordinates
+	private long key;
 
 	public Chunk(int x,int y,int z)
 	{
-		this.blockRenderer = new BlockRenderer();
+		this(x,y,z,null);
+	}
 
-		final int arraySize = BLOCKS_X*BLOCKS_Y*BLOCKS_Z;
-		lightLevel = new byte[ arraySize ];
-		blockType = new byte[arraySize];
+	/**
+	 * Create chunk.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param offHeapAllocator allocator to store light levels off-heap or <code>null</code> to keep them on the heap
+	 */
+	public Chunk(int x,int y,int z,OffHeapSlabAllocator offHeapAllocator)
+	{
+		this( offHeapAllocator );
 		initialize(x,y,z);
 	}
 
@@ -184,22 +268,33 @@ public final class Chunk implements Poolable
 		if ( obj instanceof Chunk)
 		{
 			final Chunk other = (Chunk) obj;
-			return this.hashCode == other.hashCode && other.x == x && other.y == y && other.z == z;
+			return this.key == other.key;
 		}
 		return false;
 	}
 
 	@Override
 	public int hashCode() {
-		return hashCode;
+		return (int) ( key ^ ( key >>> 32 ) );
 	}
 
 	public Chunk()
 	{
+		this( (OffHeapSlabAllocator) null );
+	}
+
+	/**
+	 * Create chunk.
+	 *
+	 * @param offHeapAllocator allocator to store light levels off-heap or <code>null</code> to keep them on the heap
+	 */
+	public Chunk(OffHeapSlabAllocator offHeapAllocator)
+	{
+		if ( offHeapAllocator != null && offHeapAllocator.getSegmentSize() < Nibbles.bytesRequired( BLOCK_COUNT ) ) {
+			throw new IllegalArgumentException("Off-heap segments need to hold at least "+Nibbles.bytesRequired( BLOCK_COUNT )+" bytes");
+		}
 		this.blockRenderer = new BlockRenderer();
-		final int arraySize = BLOCKS_X*BLOCKS_Y*BLOCKS_Z;
-		lightLevel = new byte[ arraySize ];
-		blockType = new byte[arraySize];
+		this.offHeapAllocator = offHeapAllocator;
 	}
 
 	public void initialize(int x, int y,int z)
@@ -211,32 +306,106 @@ public final class Chunk implements Poolable
 		ChunkKey.populateBoundingBox( x,y,z, this.boundingBox );
 
 		flags.set( FLAG_MESH_REBUILD_REQUIRED );
-		accessCounter = 0;
-		this.hashCode = Chunk.calcChunkKey(x,y,z);
+		referenced = false;
+		synchronized(this) {
+			editCount = 0;
+			if ( edits == null ) {
+				edits = new int[0];
+			}
+			if ( editSlots != null ) {
+				Arrays.fill( editSlots , (short) 0 );
+			}
+			blockTypes.fill( Block.Type.AIR );
+			opacity.fill( Block.Type.AIR );
+			version++;
+			meshVersion = -1;
+			fillSkyLightLevels( Block.MIN_LIGHT_LEVEL );
+			fillBlockLightLevels( Block.MIN_LIGHT_LEVEL );
+		}
+		this.key = Chunk.calcChunkKey(x,y,z);
 	}
 
-	public static int calcChunkKey(int chunkX,int chunkY,int chunkZ)
+	/**
+	 * Packs chunk coordinates into a unique key.
+	 *
+	 * <p>Each coordinate is stored in {@link #KEY_BITS} bits , so keys are unique as long as all
+	 * coordinates are in the range [ {@link #MIN_CHUNK_COORDINATE} , {@link #MAX_CHUNK_COORDINATE} ].</p>
+	 *
+	 * @param chunkX
+	 * @param chunkY
+	 * @param chunkZ
+	 * @return
+	 * @see #chunkKeyX(long)
+	 * @see #chunkKeyY(long)
+	 * @see #chunkKeyZ(long)
+	 */
+	public static long calcChunkKey(int chunkX,int chunkY,int chunkZ)
 	{
-		int result = 31  + chunkX;
-		result = 31 * result + chunkY;
-		result = 31 * result + chunkZ;
-		return result;
+		return ( ( chunkX & KEY_MASK ) << 2*KEY_BITS ) | ( ( chunkY & KEY_MASK ) << KEY_BITS ) | ( chunkZ & KEY_MASK );
 	}
 
-	public static int calcChunkKey(Chunk chunk)
+	public static int chunkKeyX(long key) {
+		return (int) ( ( key << ( 64 - 3*KEY_BITS ) ) >> ( 64 - KEY_BITS ) );
+	}
+
+	public static int chunkKeyY(long key) {
+		return (int) ( ( key << ( 64 - 2*KEY_BITS ) ) >> ( 64 - KEY_BITS ) );
+	}
+
+	public static int chunkKeyZ(long key) {
+		return (int) ( ( key << ( 64 - KEY_BITS ) ) >> ( 64 - KEY_BITS ) );
+	}
+
+	/**
+	 * Marks this chunk as recently used.
+	 *
+	 * @see ChunkClock
+	 */
+	public void touch()
 	{
-		int result = 31  + chunk.x;
-		result = 31 * result + chunk.y;
-		result = 31 * result + chunk.z;
-		return result;
+		// avoid writing to shared memory unless necessary
+		if ( ! referenced ) {
+			referenced = true;
+		}
+	}
+
+	/**
+	 * Clears the 'recently used' mark.
+	 *
+	 * @return whether the chunk has been marked as recently used
+	 */
+	boolean clearReferenced()
+	{
+		if ( referenced )
+		{
+			referenced = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns this chunk's key.
+	 *
+	 * @return
+	 * @see #calcChunkKey(int, int, int)
+	 */
+	public long getKey() {
+		return key;
 	}
 
 	public void setBlockType(int blockX,int blockY,int blockZ,ChunkManager chunkManager,byte newType)
 	{
 		synchronized(this)
 		{
-			System.out.println("Changed type of block "+blockX+"/"+blockY+"/"+blockZ+" of "+this+" to new type "+newType);
-			blockType[blockX+BLOCKS_X*blockY+(BLOCKS_X*BLOCKS_Y)*blockZ]=newType;
+			final int index = blockX+BLOCKS_X*blockY+(BLOCKS_X*BLOCKS_Y)*blockZ;
+			blockTypes.set( index , newType );
+			opacity.set( index , newType );
+			version++;
+			recordEdit( index , newType );
+			if ( newType != Block.Type.AIR ) {
+				setEmpty(false);
+			}
 			setChangedSinceLoad(true); // mark as dirty so chunk stored on disk will be updated
 			setMeshRebuildRequired(true);
 		}
@@ -244,6 +413,538 @@ public final class Chunk implements Poolable
 		chunkManager.chunkChanged( this );
 	}
 
+	public static int blockIndex(int blockX,int blockY,int blockZ) {
+		return blockX+BLOCKS_X*blockY+(BLOCKS_X*BLOCKS_Y)*blockZ;
+	}
+
+	/**
+	 * Returns the type of a block.
+	 *
+	 * @param blockIndex block index , see {@link #blockIndex(int, int, int)}
+	 * @return
+	 */
+	public byte getBlockType(int blockIndex) {
+		return blockTypes.get( blockIndex );
+	}
+
+	public byte getBlockType(int blockX,int blockY,int blockZ) {
+		return blockTypes.get( blockX+BLOCKS_X*blockY+(BLOCKS_X*BLOCKS_Y)*blockZ );
+	}
+
+	/**
+	 * Copies the types of all blocks into an array.
+	 *
+	 * @param types array to copy block types to , needs to hold at least {@link #BLOCK_COUNT} elements
+	 */
+	public void getBlockTypes(byte[] types) {
+		blockTypes.getAll( types );
+	}
+
+	/**
+	 * Changes the type of a block without
+	 * recording the change in the edit log or marking this chunk as changed.
+	 *
+	 * <p>Used when generating/loading chunks , use {@link #setBlockType(int, int, int, ChunkManager, byte)} to
+	 * edit chunks.</p>
+	 *
+	 * @param blockIndex
+	 * @param type
+	 */
+	public synchronized void putBlockType(int blockIndex,byte type) {
+		blockTypes.set( blockIndex , type );
+		opacity.set( blockIndex , type );
+		version++;
+	}
+
+	/**
+	 * Replaces the types of all blocks without
+	 * recording the change in the edit log or marking this chunk as changed.
+	 *
+	 * <p>Used when generating/loading chunks , use {@link #setBlockType(int, int, int, ChunkManager, byte)} to
+	 * edit chunks.</p>
+	 *
+	 * @param types array holding at least {@link #BLOCK_COUNT} block types
+	 */
+	public synchronized void setBlockTypes(byte[] types) {
+		blockTypes.setAll( types );
+		opacity.setAll( types );
+		version++;
+		updateEmptyFlag();
+	}
+
+	/**
+	 * Replaces the types of all blocks without
+	 * recording the change in the edit log or marking this chunk as changed.
+	 *
+	 * @param types
+	 * @see #copyBlockTypes()
+	 */
+	public synchronized void setBlockTypes(BrickBlockStorage types) {
+		blockTypes.setAll( types );
+		opacity.setAll( types );
+		version++;
+		updateEmptyFlag();
+	}
+
+	/**
+	 * Sets all blocks to the same type without
+	 * recording the change in the edit log or marking this chunk as changed.
+	 *
+	 * @param type
+	 */
+	public synchronized void fillBlockTypes(byte type) {
+		blockTypes.fill( type );
+		opacity.fill( type );
+		version++;
+		setEmpty( type == Block.Type.AIR );
+	}
+
+	// @GuardedBy( this )
+	private void updateEmptyFlag() {
+		setEmpty( blockTypes.getOccupiedBricks() == 0 );
+	}
+
+	/**
+	 * Returns a bit mask of all 8x8x8 bricks of this chunk that (may) contain
+	 * blocks other than air.
+	 *
+	 * @return
+	 * @see BrickBlockStorage#getOccupiedBricks()
+	 */
+	public long getOccupiedBricks() {
+		return blockTypes.getOccupiedBricks();
+	}
+
+	/**
+	 * Returns the opaque blocks of a row of blocks along the X axis.
+	 *
+	 * @param row row index , see {@link OpacityMask#rowIndex(int, int)}
+	 * @return bit mask , bit <code>x</code> is set if block <code>x</code> of the row is opaque
+	 */
+	public int getOpaqueRow(int row) {
+		return opacity.getOpaqueRow( row );
+	}
+
+	/**
+	 * Returns the translucent blocks (except air) of a row of blocks along the X axis.
+	 *
+	 * @param row row index , see {@link OpacityMask#rowIndex(int, int)}
+	 * @return bit mask , bit <code>x</code> is set if block <code>x</code> of the row is translucent but not air
+	 */
+	public int getTranslucentRow(int row) {
+		return opacity.getTranslucentRow( row );
+	}
+
+	/**
+	 * Returns whether this chunk (may) contain translucent blocks other than air.
+	 *
+	 * @return
+	 */
+	public boolean hasTranslucentBlocks() {
+		return opacity.hasTranslucentBlocks();
+	}
+
+	/**
+	 * Returns whether all blocks of this chunk have the same type.
+	 *
+	 * <p>Uniform chunks do not allocate any per-block storage , use {@link #getBlockType(int)} with
+	 * any block index to get the type.</p>
+	 *
+	 * <p>Note that this method may return <code>false</code> for a chunk that
+	 * became uniform through edits.</p>
+	 * @return
+	 */
+	public boolean isUniform() {
+		return blockTypes.isUniform();
+	}
+
+	/**
+	 * Returns a copy of this chunk's block types.
+	 *
+	 * <p>Takes constant time , see {@link BrickBlockStorage#snapshot()}.</p>
+	 *
+	 * @return
+	 */
+	public synchronized BrickBlockStorage copyBlockTypes() {
+		return blockTypes.snapshot();
+	}
+
+	/**
+	 * Returns an immutable snapshot of this chunk's blocks.
+	 *
+	 * <p>This method takes constant time , block data is only copied when this chunk gets modified later on.</p>
+	 *
+	 * @return
+	 */
+	public synchronized ChunkSnapshot snapshot() {
+		return new ChunkSnapshot( x , y , z , version , blockTypes.snapshot() , opacity.snapshot() );
+	}
+
+	/**
+	 * Returns this chunk's version (modification stamp).
+	 *
+	 * <p>The version increases whenever block types are modified , the mesh gets invalidated
+	 * or the chunk gets (re-)initialized or disposed.</p>
+	 *
+	 * @return
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the version of this chunk the currently published mesh was built from.
+	 *
+	 * @return version or -1 if no mesh has been published yet
+	 * @see #getVersion()
+	 */
+	public long getMeshVersion() {
+		return meshVersion;
+	}
+
+	/**
+	 * Marks a mesh built from a given version of this chunk as published.
+	 *
+	 * <p>Must be called while holding this chunk's lock , after checking that
+	 * the version is still current.</p>
+	 *
+	 * @param version
+	 */
+	public void setMeshVersion(long version)
+	{
+		meshVersion = version;
+		setMeshRebuildRequired( false );
+	}
+
+	/**
+	 * Requests a mesh rebuild , for example because an adjacent chunk changed.
+	 *
+	 * <p>Also increases this chunk's version so that rebuilds that are currently in progress
+	 * (and might not have seen the change) will not get published.</p>
+	 */
+	public synchronized void invalidateMesh()
+	{
+		version++;
+		setMeshRebuildRequired( true );
+	}
+
+	/**
+	 * Marks this chunk as having no mesh , block data is kept.
+	 *
+	 * <p>Like {@link #invalidateMesh()} , rebuilds that are currently in progress will not get published. The caller
+	 * is responsible for releasing the {@link #blockRenderer}'s mesh data and GPU buffers.</p>
+	 *
+	 * @see #hasMesh()
+	 */
+	public synchronized void discardMesh()
+	{
+		version++;
+		meshVersion = -1;
+		setMeshRebuildRequired( true );
+	}
+
+	/**
+	 * Returns whether a mesh has been published for this chunk.
+	 *
+	 * <p>The mesh might be outdated , see {@link #isMeshRebuildRequired()}.</p>
+	 *
+	 * @return
+	 */
+	public boolean hasMesh() {
+		return meshVersion != -1;
+	}
+
+	/**
+	 * Returns the light level used for rendering a block.
+	 *
+	 * @param blockIndex
+	 * @return the higher of the block's sky light and block light level
+	 */
+	public byte getLightLevel(int blockIndex)
+	{
+		return (byte) Math.max( getSkyLightLevel( blockIndex ) , getBlockLightLevel( blockIndex ) );
+	}
+
+	public byte getSkyLightLevel(int blockIndex)
+	{
+		final ByteBuffer segment = skyLightSegment;
+		return segment != null ? Nibbles.get( segment , blockIndex ) : skyLight.get( blockIndex );
+	}
+
+	public byte getBlockLightLevel(int blockIndex)
+	{
+		final ByteBuffer segment = blockLightSegment;
+		return segment != null ? Nibbles.get( segment , blockIndex ) : blockLight.get( blockIndex );
+	}
+
+	/**
+	 * Copies the light levels used for rendering (the higher of sky light and block light)
+	 * of all blocks into an array.
+	 *
+	 * @param levels array to copy light levels to , needs to hold at least {@link #BLOCK_COUNT} elements
+	 */
+	public void getLightLevels(byte[] levels)
+	{
+		getSkyLightLevels( levels );
+
+		final ByteBuffer segment = blockLightSegment;
+		if ( segment != null )
+		{
+			for ( int i = 0 ; i < BLOCK_COUNT ; i++ ) {
+				final byte level = Nibbles.get( segment , i );
+				if ( level > levels[i] ) {
+					levels[i] = level;
+				}
+			}
+		}
+		else if ( ! blockLight.isUniform() || blockLight.get( 0 ) != Block.MIN_LIGHT_LEVEL )
+		{
+			for ( int i = 0 ; i < BLOCK_COUNT ; i++ ) {
+				final byte level = blockLight.get( i );
+				if ( level > levels[i] ) {
+					levels[i] = level;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the sky light levels of all blocks into an array.
+	 *
+	 * @param levels array to copy light levels to , needs to hold at least {@link #BLOCK_COUNT} elements
+	 */
+	public void getSkyLightLevels(byte[] levels) {
+		getLightLevels( skyLight , skyLightSegment , levels );
+	}
+
+	/**
+	 * Copies the block light levels of all blocks into an array.
+	 *
+	 * @param levels array to copy light levels to , needs to hold at least {@link #BLOCK_COUNT} elements
+	 */
+	public void getBlockLightLevels(byte[] levels) {
+		getLightLevels( blockLight , blockLightSegment , levels );
+	}
+
+	private static void getLightLevels(PaletteBlockStorage heapStorage,ByteBuffer segment,byte[] levels)
+	{
+		if ( segment != null ) {
+			Nibbles.unpack( segment , levels , BLOCK_COUNT );
+		} else {
+			heapStorage.getAll( levels );
+		}
+	}
+
+	/**
+	 * Replaces the sky light levels of all blocks.
+	 *
+	 * <p>If this chunk stores light levels off-heap and not all blocks have the same light level , an off-heap segment
+	 * gets allocated that is kept until all blocks are set to the same level or the chunk is disposed. Light levels
+	 * of disposed chunks are not stored at all.</p>
+	 *
+	 * @param levels array holding at least {@link #BLOCK_COUNT} light levels
+	 */
+	public synchronized void setSkyLightLevels(byte[] levels) {
+		skyLightSegment = setLightLevels( skyLight , skyLightSegment , levels );
+	}
+
+	/**
+	 * Replaces the block light levels of all blocks.
+	 *
+	 * @param levels array holding at least {@link #BLOCK_COUNT} light levels
+	 * @see #setSkyLightLevels(byte[])
+	 */
+	public synchronized void setBlockLightLevels(byte[] levels) {
+		blockLightSegment = setLightLevels( blockLight , blockLightSegment , levels );
+	}
+
+	/**
+	 * Sets the sky light of all blocks to the same level.
+	 *
+	 * @param level
+	 */
+	public synchronized void fillSkyLightLevels(byte level) {
+		skyLightSegment = fillLightLevels( skyLight , skyLightSegment , level );
+	}
+
+	/**
+	 * Sets the block light of all blocks to the same level.
+	 *
+	 * @param level
+	 */
+	public synchronized void fillBlockLightLevels(byte level) {
+		blockLightSegment = fillLightLevels( blockLight , blockLightSegment , level );
+	}
+
+	// @GuardedBy( this )
+	private ByteBuffer setLightLevels(PaletteBlockStorage heapStorage,ByteBuffer segment,byte[] levels)
+	{
+		if ( isDisposed() ) { // nobody would ever free the segment
+			return fillLightLevels( heapStorage , segment , Block.MIN_LIGHT_LEVEL );
+		}
+		if ( offHeapAllocator == null ) {
+			heapStorage.setAll( levels );
+			return null;
+		}
+
+		final byte first = levels[0];
+		boolean uniform = true;
+		for ( int i = 1 ; i < BLOCK_COUNT ; i++ ) {
+			if ( levels[i] != first ) {
+				uniform = false;
+				break;
+			}
+		}
+		if ( uniform ) { // a uniform palette takes (almost) no memory at all
+			return fillLightLevels( heapStorage , segment , first );
+		}
+
+		final ByteBuffer result = segment != null ? segment : offHeapAllocator.allocate();
+		Nibbles.pack( levels , result , BLOCK_COUNT );
+		return result;
+	}
+
+	// @GuardedBy( this )
+	private ByteBuffer fillLightLevels(PaletteBlockStorage heapStorage,ByteBuffer segment,byte level)
+	{
+		heapStorage.fill( level );
+		if ( segment != null ) {
+			offHeapAllocator.free( segment );
+		}
+		return null;
+	}
+
+	// @GuardedBy( this )
+	private void releaseOffHeapMemory()
+	{
+		fillSkyLightLevels( Block.MIN_LIGHT_LEVEL );
+		fillBlockLightLevels( Block.MIN_LIGHT_LEVEL );
+	}
+
+	/**
+	 * Returns the (approximate) number of bytes of heap memory used
+	 * to store block types and light levels.
+	 *
+	 * @return
+	 */
+	public int getBlockStorageSizeInBytes()
+	{
+		return blockTypes.getSizeInBytes() + opacity.getSizeInBytes() +
+				( skyLightSegment != null ? 0 : skyLight.getSizeInBytes() ) +
+				( blockLightSegment != null ? 0 : blockLight.getSizeInBytes() );
+	}
+
+	/**
+	 * Returns the number of bytes of off-heap memory used by this chunk.
+	 *
+	 * @return
+	 */
+	public int getOffHeapSizeInBytes()
+	{
+		final ByteBuffer sky = skyLightSegment;
+		final ByteBuffer block = blockLightSegment;
+		return ( sky != null ? sky.capacity() : 0 ) + ( block != null ? block.capacity() : 0 );
+	}
+
+	// @GuardedBy( this )
+	private void recordEdit(int blockIndex,byte newType)
+	{
+		if ( edits == null ) {
+			return;
+		}
+
+		final int edit = ( blockIndex << 8 ) | ( newType & 0xff );
+		if ( editSlots != null )
+		{
+			final int mask = editSlots.length - 1;
+			for ( int i = editSlot( blockIndex ) ; editSlots[i] != 0 ; i = ( i + 1 ) & mask )
+			{
+				final int position = editSlots[i] - 1;
+				if ( ( edits[ position ] >>> 8 ) == blockIndex ) {
+					edits[ position ] = edit;
+					return;
+				}
+			}
+		}
+
+		if ( editCount == Constants.MAX_DELTA_EDITS ) {
+			edits = null; // too many edits, fall back to storing full snapshots
+			editSlots = null;
+			return;
+		}
+		if ( editCount == edits.length ) {
+			edits = Arrays.copyOf( edits , Math.min( Constants.MAX_DELTA_EDITS , Math.max( 16 , edits.length * 2 ) ) );
+			rebuildEditSlots();
+		}
+		addEditSlot( blockIndex , editCount );
+		edits[editCount++] = edit;
+	}
+
+	// (re-)creates the hash table for the current edit log , large enough to hold all edits that fit into 'edits'
+	// @GuardedBy( this )
+	private void rebuildEditSlots()
+	{
+		if ( edits == null || edits.length == 0 ) {
+			editSlots = null;
+			return;
+		}
+		int capacity = 16;
+		while ( capacity < edits.length * 2 ) {
+			capacity <<= 1;
+		}
+		editSlots = new short[ capacity ];
+		for ( int i = 0 ; i < editCount ; i++ ) {
+			addEditSlot( edits[i] >>> 8 , i );
+		}
+	}
+
+	// @GuardedBy( this )
+	private int editSlot(int blockIndex) {
+		// golden ratio , spreads block indices that only differ in their high bits (same X/Y , different Z)
+		return ( blockIndex * 0x9E3779B9 ) >>> ( 32 - Integer.numberOfTrailingZeros( editSlots.length ) );
+	}
+
+	// @GuardedBy( this )
+	private void addEditSlot(int blockIndex,int position)
+	{
+		final int mask = editSlots.length - 1;
+		int i = editSlot( blockIndex );
+		while ( editSlots[i] != 0 ) {
+			i = ( i + 1 ) & mask;
+		}
+		editSlots[i] = (short) ( position + 1 );
+	}
+
+	/**
+	 * Returns all edits made through {@link #setBlockType(int, int, int, ChunkManager, byte)} since
+	 * this chunk got generated.
+	 *
+	 * @return edits as ( blockIndex << 8 | newType ) or <code>null</code> if edits are not tracked
+	 * (because there were too many or the chunk was loaded from a full snapshot)
+	 * @see #setEditLog(int[])
+	 */
+	public synchronized int[] getEditLog() {
+		return edits == null ? null : Arrays.copyOf( edits , editCount );
+	}
+
+	/**
+	 * Replaces this chunk's edit log.
+	 *
+	 * @param edits edits as ( blockIndex << 8 | newType ) or <code>null</code> to stop tracking edits
+	 * @see #getEditLog()
+	 */
+	public synchronized void setEditLog(int[] edits)
+	{
+		if ( edits == null ) {
+			this.edits = null;
+			this.editCount = 0;
+		} else {
+			this.edits = edits.clone();
+			this.editCount = edits.length;
+		}
+		rebuildEditSlots();
+	}
+
 	private void invalidateAdjacentChunks(int blockX, int blockY, int blockZ,ChunkManager chunkManager)
 	{
 		// trigger mesh rebuild on adjacent chunks (but only if they're loaded)
@@ -252,40 +953,34 @@ public final class Chunk implements Poolable
 		if ( blockX == 0 ) {
 			final Chunk adj = maybeGetLeftNeighbour( chunkManager );
 			if ( adj != null ) {
-				adj.setMeshRebuildRequired(true);
-				System.out.println( "Invalidating left: "+adj);
+				adj.invalidateMesh();
 			}
 		} else if ( blockX == Chunk.BLOCKS_X-1 ) {
 			final Chunk adj = maybeGetRightNeighbour( chunkManager );
 			if ( adj != null ) {
-				adj.setMeshRebuildRequired(true);
-				System.out.println( "Invalidating right: "+adj);
+				adj.invalidateMesh();
 			}
 		}
 		if ( blockY == 0 ) {
 			final Chunk adj = maybeGetBottomNeighbour( chunkManager );
 			if ( adj != null ) {
-				adj.setMeshRebuildRequired(true);
-				System.out.println( "Invalidating bottom: "+adj);
+				adj.invalidateMesh();
 			}
 		} else if ( blockY == BLOCKS_Y-1 ) {
 			final Chunk adj = maybeGetTopNeighbour( chunkManager );
 			if ( adj != null ) {
-				adj.setMeshRebuildRequired(true);
-				System.out.println( "Invalidating top: "+adj);
+				adj.invalidateMesh();
 			}
 		}
 		if ( blockZ == 0 ) {
 			final Chunk adj = maybeGetFrontNeighbour( chunkManager );
 			if ( adj != null ) {
-				adj.setMeshRebuildRequired(true);
-				System.out.println( "Invalidating front: "+adj);
+				adj.invalidateMesh();
 			}
 		} else if ( blockY == BLOCKS_Z-1 ) {
 			final Chunk adj = maybeGetBackNeighbour( chunkManager );
 			if ( adj != null ) {
-				adj.setMeshRebuildRequired(true);
-				System.out.println( "Invalidating back: "+adj);
+				adj.invalidateMesh();
 			}
 		}
 	}
@@ -365,29 +1060,45 @@ public final class Chunk implements Poolable
 		boolean hit = false;
 		final Vector3 closestHitpointOnBlock = new Vector3();
 
-		for ( int x = 0 ; x < BLOCKS_X ; x++ )
+		final long occupied = blockTypes.getOccupiedBricks();
+		for ( int brick = 0 ; brick < BrickBlockStorage.BRICK_COUNT ; brick++ )
 		{
-			for ( int y = 0 ; y < BLOCKS_Y ; y++ )
+			if ( ( occupied & ( 1L << brick ) ) == 0 ) { // brick has only empty blocks
+				continue;
+			}
+			final int x0 = ( brick % BrickBlockStorage.BRICKS_X ) * BrickBlockStorage.BRICK_SIZE;
+			final int y0 = ( ( brick / BrickBlockStorage.BRICKS_X ) % BrickBlockStorage.BRICKS_Y ) * BrickBlockStorage.BRICK_SIZE;
+			final int z0 = ( brick / ( BrickBlockStorage.BRICKS_X * BrickBlockStorage.BRICKS_Y ) ) * BrickBlockStorage.BRICK_SIZE;
+
+			populateBrickBoundingBox( x0 , y0 , z0 , TMP_BB );
+			if ( ! Intersector.intersectRayBoundsFast( ray , TMP_BB ) ) {
+				continue;
+			}
+
+			for ( int x = x0 ; x < x0 + BrickBlockStorage.BRICK_SIZE ; x++ )
 			{
-				for ( int z = 0 ; z < BLOCKS_Z ; z++ )
+				for ( int y = y0 ; y < y0 + BrickBlockStorage.BRICK_SIZE ; y++ )
 				{
-					if ( Block.isAirBlock( blockType[x+BLOCKS_X*y+(BLOCKS_X*BLOCKS_Y)*z] ) ) { // do not intersect with empty blocks
-						continue;
-					}
+					for ( int z = z0 ; z < z0 + BrickBlockStorage.BRICK_SIZE ; z++ )
+					{
+						if ( Block.isAirBlock( blockTypes.get( x+BLOCKS_X*y+(BLOCKS_X*BLOCKS_Y)*z ) ) ) { // do not intersect with empty blocks
+							continue;
+						}
 
-					populateBlockBoundingBox( x , y, z , TMP_BB );
+						populateBlockBoundingBox( x , y, z , TMP_BB );
 
-					if ( Intersector.intersectRayBounds(ray, TMP_BB,hitPointOnBlock) )
-					{
-						final float distance = hitPointOnBlock.dst2( ray.origin );
-						if ( ! hit || distance < distanceToHitSquared )
+						if ( Intersector.intersectRayBounds(ray, TMP_BB,hitPointOnBlock) )
 						{
-							hit = true;
-							closestHitpointOnBlock.set( hitPointOnBlock );
-							result.x = x;
-							result.y = y;
-							result.z = z;
-							distanceToHitSquared = distance;
+							final float distance = hitPointOnBlock.dst2( ray.origin );
+							if ( ! hit || distance < distanceToHitSquared )
+							{
+								hit = true;
+								closestHitpointOnBlock.set( hitPointOnBlock );
+								result.x = x;
+								result.y = y;
+								result.z = z;
+								distanceToHitSquared = distance;
+							}
 						}
 					}
 				}
@@ -430,10 +1141,21 @@ public final class Chunk implements Poolable
 		box.set(box.min,box.max);
 	}
 
+	private void populateBrickBoundingBox(int firstBlockX,int firstBlockY,int firstBlockZ,BoundingBox box)
+	{
+		final float x1 = boundingBox.min.x + firstBlockX * BLOCK_WIDTH;
+		final float y1 = boundingBox.min.y + firstBlockY * BLOCK_HEIGHT;
+		final float z1 = boundingBox.min.z + firstBlockZ * BLOCK_DEPTH;
+
+		box.min.set(x1,y1,z1);
+		box.max.set(x1+BrickBlockStorage.BRICK_SIZE*BLOCK_WIDTH,y1+BrickBlockStorage.BRICK_SIZE*BLOCK_HEIGHT,z1+BrickBlockStorage.BRICK_SIZE*BLOCK_DEPTH);
+		box.set(box.min,box.max);
+	}
+
 	@Override
 	public String toString()
 	{
-	    return "Chunk ("+x+","+y+","+z+" , access counter = "+accessCounter+" , "+flagsToString()+" )";
+	    return "Chunk ("+x+","+y+","+z+" , referenced = "+referenced+" , "+flagsToString()+" )";
 	}
 
 	/**
@@ -447,7 +1169,13 @@ public final class Chunk implements Poolable
 	{
 		blockRenderer.dispose();
 		renderedBlockCount = 0;
-		setFlag(FLAG_DISPOSED,true);
+		synchronized(this) {
+			// set while holding the lock so that rebuilds finishing late can't allocate off-heap memory again
+			setFlag(FLAG_DISPOSED,true);
+			releaseOffHeapMemory();
+			version++;
+			meshVersion = -1;
+		}
 	}
 
 	public boolean getBlockContaining(Vector3 worldCoords, Hit hit)
@@ -474,18 +1202,34 @@ public final class Chunk implements Poolable
 
 	public boolean intersectsNonEmptyBlock(BoundingBox toTest)
 	{
-		for ( int x = 0 ; x < Chunk.BLOCKS_X ; x++ )
+		final long occupied = blockTypes.getOccupiedBricks();
+		for ( int brick = 0 ; brick < BrickBlockStorage.BRICK_COUNT ; brick++ )
 		{
-			for ( int y = 0 ; y < Chunk.BLOCKS_Y ; y++ )
+			if ( ( occupied & ( 1L << brick ) ) == 0 ) { // brick has only empty blocks
+				continue;
+			}
+			final int x0 = ( brick % BrickBlockStorage.BRICKS_X ) * BrickBlockStorage.BRICK_SIZE;
+			final int y0 = ( ( brick / BrickBlockStorage.BRICKS_X ) % BrickBlockStorage.BRICKS_Y ) * BrickBlockStorage.BRICK_SIZE;
+			final int z0 = ( brick / ( BrickBlockStorage.BRICKS_X * BrickBlockStorage.BRICKS_Y ) ) * BrickBlockStorage.BRICK_SIZE;
+
+			populateBrickBoundingBox( x0 , y0 , z0 , TMP_BB );
+			if ( ! intersects( toTest , TMP_BB ) ) {
+				continue;
+			}
+
+			for ( int x = x0 ; x < x0 + BrickBlockStorage.BRICK_SIZE ; x++ )
 			{
-				for ( int z = 0 ; z < Chunk.BLOCKS_Z ; z++ )
+				for ( int y = y0 ; y < y0 + BrickBlockStorage.BRICK_SIZE ; y++ )
 				{
-					if ( Block.isNoAirBlock( blockType[x+BLOCKS_X*y+(BLOCKS_X*BLOCKS_Y)*z] ) )
+					for ( int z = z0 ; z < z0 + BrickBlockStorage.BRICK_SIZE ; z++ )
 					{
-						populateBlockBoundingBox( x , y , z , TMP_BB );
-						if ( intersects(toTest, TMP_BB ) )
+						if ( Block.isNoAirBlock( blockTypes.get( x+BLOCKS_X*y+(BLOCKS_X*BLOCKS_Y)*z ) ) )
 						{
-							return true;
+							populateBlockBoundingBox( x , y , z , TMP_BB );
+							if ( intersects(toTest, TMP_BB ) )
+							{
+								return true;
+							}
 						}
 					}
 				}
@@ -0,0 +1,119 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.util.Arrays;
+
+/**
+ * CLOCK (second chance) ring of chunks that may be evicted from the chunk cache.
+ *
+ * <p>Accessing a chunk just sets its reference bit ({@link Chunk#touch()}) , so
+ * readers never need a lock. When a chunk needs to be evicted , the clock hand moves
+ * along the ring , clearing reference bits until it finds a chunk that has not been accessed since the
+ * hand last passed it. Each chunk is passed at most twice , so eviction takes constant amortized time.</p>
+ *
+ * <p>Chunks that must not be evicted (because they are within view range of the camera) are not
+ * part of the ring at all , they are {@link #remove(Chunk) removed} when the camera moves towards them and
+ * {@link #add(Chunk) added} again once they are out of range. Chunks know their position inside the ring , so
+ * both operations take constant time.</p>
+ *
+ * <p>Thread-safety: This class is NOT thread-safe , except for {@link Chunk#touch()}.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class ChunkClock
+{
+	private Chunk[] ring;
+	private int size;
+	private int hand;
+
+	public ChunkClock() {
+		this(16);
+	}
+
+	public ChunkClock(int initialCapacity) {
+		this.ring = new Chunk[ Math.max( 1 , initialCapacity ) ];
+	}
+
+	/**
+	 * Adds a chunk to the ring , does nothing if the chunk is already part of it.
+	 *
+	 * @param chunk
+	 */
+	public void add(Chunk chunk)
+	{
+		if ( chunk.clockIndex != -1 ) {
+			return;
+		}
+		if ( size == ring.length ) {
+			ring = Arrays.copyOf( ring , size * 2 );
+		}
+		ring[ size ] = chunk;
+		chunk.clockIndex = size;
+		size++;
+	}
+
+	/**
+	 * Removes a chunk from the ring , does nothing if the chunk is not part of it.
+	 *
+	 * @param chunk
+	 */
+	public void remove(Chunk chunk)
+	{
+		final int index = chunk.clockIndex;
+		if ( index == -1 ) {
+			return;
+		}
+		chunk.clockIndex = -1;
+		size--;
+		if ( index != size )
+		{
+			// move last chunk into the gap
+			final Chunk last = ring[ size ];
+			ring[ index ] = last;
+			last.clockIndex = index;
+		}
+		ring[ size ] = null;
+		if ( hand >= size ) {
+			hand = 0;
+		}
+	}
+
+	/**
+	 * Picks a chunk to evict and removes it from the ring.
+	 *
+	 * @return chunk that has not been accessed recently or <code>null</code> if the ring is empty
+	 */
+	public Chunk evict()
+	{
+		if ( size == 0 ) {
+			return null;
+		}
+		while ( true )
+		{
+			final Chunk candidate = ring[ hand ];
+			if ( candidate.clearReferenced() ) {
+				hand = ( hand + 1 ) % size;
+				continue;
+			}
+			remove( candidate );
+			return candidate;
+		}
+	}
+
+	public boolean contains(Chunk chunk) {
+		return chunk.clockIndex != -1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear()
+	{
+		for ( int i = 0 ; i < size ; i++ ) {
+			ring[i].clockIndex = -1;
+		}
+		Arrays.fill( ring , 0 , size , null );
+		size = 0;
+		hand = 0;
+	}
+}
@@ -0,0 +1,309 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes/decodes a chunk's block types to/from a compact binary representation.
+ *
+ * <p>Each codec is identified by a unique ID that gets stored in the
+ * header of a chunk record , see {@link ChunkFormat}.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ * @see ChunkFormat#encode(byte[])
+ */
+public abstract class ChunkCodec
+{
+	/**
+	 * Stores block types as-is.
+	 */
+	public static final ChunkCodec RAW = new RawCodec();
+
+	/**
+	 * Stores runs of blocks with the same type as (type,run length) tuples.
+	 */
+	public static final ChunkCodec RUN_LENGTH = new RunLengthCodec();
+
+	/**
+	 * Stores a palette of all block types used in a chunk followed
+	 * by palette indices packed into 0,1,2,4 or 8 bits each.
+	 */
+	public static final ChunkCodec PALETTE = new PaletteCodec();
+
+	private static final ChunkCodec[] CODECS = { RAW , RUN_LENGTH , PALETTE };
+
+	public final byte id;
+	public final String name;
+
+	protected ChunkCodec(int id,String name)
+	{
+		this.id = (byte) id;
+		this.name = name;
+	}
+
+	/**
+	 * Look up codec by ID.
+	 *
+	 * @param id
+	 * @return
+	 * @throws IOException if there is no codec with this ID
+	 */
+	public static ChunkCodec getCodec(int id) throws IOException
+	{
+		for ( final ChunkCodec codec : CODECS )
+		{
+			if ( codec.id == id ) {
+				return codec;
+			}
+		}
+		throw new IOException("Unknown chunk codec: "+id);
+	}
+
+	/**
+	 * Encode block types.
+	 *
+	 * @param blocks block types to encode
+	 * @param out array to write encoded data to
+	 * @param offset offset in <code>out</code> where to start writing
+	 * @param maxLength max. number of bytes to write
+	 * @return number of bytes written or -1 if the encoded data would've taken more than <code>maxLength</code> bytes
+	 */
+	public abstract int encode(byte[] blocks,byte[] out,int offset,int maxLength);
+
+	/**
+	 * Decode block types.
+	 *
+	 * @param in buffer to read encoded data from, all remaining bytes will be consumed
+	 * @param blocks array to store decoded block types in
+	 * @throws IOException if the input is malformed
+	 */
+	public final void decode(ByteBuffer in,byte[] blocks) throws IOException
+	{
+		try {
+			doDecode(in,blocks);
+		}
+		catch(final BufferUnderflowException e) {
+			throw new IOException("Premature end of input while decoding "+name+" data");
+		}
+		if ( in.hasRemaining() ) {
+			throw new IOException("Trailing garbage ("+in.remaining()+" bytes) after "+name+" data");
+		}
+	}
+
+	protected abstract void doDecode(ByteBuffer in,byte[] blocks) throws IOException;
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	protected static final class RawCodec extends ChunkCodec {
+
+		public RawCodec() {
+			super(0,"raw");
+		}
+
+		@Override
+		public int encode(byte[] blocks, byte[] out, int offset, int maxLength)
+		{
+			if ( blocks.length > maxLength ) {
+				return -1;
+			}
+			System.arraycopy( blocks , 0 , out , offset , blocks.length );
+			return blocks.length;
+		}
+
+		@Override
+		protected void doDecode(ByteBuffer in, byte[] blocks) throws IOException
+		{
+			if ( in.remaining() != blocks.length ) {
+				throw new IOException("Expected "+blocks.length+" bytes of raw data but got "+in.remaining());
+			}
+			in.get( blocks );
+		}
+	}
+
+	protected static final class RunLengthCodec extends ChunkCodec {
+
+		public RunLengthCodec() {
+			super(1,"run-length");
+		}
+
+		@Override
+		public int encode(byte[] blocks, byte[] out, int offset, int maxLength)
+		{
+			final int len = blocks.length;
+			final int end = offset + maxLength;
+			int ptr = offset;
+			int i = 0;
+			while ( i < len )
+			{
+				final byte type = blocks[i];
+				int j = i+1;
+				while ( j < len && blocks[j] == type ) {
+					j++;
+				}
+				if ( ptr + 1 + varIntSize( j - i ) > end ) {
+					return -1;
+				}
+				out[ptr++] = type;
+				ptr = writeVarInt( j - i , out , ptr );
+				i = j;
+			}
+			return ptr - offset;
+		}
+
+		@Override
+		protected void doDecode(ByteBuffer in, byte[] blocks) throws IOException
+		{
+			final int len = blocks.length;
+			int ptr = 0;
+			while ( ptr < len )
+			{
+				final byte type = in.get();
+				final int runLength = readVarInt( in );
+				if ( runLength <= 0 || ptr + runLength > len ) {
+					throw new IOException("Invalid run length "+runLength+" at offset "+ptr);
+				}
+				Arrays.fill( blocks , ptr , ptr + runLength , type );
+				ptr += runLength;
+			}
+		}
+
+		private static int varIntSize(int value)
+		{
+			int result = 1;
+			while ( ( value >>>= 7 ) != 0 ) {
+				result++;
+			}
+			return result;
+		}
+
+		private static int writeVarInt(int value,byte[] out,int ptr)
+		{
+			while ( ( value & ~0x7f ) != 0 )
+			{
+				out[ptr++] = (byte) ( ( value & 0x7f ) | 0x80 );
+				value >>>= 7;
+			}
+			out[ptr++] = (byte) value;
+			return ptr;
+		}
+
+		private static int readVarInt(ByteBuffer in) throws IOException
+		{
+			int result = 0;
+			for ( int shift = 0 ; shift < 32 ; shift += 7 )
+			{
+				final int b = in.get();
+				result |= ( b & 0x7f ) << shift;
+				if ( ( b & 0x80 ) == 0 ) {
+					return result;
+				}
+			}
+			throw new IOException("Malformed run length");
+		}
+	}
+
+	protected static final class PaletteCodec extends ChunkCodec {
+
+		public PaletteCodec() {
+			super(2,"palette");
+		}
+
+		protected static int bitsPerEntry(int paletteSize)
+		{
+			if ( paletteSize <= 1 ) {
+				return 0;
+			}
+			if ( paletteSize <= 2 ) {
+				return 1;
+			}
+			if ( paletteSize <= 4 ) {
+				return 2;
+			}
+			if ( paletteSize <= 16 ) {
+				return 4;
+			}
+			return 8;
+		}
+
+		@Override
+		public int encode(byte[] blocks, byte[] out, int offset, int maxLength)
+		{
+			// build palette
+			final int[] paletteIndex = new int[256];
+			Arrays.fill( paletteIndex , -1 );
+			final byte[] palette = new byte[256];
+			int paletteSize = 0;
+			for ( int i = 0 ; i < blocks.length ; i++ )
+			{
+				final int type = blocks[i] & 0xff;
+				if ( paletteIndex[type] == -1 ) {
+					paletteIndex[type] = paletteSize;
+					palette[paletteSize++] = blocks[i];
+				}
+			}
+
+			final int bits = bitsPerEntry( paletteSize );
+			final int dataLength = ( blocks.length * bits + 7 ) / 8;
+			final int length = 1 + paletteSize + dataLength;
+			if ( length > maxLength ) {
+				return -1;
+			}
+
+			int ptr = offset;
+			out[ptr++] = (byte) ( paletteSize - 1 );
+			System.arraycopy( palette , 0 , out , ptr , paletteSize );
+			ptr += paletteSize;
+
+			if ( bits > 0 )
+			{
+				final int len = blocks.length;
+				int i = 0;
+				while ( i < len )
+				{
+					int value = 0;
+					for ( int shift = 0 ; shift < 8 && i < len ; shift += bits ) {
+						value |= paletteIndex[ blocks[i++] & 0xff ] << shift;
+					}
+					out[ptr++] = (byte) value;
+				}
+			}
+			return length;
+		}
+
+		@Override
+		protected void doDecode(ByteBuffer in, byte[] blocks) throws IOException
+		{
+			final int paletteSize = ( in.get() & 0xff ) + 1;
+			final byte[] palette = new byte[ paletteSize ];
+			in.get( palette );
+
+			final int bits = bitsPerEntry( paletteSize );
+			if ( bits == 0 ) {
+				Arrays.fill( blocks , palette[0] );
+				return;
+			}
+
+			final int entriesPerByte = 8 / bits;
+			final int mask = ( 1 << bits ) - 1;
+			final int len = blocks.length;
+			int i = 0;
+			while ( i < len )
+			{
+				final int value = in.get() & 0xff;
+				for ( int j = 0 ; j < entriesPerByte && i < len ; j++ , i++ )
+				{
+					final int index = ( value >>> ( j * bits ) ) & mask;
+					if ( index >= paletteSize ) {
+						throw new IOException("Palette index "+index+" out of range (palette size: "+paletteSize+")");
+					}
+					blocks[i] = palette[ index ];
+				}
+			}
+		}
+	}
+}
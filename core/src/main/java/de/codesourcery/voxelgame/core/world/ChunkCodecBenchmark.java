@@ -0,0 +1,82 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Benchmark comparing compression ratio and encoding/decoding throughput
+ * of all {@link ChunkCodec}s on generated chunks.
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public class ChunkCodecBenchmark {
+
+	private static final int CHUNKS = 64;
+
+	private static final int ROUNDS = 5;
+
+	private static final int ITERATIONS = 20;
+
+	private static final ChunkCodec[] CODECS = { ChunkCodec.RAW , ChunkCodec.RUN_LENGTH , ChunkCodec.PALETTE , null };
+
+	public static void main(String[] args) throws IOException
+	{
+		benchmark( "noise" , new NoiseChunkFactory( 0xdeadbeef ) );
+		benchmark( "debug" , new DebugChunkFactory() );
+	}
+
+	private static void benchmark(String name,IChunkFactory factory) throws IOException
+	{
+		System.out.println("Generating "+CHUNKS+" '"+name+"' chunks...");
+		final byte[][] chunks = new byte[ CHUNKS ][];
+		for ( int i = 0 ; i < CHUNKS ; i++ )
+		{
+			final Chunk chunk = factory.createChunk( i % 4 , (i/4) % 4 , i / 16 );
+			chunks[i] = new byte[ Chunk.BLOCK_COUNT ];
+			chunk.getBlockTypes( chunks[i] );
+			factory.returnChunkToPool( chunk );
+		}
+
+		final byte[] decoded = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int round = 1 ; round <= ROUNDS ; round++ )
+		{
+			System.out.println("=== Round "+round+" / "+ROUNDS+" ===");
+			for ( final ChunkCodec codec : CODECS )
+			{
+				long totalSize = 0;
+				long encodeTime = 0;
+				long decodeTime = 0;
+				for ( final byte[] blocks : chunks )
+				{
+					byte[] record = null;
+					long time = -System.nanoTime();
+					for ( int i = 0 ; i < ITERATIONS ; i++ ) {
+						record = codec == null ? ChunkFormat.encode( blocks ) : ChunkFormat.encode( blocks , codec );
+					}
+					encodeTime += time + System.nanoTime();
+
+					if ( record == null ) { // too large
+						record = ChunkFormat.encode( blocks , ChunkCodec.RAW );
+					}
+					totalSize += record.length;
+
+					time = -System.nanoTime();
+					for ( int i = 0 ; i < ITERATIONS ; i++ ) {
+						ChunkFormat.decode( ByteBuffer.wrap( record ) , decoded );
+					}
+					decodeTime += time + System.nanoTime();
+
+					if ( ! Arrays.equals( blocks , decoded ) ) {
+						throw new RuntimeException("Internal error, codec "+codec+" failed to round-trip");
+					}
+				}
+				final float megaBytes = CHUNKS * (float) ITERATIONS * Chunk.BLOCK_COUNT / ( 1024f * 1024f );
+				System.out.println( ( codec == null ? "auto" : codec.name )+" : avg. record size "+( totalSize / CHUNKS )+" bytes "+
+						"(ratio "+( ( CHUNKS * (float) Chunk.BLOCK_COUNT ) / totalSize )+":1) , "+
+						"encode "+(int) ( megaBytes / ( encodeTime / 1000000000f ) )+" MB/s , "+
+						"decode "+(int) ( megaBytes / ( decodeTime / 1000000000f ) )+" MB/s");
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * On-disk format of a chunk record.
+ *
+ * <pre>
+ * int  magic   ( {@link #MAGIC} )
+ * byte version ( {@link #VERSION} )
+ * byte codec   ( {@link ChunkCodec#id} )
+ * byte[] data  ( encoded block types , all remaining bytes of the record )
+ * </pre>
+ *
+ * <p>Delta records (codec ID {@link #DELTA_CODEC_ID}) do not hold a chunk's block types but a list of edits
+ * that need to be applied on top of a freshly generated chunk , each edit taking 3 bytes (block index as big-endian <code>short</code>,
+ * new block type).</p>
+ *
+ * <p>Records of exactly {@link #UNIFORM_RECORD_SIZE} byte (without any header) describe chunks
+ * where all blocks have the same type , the record's only byte is the block type.</p>
+ *
+ * <p>Records of exactly {@link #LEGACY_RECORD_SIZE} bytes are legacy records that hold
+ * a raw dump of a chunk's block types (without any header).</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class ChunkFormat
+{
+	public static final int MAGIC = 0x56584348; // 'VXCH'
+
+	public static final byte VERSION = 1;
+
+	public static final int HEADER_SIZE = 4+1+1;
+
+	public static final int LEGACY_RECORD_SIZE = Chunk.BLOCK_COUNT;
+
+	public static final int UNIFORM_RECORD_SIZE = 1;
+
+	public static final byte DELTA_CODEC_ID = 3;
+
+	private static final int DELTA_EDIT_SIZE = 3;
+
+	// max. size of a record written by this class
+	public static final int MAX_RECORD_SIZE = HEADER_SIZE + Chunk.BLOCK_COUNT;
+
+	// codecs to try when encoding, RAW is always used as fall-back
+	private static final ChunkCodec[] CANDIDATES = { ChunkCodec.PALETTE , ChunkCodec.RUN_LENGTH };
+
+	private static final ThreadLocal<byte[][]> SCRATCH = new ThreadLocal<byte[][]>() {
+
+		@Override
+		protected byte[][] initialValue() {
+			return new byte[][] { new byte[ MAX_RECORD_SIZE ] , new byte[ MAX_RECORD_SIZE ] };
+		}
+	};
+
+	private ChunkFormat() {
+	}
+
+	/**
+	 * Encodes block types using the codec that yields the smallest output.
+	 *
+	 * @param blocks
+	 * @return chunk record (including header unless all blocks have the same type)
+	 */
+	public static byte[] encode(byte[] blocks)
+	{
+		if ( isUniform( blocks ) ) {
+			return encodeUniform( blocks[0] );
+		}
+
+		final byte[][] scratch = SCRATCH.get();
+
+		byte[] best = null;
+		ChunkCodec bestCodec = ChunkCodec.RAW;
+		int bestLength = blocks.length;
+		for ( final ChunkCodec codec : CANDIDATES )
+		{
+			final byte[] buffer = scratch[0] != best ? scratch[0] : scratch[1];
+			final int len = codec.encode( blocks , buffer , HEADER_SIZE , bestLength - 1 );
+			// make sure we never produce a record that could be mistaken for a legacy one
+			if ( len != -1 && HEADER_SIZE + len != LEGACY_RECORD_SIZE )
+			{
+				best = buffer;
+				bestCodec = codec;
+				bestLength = len;
+			}
+		}
+
+		final byte[] result = new byte[ HEADER_SIZE + bestLength ];
+		if ( best == null ) {
+			ChunkCodec.RAW.encode( blocks , result , HEADER_SIZE , bestLength );
+		} else {
+			System.arraycopy( best , HEADER_SIZE , result , HEADER_SIZE , bestLength );
+		}
+		writeHeader( bestCodec , result );
+		return result;
+	}
+
+	/**
+	 * Encodes block types using a specific codec.
+	 *
+	 * @param blocks
+	 * @param codec
+	 * @return chunk record (including header) or <code>null</code> if the encoded data
+	 * would've been larger than {@link #MAX_RECORD_SIZE} or the size of a legacy record
+	 */
+	public static byte[] encode(byte[] blocks,ChunkCodec codec)
+	{
+		final byte[] buffer = SCRATCH.get()[0];
+		final int len = codec.encode( blocks , buffer , HEADER_SIZE , MAX_RECORD_SIZE - HEADER_SIZE );
+		if ( len == -1 || HEADER_SIZE + len == LEGACY_RECORD_SIZE ) {
+			return null;
+		}
+		final byte[] result = new byte[ HEADER_SIZE + len ];
+		System.arraycopy( buffer , HEADER_SIZE , result , HEADER_SIZE , len );
+		writeHeader( codec , result );
+		return result;
+	}
+
+	/**
+	 * Creates a record for a chunk where all blocks have the same type.
+	 *
+	 * @param blockType
+	 * @return
+	 * @see #isUniform(ByteBuffer)
+	 */
+	public static byte[] encodeUniform(byte blockType) {
+		return new byte[] { blockType };
+	}
+
+	private static boolean isUniform(byte[] blocks)
+	{
+		final byte first = blocks[0];
+		for ( int i = 1 ; i < Chunk.BLOCK_COUNT ; i++ ) {
+			if ( blocks[i] != first ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeHeader(ChunkCodec codec,byte[] record) {
+		writeHeader( codec.id , record );
+	}
+
+	private static void writeHeader(byte codecId,byte[] record)
+	{
+		record[0] = (byte) ( MAGIC >>> 24 );
+		record[1] = (byte) ( MAGIC >>> 16 );
+		record[2] = (byte) ( MAGIC >>>  8 );
+		record[3] = (byte)   MAGIC;
+		record[4] = VERSION;
+		record[5] = codecId;
+	}
+
+	/**
+	 * Decodes a chunk record.
+	 *
+	 * @param record buffer holding the record, all remaining bytes will be consumed
+	 * @param blocks array to store the chunk's block types in
+	 * @return the codec the record was encoded with or <code>null</code> for uniform records
+	 * @throws IOException if the record is malformed or uses an unknown version/codec
+	 */
+	public static ChunkCodec decode(ByteBuffer record,byte[] blocks) throws IOException
+	{
+		if ( isUniform( record ) ) {
+			Arrays.fill( blocks , 0 , Chunk.BLOCK_COUNT , record.get() );
+			return null;
+		}
+		if ( record.remaining() == LEGACY_RECORD_SIZE ) {
+			ChunkCodec.RAW.decode( record , blocks );
+			return ChunkCodec.RAW;
+		}
+
+		final int codecId = readHeader( record );
+		if ( codecId == DELTA_CODEC_ID ) {
+			throw new IOException("Delta records need to be applied to a generated chunk");
+		}
+		final ChunkCodec codec = ChunkCodec.getCodec( codecId );
+		codec.decode( record , blocks );
+		return codec;
+	}
+
+	private static int readHeader(ByteBuffer record) throws IOException
+	{
+		if ( record.remaining() < HEADER_SIZE ) {
+			throw new IOException("Chunk record too short: "+record.remaining()+" bytes");
+		}
+		final int magic = record.getInt();
+		if ( magic != MAGIC ) {
+			throw new IOException("Not a chunk record, bad magic: 0x"+Integer.toHexString( magic ) );
+		}
+		final int version = record.get();
+		if ( version != VERSION ) {
+			throw new IOException("Unsupported chunk record version: "+version);
+		}
+		return record.get();
+	}
+
+	/**
+	 * Creates a delta record.
+	 *
+	 * @param edits edits as returned by {@link Chunk#getEditLog()}
+	 * @return
+	 * @see #decodeDelta(ByteBuffer)
+	 */
+	public static byte[] encodeDelta(int[] edits)
+	{
+		final byte[] result = new byte[ HEADER_SIZE + edits.length * DELTA_EDIT_SIZE ];
+		int ptr = HEADER_SIZE;
+		for ( final int edit : edits )
+		{
+			final int blockIndex = edit >>> 8;
+			result[ptr++] = (byte) ( blockIndex >>> 8 );
+			result[ptr++] = (byte) blockIndex;
+			result[ptr++] = (byte) edit;
+		}
+		writeHeader( DELTA_CODEC_ID , result );
+		return result;
+	}
+
+	/**
+	 * Check whether a chunk record describes a chunk where all blocks have the same type.
+	 *
+	 * <p>The block type is the record's only byte.</p>
+	 *
+	 * @param record
+	 * @return
+	 * @see #encodeUniform(byte)
+	 */
+	public static boolean isUniform(ByteBuffer record) {
+		return record.remaining() == UNIFORM_RECORD_SIZE;
+	}
+
+	/**
+	 * Check whether a chunk record is a delta record.
+	 *
+	 * @param record
+	 * @return
+	 * @see #decodeDelta(ByteBuffer)
+	 */
+	public static boolean isDelta(ByteBuffer record)
+	{
+		final int pos = record.position();
+		return record.remaining() != LEGACY_RECORD_SIZE && record.remaining() >= HEADER_SIZE &&
+				record.getInt( pos ) == MAGIC && record.get( pos + 5 ) == DELTA_CODEC_ID;
+	}
+
+	/**
+	 * Decodes a delta record.
+	 *
+	 * @param record buffer holding the record, all remaining bytes will be consumed
+	 * @return edits as ( blockIndex << 8 | newType ) , see {@link Chunk#getEditLog()}
+	 * @throws IOException if the record is malformed or not a delta record
+	 */
+	public static int[] decodeDelta(ByteBuffer record) throws IOException
+	{
+		if ( readHeader( record ) != DELTA_CODEC_ID ) {
+			throw new IOException("Not a delta record");
+		}
+		if ( ( record.remaining() % DELTA_EDIT_SIZE ) != 0 ) {
+			throw new IOException("Malformed delta record , "+record.remaining()+" bytes of data");
+		}
+		final int[] result = new int[ record.remaining() / DELTA_EDIT_SIZE ];
+		for ( int i = 0 ; i < result.length ; i++ )
+		{
+			final int blockIndex = record.getShort() & 0xffff;
+			if ( blockIndex >= Chunk.BLOCK_COUNT ) {
+				throw new IOException("Malformed delta record , block index out of range: "+blockIndex);
+			}
+			result[i] = ( blockIndex << 8 ) | ( record.get() & 0xff );
+		}
+		return result;
+	}
+}
@@ -0,0 +1,134 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Set of chunk coordinates that have been written to persistent storage.
+ *
+ * <p>Used to decide whether a chunk needs to be loaded from disk or can be generated right away
+ * without probing the file system.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class ChunkIndex
+{
+	private static final int MAGIC = 0x56584958; // 'VXIX'
+
+	// number of bits used per chunk coordinate
+	private static final int BITS = 21;
+	private static final long MASK = (1L << BITS ) - 1;
+
+	// @GuardedBy( this )
+	private final Set<Long> chunks = new HashSet<>();
+
+	/**
+	 * Packs chunk coordinates into a single <code>long</code> value.
+	 *
+	 * <p>Coordinates need to be in the range [ -2<sup>20</sup> , 2<sup>20</sup> ).</p>
+	 *
+	 * @param chunkX
+	 * @param chunkY
+	 * @param chunkZ
+	 * @return
+	 */
+	public static long pack(int chunkX,int chunkY,int chunkZ)
+	{
+		return ( ( chunkX & MASK ) << (2*BITS) ) | ( ( chunkY & MASK ) << BITS ) | ( chunkZ & MASK );
+	}
+
+	public synchronized boolean contains(int chunkX,int chunkY,int chunkZ) {
+		return chunks.contains( pack( chunkX , chunkY , chunkZ ) );
+	}
+
+	/**
+	 * Adds a chunk to this index.
+	 *
+	 * @param chunkX
+	 * @param chunkY
+	 * @param chunkZ
+	 * @return <code>true</code> if the chunk was not part of this index before
+	 */
+	public synchronized boolean add(int chunkX,int chunkY,int chunkZ) {
+		return chunks.add( pack( chunkX , chunkY , chunkZ ) );
+	}
+
+	public synchronized int size() {
+		return chunks.size();
+	}
+
+	public synchronized void clear() {
+		chunks.clear();
+	}
+
+	/**
+	 * Replaces the contents of this index with the contents of a file.
+	 *
+	 * @param file
+	 * @throws IOException if the file could not be read or is corrupted
+	 * @see #save(File)
+	 */
+	public synchronized void load(File file) throws IOException
+	{
+		chunks.clear();
+		final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+		try
+		{
+			final int magic = in.readInt();
+			if ( magic != MAGIC ) {
+				throw new IOException("Not a chunk index file: "+file.getAbsolutePath());
+			}
+			final int count = in.readInt();
+			for ( int i = 0 ; i < count ; i++ ) {
+				chunks.add( in.readLong() );
+			}
+		}
+		catch(final IOException e)
+		{
+			chunks.clear();
+			throw e;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the contents of this index to a file.
+	 *
+	 * <p>Data is written to a temporary file first that is then renamed
+	 * so a crash never leaves a truncated index behind.</p>
+	 *
+	 * @param file
+	 * @throws IOException
+	 * @see #load(File)
+	 */
+	public synchronized void save(File file) throws IOException
+	{
+		final File tmpFile = new File( file.getParentFile() , file.getName()+".tmp" );
+		final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmpFile ) ) );
+		try
+		{
+			out.writeInt( MAGIC );
+			out.writeInt( chunks.size() );
+			for ( final Long key : chunks ) {
+				out.writeLong( key );
+			}
+		} finally {
+			out.close();
+		}
+		if ( ( file.exists() && ! file.delete() ) || ! tmpFile.renameTo( file ) ) {
+			throw new IOException("Failed to rename "+tmpFile.getAbsolutePath()+" to "+file.getAbsolutePath());
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package de.codesourcery.voxelgame.core.world;
+
+import de.codesourcery.voxelgame.core.util.BoundedUniqueLIFOQueue.ShutdownException;
+import de.codesourcery.voxelgame.core.util.LongMap;
+
+/**
+ * Priority queue of chunks waiting to be loaded.
+ *
+ * <p>Chunks are identified by their {@link Chunk#calcChunkKey(int, int, int) key} and taken
+ * in order of ascending priority. Priorities are not fixed , whenever the camera moves the queue
+ * gets {@link #reprioritize(IPriorityFunction) re-prioritized} and chunks that are no longer needed
+ * (negative priority) are dropped from the queue.</p>
+ *
+ * <p>A chunk is only queued once , chunks that have been taken from the queue are considered
+ * 'in flight' and are not queued again until {@link #done(long)} has been called.</p>
+ *
+ * <p>Thread-safety: This class is thread-safe , priority functions get invoked while holding the queue's lock.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class ChunkLoadQueue
+{
+	public interface IPriorityFunction
+	{
+		/**
+		 * Returns the priority of a chunk.
+		 *
+		 * @param chunkKey
+		 * @return priority , chunks with lower values get loaded first. Negative values cancel loading the chunk
+		 */
+		public int getPriority(long chunkKey);
+	}
+
+	// marker value for LongMaps used as sets
+	private static final Object PRESENT = new Object();
+
+	// binary min-heap ordered by priority
+	// @GuardedBy( this )
+	private long[] keys = new long[64];
+	// @GuardedBy( this )
+	private int[] priorities = new int[64];
+	// @GuardedBy( this )
+	private int size;
+
+	// keys of all queued chunks
+	// @GuardedBy( this )
+	private final LongMap<Object> queued = new LongMap<>();
+
+	// keys of chunks taken from the queue but not done yet
+	// @GuardedBy( this )
+	private final LongMap<Object> inFlight = new LongMap<>();
+
+	// @GuardedBy( this )
+	private boolean terminate;
+
+	/**
+	 * Re-prioritizes all queued chunks and adds new ones.
+	 *
+	 * <p>Chunks that are already queued or in flight are ignored , as are
+	 * chunks with a negative priority.</p>
+	 *
+	 * @param newKeys keys of chunks to add
+	 * @param count number of keys to add
+	 * @param function
+	 * @return number of queued chunks that got cancelled
+	 */
+	public synchronized int update(long[] newKeys,int count,IPriorityFunction function)
+	{
+		final int cancelled = recalculatePriorities( function );
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			final long key = newKeys[i];
+			if ( ! queued.containsKey( key ) && ! inFlight.containsKey( key ) )
+			{
+				final int priority = function.getPriority( key );
+				if ( priority >= 0 )
+				{
+					ensureCapacity( size + 1 );
+					keys[ size ] = key;
+					priorities[ size ] = priority;
+					size++;
+					queued.put( key , PRESENT );
+				}
+			}
+		}
+		heapify();
+		if ( size > 0 ) {
+			notifyAll();
+		}
+		return cancelled;
+	}
+
+	/**
+	 * Re-prioritizes all queued chunks.
+	 *
+	 * @param function
+	 * @return number of queued chunks that got cancelled
+	 */
+	public synchronized int reprioritize(IPriorityFunction function)
+	{
+		final int cancelled = recalculatePriorities( function );
+		heapify();
+		return cancelled;
+	}
+
+	// @GuardedBy( this )
+	private int recalculatePriorities(IPriorityFunction function)
+	{
+		int cancelled = 0;
+		int newSize = 0;
+		for ( int i = 0 ; i < size ; i++ )
+		{
+			final long key = keys[i];
+			final int priority = function.getPriority( key );
+			if ( priority < 0 )
+			{
+				queued.remove( key );
+				cancelled++;
+				continue;
+			}
+			keys[ newSize ] = key;
+			priorities[ newSize ] = priority;
+			newSize++;
+		}
+		size = newSize;
+		return cancelled;
+	}
+
+	/**
+	 * Removes the chunk with the lowest priority value from the queue , blocking until one is available.
+	 *
+	 * <p>The chunk is considered 'in flight' until {@link #done(long)} gets called.</p>
+	 *
+	 * @return chunk key
+	 * @throws InterruptedException
+	 * @throws ShutdownException if {@link #dispose()} has been called
+	 */
+	public synchronized long take() throws InterruptedException, ShutdownException
+	{
+		while ( size == 0 && ! terminate ) {
+			wait();
+		}
+		if ( terminate ) {
+			throw new ShutdownException();
+		}
+
+		final long result = keys[0];
+		size--;
+		keys[0] = keys[ size ];
+		priorities[0] = priorities[ size ];
+		siftDown( 0 );
+
+		queued.remove( result );
+		inFlight.put( result , PRESENT );
+		return result;
+	}
+
+	/**
+	 * Marks a chunk taken from the queue as done , so it may be queued again.
+	 *
+	 * @param chunkKey
+	 */
+	public synchronized void done(long chunkKey) {
+		inFlight.remove( chunkKey );
+	}
+
+	/**
+	 * Returns the number of queued chunks (not counting chunks in flight).
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	public synchronized void dispose()
+	{
+		terminate = true;
+		notifyAll();
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if ( capacity > keys.length )
+		{
+			final int newLength = Math.max( capacity , keys.length * 2 );
+			final long[] newKeys = new long[ newLength ];
+			final int[] newPriorities = new int[ newLength ];
+			System.arraycopy( keys , 0 , newKeys , 0 , size );
+			System.arraycopy( priorities , 0 , newPriorities , 0 , size );
+			keys = newKeys;
+			priorities = newPriorities;
+		}
+	}
+
+	private void heapify()
+	{
+		for ( int i = size/2 - 1 ; i >= 0 ; i-- ) {
+			siftDown( i );
+		}
+	}
+
+	private void siftDown(int index)
+	{
+		final long key = keys[index];
+		final int priority = priorities[index];
+		int i = index;
+		while ( true )
+		{
+			int child = 2*i + 1;
+			if ( child >= size ) {
+				break;
+			}
+			if ( child + 1 < size && priorities[ child + 1 ] < priorities[ child ] ) {
+				child++;
+			}
+			if ( priorities[ child ] >= priority ) {
+				break;
+			}
+			keys[i] = keys[child];
+			priorities[i] = priorities[child];
+			i = child;
+		}
+		keys[i] = key;
+		priorities[i] = priority;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ChunkLoadQueue[ queued: "+size+" , in flight: "+inFlight.size()+" ]";
+	}
+}
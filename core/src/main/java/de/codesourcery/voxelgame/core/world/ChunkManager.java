@@ -2,9 +2,9 @@ package de.codesourcery.voxelgame.core.world;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -14,6 +14,7 @@ import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang.StringUtils;
@@ -24,12 +25,14 @@ import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.math.collision.Ray;
-import com.badlogic.gdx.utils.IntMap;
 
 import de.codesourcery.voxelgame.core.Block;
+import de.codesourcery.voxelgame.core.Constants;
+import de.codesourcery.voxelgame.core.render.BlockRenderer;
 import de.codesourcery.voxelgame.core.render.IChunkRenderer;
 import de.codesourcery.voxelgame.core.util.BoundedUniqueLIFOQueue;
 import de.codesourcery.voxelgame.core.util.BoundedUniqueLIFOQueue.ShutdownException;
+import de.codesourcery.voxelgame.core.util.ConcurrentLongMap;
 import de.codesourcery.voxelgame.core.world.Chunk.ChunkKey;
 
 
@@ -37,8 +40,8 @@ public class ChunkManager
 {
 	private static final Logger LOG = Logger.getLogger(ChunkManager.class);
 
-	// the current chunk (3x3 chunks)
-	public static final int MAX_CACHED_CHUNKS = 300;
+	// number of chunks the cache is initially sized for , the actual number of cached chunks is limited by the memory budget
+	public static final int INITIAL_CHUNK_CACHE_CAPACITY = 300;
 
 	/**
 	 * Number of chunks to load around the player (along X/Z axis).
@@ -60,6 +63,18 @@ public class ChunkManager
 	 */
 	public static final int LOAD_SURROUNDING_CHUNKS = 4;
 
+	/**
+	 * Number of chunks around the player (along each axis) that have a mesh.
+	 *
+	 * Cached chunks further away only keep their block data (for neighbour lookups
+	 * and quick re-meshing) until they get evicted.
+	 */
+	public static final int MESH_RADIUS = LOAD_SURROUNDING_CHUNKS;
+
+	// meshes are released once a chunk is more than MESH_RADIUS + MESH_HYSTERESIS chunks away , so
+	// moving back and forth across the mesh radius does not keep rebuilding the same meshes
+	public static final int MESH_HYSTERESIS = 1;
+
 	protected static final boolean DEBUG_VISIBILITY = false;
 	protected static final boolean DEBUG_LOADING = false;
 	protected static final boolean DEBUG_UNLOADING = false;
@@ -67,11 +82,45 @@ public class ChunkManager
 
 	private final Vector3 TMP = new Vector3();
 
-	// @GuardedBy( chunkMap )
-	private final ArrayList<Chunk> chunkList = new ArrayList<Chunk>(MAX_CACHED_CHUNKS); // holds all cached chunks
+	// keys of chunks that need to be loaded , only used by cameraMovedToNewChunk()
+	private final long[] chunksToLoad = new long[ (2*LOAD_SURROUNDING_CHUNKS+1)*(2*LOAD_SURROUNDING_CHUNKS+1)*(2*LOAD_SURROUNDING_CHUNKS+1) ];
+	private final BoundingBox TMP_BB = new BoundingBox();
+
+	// scratch buffer used when calculating lighting
+	private static final ThreadLocal<byte[]> LIGHT_LEVELS = new ThreadLocal<byte[]>() {
+
+		@Override
+		protected byte[] initialValue() {
+			return new byte[ Chunk.BLOCK_COUNT ];
+		}
+	};
+
+	// all cached chunks, indexed by chunk key. Lookups are wait-free , use chunkMap.values() to iterate over all chunks
+	private final ConcurrentLongMap<Chunk> chunkMap = new ConcurrentLongMap<>(INITIAL_CHUNK_CACHE_CAPACITY);
+
+	// serializes adding chunks to the cache and picking chunks to evict
+	private final Object cacheLock = new Object();
 
-	// @GuardedBy( chunkMap )
-	private final IntMap<Chunk> chunkMap = new IntMap<>(); // all cached chunks, indexed by position
+	// cached chunks that are out of view range and thus may be evicted
+	// @GuardedBy( cacheLock )
+	private final ChunkClock evictionRing = new ChunkClock( INITIAL_CHUNK_CACHE_CAPACITY );
+
+	// max. number of bytes used for block data before chunks out of view range get evicted
+	private volatile long dataBudget = Constants.CHUNK_DATA_BUDGET_BYTES;
+
+	// max. number of bytes used for meshes before meshes of chunks outside the mesh radius get released
+	private volatile long meshBudget = Constants.CHUNK_MESH_BUDGET_BYTES;
+
+	// memory used by all cached chunks
+	// @GuardedBy( cacheLock ) for writes
+	private final ChunkMemoryUsage memoryUsage = new ChunkMemoryUsage();
+
+	// whether the data budget is exceeded by chunks that can't be evicted
+	// @GuardedBy( cacheLock )
+	private boolean overBudget;
+
+	// number of cached chunks that have a mesh , updated by updateVisibleChunksList()
+	private volatile int meshedChunkCount;
 
 	private final AtomicReference<ArrayList<Chunk>> visibleChunks = new AtomicReference<>( new ArrayList<Chunk>() ); // holds all chunks that are currently part of the view frustum
 
@@ -87,19 +136,56 @@ public class ChunkManager
 	// with the z-axis pointing up and the x-axis pointing right
 	// world coordinates (0,0,0) are right in the center of chunk (0,0)
 
-	public int cameraChunkX = 0;
-	public int cameraChunkY = 0;
-	public int cameraChunkZ = 0;
-
-	private long accessCounter = 0;
+	// only written by the rendering thread (see cameraMoved()) , together with the pinned chunks
+	// @GuardedBy( cacheLock ) for writes , reads are lock-free
+	public volatile int cameraChunkX = 0;
+	public volatile int cameraChunkY = 0;
+	public volatile int cameraChunkZ = 0;
 
 	private IChunkRenderer chunkRenderer;
 
-	private final ThreadPoolExecutor loaderThreadsPool;
+	// mesh rebuild statistics
+	private final AtomicLong meshesPublished = new AtomicLong();
+	private final AtomicLong meshesDiscarded = new AtomicLong(); // rebuilds started but outdated before they could be published
+	private final AtomicLong rebuildsSkipped = new AtomicLong(); // queued rebuilds that were no longer necessary
+	private final AtomicLong meshesReleased = new AtomicLong(); // meshes of chunks that moved out of the mesh radius
+
+	// chunk loading statistics
+	private final AtomicLong chunksLoaded = new AtomicLong();
+	private final AtomicLong loadsCancelled = new AtomicLong(); // queued loads dropped because the camera moved out of range
+	private final AtomicLong wastedLoads = new AtomicLong(); // loads that finished after the chunk went out of range
+
+	// chunks waiting to be loaded by the ChunkLoaderThreads
+	private final ChunkLoadQueue loadQueue = new ChunkLoadQueue();
+
+	// chunks outside the view frustum get loaded after all chunks inside of it
+	private static final int OUTSIDE_FRUSTUM_PRIORITY = 3*(LOAD_SURROUNDING_CHUNKS+1)*(LOAD_SURROUNDING_CHUNKS+1);
+
+	// priority used by the loadQueue , only invoked on the rendering thread (see cameraMoved())
+	private final ChunkLoadQueue.IPriorityFunction loadPriority = new ChunkLoadQueue.IPriorityFunction()
+	{
+		@Override
+		public int getPriority(long chunkKey)
+		{
+			final int x = Chunk.chunkKeyX( chunkKey );
+			final int y = Chunk.chunkKeyY( chunkKey );
+			final int z = Chunk.chunkKeyZ( chunkKey );
+			if ( ! isInViewRange( x , y , z ) ) {
+				return -1;
+			}
+			final int dx = x - cameraChunkX;
+			final int dy = y - cameraChunkY;
+			final int dz = z - cameraChunkZ;
+			final int distance = dx*dx + dy*dy + dz*dz;
+			ChunkKey.populateBoundingBox( x , y , z , TMP_BB );
+			return camera.frustum.boundsInFrustum( TMP_BB ) ? distance : OUTSIDE_FRUSTUM_PRIORITY + distance;
+		}
+	};
+
 	private final ThreadPoolExecutor updaterThreadsPool;
 
 	private final ChunkUpdaterThread chunkUpdater;
-	private final ChunkLoaderThread chunkLoader;
+	private final ChunkLoaderThread[] chunkLoaders;
 	private final VisibleListUpdaterThread visibleListUpdater;
 
 	protected final class VisibleListUpdaterThread extends Thread {
@@ -181,13 +267,14 @@ public class ChunkManager
 				public void run()
 				{
 					try {
-						synchronized( chunk )
+						// a rebuild that ran after this one got queued might already have picked up all changes ,
+						// chunks outside the mesh radius get rebuilt once they come close again (see updateVisibleChunksList())
+						if ( chunk.isMeshRebuildRequired() && ! chunk.isDisposed() && isInMeshRadius( chunk ) )
 						{
-							if ( chunk.isMeshRebuildRequired() && ! chunk.isDisposed() )
-							{
-								syncUpdateChunk(chunk);
-								visibleListUpdater.queueUpdate();
-							}
+							syncUpdateChunk(chunk);
+							visibleListUpdater.queueUpdate();
+						} else {
+							rebuildsSkipped.incrementAndGet();
 						}
 					} catch(final Exception e) {
 						e.printStackTrace();
@@ -203,27 +290,12 @@ public class ChunkManager
 
 	protected final class ChunkLoaderThread extends Thread
 	{
-		private final ArrayBlockingQueue<ChunkKey> queue = new ArrayBlockingQueue<>(100,true);
 		private volatile boolean terminate = false;
 
-		public ChunkLoaderThread()
+		public ChunkLoaderThread(int number)
 		{
 			setDaemon(true);
-			setName("chunk-load-enqueue-thread");
-		}
-
-		public void queueChunkLoad(ChunkKey key)
-		{
-			while ( ! terminate )
-			{
-				try {
-					queue.put( key );
-					break;
-				}
-				catch (final InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
+			setName("chunk-loader-thread-"+number);
 		}
 
 		@Override
@@ -231,52 +303,57 @@ public class ChunkManager
 		{
 			while ( ! terminate )
 			{
-				final ChunkKey key;
+				final long key;
 				try {
-					key = queue.take();
+					key = loadQueue.take();
 				}
 				catch(final ShutdownException e) {
 					break;
 				}
 				catch (final InterruptedException e) {
-					e.printStackTrace();
 					continue;
 				}
-				asyncLoadChunk( key.x , key.y , key.z );
+
+				try {
+					loadChunk( key );
+				} catch(final Exception e) {
+					e.printStackTrace();
+				} finally {
+					loadQueue.done( key );
+				}
 			}
 		}
 
-		private void asyncLoadChunk(final int chunkX, final int chunkY, final int chunkZ)
+		private void loadChunk(long chunkKey)
 		{
-			loaderThreadsPool.submit( new Runnable() {
+			final int chunkX = Chunk.chunkKeyX( chunkKey );
+			final int chunkY = Chunk.chunkKeyY( chunkKey );
+			final int chunkZ = Chunk.chunkKeyZ( chunkKey );
 
-				@Override
-				public void run()
-				{
-					try {
-						final int chunkKey = Chunk.calcChunkKey(chunkX, chunkY, chunkZ);
-						Chunk existing;
-						synchronized( chunkMap )
-						{
-							existing = chunkMap.get( chunkKey );
-						}
-						if ( existing == null )
-						{
-							if ( DEBUG_LOADING ) {
-								LOG.info("asyncLoadChunk(): [CACHE-MISS] Requesting load of chunk "+chunkX+" / "+chunkY+" / "+chunkZ);
-							}
-							existing = syncLoadChunk(chunkX, chunkY, chunkZ, chunkKey);
-						}
-					} catch(final Exception e) {
-						e.printStackTrace();
-					}
-				}} );
+			// camera might've moved away while this chunk was queued
+			if ( ! isInViewRange( chunkX , chunkY , chunkZ ) )
+			{
+				loadsCancelled.incrementAndGet();
+				return;
+			}
+
+			if ( chunkMap.get( chunkKey ) == null )
+			{
+				if ( DEBUG_LOADING ) {
+					LOG.info("loadChunk(): [CACHE-MISS] Requesting load of chunk "+chunkX+" / "+chunkY+" / "+chunkZ);
+				}
+				syncLoadChunk(chunkX, chunkY, chunkZ, chunkKey);
+				chunksLoaded.incrementAndGet();
+				if ( ! isInViewRange( chunkX , chunkY , chunkZ ) ) {
+					wastedLoads.incrementAndGet();
+				}
+			}
 		}
 
 		public void terminate()
 		{
-			this.interrupt();
 			terminate = true;
+			this.interrupt();
 		}
 	}
 
@@ -291,16 +368,20 @@ public class ChunkManager
 
 		final int chunkLoadToUpdateRatio=3; // 3:1
 
-		this.loaderThreadsPool = createWorkerPool( "chunk-loader-thread",threadCount*chunkLoadToUpdateRatio , true );
 		this.updaterThreadsPool = createWorkerPool( "chunk-updater-thread",threadCount , true );
 
-		chunkLoader = new ChunkLoaderThread();
+		chunkLoaders = new ChunkLoaderThread[ threadCount*chunkLoadToUpdateRatio ];
+		for ( int i = 0 ; i < chunkLoaders.length ; i++ ) {
+			chunkLoaders[i] = new ChunkLoaderThread( i+1 );
+		}
 		visibleListUpdater = new VisibleListUpdaterThread();
 		chunkUpdater = new ChunkUpdaterThread();
 
 		chunkUpdater.start();
 		visibleListUpdater.start();
-		chunkLoader.start();
+		for ( final ChunkLoaderThread loader : chunkLoaders ) {
+			loader.start();
+		}
 	}
 
 	public void setChunkRenderer(IChunkRenderer chunkRenderer) {
@@ -312,102 +393,136 @@ public class ChunkManager
 	 */
 	public void visitVisibleChunks(IChunkVisitor visitor)
 	{
+		// no locking here , chunks are only disposed on the rendering thread and meshes
+		// are built on snapshots and published atomically (see BlockRenderer#publish())
 		for ( final Chunk chunk : internalGetVisibleChunks() )
 		{
-			synchronized( chunk )
-			{
-				if ( ! chunk.isDisposed() ) {
-					visitor.visit( chunk );
-				} else {
-					System.err.println("Won't render disposed chunk "+chunk);
-				}
+			if ( ! chunk.isDisposed() ) {
+				visitor.visit( chunk );
+			} else {
+				System.err.println("Won't render disposed chunk "+chunk);
 			}
 		}
 	}
 
 	public void rebuildAllChunks()
 	{
-		final List<Chunk> copy;
-		synchronized( chunkMap ) {
-			copy = new ArrayList<>(chunkList);
-		}
-		for ( final Chunk c : copy )
+		for ( final Chunk c : chunkMap.values() )
 		{
-			synchronized(c) {
-				c.setMeshRebuildRequired(true);
-			}
+			c.invalidateMesh();
 		}
 		visibleListUpdater.queueUpdate();
 	}
 
 	private List<Chunk> internalGetVisibleChunks()
 	{
-		accessCounter++;
 		return visibleChunks.get();
 	}
 
-	protected boolean isInViewRange(Chunk chunk)
+	protected boolean isInViewRange(Chunk chunk) {
+		return isInViewRange( chunk.x , chunk.y , chunk.z );
+	}
+
+	protected boolean isInViewRange(int chunkX,int chunkY,int chunkZ) {
+		return isInRange( chunkX , chunkY , chunkZ , cameraChunkX , cameraChunkY , cameraChunkZ );
+	}
+
+	protected boolean isInMeshRadius(Chunk chunk) {
+		return distance( chunk , cameraChunkX , cameraChunkY , cameraChunkZ ) <= MESH_RADIUS;
+	}
+
+	/**
+	 * Returns the distance between a chunk and the camera , in chunks along the axis where they are furthest apart.
+	 *
+	 * @param chunk
+	 * @param cameraX camera chunk
+	 * @param cameraY camera chunk
+	 * @param cameraZ camera chunk
+	 * @return
+	 */
+	private static int distance(Chunk chunk,int cameraX,int cameraY,int cameraZ)
+	{
+		final int dx = Math.abs( chunk.x - cameraX );
+		final int dy = Math.abs( chunk.y - cameraY );
+		final int dz = Math.abs( chunk.z - cameraZ );
+		return Math.max( dx , Math.max( dy , dz ) );
+	}
+
+	private static boolean isInRange(int chunkX,int chunkY,int chunkZ,int cameraX,int cameraY,int cameraZ)
 	{
-		final int dx = Math.abs( chunk.x - cameraChunkX );
-		final int dy = Math.abs( chunk.y - cameraChunkY );
-		final int dz = Math.abs( chunk.z - cameraChunkZ );
+		final int dx = Math.abs( chunkX - cameraX );
+		final int dy = Math.abs( chunkY - cameraY );
+		final int dz = Math.abs( chunkZ - cameraZ );
 		return dx <= LOAD_SURROUNDING_CHUNKS && dy <= LOAD_SURROUNDING_CHUNKS && dz <= LOAD_SURROUNDING_CHUNKS  ;
 	}
 
-	private void cameraMovedToNewChunk()
+	/**
+	 * Updates the eviction ring after the camera moved to a new chunk.
+	 *
+	 * <p>Chunks that went out of view range are added to the ring , chunks that
+	 * came into view range get removed from it. Only chunks in range of the old or new
+	 * camera position are looked at , no matter how many chunks are cached.</p>
+	 *
+	 * @param oldX previous camera chunk
+	 * @param oldY previous camera chunk
+	 * @param oldZ previous camera chunk
+	 */
+	// @GuardedBy( cacheLock )
+	private void updatePinnedChunks(int oldX,int oldY,int oldZ)
 	{
-		final List<ChunkKey> toLoad = new ArrayList<>();
-		synchronized ( chunkMap )
+		for ( int x = -LOAD_SURROUNDING_CHUNKS ; x <= LOAD_SURROUNDING_CHUNKS ; x++ )
 		{
-			for ( int deltaY = -LOAD_SURROUNDING_CHUNKS ; deltaY <= LOAD_SURROUNDING_CHUNKS ; deltaY++ )
+			for ( int y = -LOAD_SURROUNDING_CHUNKS ; y <= LOAD_SURROUNDING_CHUNKS ; y++ )
 			{
-				for ( int deltaX = -LOAD_SURROUNDING_CHUNKS ; deltaX <= LOAD_SURROUNDING_CHUNKS ; deltaX++ )
+				for ( int z = -LOAD_SURROUNDING_CHUNKS ; z <= LOAD_SURROUNDING_CHUNKS ; z++ )
 				{
-					for ( int deltaZ = -LOAD_SURROUNDING_CHUNKS ; deltaZ <= LOAD_SURROUNDING_CHUNKS ; deltaZ++ )
+					if ( ! isInRange( cameraChunkX + x , cameraChunkY + y , cameraChunkZ + z , oldX , oldY , oldZ ) )
 					{
-						final int key = Chunk.calcChunkKey(cameraChunkX + deltaX , cameraChunkY + deltaY , cameraChunkZ+deltaZ);
-						if ( ! chunkMap.containsKey( key ) )
-						{
-							toLoad.add( new ChunkKey( cameraChunkX + deltaX , cameraChunkY + deltaY , cameraChunkZ+deltaZ ) );
+						// entered view range
+						final Chunk chunk = chunkMap.get( Chunk.calcChunkKey( cameraChunkX + x , cameraChunkY + y , cameraChunkZ + z ) );
+						if ( chunk != null ) {
+							evictionRing.remove( chunk );
+						}
+					}
+					if ( ! isInViewRange( oldX + x , oldY + y , oldZ + z ) )
+					{
+						// left view range
+						final Chunk chunk = chunkMap.get( Chunk.calcChunkKey( oldX + x , oldY + y , oldZ + z ) );
+						if ( chunk != null ) {
+							evictionRing.add( chunk );
 						}
 					}
 				}
 			}
 		}
+	}
 
-		if ( ! toLoad.isEmpty() )
+	private void cameraMovedToNewChunk()
+	{
+		final long[] toLoad = chunksToLoad;
+		int toLoadCount = 0;
+		for ( int deltaY = -LOAD_SURROUNDING_CHUNKS ; deltaY <= LOAD_SURROUNDING_CHUNKS ; deltaY++ )
 		{
-			if ( DEBUG_LOADING ) {
-				LOG.info("cameraMovedToNewChunk(): Camera moved to "+cameraChunkX+" / "+cameraChunkY+" / "+cameraChunkZ+" , loading "+toLoad.size()+" chunks");
-			}
-			// sort loading of chunks so that those intersecting the view frustum
-			// are processed first
-			Collections.sort( toLoad , new Comparator<ChunkKey>()
-					{
-
-				final BoundingBox bb1 = new BoundingBox();
-				final BoundingBox bb2 = new BoundingBox();
-
-				@Override
-				public int compare(ChunkKey o1, ChunkKey o2)
+			for ( int deltaX = -LOAD_SURROUNDING_CHUNKS ; deltaX <= LOAD_SURROUNDING_CHUNKS ; deltaX++ )
+			{
+				for ( int deltaZ = -LOAD_SURROUNDING_CHUNKS ; deltaZ <= LOAD_SURROUNDING_CHUNKS ; deltaZ++ )
 				{
-					ChunkKey.populateBoundingBox( o1.x , o1.y , o1.z , bb1 );
-					ChunkKey.populateBoundingBox( o2.x , o2.y , o2.z , bb2 );
-					final boolean visible1 = camera.frustum.boundsInFrustum( bb1 );
-					final boolean visible2 = camera.frustum.boundsInFrustum( bb1 );
-					if ( visible1 && ! visible2 ) {
-						return -1;
-					}
-					if ( ! visible1 && visible2 ) {
-						return 1;
+					final long key = Chunk.calcChunkKey(cameraChunkX + deltaX , cameraChunkY + deltaY , cameraChunkZ+deltaZ);
+					if ( ! chunkMap.containsKey( key ) )
+					{
+						toLoad[ toLoadCount++ ] = key;
 					}
-					return 0;
 				}
-			});
+			}
+		}
 
-			for ( final ChunkKey key : toLoad )
-			{
-				chunkLoader.queueChunkLoad( key );
+		// re-prioritizes chunks still waiting to be loaded and drops those that went out of range
+		loadsCancelled.addAndGet( loadQueue.update( toLoad , toLoadCount , loadPriority ) );
+
+		if ( toLoadCount > 0 )
+		{
+			if ( DEBUG_LOADING ) {
+				LOG.info("cameraMovedToNewChunk(): Camera moved to "+cameraChunkX+" / "+cameraChunkY+" / "+cameraChunkZ+" , loading "+toLoadCount+" chunks , "+loadQueue);
 			}
 			// updateVisibleChunksList() will be called after each chunk load
 			// so no need to do it here
@@ -423,34 +538,26 @@ public class ChunkManager
 
 	public Chunk maybeGetChunk(int chunkX, int chunkY, int chunkZ)
 	{
-		final int key = Chunk.calcChunkKey(chunkX,chunkY,chunkZ);
-		synchronized (chunkMap) {
-			final Chunk newChunk = chunkMap.get( key );
-			if ( newChunk != null )
-			{
-				newChunk.accessCounter = accessCounter;
-				return newChunk;
-			}
+		final Chunk chunk = chunkMap.get( Chunk.calcChunkKey(chunkX,chunkY,chunkZ) );
+		if ( chunk != null ) {
+			chunk.touch();
 		}
-		return null;
+		return chunk;
 	}
 
 	public Chunk getChunk(int chunkX, int chunkY, int chunkZ)
 	{
-		final int key = Chunk.calcChunkKey(chunkX, chunkY, chunkZ);
-		synchronized( chunkMap )
+		final long key = Chunk.calcChunkKey(chunkX, chunkY, chunkZ);
+		final Chunk chunk = chunkMap.get( key );
+		if ( chunk != null )
 		{
-			final Chunk newChunk = chunkMap.get( key );
-			if ( newChunk != null )
-			{
-				newChunk.accessCounter = accessCounter;
-				return newChunk;
-			}
+			chunk.touch();
+			return chunk;
 		}
 		return syncLoadChunk(chunkX,chunkY,chunkZ , key );
 	}
 
-	private Chunk syncLoadChunk(int chunkX, int chunkY, int chunkZ,int chunkKey)
+	private Chunk syncLoadChunk(int chunkX, int chunkY, int chunkZ,long chunkKey)
 	{
 		// load chunk
 		final Chunk newChunk;
@@ -468,11 +575,7 @@ public class ChunkManager
 		newChunk.setVisible(  chunkVisible );
 
 		// loadChunk() ( disk access!) might've taken a long time, check whether a concurrent load happened already
-		Chunk existing=null;
-		synchronized( chunkMap )
-		{
-			existing = chunkMap.get( chunkKey );
-		}
+		Chunk existing = chunkMap.get( chunkKey );
 
 		// update visible chunks BEFORE adding it to the internal map
 		// so the render thread does not see chunks that require a rebuid
@@ -481,40 +584,20 @@ public class ChunkManager
 			syncUpdateChunk(newChunk);
 		}
 
-		Chunk chunkToEvict = null;
-		synchronized( chunkMap )
+		List<Chunk> chunksToEvict = Collections.emptyList();
+		synchronized( cacheLock )
 		{
 			// updateChunk() takes a long time, check if another caller finished in the meantime ...
-			existing = chunkMap.get( chunkKey );
+			newChunk.touch();
+			existing = chunkMap.putIfAbsent( chunkKey , newChunk );
 			if ( existing == null )
 			{
-				if ( chunkMap.size > MAX_CACHED_CHUNKS )
-				{
-					int indexToRemove = -1;
-					int index = 0;
-					for ( final Iterator<Chunk> it = chunkList.iterator() ; it.hasNext(); index++ )
-					{
-						final Chunk chunk = it.next();
-						if ( ! isInViewRange(chunk) ) // never evict visible chunks
-						{
-							if ( chunkToEvict == null || chunk.accessCounter < chunkToEvict.accessCounter )
-							{
-								indexToRemove=index;
-								chunkToEvict=chunk;
-							}
-						}
-					}
-					if ( chunkToEvict != null )
-					{
-						chunkMap.remove( Chunk.calcChunkKey( chunkToEvict ) );
-						chunkList.remove( indexToRemove );
-					} else {
-						LOG.info("syncLoadChunk(): Extending chunk cache, cache size is now: "+chunkMap.size);
-					}
+				// chunks in view range are never evicted , see updatePinnedChunks()
+				if ( ! isInViewRange( newChunk ) ) {
+					evictionRing.add( newChunk );
 				}
-				newChunk.accessCounter = accessCounter;
-				chunkMap.put( chunkKey , newChunk );
-				chunkList.add( newChunk );
+				updateMemoryUsage( newChunk );
+				chunksToEvict = evictChunksOverBudget();
 			}
 		}
 
@@ -531,10 +614,10 @@ public class ChunkManager
 			}
 		}
 
-		if ( chunkToEvict != null )
+		for ( final Chunk chunkToEvict : chunksToEvict )
 		{
 			if ( DEBUG_UNLOADING ) {
-				LOG.info("syncLoadChunk(): Max. cache size reached, evicting "+chunkToEvict+" to make room for "+newChunk);
+				LOG.info("syncLoadChunk(): Memory budget exceeded, evicting "+chunkToEvict+" to make room for "+newChunk);
 			}
 			unloadChunk(chunkToEvict);
 		}
@@ -557,6 +640,59 @@ public class ChunkManager
 		return newChunk;
 	}
 
+	/**
+	 * Updates the memory usage of all cached chunks after a chunk has been added or changed.
+	 *
+	 * @param chunk cached chunk
+	 */
+	// @GuardedBy( cacheLock )
+	private void updateMemoryUsage(Chunk chunk)
+	{
+		memoryUsage.update( chunk );
+	}
+
+	private void updateMemoryUsageIfCached(Chunk chunk)
+	{
+		synchronized( cacheLock )
+		{
+			// chunk might not have been added to the cache yet or might've been evicted already
+			if ( chunkMap.get( chunk.getKey() ) == chunk ) {
+				updateMemoryUsage( chunk );
+			}
+		}
+	}
+
+	/**
+	 * Evicts chunks until the memory used for block data of all cached chunks is within budget.
+	 *
+	 * @return evicted chunks , these need to be unloaded
+	 */
+	// @GuardedBy( cacheLock )
+	private List<Chunk> evictChunksOverBudget()
+	{
+		List<Chunk> result = Collections.emptyList();
+		while ( getDataMemoryUsage() > dataBudget )
+		{
+			final Chunk chunk = evictionRing.evict();
+			if ( chunk == null )
+			{
+				if ( ! overBudget ) {
+					LOG.info("evictChunksOverBudget(): Chunks in view range exceed data budget of "+dataBudget+" bytes , cache size is now: "+chunkMap.size());
+					overBudget = true;
+				}
+				return result;
+			}
+			chunkMap.remove( chunk.getKey() , chunk );
+			memoryUsage.remove( chunk );
+			if ( result.isEmpty() ) {
+				result = new ArrayList<>();
+			}
+			result.add( chunk );
+		}
+		overBudget = false;
+		return result;
+	}
+
 	private void unloadChunk(final Chunk chunkToUnload)
 	{
 		// try saving the chunk before invoking releaseChunk()
@@ -595,6 +731,53 @@ public class ChunkManager
 		});
 	}
 
+	/**
+	 * Releases a chunk's mesh and GPU buffers , keeping its block data.
+	 *
+	 * <p>The mesh gets rebuilt once the chunk comes within {@link #MESH_RADIUS} again.</p>
+	 *
+	 * @param chunk
+	 */
+	private void releaseMesh(final Chunk chunk)
+	{
+		// rebuilds in progress won't get published and the chunk no longer makes it into the visible list
+		chunk.discardMesh();
+
+		final BlockRenderer renderer = chunk.blockRenderer;
+		synchronized( renderer ) // wait for rebuilds in progress
+		{
+			// chunk might've come close again and got a new mesh in the meantime
+			if ( chunk.hasMesh() ) {
+				return;
+			}
+			renderer.releaseMeshData();
+		}
+		meshesReleased.incrementAndGet();
+		updateMemoryUsageIfCached( chunk );
+
+		// VBOs can only be released on the OpenGL rendering thread
+		Gdx.app.postRunnable( new Runnable() {
+
+			@Override
+			public void run()
+			{
+				synchronized( chunk )
+				{
+					if ( chunk.hasMesh() || chunk.isDisposed() ) {
+						return;
+					}
+					renderer.releaseGPUBuffers();
+				}
+				updateMemoryUsageIfCached( chunk );
+			}
+		});
+	}
+
+	// whether a chunk holds a (possibly outdated) mesh or a mesh waiting to be uploaded
+	private static boolean hasMeshData(Chunk chunk) {
+		return chunk.hasMesh() || chunk.blockRenderer.getHeapSizeInBytes() != 0;
+	}
+
 	private void queueAsyncChunkUpdate(Chunk chunk) {
 		chunkUpdater.queueChunkUpdate( chunk );
 	}
@@ -602,14 +785,12 @@ public class ChunkManager
 	private void addAllVisibleChunks()
 	{
 		final ArrayList<Chunk> tmpList=new ArrayList<Chunk>();
-		synchronized( chunkMap )
+		for ( final Chunk chunk : chunkMap.values() )
 		{
-			for ( final Chunk chunk : chunkList)
+			// chunks waiting for a rebuild keep rendering their last published mesh
+			if ( chunk.isVisible() && chunk.isNotDisposed() && chunk.hasMesh() )
 			{
-				if ( chunk.isVisible() && chunk.isNotDisposed() && ! chunk.isMeshRebuildRequired() )
-				{
-					tmpList.add( chunk );
-				}
+				tmpList.add( chunk );
 			}
 		}
 		visibleChunks.set(tmpList);
@@ -618,36 +799,78 @@ public class ChunkManager
 	private void updateVisibleChunksList()
 	{
 		final ArrayList<Chunk> tmpList = new ArrayList<>();
-		final int oldVisibleCount;
-		synchronized( chunkMap )
+		final int oldVisibleCount = visibleChunks.get().size();
+
+		// camera might move while we're iterating
+		final int cameraX = cameraChunkX;
+		final int cameraY = cameraChunkY;
+		final int cameraZ = cameraChunkZ;
+
+		// chunks between MESH_RADIUS and MESH_RADIUS + MESH_HYSTERESIS that still have a mesh
+		final List<Chunk> releaseCandidates = new ArrayList<>();
+		int meshedChunks = 0;
+		for ( final Chunk chunk : chunkMap.values() )
 		{
-			oldVisibleCount = visibleChunks.get().size();
-			for ( final Chunk chunk : chunkList)
+			if ( ! chunk.isDisposed()  )
 			{
-				if ( ! chunk.isDisposed()  )
+				final boolean isVisible = ! chunk.isEmpty() && camera.frustum.boundsInFrustum( chunk.boundingBox );
+				if ( DEBUG_VISIBILITY && isVisible != chunk.isVisible() ) {
+					LOG.info("updateVisibleChunksList(): Chunk "+chunk+" is "+(isVisible?"VISIBLE" : "not visible"));
+				}
+				chunk.setVisible( isVisible );
+
+				final int distance = distance( chunk , cameraX , cameraY , cameraZ );
+				if ( distance > MESH_RADIUS + MESH_HYSTERESIS )
 				{
-					final boolean isVisible = ! chunk.isEmpty() && camera.frustum.boundsInFrustum( chunk.boundingBox );
-					if ( DEBUG_VISIBILITY && isVisible != chunk.isVisible() ) {
-						LOG.info("updateVisibleChunksList(): Chunk "+chunk+" is "+(isVisible?"VISIBLE" : "not visible"));
+					// chunk is far away , only keep its block data
+					if ( hasMeshData( chunk ) ) {
+						releaseMesh( chunk );
 					}
-					chunk.setVisible( isVisible );
+					continue;
+				}
+				if ( distance > MESH_RADIUS && hasMeshData( chunk ) ) {
+					releaseCandidates.add( chunk );
+				}
 
-					// only add chunks to the visibility list that do not require a mesh rebuild
-					// so that we don't try to render chunks that need to have their mesh rebuild
-					// a new visiblity list update will be triggered after this chunk has been rebuild
-					if ( chunk.isMeshRebuildRequired() )
-					{
-						queueAsyncChunkUpdate( chunk );
-					}
-					else if ( isVisible )
-					{
-						tmpList.add( chunk );
-					}
-				} else {
-					LOG.info("updateVisibleChunksList(): ignoring disposed "+chunk);
+				if ( chunk.isMeshRebuildRequired() && distance <= MESH_RADIUS ) {
+					queueAsyncChunkUpdate( chunk );
+				}
+
+				// chunks waiting for a rebuild keep rendering their last published mesh , chunks that
+				// never had one get added by the visibility list update triggered after their first rebuild
+				if ( isVisible && chunk.hasMesh() ) {
+					tmpList.add( chunk );
+				}
+				if ( chunk.hasMesh() ) {
+					meshedChunks++;
+				}
+			} else {
+				LOG.info("updateVisibleChunksList(): ignoring disposed "+chunk);
+			}
+		}
+
+		long meshUsage = getMeshMemoryUsage();
+		if ( meshUsage > meshBudget && ! releaseCandidates.isEmpty() )
+		{
+			// over budget , release meshes of chunks furthest away first
+			Collections.sort( releaseCandidates , new Comparator<Chunk>() {
+
+				@Override
+				public int compare(Chunk o1, Chunk o2) {
+					return Integer.compare( distance( o2 , cameraX , cameraY , cameraZ ) , distance( o1 , cameraX , cameraY , cameraZ ) );
 				}
+			});
+			for ( int i = 0 ; i < releaseCandidates.size() && meshUsage > meshBudget ; i++ )
+			{
+				final Chunk chunk = releaseCandidates.get( i );
+				// GPU buffers are released asynchronously , so don't wait for the accounted memory usage to drop
+				meshUsage -= chunk.blockRenderer.getHeapSizeInBytes() + chunk.blockRenderer.getBufferSizeInBytes();
+				releaseMesh( chunk );
+				meshedChunks--;
 			}
 		}
+		meshedChunkCount = meshedChunks;
+
 		if ( DEBUG_VISIBILITY && tmpList.size() != oldVisibleCount ) {
 			LOG.info("updateVisibleChunksList(): Visible "+oldVisibleCount+" -> "+tmpList.size());
 		}
@@ -672,19 +895,211 @@ public class ChunkManager
 			return new ThreadPoolExecutor( threadCount, threadCount, 60, TimeUnit.SECONDS , queue , threadFactory , new CallerRunsPolicy() );
 	}
 
+	/**
+	 * Returns the number of meshes built and published so far.
+	 *
+	 * @return
+	 */
+	public long getMeshesPublished() {
+		return meshesPublished.get();
+	}
+
+	/**
+	 * Returns the number of mesh rebuilds that were started but
+	 * discarded because the chunk got modified in the meantime.
+	 *
+	 * @return
+	 */
+	public long getMeshesDiscarded() {
+		return meshesDiscarded.get();
+	}
+
+	/**
+	 * Returns the number of queued mesh rebuilds that were skipped because
+	 * an earlier rebuild already picked up all changes.
+	 *
+	 * @return
+	 */
+	public long getRebuildsSkipped() {
+		return rebuildsSkipped.get();
+	}
+
+	/**
+	 * Returns the number of bytes used for block data of all cached chunks.
+	 *
+	 * @return
+	 * @see #getBlockDataBytes()
+	 * @see #getOffHeapBytes()
+	 */
+	public long getDataMemoryUsage() {
+		return memoryUsage.getDataBytes();
+	}
+
+	/**
+	 * Returns the number of bytes used for meshes of all cached chunks.
+	 *
+	 * @return
+	 * @see #getMeshBytes()
+	 * @see #getBufferBytes()
+	 */
+	public long getMeshMemoryUsage() {
+		return memoryUsage.getMeshAndBufferBytes();
+	}
+
+	/**
+	 * Returns the (approximate) number of bytes of heap memory used for block types and light levels of cached chunks.
+	 *
+	 * @return
+	 */
+	public long getBlockDataBytes() {
+		return memoryUsage.getBlockDataBytes();
+	}
+
+	/**
+	 * Returns the number of bytes of off-heap memory used by cached chunks (light levels).
+	 *
+	 * @return
+	 */
+	public long getOffHeapBytes() {
+		return memoryUsage.getOffHeapBytes();
+	}
+
+	/**
+	 * Returns the number of bytes of heap memory used for meshes of cached chunks (meshes waiting to be uploaded).
+	 *
+	 * @return
+	 */
+	public long getMeshBytes() {
+		return memoryUsage.getMeshBytes();
+	}
+
+	/**
+	 * Returns the number of bytes used by the VBOs of cached chunks.
+	 *
+	 * @return
+	 */
+	public long getBufferBytes() {
+		return memoryUsage.getBufferBytes();
+	}
+
+	public long getDataBudget() {
+		return dataBudget;
+	}
+
+	/**
+	 * Sets the max. number of bytes used for block data of cached chunks.
+	 *
+	 * <p>Chunks in view range of the camera are never evicted , so the budget may be exceeded.</p>
+	 *
+	 * @param bytes
+	 */
+	public void setDataBudget(long bytes)
+	{
+		if ( bytes < 0 ) {
+			throw new IllegalArgumentException("Data budget must be >= 0");
+		}
+		this.dataBudget = bytes;
+	}
+
+	public long getMeshBudget() {
+		return meshBudget;
+	}
+
+	/**
+	 * Sets the max. number of bytes used for meshes of cached chunks.
+	 *
+	 * <p>Chunks within {@link #MESH_RADIUS} always keep their mesh , so the budget may be exceeded.</p>
+	 *
+	 * @param bytes
+	 */
+	public void setMeshBudget(long bytes)
+	{
+		if ( bytes < 0 ) {
+			throw new IllegalArgumentException("Mesh budget must be >= 0");
+		}
+		this.meshBudget = bytes;
+	}
+
+	/**
+	 * Returns the number of cached chunks that have a mesh.
+	 *
+	 * @return
+	 */
+	public int getMeshedChunkCount() {
+		return meshedChunkCount;
+	}
+
+	/**
+	 * Returns the number of meshes released because their chunk moved out of the mesh radius
+	 * (or the mesh budget was exceeded).
+	 *
+	 * @return
+	 */
+	public long getMeshesReleased() {
+		return meshesReleased.get();
+	}
+
+	public int getCachedChunkCount() {
+		return chunkMap.size();
+	}
+
+	/**
+	 * Returns the number of chunks waiting to be loaded.
+	 *
+	 * @return
+	 */
+	public int getLoadQueueDepth() {
+		return loadQueue.size();
+	}
+
+	public long getChunksLoaded() {
+		return chunksLoaded.get();
+	}
+
+	/**
+	 * Returns the number of queued chunk loads that got dropped because the camera moved away.
+	 *
+	 * @return
+	 */
+	public long getLoadsCancelled() {
+		return loadsCancelled.get();
+	}
+
+	/**
+	 * Returns the number of chunk loads that finished after the camera moved away.
+	 *
+	 * @return
+	 */
+	public long getWastedLoads() {
+		return wastedLoads.get();
+	}
+
 	public void chunkChanged(Chunk chunk)
 	{
+		// edits may change the size of the block storage , e.g. when an edited brick no longer shares the storage of uniform bricks
+		updateMemoryUsageIfCached( chunk );
 		queueAsyncChunkUpdate( chunk );
 	}
 
 	private void syncUpdateChunk(final Chunk chunk)
 	{
-		int renderedBlocksCount;
-		synchronized(chunk)
+		// work on a snapshot so that neither edits nor the rendering thread need to wait for us
+		final ChunkSnapshot snapshot = chunk.snapshot();
+		if ( chunk.getVersion() != snapshot.getVersion() ) {
+			meshDiscarded( chunk , snapshot ); // already outdated , don't waste any time on lighting
+			return;
+		}
+		// light levels only get stored in the chunk along with the mesh , so an outdated rebuild can't overwrite newer ones
+		final byte[] skyLightLevels = recalculateLighting(snapshot);
+		final int renderedBlocksCount = chunkRenderer.setupMesh( chunk , snapshot , skyLightLevels );
+		if ( renderedBlocksCount < 0 )
 		{
-			recalculateLighting(chunk);
-			renderedBlocksCount = chunkRenderer.setupMesh( chunk );
+			meshDiscarded( chunk , snapshot );
+			return;
 		}
+		meshesPublished.incrementAndGet();
+		updateMemoryUsageIfCached( chunk );
+
 		if ( DEBUG_MESH_REBUILD )
 		{
 			final float percentage = 100f*(renderedBlocksCount / (float) (Chunk.BLOCKS_X*Chunk.BLOCKS_Y*Chunk.BLOCKS_Z));
@@ -692,10 +1107,32 @@ public class ChunkManager
 		}
 	}
 
-	private void recalculateLighting(Chunk chunk)
+	private void meshDiscarded(Chunk chunk,ChunkSnapshot snapshot)
+	{
+		meshesDiscarded.incrementAndGet();
+		if ( DEBUG_MESH_REBUILD ) {
+			LOG.info("syncUpdateChunk(): Discarded outdated mesh for "+snapshot+" , chunk is now at version "+chunk.getVersion());
+		}
+	}
+
+	/**
+	 * Calculates sky light levels from a snapshot.
+	 *
+	 * @param snapshot
+	 * @return light levels indexed by block index , this is a scratch buffer owned by the calling thread
+	 * that gets overwritten by the next call
+	 */
+	public static byte[] recalculateLighting(ChunkSnapshot snapshot)
 	{
-		final byte[] blockTypes = chunk.blockType;
-		final byte[] lightLevels = chunk.lightLevel;
+		final byte[] lightLevels = LIGHT_LEVELS.get();
+		if ( snapshot.isUniform() && Block.isTranslucentBlock( snapshot.getBlockType( 0 ) ) )
+		{
+			// sunlight reaches all blocks
+			Arrays.fill( lightLevels , Block.MAX_LIGHT_LEVEL );
+			return lightLevels;
+		}
+
+		final long occupiedBricks = snapshot.getOccupiedBricks();
 
 		// set light level of blocks that are directly hit by sunlight (no opaque block above them)
 		for ( int x = 0 ; x < Chunk.BLOCKS_X ; x++ ) {
@@ -708,12 +1145,17 @@ public class ChunkManager
 				{
 					final int currentIndex = x+Chunk.BLOCKS_X*y1+(Chunk.BLOCKS_X*Chunk.BLOCKS_Y)*z;
 					lightLevels[ currentIndex ] = currentLightLevel;
-					if ( Block.isNoTranslucentBlock( blockTypes[currentIndex ] ) ) { // blocks below it will only receive min light level
+					if ( currentLightLevel == Block.MIN_LIGHT_LEVEL ) {
+						continue;
+					}
+					final int brick = BrickBlockStorage.brickIndex( x / BrickBlockStorage.BRICK_SIZE , y1 / BrickBlockStorage.BRICK_SIZE , z / BrickBlockStorage.BRICK_SIZE );
+					if ( ( occupiedBricks & ( 1L << brick ) ) != 0 && Block.isNoTranslucentBlock( snapshot.getBlockType( currentIndex ) ) ) { // blocks below it will only receive min light level
 						currentLightLevel = Block.MIN_LIGHT_LEVEL;
 					}
 				}
 			}
 		}
+		return lightLevels;
 	}
 
 	protected static void printChunk(List<Chunk> currentChunks)
@@ -752,15 +1194,27 @@ public class ChunkManager
 		if ( newCameraChunkX == cameraChunkX && newCameraChunkY == cameraChunkY && newCameraChunkZ == cameraChunkZ)
 		{
 			// camera still in same chunk but view frustum has changed
+			if ( ! loadQueue.isEmpty() ) {
+				loadsCancelled.addAndGet( loadQueue.reprioritize( loadPriority ) );
+			}
 			visibleListUpdater.queueUpdate();
 			return;
 		}
 
 		// System.out.println("*** CAMERA: Now at chunk ( "+this.cameraChunkX+","+this.cameraChunkY+","+this.cameraChunkZ+") ***");
-		this.cameraChunkX = newCameraChunkX;
-		this.cameraChunkY = newCameraChunkY;
-		this.cameraChunkZ = newCameraChunkZ;
-
+		// syncLoadChunk() decides whether to pin a chunk under the same lock , so it
+		// never sees the new camera position before the pinned chunks have been updated (or vice versa)
+		synchronized( cacheLock )
+		{
+			final int oldCameraChunkX = cameraChunkX;
+			final int oldCameraChunkY = cameraChunkY;
+			final int oldCameraChunkZ = cameraChunkZ;
+			this.cameraChunkX = newCameraChunkX;
+			this.cameraChunkY = newCameraChunkY;
+			this.cameraChunkZ = newCameraChunkZ;
+
+			updatePinnedChunks( oldCameraChunkX , oldCameraChunkY , oldCameraChunkZ );
+		}
 		cameraMovedToNewChunk();
 	}
 
@@ -846,26 +1300,34 @@ public class ChunkManager
 
 	public void dispose()
 	{
-		chunkLoader.terminate();
+		loadQueue.dispose();
+		for ( final ChunkLoaderThread loader : chunkLoaders ) {
+			loader.terminate();
+		}
 		chunkUpdater.terminate();
 		chunkUpdater.terminate();
 
-		synchronized( chunkMap )
+		synchronized( cacheLock )
 		{
-			for (final Iterator<com.badlogic.gdx.utils.IntMap.Entry<Chunk>> it = chunkMap.entries().iterator() ; it.hasNext();)
+			for ( final Chunk chunk : chunkMap.values() )
 			{
-				final com.badlogic.gdx.utils.IntMap.Entry<Chunk> chunk = it.next();
-				if ( chunk.value != null ) {
-					try {
-						synchronized( chunk.value ) {
-							chunkStorage.saveChunk( chunk.value );
-						}
-					} catch (final IOException e) {
-						e.printStackTrace();
+				try {
+					synchronized( chunk ) {
+						chunkStorage.saveChunk( chunk );
 					}
+				} catch (final IOException e) {
+					e.printStackTrace();
 				}
-				it.remove();
+				memoryUsage.remove( chunk );
 			}
+			chunkMap.clear();
+			evictionRing.clear();
+		}
+
+		try {
+			chunkStorage.close();
+		} catch (final IOException e) {
+			e.printStackTrace();
 		}
 	}
 }
\ No newline at end of file
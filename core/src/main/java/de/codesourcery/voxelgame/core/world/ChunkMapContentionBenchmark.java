@@ -0,0 +1,262 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.codesourcery.voxelgame.core.util.ConcurrentLongMap;
+import de.codesourcery.voxelgame.core.util.LongMap;
+
+/**
+ * Benchmark comparing the chunk cache guarded by a single global lock (the way {@link ChunkManager} used to work)
+ * against {@link ConcurrentLongMap}.
+ *
+ * <p>Loader threads keep inserting chunks around a moving camera position (evicting the least recently used chunk
+ * once the cache is full) , updater threads look up adjacent chunks just like mesh building does and
+ * a simulated render loop iterates over all cached chunks once per frame (like the visibility list update)
+ * and looks up each visible chunk. The render loop's frame times show how much it is slowed down by the other threads.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public class ChunkMapContentionBenchmark {
+
+	private static final int LOADER_THREADS = 9;
+	private static final int UPDATER_THREADS = 3;
+	private static final int MAX_CACHED_CHUNKS = 3000;
+
+	// lookups per mesh build , one per border block of each side (like ChunkManager#maybeGetChunk() used to be called)
+	private static final int LOOKUPS_PER_MESH = 6 * Chunk.BLOCKS_X * Chunk.BLOCKS_Y;
+
+	private static final int RANGE = 8; // chunks around the camera
+	private static final long LOAD_MILLIS = 1; // time it takes to load a chunk
+	private static final long DURATION_MILLIS = 5000;
+	private static final int ROUNDS = 3;
+
+	protected static abstract class ChunkCache
+	{
+		public abstract Object get(long key);
+
+		public abstract void load(long key,long accessCounter);
+
+		public abstract int visitAll();
+	}
+
+	protected static final class CachedChunk
+	{
+		public final long key;
+		public volatile long accessCounter;
+
+		public CachedChunk(long key,long accessCounter) {
+			this.key = key;
+			this.accessCounter = accessCounter;
+		}
+	}
+
+	protected static final class LockedChunkCache extends ChunkCache
+	{
+		private final LongMap<CachedChunk> map = new LongMap<>( MAX_CACHED_CHUNKS );
+		private final List<CachedChunk> list = new ArrayList<>( MAX_CACHED_CHUNKS );
+
+		@Override
+		public Object get(long key)
+		{
+			synchronized( map ) {
+				return map.get( key );
+			}
+		}
+
+		@Override
+		public void load(long key,long accessCounter)
+		{
+			synchronized( map )
+			{
+				if ( map.containsKey( key ) ) {
+					return;
+				}
+				if ( map.size() >= MAX_CACHED_CHUNKS )
+				{
+					int toEvict = 0;
+					for ( int i = 1 ; i < list.size() ; i++ )
+					{
+						if ( list.get( i ).accessCounter < list.get( toEvict ).accessCounter ) {
+							toEvict = i;
+						}
+					}
+					map.remove( list.remove( toEvict ).key );
+				}
+				final CachedChunk newChunk = new CachedChunk( key , accessCounter );
+				map.put( key , newChunk );
+				list.add( newChunk );
+			}
+		}
+
+		@Override
+		public int visitAll()
+		{
+			int result = 0;
+			synchronized( map )
+			{
+				for ( final CachedChunk chunk : list ) {
+					result += (int) chunk.key;
+				}
+			}
+			return result;
+		}
+	}
+
+	protected static final class ConcurrentChunkCache extends ChunkCache
+	{
+		private final ConcurrentLongMap<CachedChunk> map = new ConcurrentLongMap<>( MAX_CACHED_CHUNKS );
+		private final Object cacheLock = new Object();
+
+		@Override
+		public Object get(long key) {
+			return map.get( key );
+		}
+
+		@Override
+		public void load(long key,long accessCounter)
+		{
+			synchronized( cacheLock )
+			{
+				if ( map.putIfAbsent( key , new CachedChunk( key , accessCounter ) ) == null && map.size() > MAX_CACHED_CHUNKS )
+				{
+					CachedChunk toEvict = null;
+					for ( final CachedChunk existing : map.values() )
+					{
+						if ( toEvict == null || existing.accessCounter < toEvict.accessCounter ) {
+							toEvict = existing;
+						}
+					}
+					map.remove( toEvict.key , toEvict );
+				}
+			}
+		}
+
+		@Override
+		public int visitAll()
+		{
+			int result = 0;
+			for ( final CachedChunk chunk : map.values() ) {
+				result += (int) chunk.key;
+			}
+			return result;
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		System.out.println("Loader threads: "+LOADER_THREADS+" , updater threads: "+UPDATER_THREADS+" , CPUs: "+Runtime.getRuntime().availableProcessors());
+		for ( int round = 1 ; round <= ROUNDS ; round++ )
+		{
+			System.out.println("=== Round "+round+" / "+ROUNDS+" ===");
+			run( "global lock" , new LockedChunkCache() );
+			run( "concurrent ", new ConcurrentChunkCache() );
+		}
+	}
+
+	private static void run(String name,final ChunkCache cache) throws InterruptedException
+	{
+		final AtomicLong camera = new AtomicLong(); // camera X coordinate
+		final AtomicLong loads = new AtomicLong();
+		final AtomicLong lookups = new AtomicLong();
+		final long end = System.currentTimeMillis() + DURATION_MILLIS;
+
+		final List<Thread> threads = new ArrayList<>();
+		for ( int i = 0 ; i < LOADER_THREADS ; i++ )
+		{
+			final Random rnd = new Random( i );
+			threads.add( new Thread() {
+				@Override
+				public void run()
+				{
+					while ( System.currentTimeMillis() < end )
+					{
+						final long cam = camera.get();
+						final long key = Chunk.calcChunkKey( (int) cam + rnd.nextInt( 2*RANGE+1 ) - RANGE , rnd.nextInt( 4 ) , rnd.nextInt( 2*RANGE+1 ) - RANGE );
+						if ( cache.get( key ) == null )
+						{
+							// simulate loading / generating the chunk
+							try {
+								Thread.sleep( LOAD_MILLIS );
+							} catch (final InterruptedException e) {
+								return;
+							}
+							cache.load( key , cam );
+							loads.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		for ( int i = 0 ; i < UPDATER_THREADS ; i++ )
+		{
+			final Random rnd = new Random( 100+i );
+			threads.add( new Thread() {
+				@Override
+				public void run()
+				{
+					int found = 0;
+					while ( System.currentTimeMillis() < end )
+					{
+						final int x = (int) camera.get() + rnd.nextInt( 2*RANGE+1 ) - RANGE;
+						final int y = rnd.nextInt( 4 );
+						final int z = rnd.nextInt( 2*RANGE+1 ) - RANGE;
+						for ( int j = 0 ; j < LOOKUPS_PER_MESH ; j++ )
+						{
+							final int side = j % 6;
+							final int dx = side == 0 ? -1 : side == 1 ? 1 : 0;
+							final int dy = side == 2 ? -1 : side == 3 ? 1 : 0;
+							final int dz = side == 4 ? -1 : side == 5 ? 1 : 0;
+							if ( cache.get( Chunk.calcChunkKey( x+dx , y+dy , z+dz ) ) != null ) {
+								found++;
+							}
+						}
+						lookups.addAndGet( LOOKUPS_PER_MESH );
+					}
+					if ( found == -1 ) {
+						System.out.println("Never happens");
+					}
+				}
+			});
+		}
+		for ( final Thread t : threads ) {
+			t.start();
+		}
+
+		// render loop
+		long frames = 0;
+		long maxFrameNanos = 0;
+		long totalFrameNanos = 0;
+		int blackhole = 0;
+		while ( System.currentTimeMillis() < end )
+		{
+			long frame = -System.nanoTime();
+			blackhole += cache.visitAll();
+			final int cam = (int) camera.get();
+			for ( int x = cam - RANGE ; x <= cam + RANGE ; x++ ) {
+				for ( int z = -RANGE ; z <= RANGE ; z++ ) {
+					if ( cache.get( Chunk.calcChunkKey( x , 0 , z ) ) != null ) {
+						blackhole++;
+					}
+				}
+			}
+			frame += System.nanoTime();
+
+			frames++;
+			totalFrameNanos += frame;
+			maxFrameNanos = Math.max( maxFrameNanos , frame );
+			if ( ( frames % 100 ) == 0 ) {
+				camera.incrementAndGet();
+			}
+		}
+		for ( final Thread t : threads ) {
+			t.join();
+		}
+
+		final float seconds = DURATION_MILLIS / 1000f;
+		System.out.println(name+": "+(int) ( frames / seconds )+" frames/s , avg. frame "+( totalFrameNanos / frames / 1000f )+" us , max. frame "+( maxFrameNanos / 1000000f )+
+				" ms , "+(int) ( loads.get() / seconds )+" loads/s , "+(int) ( lookups.get() / seconds / 1000 )+"k lookups/s ("+blackhole+")");
+	}
+}
@@ -0,0 +1,158 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import de.codesourcery.voxelgame.core.Block;
+import de.codesourcery.voxelgame.core.util.OffHeapSlabAllocator;
+
+/**
+ * Benchmark that simulates a camera moving through the world while keeping a large number of chunks
+ * cached , comparing light levels kept on the heap against light levels stored off-heap (see {@link OffHeapSlabAllocator}).
+ *
+ * <p>Each simulated frame loads a couple of chunks (block types are copied from pre-generated chunks and lighting is calculated)
+ * and evicts the least-recently loaded ones. Prints frame time statistics and time spent in garbage collection.</p>
+ *
+ * <p>Usage: <code>ChunkMemoryBenchmark [cached chunks]</code> , defaults to 10x {@link ChunkManager#INITIAL_CHUNK_CACHE_CAPACITY}.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public class ChunkMemoryBenchmark {
+
+	// number of distinct chunks to generate, chunk data is re-used for the other chunks
+	private static final int DISTINCT_CHUNKS = 32;
+
+	private static final int FRAMES = 3000;
+
+	private static final int CHUNKS_LOADED_PER_FRAME = 4;
+
+	private static final int ROUNDS = 3;
+
+	private final int cachedChunks;
+	private final byte[][] chunkData = new byte[ DISTINCT_CHUNKS ][];
+	private final byte[] lightLevels = new byte[ Chunk.BLOCK_COUNT ];
+
+	public static void main(String[] args)
+	{
+		final int cachedChunks = args.length > 0 ? Integer.parseInt( args[0] ) : 10 * ChunkManager.INITIAL_CHUNK_CACHE_CAPACITY;
+		new ChunkMemoryBenchmark( cachedChunks ).run();
+	}
+
+	public ChunkMemoryBenchmark(int cachedChunks) {
+		this.cachedChunks = cachedChunks;
+	}
+
+	private void run()
+	{
+		System.out.println("Generating "+DISTINCT_CHUNKS+" chunks...");
+		final IChunkFactory generator = new NoiseChunkFactory( 0xdeadbeef , null );
+		for ( int i = 0 ; i < DISTINCT_CHUNKS ; i++ )
+		{
+			final Chunk chunk = generator.createChunk( i , 0 , 0 );
+			chunkData[i] = new byte[ Chunk.BLOCK_COUNT ];
+			chunk.getBlockTypes( chunkData[i] );
+			generator.returnChunkToPool( chunk );
+		}
+
+		for ( int round = 1 ; round <= ROUNDS ; round++ )
+		{
+			System.out.println("=== Round "+round+" / "+ROUNDS+" ("+cachedChunks+" cached chunks , "+FRAMES+" frames) ===");
+			runTest( "heap    " , new NoiseChunkFactory( 0xdeadbeef , null ) );
+			final OffHeapSlabAllocator allocator = new OffHeapSlabAllocator();
+			runTest( "off-heap" , new NoiseChunkFactory( 0xdeadbeef , allocator ) );
+			System.out.println("off-heap memory reserved: "+( allocator.getReservedBytes() / 1024 / 1024 )+" MB");
+		}
+	}
+
+	private void runTest(String name,IChunkFactory factory)
+	{
+		final ArrayDeque<Chunk> cache = new ArrayDeque<>();
+		int chunkCounter = 0;
+		for ( ; chunkCounter < cachedChunks ; chunkCounter++ ) {
+			cache.add( loadChunk( factory , chunkCounter ) );
+		}
+		System.gc();
+
+		final long gcCountBefore = getGCCount();
+		final long gcTimeBefore = getGCTime();
+		final long[] frameTimes = new long[ FRAMES ];
+		final long start = System.nanoTime();
+		for ( int frame = 0 ; frame < FRAMES ; frame++ )
+		{
+			final long frameStart = System.nanoTime();
+			for ( int i = 0 ; i < CHUNKS_LOADED_PER_FRAME ; i++ , chunkCounter++ )
+			{
+				factory.returnChunkToPool( cache.removeFirst() );
+				cache.add( loadChunk( factory , chunkCounter ) );
+			}
+			frameTimes[frame] = System.nanoTime() - frameStart;
+		}
+		final long elapsed = System.nanoTime() - start;
+
+		long heapBytes = 0;
+		for ( final Chunk chunk : cache ) {
+			heapBytes += chunk.getBlockStorageSizeInBytes();
+		}
+
+		Arrays.sort( frameTimes );
+		System.out.println( name+" : "+
+				"avg frame "+millis( elapsed / FRAMES )+" ms , "+
+				"99% frame "+millis( frameTimes[ FRAMES * 99 / 100 ] )+" ms , "+
+				"max frame "+millis( frameTimes[ FRAMES - 1 ] )+" ms , "+
+				"GC: "+( getGCCount() - gcCountBefore )+" collections , "+( getGCTime() - gcTimeBefore )+" ms , "+
+				"chunk data on heap: "+( heapBytes / 1024 )+" KB");
+
+		for ( final Chunk chunk : cache ) {
+			factory.returnChunkToPool( chunk );
+		}
+	}
+
+	private Chunk loadChunk(IChunkFactory factory,int counter)
+	{
+		final Chunk chunk = factory.getChunkFromPool( counter , 0 , 0 );
+		final byte[] blockTypes = chunkData[ counter % DISTINCT_CHUNKS ];
+		chunk.setBlockTypes( blockTypes );
+
+		// sunlight from above , see ChunkManager#recalculateLighting()
+		for ( int x = 0 ; x < Chunk.BLOCKS_X ; x++ ) {
+			for ( int z = 0 ; z < Chunk.BLOCKS_Z ; z++ )
+			{
+				byte currentLightLevel = Block.MAX_LIGHT_LEVEL;
+				for ( int y = Chunk.BLOCKS_Y-1 ; y >= 0; y-- )
+				{
+					final int index = Chunk.blockIndex( x , y , z );
+					lightLevels[ index ] = currentLightLevel;
+					if ( Block.isNoTranslucentBlock( blockTypes[ index ] ) ) {
+						currentLightLevel = Block.MIN_LIGHT_LEVEL;
+					}
+				}
+			}
+		}
+		chunk.setSkyLightLevels( lightLevels );
+		return chunk;
+	}
+
+	private static float millis(long nanos) {
+		return nanos / 1000 / 1000f;
+	}
+
+	private static long getGCCount()
+	{
+		long result = 0;
+		for ( final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans() ) {
+			result += Math.max( 0 , bean.getCollectionCount() );
+		}
+		return result;
+	}
+
+	private static long getGCTime()
+	{
+		long result = 0;
+		for ( final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans() ) {
+			result += Math.max( 0 , bean.getCollectionTime() );
+		}
+		return result;
+	}
+}
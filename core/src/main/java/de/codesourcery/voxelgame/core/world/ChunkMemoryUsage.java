@@ -0,0 +1,91 @@
+package de.codesourcery.voxelgame.core.world;
+
+/**
+ * Keeps track of the memory used by all chunks in the chunk cache.
+ *
+ * <p>Each chunk remembers how much memory has been accounted for it , so
+ * re-accounting a chunk after it changed (new mesh , block edits , ...) only adds the difference
+ * and removing a chunk subtracts exactly what has been added before.</p>
+ *
+ * <p>Thread-safety: Writes need to be synchronized externally (see {@link ChunkManager}) , getters may be called from
+ * any thread.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class ChunkMemoryUsage
+{
+	private volatile long blockDataBytes;
+	private volatile long offHeapBytes;
+	private volatile long meshBytes;
+	private volatile long bufferBytes;
+
+	/**
+	 * Accounts for the current memory usage of a chunk , replacing whatever has been
+	 * accounted for it before.
+	 *
+	 * @param chunk
+	 */
+	public void update(Chunk chunk)
+	{
+		final int blockData = chunk.getBlockStorageSizeInBytes();
+		final int offHeap = chunk.getOffHeapSizeInBytes();
+		final int mesh = chunk.blockRenderer.getHeapSizeInBytes();
+		final int buffers = chunk.blockRenderer.getBufferSizeInBytes();
+		blockDataBytes += blockData - chunk.accountedBlockDataBytes;
+		offHeapBytes += offHeap - chunk.accountedOffHeapBytes;
+		meshBytes += mesh - chunk.accountedMeshBytes;
+		bufferBytes += buffers - chunk.accountedBufferBytes;
+		chunk.accountedBlockDataBytes = blockData;
+		chunk.accountedOffHeapBytes = offHeap;
+		chunk.accountedMeshBytes = mesh;
+		chunk.accountedBufferBytes = buffers;
+	}
+
+	/**
+	 * Removes the memory accounted for a chunk , does nothing if nothing has been accounted for it.
+	 *
+	 * @param chunk
+	 */
+	public void remove(Chunk chunk)
+	{
+		blockDataBytes -= chunk.accountedBlockDataBytes;
+		offHeapBytes -= chunk.accountedOffHeapBytes;
+		meshBytes -= chunk.accountedMeshBytes;
+		bufferBytes -= chunk.accountedBufferBytes;
+		chunk.accountedBlockDataBytes = chunk.accountedOffHeapBytes = chunk.accountedMeshBytes = chunk.accountedBufferBytes = 0;
+	}
+
+	/**
+	 * Returns the number of bytes used for block data (heap and off-heap).
+	 *
+	 * @return
+	 */
+	public long getDataBytes() {
+		return blockDataBytes + offHeapBytes;
+	}
+
+	/**
+	 * Returns the number of bytes used for meshes (heap and VBOs).
+	 *
+	 * @return
+	 */
+	public long getMeshAndBufferBytes() {
+		return meshBytes + bufferBytes;
+	}
+
+	public long getBlockDataBytes() {
+		return blockDataBytes;
+	}
+
+	public long getOffHeapBytes() {
+		return offHeapBytes;
+	}
+
+	public long getMeshBytes() {
+		return meshBytes;
+	}
+
+	public long getBufferBytes() {
+		return bufferBytes;
+	}
+}
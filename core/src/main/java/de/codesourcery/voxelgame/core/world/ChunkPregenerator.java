@@ -0,0 +1,327 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.codesourcery.voxelgame.core.Constants;
+import de.codesourcery.voxelgame.core.world.Chunk.ChunkKey;
+
+/**
+ * Command-line tool that generates all chunks inside a cubic or cylindrical area
+ * and writes them to chunk storage.
+ *
+ * <p>Chunks are generated in parallel on a fork/join pool using all available cores, each worker
+ * writes the chunks it generated straight to storage. Chunks that are already present in storage are skipped.</p>
+ *
+ * <p>Usage:
+ * <pre>
+ * ChunkPregenerator [options] directory
+ *
+ * --center x,y,z            center chunk (default: 0,0,0)
+ * --radius r                radius in chunks (default: 8)
+ * --shape cube|cylinder     shape of the area , cylinders extend along the Y axis (default: cube)
+ * --height h                height of cylinder in chunks (default: 2*radius+1)
+ * --factory noise|debug     chunk factory to use (default: noise)
+ * --seed n                  seed for noise factory (default: 0xdeadbeef)
+ * --storage region|file     storage backend to use (default: see {@link Constants#USE_REGION_FILE_STORAGE})
+ * --threads n               number of worker threads (default: number of CPU cores)
+ * </pre>
+ *
+ * <p>Chunks are stored as full snapshots , so the game loads them instead of generating them. With
+ * {@link Constants#USE_DELTA_PERSISTENCE delta persistence} enabled , edits to pre-generated chunks get stored as full snapshots as well.
+ * The chunk directory is marked (see {@link AbstractChunkStorage#KEEP_ON_START_MARKER}) so that the game does not delete it on startup.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public class ChunkPregenerator
+{
+	// number of chunks each fork/join task processes sequentially
+	private static final int BATCH_SIZE = 16;
+
+	private static final int PROGRESS_INTERVAL = 1000;
+
+	private final AbstractChunkStorage storage;
+	private final IChunkFactory chunkFactory;
+
+	private final AtomicLong chunksGenerated = new AtomicLong();
+	private final AtomicLong chunksSkipped = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final AtomicLong lookupNanos = new AtomicLong();
+	private final AtomicLong generateNanos = new AtomicLong();
+	private final AtomicLong encodeNanos = new AtomicLong();
+	private final AtomicLong writeNanos = new AtomicLong();
+
+	private volatile int totalChunks;
+	private volatile long startTime;
+
+	public static void main(String[] args) throws IOException
+	{
+		int centerX = 0;
+		int centerY = 0;
+		int centerZ = 0;
+		int radius = 8;
+		int height = -1;
+		boolean cylinder = false;
+		String factoryName = "noise";
+		long seed = 0xdeadbeef;
+		boolean useRegionFiles = Constants.USE_REGION_FILE_STORAGE;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File directory = null;
+
+		try
+		{
+			for ( int i = 0 ; i < args.length ; i++ )
+			{
+				final String arg = args[i];
+				switch( arg )
+				{
+					case "--center":
+						final String[] parts = args[++i].split(",");
+						if ( parts.length != 3 ) {
+							throw new IllegalArgumentException("--center requires x,y,z");
+						}
+						centerX = Integer.parseInt( parts[0].trim() );
+						centerY = Integer.parseInt( parts[1].trim() );
+						centerZ = Integer.parseInt( parts[2].trim() );
+						break;
+					case "--radius":
+						radius = Integer.parseInt( args[++i] );
+						break;
+					case "--height":
+						height = Integer.parseInt( args[++i] );
+						break;
+					case "--shape":
+						final String shape = args[++i];
+						if ( ! "cube".equals( shape ) && ! "cylinder".equals( shape ) ) {
+							throw new IllegalArgumentException("Unknown shape: "+shape);
+						}
+						cylinder = "cylinder".equals( shape );
+						break;
+					case "--factory":
+						factoryName = args[++i];
+						break;
+					case "--seed":
+						seed = Long.decode( args[++i] );
+						break;
+					case "--storage":
+						final String storageType = args[++i];
+						if ( ! "region".equals( storageType ) && ! "file".equals( storageType ) ) {
+							throw new IllegalArgumentException("Unknown storage: "+storageType);
+						}
+						useRegionFiles = "region".equals( storageType );
+						break;
+					case "--threads":
+						threads = Integer.parseInt( args[++i] );
+						break;
+					default:
+						if ( arg.startsWith("--") || directory != null ) {
+							throw new IllegalArgumentException("Unknown option: "+arg);
+						}
+						directory = new File( arg );
+				}
+			}
+			if ( directory == null ) {
+				throw new IllegalArgumentException("No directory specified");
+			}
+			if ( radius < 0 || threads < 1 ) {
+				throw new IllegalArgumentException("Radius must be >= 0 and thread count >= 1");
+			}
+		}
+		catch(final RuntimeException e)
+		{
+			System.err.println("ERROR: "+e.getMessage());
+			System.err.println("Usage: ChunkPregenerator [--center x,y,z] [--radius r] [--shape cube|cylinder] [--height h] "+
+					"[--factory noise|debug] [--seed n] [--storage region|file] [--threads n] directory");
+			System.exit(1);
+			return;
+		}
+
+		final IChunkFactory factory;
+		switch( factoryName ) {
+			case "noise": factory = new NoiseChunkFactory( seed ); break;
+			case "debug": factory = new DebugChunkFactory(); break;
+			default:
+				System.err.println("ERROR: Unknown chunk factory: "+factoryName);
+				System.exit(1);
+				return;
+		}
+
+		AbstractChunkStorage.DELETE_CHUNK_CACHE_ON_START = false;
+		final AbstractChunkStorage storage = useRegionFiles ? new RegionChunkStorage( directory , factory , false ) : new DefaultChunkStorage( directory , factory );
+
+		final List<ChunkKey> chunks = cylinder ?
+				getCylinder( centerX , centerY , centerZ , radius , height < 0 ? 2*radius+1 : height ) :
+				getCube( centerX , centerY , centerZ , radius );
+
+		System.out.println("Generating "+chunks.size()+" chunks around ("+centerX+","+centerY+","+centerZ+") using "+threads+" threads , "+
+				"factory: "+factoryName+" , storage: "+storage.getClass().getSimpleName()+" ("+directory.getAbsolutePath()+")");
+		new ChunkPregenerator( storage , factory ).run( chunks , threads );
+	}
+
+	public ChunkPregenerator(AbstractChunkStorage storage,IChunkFactory chunkFactory)
+	{
+		this.storage = storage;
+		this.chunkFactory = chunkFactory;
+	}
+
+	public static List<ChunkKey> getCube(int centerX,int centerY,int centerZ,int radius)
+	{
+		final List<ChunkKey> result = new ArrayList<>();
+		for ( int x = centerX - radius ; x <= centerX + radius ; x++ ) {
+			for ( int y = centerY - radius ; y <= centerY + radius ; y++ ) {
+				for ( int z = centerZ - radius ; z <= centerZ + radius ; z++ ) {
+					result.add( new ChunkKey( x , y , z ) );
+				}
+			}
+		}
+		return result;
+	}
+
+	public static List<ChunkKey> getCylinder(int centerX,int centerY,int centerZ,int radius,int height)
+	{
+		final List<ChunkKey> result = new ArrayList<>();
+		final int yMin = centerY - height/2;
+		final int yMax = yMin + height - 1;
+		for ( int x = -radius ; x <= radius ; x++ ) {
+			for ( int z = -radius ; z <= radius ; z++ ) {
+				if ( x*x + z*z <= radius*radius ) {
+					for ( int y = yMin ; y <= yMax ; y++ ) {
+						result.add( new ChunkKey( centerX + x , y , centerZ + z ) );
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	public void run(List<ChunkKey> chunks,int threads) throws IOException
+	{
+		// keep chunks stored in the same region file close together
+		final List<ChunkKey> tmp = new ArrayList<>( chunks );
+		Collections.sort( tmp , RegionFile.STORAGE_ORDER );
+		final ChunkKey[] sorted = tmp.toArray( new ChunkKey[ tmp.size() ] );
+
+		// keep the game from deleting the chunks on startup
+		final File marker = new File( storage.chunkDirectory , AbstractChunkStorage.KEEP_ON_START_MARKER );
+		if ( ! marker.exists() && ! marker.createNewFile() ) {
+			throw new IOException("Failed to create "+marker.getAbsolutePath());
+		}
+
+		totalChunks = sorted.length;
+		startTime = System.nanoTime();
+
+		final ForkJoinPool pool = new ForkJoinPool( threads );
+		long closeTime = 0;
+		try
+		{
+			try {
+				pool.invoke( new GenerateTask( sorted , 0 , sorted.length ) );
+			} finally {
+				pool.shutdown();
+			}
+		}
+		finally
+		{
+			// release file handles and persist the index even if generating chunks failed
+			closeTime = -System.nanoTime();
+			storage.close();
+		}
+		final long elapsed = System.nanoTime() - startTime;
+
+		final float seconds = elapsed / 1000000000f;
+		final long generated = chunksGenerated.get();
+		System.out.println("Done: "+generated+" chunks generated , "+chunksSkipped.get()+" chunks skipped (already in storage) , "+
+				"time: "+seconds+" s , "+(int) ( generated / seconds )+" chunks/s , "+
+				bytesWritten.get()+" bytes written ("+( generated > 0 ? bytesWritten.get() / generated : 0 )+" bytes/chunk)");
+		System.out.println("CPU time per stage (summed over all threads): "+
+				"lookup "+millis( lookupNanos )+" ms , "+
+				"generate "+millis( generateNanos )+" ms , "+
+				"encode "+millis( encodeNanos )+" ms , "+
+				"write "+millis( writeNanos )+" ms , "+
+				"close "+( ( closeTime + System.nanoTime() ) / 1000000 )+" ms");
+	}
+
+	private static long millis(AtomicLong nanos) {
+		return nanos.get() / 1000000;
+	}
+
+	protected final class GenerateTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ChunkKey[] chunks;
+		private final int start;
+		private final int end;
+
+		public GenerateTask(ChunkKey[] chunks, int start, int end)
+		{
+			this.chunks = chunks;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if ( end - start <= BATCH_SIZE )
+			{
+				for ( int i = start ; i < end ; i++ )
+				{
+					try {
+						generate( chunks[i] );
+					}
+					catch (final IOException e) {
+						throw new RuntimeException("Failed to store chunk ("+chunks[i].x+","+chunks[i].y+","+chunks[i].z+")",e);
+					}
+				}
+				return;
+			}
+			final int mid = ( start + end ) >>> 1;
+			invokeAll( new GenerateTask( chunks , start , mid ) , new GenerateTask( chunks , mid , end ) );
+		}
+	}
+
+	private void generate(ChunkKey key) throws IOException
+	{
+		final long t0 = System.nanoTime();
+		final boolean exists = storage.containsRecord( key.x , key.y , key.z );
+		final long t1 = System.nanoTime();
+		lookupNanos.addAndGet( t1 - t0 );
+		if ( exists )
+		{
+			chunksSkipped.incrementAndGet();
+			return;
+		}
+
+		final Chunk chunk = chunkFactory.createChunk( key.x , key.y , key.z );
+		final long t2 = System.nanoTime();
+		final byte[] record;
+		try {
+			// no edit log , so the record holds a full (or uniform) snapshot even with delta persistence enabled
+			record = storage.encode( key.x , key.y , key.z , chunk.copyBlockTypes() , null );
+		} finally {
+			chunkFactory.returnChunkToPool( chunk );
+		}
+		final long t3 = System.nanoTime();
+		storage.writeRecord( key.x , key.y , key.z , record , 0 , record.length );
+		final long t4 = System.nanoTime();
+
+		generateNanos.addAndGet( t2 - t1 );
+		encodeNanos.addAndGet( t3 - t2 );
+		writeNanos.addAndGet( t4 - t3 );
+		bytesWritten.addAndGet( record.length );
+
+		final long count = chunksGenerated.incrementAndGet();
+		if ( ( count % PROGRESS_INTERVAL ) == 0 )
+		{
+			final float seconds = ( System.nanoTime() - startTime ) / 1000000000f;
+			System.out.println( count+" / "+totalChunks+" chunks , "+(int) ( count / seconds )+" chunks/s");
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package de.codesourcery.voxelgame.core.world;
+
+/**
+ * Immutable view of a chunk's blocks at a certain point in time.
+ *
+ * <p>Snapshots are created in constant time by {@link Chunk#snapshot()} , block data is shared
+ * with the chunk and only copied when the chunk gets modified afterwards. This allows lighting
+ * and mesh building to run without holding the chunk's lock.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class ChunkSnapshot
+{
+	// chunk coordinates
+	public final int x;
+	public final int y;
+	public final int z;
+
+	private final long version;
+	private final BrickBlockStorage blockTypes;
+	private final OpacityMask opacity;
+
+	ChunkSnapshot(int x,int y,int z,long version,BrickBlockStorage blockTypes,OpacityMask opacity)
+	{
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.version = version;
+		this.blockTypes = blockTypes;
+		this.opacity = opacity;
+	}
+
+	/**
+	 * Returns the version of the chunk this snapshot was taken from.
+	 *
+	 * @return
+	 * @see Chunk#getVersion()
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public byte getBlockType(int blockIndex) {
+		return blockTypes.get( blockIndex );
+	}
+
+	public long getOccupiedBricks() {
+		return blockTypes.getOccupiedBricks();
+	}
+
+	public boolean isEmpty() {
+		return blockTypes.getOccupiedBricks() == 0;
+	}
+
+	public boolean isUniform() {
+		return blockTypes.isUniform();
+	}
+
+	public int getOpaqueRow(int row) {
+		return opacity.getOpaqueRow( row );
+	}
+
+	public int getTranslucentRow(int row) {
+		return opacity.getTranslucentRow( row );
+	}
+
+	public boolean hasTranslucentBlocks() {
+		return opacity.hasTranslucentBlocks();
+	}
+
+	@Override
+	public String toString() {
+		return "ChunkSnapshot ("+x+","+y+","+z+" , version "+version+")";
+	}
+}
@@ -0,0 +1,126 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Benchmark comparing save/load times of {@link DefaultChunkStorage} (one file per chunk)
+ * against {@link RegionChunkStorage} (with and without memory-mapped I/O and {@link WriteBehindChunkStorage}).
+ *
+ * <p>Usage: <code>ChunkStorageBenchmark [directory]</code> , defaults to a folder inside <code>java.io.tmpdir</code>.
+ * <b>All contents of this directory will be deleted.</b></p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public class ChunkStorageBenchmark {
+
+	private static final int CHUNKS_X = 16;
+	private static final int CHUNKS_Y = 4;
+	private static final int CHUNKS_Z = 16;
+
+	private static final int CHUNK_COUNT = CHUNKS_X*CHUNKS_Y*CHUNKS_Z;
+
+	// number of distinct chunks to generate, chunk data is re-used for the other chunks
+	private static final int DISTINCT_CHUNKS = 32;
+
+	private static final int ROUNDS = 5;
+
+	private final File baseDirectory;
+	private final IChunkFactory chunkFactory = new NoiseChunkFactory( 0xdeadbeef );
+	private final byte[][] chunkData = new byte[ DISTINCT_CHUNKS ][];
+
+	public static void main(String[] args) throws IOException
+	{
+		final File baseDir = args.length > 0 ? new File( args[0] ) : new File( System.getProperty("java.io.tmpdir") , "chunk_storage_benchmark" );
+		new ChunkStorageBenchmark( baseDir ).run();
+	}
+
+	public ChunkStorageBenchmark(File baseDirectory) {
+		this.baseDirectory = baseDirectory;
+	}
+
+	private void run() throws IOException
+	{
+		System.out.println("Generating "+DISTINCT_CHUNKS+" chunks...");
+		for ( int i = 0 ; i < DISTINCT_CHUNKS ; i++ )
+		{
+			final Chunk chunk = chunkFactory.createChunk( i , 0 , 0 );
+			chunkData[i] = new byte[ Chunk.BLOCK_COUNT ];
+			chunk.getBlockTypes( chunkData[i] );
+			chunkFactory.returnChunkToPool( chunk );
+		}
+
+		AbstractChunkStorage.DELETE_CHUNK_CACHE_ON_START = true;
+		for ( int round = 1 ; round <= ROUNDS ; round++ )
+		{
+			System.out.println("=== Round "+round+" / "+ROUNDS+" ("+CHUNK_COUNT+" chunks) ===");
+			final File dir1 = new File( baseDirectory , "default" );
+			runTest( "one-file-per-chunk" , new DefaultChunkStorage( dir1 , chunkFactory ) , dir1 );
+
+			final File dir2 = new File( baseDirectory , "region" );
+			runTest( "region files      " , new RegionChunkStorage( dir2 , chunkFactory , false ) , dir2 );
+
+			final File dir3 = new File( baseDirectory , "region_mmap" );
+			runTest( "region files/mmap " , new RegionChunkStorage( dir3 , chunkFactory , true ) , dir3 );
+
+			final File dir4 = new File( baseDirectory , "region_write_behind" );
+			runTest( "region/write-behind" , new WriteBehindChunkStorage( new RegionChunkStorage( dir4 , chunkFactory , true ) ) , dir4 );
+		}
+	}
+
+	private void runTest(String name,IChunkStorage storage,File directory) throws IOException
+	{
+		long writeTime = -System.nanoTime();
+		int i = 0;
+		for ( int x = 0 ; x < CHUNKS_X ; x++ )
+		{
+			for ( int y = 0 ; y < CHUNKS_Y ; y++ )
+			{
+				for ( int z = 0 ; z < CHUNKS_Z ; z++ )
+				{
+					final Chunk chunk = chunkFactory.getChunkFromPool( x , y , z );
+					final byte[] data = chunkData[ i++ % DISTINCT_CHUNKS ];
+					chunk.setBlockTypes( data );
+					chunk.setEditLog( null ); // always store full snapshots
+					chunk.setChangedSinceLoad( true );
+					storage.saveChunk( chunk );
+					storage.releaseChunk( chunk );
+				}
+			}
+		}
+		writeTime += System.nanoTime();
+
+		long readTime = -System.nanoTime();
+		for ( int x = 0 ; x < CHUNKS_X ; x++ )
+		{
+			for ( int y = 0 ; y < CHUNKS_Y ; y++ )
+			{
+				for ( int z = 0 ; z < CHUNKS_Z ; z++ )
+				{
+					storage.releaseChunk( storage.loadChunk( x , y , z ) );
+				}
+			}
+		}
+		readTime += System.nanoTime();
+
+		long closeTime = -System.nanoTime();
+		storage.close();
+		closeTime += System.nanoTime();
+
+		final float writeMillis = writeTime / 1000000f;
+		final float readMillis = readTime / 1000000f;
+		System.out.println(name+" : write "+writeMillis+" ms ("+(int) (CHUNK_COUNT / (writeMillis/1000f))+" chunks/s) , "+
+				"read "+readMillis+" ms ("+(int) (CHUNK_COUNT / (readMillis/1000f))+" chunks/s) , "+
+				"close "+( closeTime / 1000000f )+" ms , "+
+				"files: "+directory.listFiles().length+" , bytes on disk: "+sizeOnDisk( directory ) );
+	}
+
+	private static long sizeOnDisk(File directory)
+	{
+		long result = 0;
+		for ( final File f : directory.listFiles() ) {
+			result += f.length();
+		}
+		return result;
+	}
+}
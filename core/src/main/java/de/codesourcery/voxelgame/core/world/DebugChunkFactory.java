@@ -26,7 +26,7 @@ public class DebugChunkFactory extends AbstractChunkFactory {
 //	}
 
 	@Override
-	protected void initializeChunk(Chunk chunk)
+	protected void initializeChunk(Chunk chunk,byte[] blockTypes)
 	{
 
 		final int CHARGES_PER_CHUNK = 3;
@@ -77,7 +77,6 @@ public class DebugChunkFactory extends AbstractChunkFactory {
 			}
 		}
 
-		final byte[] blockTypes = chunk.blockType;
 		final Vector3 currentPos = new Vector3();
 
 		boolean isEmpty = true;
@@ -1,137 +1,139 @@
 package de.codesourcery.voxelgame.core.world;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-
-import de.codesourcery.voxelgame.core.Constants;
-
-
-public class DefaultChunkStorage implements IChunkStorage
+import java.nio.ByteBuffer;
+
+/**
+ * Chunk storage that writes each chunk to a file of its own.
+ *
+ * <p>Files written by older versions (holding the raw block types without any header)
+ * are still read correctly, see {@link ChunkFormat}.</p>
+ *
+ * <p>Keeps a {@link ChunkIndex} of all chunks that have been written so that loading
+ * a chunk that was never saved does not need to probe the file system. The index gets persisted on {@link #close()} and
+ * deleted when the storage is opened, if no index file is found on startup (because the application crashed),
+ * the index gets rebuilt by listing the chunk directory.</p>
+ *
+ * @see RegionChunkStorage
+ */
+public class DefaultChunkStorage extends AbstractChunkStorage
 {
-	public static boolean DELETE_CHUNK_CACHE_ON_START = true;
+	private static final String CHUNK_FILE_PREFIX = "chunk_";
+	private static final String CHUNK_FILE_SUFFIX = ".chunk";
 
-	private final IChunkFactory chunkFactory;
-	private final String chunkDirectory;
+	private final ChunkIndex index = new ChunkIndex();
+	private final File indexFile;
 
 	public DefaultChunkStorage(File chunkDirectory, IChunkFactory chunkFactory) throws IOException
 	{
-		if ( DELETE_CHUNK_CACHE_ON_START )
-		{
-			System.out.println("Deleting chunk cache folder "+chunkDirectory);
-			deleteFolder( chunkDirectory );
-		}
-		if ( ! chunkDirectory.exists() ) {
-			if ( ! chunkDirectory.mkdirs() ) {
-				throw new IOException("Failed to create directory "+chunkDirectory.getAbsolutePath());
-			}
-		}
-		this.chunkDirectory = chunkDirectory.getAbsolutePath();
-		this.chunkFactory = chunkFactory;
+		super(chunkDirectory,chunkFactory);
+		this.indexFile = new File( this.chunkDirectory , "chunks.idx" );
+		loadIndex();
 	}
 
-	private static void deleteFolder(File file) throws IOException
+	private void loadIndex() throws IOException
 	{
-		if ( file.isFile() ){
-			file.delete();
-			return;
-		}
-
-        final File[] listFiles = file.listFiles();
-		if ( listFiles != null ) {
-			for ( final File f : listFiles  ) {
-				deleteFolder(f);
-			}
-		}
-		file.delete();
-	}
-
-	@Override
-	public Chunk loadChunk(int chunkX, int chunkY,int chunkZ) throws IOException
-	{
-		Chunk result = null;
-		if ( Constants.USE_PERSISTENT_STORAGE )
+		boolean rebuild = true;
+		if ( indexFile.exists() )
 		{
 			try {
-				result = tryLoadFromDisk(chunkX, chunkY, chunkZ);
+				index.load( indexFile );
+				rebuild = false;
 			}
 			catch(final IOException e) {
 				e.printStackTrace();
 			}
+			// index will be written again on close()
+			if ( ! indexFile.delete() ) {
+				throw new IOException("Failed to delete "+indexFile.getAbsolutePath());
+			}
 		}
-		if ( result == null ) {
-			result = chunkFactory.createChunk(chunkX, chunkY,chunkZ);
-			if ( Constants.USE_PERSISTENT_STORAGE )
+
+		if ( rebuild )
+		{
+			final File[] files = chunkDirectory.listFiles();
+			if ( files != null )
 			{
-				try {
-					writeToDisk( result );
-				} catch(final IOException e) {
-					e.printStackTrace();
+				for ( final File f : files )
+				{
+					final String name = f.getName();
+					if ( name.startsWith( CHUNK_FILE_PREFIX ) && name.endsWith( CHUNK_FILE_SUFFIX ) )
+					{
+						final String[] parts = name.substring( CHUNK_FILE_PREFIX.length() , name.length() - CHUNK_FILE_SUFFIX.length() ).split("_");
+						try {
+							index.add( Integer.parseInt( parts[0] ) , Integer.parseInt( parts[1] ) , Integer.parseInt( parts[2] ) );
+						}
+						catch(final RuntimeException e) {
+							System.err.println("Ignoring file with malformed name: "+f.getAbsolutePath());
+						}
+					}
 				}
 			}
 		}
-		return result;
 	}
 
-	private Chunk tryLoadFromDisk(int chunkX, int chunkY,int chunkZ) throws IOException
+	@Override
+	protected ByteBuffer readRecord(int chunkX, int chunkY, int chunkZ) throws IOException
 	{
-		final File f = createPath(chunkX,chunkY,chunkZ);
-		if ( ! f.exists() ) {
+		if ( ! index.contains( chunkX , chunkY , chunkZ ) ) {
 			return null;
 		}
-		final Chunk result = chunkFactory.getChunkFromPool( chunkX , chunkY,chunkZ);
-		populateFromDisk( result );
-		return result;
-	}
-
-	private void writeToDisk(Chunk chunk) throws IOException
-	{
-		final File f = createPath(chunk.x,chunk.y,chunk.z);
-		final BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(f));
 
+		final File f = createPath(chunkX,chunkY,chunkZ);
+		final byte[] buffer = getReadBuffer();
+		final FileInputStream in;
 		try {
-			out.write( chunk.blockType , 0 , chunk.blockType.length );
-		} finally {
-			out.close();
+			in = new FileInputStream(f);
+		} catch(final FileNotFoundException e) {
+			return null;
 		}
-	}
-
-	private void populateFromDisk(Chunk chunk) throws IOException
-	{
-		final File f = createPath(chunk.x,chunk.y,chunk.z);
-		final BufferedInputStream out = new BufferedInputStream(new FileInputStream(f));
 		try
 		{
-			final int read = out.read( chunk.blockType , 0 , chunk.blockType.length );
-			if ( read != chunk.blockType.length ) {
-				throw new IOException("Premature end of input, tried to read "+chunk.blockType.length+" bytes but got only "+read);
+			int length = 0;
+			int read;
+			while ( ( read = in.read( buffer , length , buffer.length - length ) ) > 0 ) {
+				length += read;
+			}
+			if ( length == buffer.length && in.read() != -1 ) {
+				throw new IOException("File "+f.getAbsolutePath()+" is larger than the max. chunk record size ("+buffer.length+" bytes)");
 			}
+			return ByteBuffer.wrap( buffer , 0 , length );
 		} finally {
-			out.close();
+			in.close();
 		}
 	}
 
-	private File createPath(int chunkX, int chunkY,int chunkZ)
-	{
-		return new File( chunkDirectory+"/chunk_"+chunkX+"_"+chunkY+"_"+chunkZ+".chunk" );
+	@Override
+	protected boolean containsRecord(int chunkX, int chunkY, int chunkZ) {
+		return index.contains( chunkX , chunkY , chunkZ );
 	}
 
 	@Override
-	public void saveChunk(Chunk chunk) throws IOException
+	protected void writeRecord(int chunkX, int chunkY, int chunkZ, byte[] data, int offset, int length) throws IOException
 	{
-		if ( Constants.USE_PERSISTENT_STORAGE && chunk.hasChangedSinceLoad() )
-		{
-			writeToDisk( chunk );
-			chunk.setChangedSinceLoad(false);
+		final File f = createPath(chunkX,chunkY,chunkZ);
+		final BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(f));
+		try {
+			out.write( data , offset , length );
+		} finally {
+			out.close();
 		}
+		index.add( chunkX , chunkY , chunkZ );
 	}
 
 	@Override
-	public void releaseChunk(Chunk chunk) throws IOException
+	public void close() throws IOException
+	{
+		index.save( indexFile );
+	}
+
+	private File createPath(int chunkX, int chunkY,int chunkZ)
 	{
-		chunkFactory.returnChunkToPool( chunk ); // chunk implements Poolable so dispose() will be called by libGDX pool implementation
+		return new File( chunkDirectory , CHUNK_FILE_PREFIX+chunkX+"_"+chunkY+"_"+chunkZ+CHUNK_FILE_SUFFIX );
 	}
-}
\ No newline at end of file
+}
@@ -42,4 +42,14 @@ public interface IChunkStorage
 	 * @see Chunk#dispose()
 	 */
 	public void releaseChunk(Chunk chunk) throws IOException;
+
+	/**
+	 * Closes this storage and releases any resources (open files etc.) held by it.
+	 *
+	 * <p>Chunks passed to {@link #saveChunk(Chunk)} <b>before</b> this method
+	 * got invoked are guaranteed to have been written to persistent storage
+	 * when this method returns.</p>
+	 * @throws IOException
+	 */
+	public void close() throws IOException;
 }
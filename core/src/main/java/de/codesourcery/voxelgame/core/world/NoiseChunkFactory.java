@@ -1,6 +1,7 @@
 package de.codesourcery.voxelgame.core.world;
 
 import de.codesourcery.voxelgame.core.Block;
+import de.codesourcery.voxelgame.core.util.OffHeapSlabAllocator;
 
 public class NoiseChunkFactory extends AbstractChunkFactory
 {
@@ -11,14 +12,19 @@ public class NoiseChunkFactory extends AbstractChunkFactory
 		rnd.setSeed( seed );
 	}
 
+	public NoiseChunkFactory(long seed,OffHeapSlabAllocator offHeapAllocator)
+	{
+		super( offHeapAllocator );
+		rnd.setSeed( seed );
+	}
+
 	@Override
-	protected void initializeChunk(Chunk chunk)
+	protected void initializeChunk(Chunk chunk,byte[] blockTypes)
 	{
 		final float chunkSize = 0.3f;
 		final float[] heightMap = rnd.createNoise3D( chunk.x*chunkSize , chunk.y*chunkSize, chunk.z*chunkSize  , chunkSize  , 5 , 4f );
 
 		final float factor = 1.0f / (Chunk.BLOCKS_Y*3f);
-		final byte[] blockTypes = chunk.blockType;
 
 		boolean hasOnlyAirBlocks = true;
 		for ( int y = 0 ; y < Chunk.BLOCKS_Y ; y++ )
@@ -0,0 +1,268 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.util.Arrays;
+
+import de.codesourcery.voxelgame.core.Block;
+
+/**
+ * Bit masks telling which blocks of a chunk are opaque (and which are translucent but not air).
+ *
+ * <p>Masks are stored as one <code>int</code> per row of blocks along the X axis , bit <code>x</code> of
+ * row <code>y + BLOCKS_Y * z</code> belongs to block <code>(x,y,z)</code>. Since rows are laid out
+ * just like blocks , the row of a block is simply <code>blockIndex / BLOCKS_X</code>. This allows
+ * checking a whole row of blocks against its neighbours with a few shifts and ANDs.</p>
+ *
+ * <p>Chunks without any opaque blocks or made entirely of opaque blocks share a single , never modified
+ * array. The mask of translucent blocks is only allocated once a chunk contains such a block.</p>
+ *
+ * <p>{@link #snapshot()} creates an independent copy in constant time , arrays shared
+ * by both instances get copied when either of them is modified.</p>
+ *
+ * <p>Thread-safety: Writes (including {@link #snapshot()}) need to be synchronized externally, reads may happen concurrently
+ * with writes without any locking.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class OpacityMask
+{
+	// number of rows (one int per row , so BLOCKS_X must not exceed 32)
+	public static final int ROWS = Chunk.BLOCKS_Y * Chunk.BLOCKS_Z;
+
+	// shared masks , these must NEVER be modified
+	private static final int[] NONE = new int[ ROWS ];
+	private static final int[] ALL = new int[ ROWS ];
+
+	// bits for all blocks in a row
+	private static final int FULL_ROW = (int) ( ( 1L << Chunk.BLOCKS_X ) - 1 );
+
+	static
+	{
+		Arrays.fill( ALL , FULL_ROW );
+	}
+
+	private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+
+		@Override
+		protected byte[] initialValue() {
+			return new byte[ Chunk.BLOCK_COUNT ];
+		}
+	};
+
+	// opaque blocks , copy-on-write if NONE or ALL
+	private volatile int[] opaque = NONE;
+
+	// translucent blocks other than air , NULL if there are none
+	private volatile int[] translucent;
+
+	// whether the arrays are also referenced by a snapshot and thus must be copied before modifying them
+	// @GuardedBy( writer )
+	private boolean opaqueShared;
+	// @GuardedBy( writer )
+	private boolean translucentShared;
+
+	public OpacityMask() {
+	}
+
+	private OpacityMask(int[] opaque,int[] translucent)
+	{
+		this.opaque = opaque;
+		this.translucent = translucent;
+		this.opaqueShared = true;
+		this.translucentShared = true;
+	}
+
+	/**
+	 * Returns the row holding a block.
+	 *
+	 * @param blockY
+	 * @param blockZ
+	 * @return
+	 */
+	public static int rowIndex(int blockY,int blockZ) {
+		return blockY + Chunk.BLOCKS_Y * blockZ;
+	}
+
+	/**
+	 * Returns the opaque blocks of a row.
+	 *
+	 * @param row
+	 * @return bit mask , bit <code>x</code> is set if block <code>x</code> of the row is opaque
+	 * @see #rowIndex(int, int)
+	 */
+	public int getOpaqueRow(int row) {
+		return opaque[ row ];
+	}
+
+	/**
+	 * Returns the translucent blocks (except air) of a row.
+	 *
+	 * @param row
+	 * @return bit mask , bit <code>x</code> is set if block <code>x</code> of the row is translucent but not air
+	 * @see #rowIndex(int, int)
+	 */
+	public int getTranslucentRow(int row)
+	{
+		final int[] current = translucent;
+		return current != null ? current[ row ] : 0;
+	}
+
+	/**
+	 * Returns whether this mask (may) contain translucent blocks other than air.
+	 *
+	 * @return
+	 */
+	public boolean hasTranslucentBlocks() {
+		return translucent != null;
+	}
+
+	/**
+	 * Updates the mask after a block has changed.
+	 *
+	 * @param blockIndex
+	 * @param type new block type
+	 */
+	public void set(int blockIndex,byte type)
+	{
+		final int row = blockIndex / Chunk.BLOCKS_X;
+		final int bit = 1 << ( blockIndex % Chunk.BLOCKS_X );
+
+		final boolean isOpaque = Block.isNoTranslucentBlock( type );
+		int[] current = opaque;
+		if ( ( ( current[row] & bit ) != 0 ) != isOpaque )
+		{
+			if ( current == NONE || current == ALL || opaqueShared ) {
+				current = current.clone();
+				opaqueShared = false;
+			}
+			current[row] ^= bit;
+			opaque = current;
+		}
+
+		final boolean isTranslucent = ! isOpaque && Block.isNoAirBlock( type );
+		int[] translucentRows = translucent;
+		if ( translucentRows == null )
+		{
+			if ( ! isTranslucent ) {
+				return;
+			}
+			translucentRows = new int[ ROWS ];
+		}
+		else if ( translucentShared )
+		{
+			translucentRows = translucentRows.clone();
+		}
+		translucentShared = false;
+		if ( isTranslucent ) {
+			translucentRows[row] |= bit;
+		} else {
+			translucentRows[row] &= ~bit;
+		}
+		translucent = translucentRows;
+	}
+
+	/**
+	 * Sets the mask for a chunk where all blocks have the same type.
+	 *
+	 * @param type
+	 */
+	public void fill(byte type)
+	{
+		opaque = Block.isNoTranslucentBlock( type ) ? ALL : NONE;
+		if ( Block.isTranslucentBlock( type ) && Block.isNoAirBlock( type ) )
+		{
+			final int[] rows = new int[ ROWS ];
+			Arrays.fill( rows , FULL_ROW );
+			translucent = rows;
+		} else {
+			translucent = null;
+		}
+		opaqueShared = translucentShared = false;
+	}
+
+	/**
+	 * Recalculates this mask from block types.
+	 *
+	 * @param types array holding at least {@link Chunk#BLOCK_COUNT} block types
+	 */
+	public void setAll(byte[] types)
+	{
+		final int[] opaqueRows = new int[ ROWS ];
+		int[] translucentRows = null;
+		int opaqueCount = 0;
+		for ( int row = 0 , index = 0 ; row < ROWS ; row++ )
+		{
+			int opaqueBits = 0;
+			int translucentBits = 0;
+			for ( int x = 0 ; x < Chunk.BLOCKS_X ; x++ , index++ )
+			{
+				final byte type = types[ index ];
+				if ( Block.isNoTranslucentBlock( type ) ) {
+					opaqueBits |= 1 << x;
+				} else if ( Block.isNoAirBlock( type ) ) {
+					translucentBits |= 1 << x;
+				}
+			}
+			opaqueRows[row] = opaqueBits;
+			opaqueCount += Integer.bitCount( opaqueBits );
+			if ( translucentBits != 0 )
+			{
+				if ( translucentRows == null ) {
+					translucentRows = new int[ ROWS ];
+				}
+				translucentRows[row] = translucentBits;
+			}
+		}
+
+		if ( opaqueCount == 0 ) {
+			opaque = NONE;
+		} else if ( opaqueCount == Chunk.BLOCK_COUNT ) {
+			opaque = ALL;
+		} else {
+			opaque = opaqueRows;
+		}
+		translucent = translucentRows;
+		opaqueShared = translucentShared = false;
+	}
+
+	/**
+	 * Recalculates this mask from block types.
+	 *
+	 * @param types
+	 */
+	public void setAll(BrickBlockStorage types)
+	{
+		if ( types.isUniform() ) {
+			fill( types.get( 0 ) );
+			return;
+		}
+		final byte[] scratch = SCRATCH.get();
+		types.getAll( scratch );
+		setAll( scratch );
+	}
+
+	/**
+	 * Creates an independent copy of this mask in constant time.
+	 *
+	 * @return
+	 */
+	public OpacityMask snapshot()
+	{
+		opaqueShared = translucentShared = true;
+		return new OpacityMask( opaque , translucent );
+	}
+
+	/**
+	 * Returns the (approximate) number of bytes of heap memory used.
+	 *
+	 * @return
+	 */
+	public int getSizeInBytes()
+	{
+		final int[] current = opaque;
+		int result = current == NONE || current == ALL ? 0 : ROWS * 4;
+		if ( translucent != null ) {
+			result += ROWS * 4;
+		}
+		return result;
+	}
+}
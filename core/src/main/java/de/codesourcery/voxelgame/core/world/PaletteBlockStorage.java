@@ -0,0 +1,319 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage for a fixed number of <code>byte</code> values (block types , light levels , ...).
+ *
+ * <p>Keeps a palette of all distinct values stored and only stores the palette index
+ * of each value , packed into 0 , 1 , 2 , 4 or 8 bits depending on the palette size. A chunk
+ * holding only air and solid blocks thus needs 1 bit per block , a chunk that consists of
+ * a single block type needs no per-block storage at all.</p>
+ *
+ * <p>The palette grows (and the indices get re-packed with more bits) when new values are stored. It never
+ * shrinks except when replacing all values at once (see {@link #setAll(byte[])}).</p>
+ *
+ * <p>Thread-safety: Writes need to be synchronized externally, reads may happen concurrently
+ * with writes without any locking. Readers will either see the old or the new value.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public final class PaletteBlockStorage
+{
+	private static final class State
+	{
+		public final int bits; // 0,1,2,4 or 8
+		public final int entriesShift; // log2( entries per long )
+		public final int entriesMask;
+		public final long valueMask;
+		public final long[] data; // NULL if bits == 0
+		public final byte[] palette; // capacity: 1 << bits
+		public int paletteSize; // @GuardedBy( writer )
+
+		public State(int bits,int size)
+		{
+			this.bits = bits;
+			this.palette = new byte[ 1 << bits ];
+			this.valueMask = ( 1L << bits ) - 1;
+			if ( bits == 0 )
+			{
+				this.entriesShift = 0;
+				this.entriesMask = 0;
+				this.data = null;
+			}
+			else
+			{
+				this.entriesShift = Integer.numberOfTrailingZeros( 64 / bits );
+				this.entriesMask = ( 1 << entriesShift ) - 1;
+				this.data = new long[ size >>> entriesShift ];
+			}
+		}
+
+		public State(State other)
+		{
+			this.bits = other.bits;
+			this.entriesShift = other.entriesShift;
+			this.entriesMask = other.entriesMask;
+			this.valueMask = other.valueMask;
+			this.data = other.data == null ? null : other.data.clone();
+			this.palette = other.palette.clone();
+			this.paletteSize = other.paletteSize;
+		}
+
+		public int getIndex(int i) {
+			return (int) ( ( data[ i >>> entriesShift ] >>> ( ( i & entriesMask ) * bits ) ) & valueMask );
+		}
+
+		public void setIndex(int i,int paletteIndex)
+		{
+			final int word = i >>> entriesShift;
+			final int shift = ( i & entriesMask ) * bits;
+			data[word] = ( data[word] & ~( valueMask << shift ) ) | ( (long) paletteIndex << shift );
+		}
+
+		public int indexOf(byte value)
+		{
+			for ( int i = 0 ; i < paletteSize ; i++ ) {
+				if ( palette[i] == value ) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private final int size;
+
+	private volatile State state;
+
+	/**
+	 * Create instance.
+	 *
+	 * @param size number of values to store , must be a multiple of 64
+	 * @param initialValue initial value of all entries
+	 */
+	public PaletteBlockStorage(int size,byte initialValue)
+	{
+		if ( size <= 0 || ( size & 63 ) != 0 ) {
+			throw new IllegalArgumentException("Size must be a positive multiple of 64: "+size);
+		}
+		this.size = size;
+		fill( initialValue );
+	}
+
+	private PaletteBlockStorage(PaletteBlockStorage other)
+	{
+		this.size = other.size;
+		this.state = new State( other.state );
+	}
+
+	/**
+	 * Returns the number of values stored.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public byte get(int index)
+	{
+		final State s = state;
+		return s.bits == 0 ? s.palette[0] : s.palette[ s.getIndex( index ) ];
+	}
+
+	public void set(int index,byte value)
+	{
+		if ( index < 0 || index >= size ) {
+			throw new ArrayIndexOutOfBoundsException( index );
+		}
+
+		State s = state;
+		int paletteIndex = s.indexOf( value );
+		if ( paletteIndex == -1 )
+		{
+			if ( s.paletteSize == s.palette.length ) {
+				s = grow( s );
+			}
+			paletteIndex = s.paletteSize;
+			s.palette[ paletteIndex ] = value;
+			s.paletteSize++;
+		}
+		if ( s.bits != 0 ) {
+			s.setIndex( index , paletteIndex );
+		}
+	}
+
+	private State grow(State current)
+	{
+		final State result = new State( current.bits == 0 ? 1 : current.bits * 2 , size );
+		System.arraycopy( current.palette , 0 , result.palette , 0 , current.paletteSize );
+		result.paletteSize = current.paletteSize;
+		if ( current.bits != 0 )
+		{
+			for ( int i = 0 ; i < size ; i++ ) {
+				result.setIndex( i , current.getIndex( i ) );
+			}
+		}
+		state = result;
+		return result;
+	}
+
+	/**
+	 * Sets all entries to the same value.
+	 *
+	 * @param value
+	 */
+	public void fill(byte value)
+	{
+		final State result = new State( 0 , size );
+		result.palette[0] = value;
+		result.paletteSize = 1;
+		state = result;
+	}
+
+	/**
+	 * Replaces all entries , using the smallest palette possible.
+	 *
+	 * @param values array holding at least {@link #size()} values
+	 */
+	public void setAll(byte[] values)
+	{
+		final boolean[] used = new boolean[256];
+		final byte[] palette = new byte[256];
+		int paletteSize = 0;
+		for ( int i = 0 ; i < size ; i++ )
+		{
+			final int value = values[i] & 0xff;
+			if ( ! used[value] ) {
+				used[value] = true;
+				palette[ paletteSize++ ] = values[i];
+			}
+		}
+
+		final State result = new State( bitsRequired( paletteSize ) , size );
+		System.arraycopy( palette , 0 , result.palette , 0 , paletteSize );
+		result.paletteSize = paletteSize;
+		if ( result.bits != 0 )
+		{
+			final int[] paletteIndex = new int[256];
+			for ( int i = 0 ; i < paletteSize ; i++ ) {
+				paletteIndex[ palette[i] & 0xff ] = i;
+			}
+
+			final int bits = result.bits;
+			final int entriesPerWord = 1 << result.entriesShift;
+			final long[] data = result.data;
+			int ptr = 0;
+			for ( int word = 0 ; word < data.length ; word++ )
+			{
+				long value = 0;
+				for ( int shift = 0 , j = 0 ; j < entriesPerWord ; j++ , shift += bits ) {
+					value |= (long) paletteIndex[ values[ptr++] & 0xff ] << shift;
+				}
+				data[word] = value;
+			}
+		}
+		state = result;
+	}
+
+	/**
+	 * Replaces all entries with the entries of another storage.
+	 *
+	 * @param other storage of the same size
+	 */
+	public void setAll(PaletteBlockStorage other)
+	{
+		if ( other.size != size ) {
+			throw new IllegalArgumentException("Size mismatch: "+other.size+" <-> "+size);
+		}
+		state = new State( other.state );
+	}
+
+	/**
+	 * Copies all entries into an array.
+	 *
+	 * @param values array to store the entries in , must be able to hold at least {@link #size()} values
+	 */
+	public void getAll(byte[] values)
+	{
+		final State s = state;
+		if ( s.bits == 0 ) {
+			Arrays.fill( values , 0 , size , s.palette[0] );
+			return;
+		}
+
+		final int bits = s.bits;
+		final long mask = s.valueMask;
+		final int entriesPerWord = 1 << s.entriesShift;
+		final byte[] palette = s.palette;
+		final long[] data = s.data;
+		int ptr = 0;
+		for ( int word = 0 ; word < data.length ; word++ )
+		{
+			long value = data[word];
+			for ( int j = 0 ; j < entriesPerWord ; j++ )
+			{
+				values[ptr++] = palette[ (int) ( value & mask ) ];
+				value >>>= bits;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether all entries hold the same value.
+	 *
+	 * <p>Note that this method may return <code>false</code> even though all entries
+	 * hold the same value if the palette contains values no longer in use.</p>
+	 * @return
+	 */
+	public boolean isUniform() {
+		return state.bits == 0;
+	}
+
+	public int getBitsPerEntry() {
+		return state.bits;
+	}
+
+	public int getPaletteSize() {
+		return state.paletteSize;
+	}
+
+	/**
+	 * Returns the (approximate) number of bytes of heap memory
+	 * used by the palette and the packed entries.
+	 *
+	 * @return
+	 */
+	public int getSizeInBytes()
+	{
+		final State s = state;
+		return s.palette.length + ( s.data == null ? 0 : s.data.length * 8 );
+	}
+
+	/**
+	 * Creates an independent copy of this storage.
+	 *
+	 * @return
+	 */
+	public PaletteBlockStorage copy() {
+		return new PaletteBlockStorage( this );
+	}
+
+	private static int bitsRequired(int paletteSize)
+	{
+		if ( paletteSize <= 1 ) {
+			return 0;
+		}
+		if ( paletteSize <= 2 ) {
+			return 1;
+		}
+		if ( paletteSize <= 4 ) {
+			return 2;
+		}
+		if ( paletteSize <= 16 ) {
+			return 4;
+		}
+		return 8;
+	}
+}
@@ -0,0 +1,180 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import de.codesourcery.voxelgame.core.Constants;
+import de.codesourcery.voxelgame.core.world.Chunk.ChunkKey;
+
+/**
+ * Chunk storage that packs the data of {@link RegionFile#REGION_SIZE}<sup>3</sup> adjacent chunks into a single {@link RegionFile}.
+ *
+ * <p>Region files are opened on first access and kept open until {@link #close()} is called. The set of existing
+ * region files is determined once on startup so looking up a chunk that has never been saved neither
+ * touches the file system nor opens any file, chunks inside an existing region are looked up using the region file's header.</p>
+ *
+ * <p>When using memory-mapped I/O, chunks are loaded by copying their data straight out of
+ * a memory mapping of the region file. At most {@link #MAX_MAPPED_REGIONS} region files are kept mapped
+ * at any time, the least-recently used mapping gets discarded when this limit is exceeded.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ * @see DefaultChunkStorage
+ */
+public class RegionChunkStorage extends AbstractChunkStorage
+{
+	public static final int MAX_MAPPED_REGIONS = 16;
+
+	private static final String REGION_FILE_PREFIX = "region_";
+	private static final String REGION_FILE_SUFFIX = ".region";
+
+	// @GuardedBy( regions )
+	private final Map<ChunkKey,RegionFile> regions = new HashMap<>();
+
+	// region files that exist on disk
+	// @GuardedBy( regions )
+	private final Set<ChunkKey> existingRegions = new HashSet<>();
+
+	private final boolean useMemoryMappedIO;
+
+	// @GuardedBy( mappedRegions )
+	private final LinkedHashMap<RegionFile,Boolean> mappedRegions = new LinkedHashMap<RegionFile,Boolean>(16,0.75f,true) {
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<RegionFile,Boolean> eldest)
+		{
+			if ( size() > MAX_MAPPED_REGIONS )
+			{
+				eldest.getKey().unmap();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	public RegionChunkStorage(File chunkDirectory, IChunkFactory chunkFactory) throws IOException
+	{
+		this(chunkDirectory, chunkFactory, Constants.USE_MEMORY_MAPPED_IO );
+	}
+
+	public RegionChunkStorage(File chunkDirectory, IChunkFactory chunkFactory,boolean useMemoryMappedIO) throws IOException
+	{
+		super(chunkDirectory, chunkFactory);
+		this.useMemoryMappedIO = useMemoryMappedIO;
+
+		final File[] files = this.chunkDirectory.listFiles();
+		if ( files != null )
+		{
+			for ( final File f : files )
+			{
+				final String name = f.getName();
+				if ( name.startsWith( REGION_FILE_PREFIX ) && name.endsWith( REGION_FILE_SUFFIX ) )
+				{
+					final String[] parts = name.substring( REGION_FILE_PREFIX.length() , name.length() - REGION_FILE_SUFFIX.length() ).split("_");
+					try {
+						existingRegions.add( new ChunkKey( Integer.parseInt( parts[0] ) , Integer.parseInt( parts[1] ) , Integer.parseInt( parts[2] ) ) );
+					}
+					catch(final RuntimeException e) {
+						System.err.println("Ignoring file with malformed name: "+f.getAbsolutePath());
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	protected ByteBuffer readRecord(int chunkX, int chunkY, int chunkZ) throws IOException
+	{
+		final RegionFile region = getRegion( chunkX , chunkY , chunkZ , false );
+		if ( region == null ) {
+			return null;
+		}
+
+		final int index = RegionFile.getLocalIndex( chunkX , chunkY , chunkZ );
+		final byte[] buffer = getReadBuffer();
+		final int read;
+		if ( useMemoryMappedIO )
+		{
+			read = region.readChunkMapped( index , buffer );
+			if ( read != -1 ) {
+				synchronized( mappedRegions ) {
+					mappedRegions.put( region , Boolean.TRUE );
+				}
+			}
+		} else {
+			read = region.readChunk( index , buffer );
+		}
+		return read == -1 ? null : ByteBuffer.wrap( buffer , 0 , read );
+	}
+
+	@Override
+	protected boolean containsRecord(int chunkX, int chunkY, int chunkZ) throws IOException
+	{
+		final RegionFile region = getRegion( chunkX , chunkY , chunkZ , false );
+		return region != null && region.containsChunk( RegionFile.getLocalIndex( chunkX , chunkY , chunkZ ) );
+	}
+
+	@Override
+	protected void writeRecord(int chunkX, int chunkY, int chunkZ, byte[] data, int offset, int length) throws IOException
+	{
+		final RegionFile region = getRegion( chunkX , chunkY , chunkZ , true );
+		region.writeChunk( RegionFile.getLocalIndex( chunkX , chunkY , chunkZ ) , data , offset , length );
+	}
+
+	private RegionFile getRegion(int chunkX,int chunkY,int chunkZ,boolean createIfMissing) throws IOException
+	{
+		final int regionX = RegionFile.getRegionCoordinate( chunkX );
+		final int regionY = RegionFile.getRegionCoordinate( chunkY );
+		final int regionZ = RegionFile.getRegionCoordinate( chunkZ );
+
+		final ChunkKey key = new ChunkKey( regionX , regionY , regionZ );
+		synchronized( regions )
+		{
+			RegionFile result = regions.get( key );
+			if ( result == null )
+			{
+				if ( ! createIfMissing && ! existingRegions.contains( key ) ) {
+					return null;
+				}
+				result = new RegionFile( new File( chunkDirectory , REGION_FILE_PREFIX+regionX+"_"+regionY+"_"+regionZ+REGION_FILE_SUFFIX ) );
+				regions.put( key , result );
+				existingRegions.add( key );
+			}
+			return result;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		synchronized( regions )
+		{
+			IOException firstError = null;
+			for ( final RegionFile region : regions.values() )
+			{
+				try {
+					region.close();
+				}
+				catch(final IOException e)
+				{
+					e.printStackTrace();
+					if ( firstError == null ) {
+						firstError = e;
+					}
+				}
+			}
+			regions.clear();
+			synchronized( mappedRegions ) {
+				mappedRegions.clear();
+			}
+			if ( firstError != null ) {
+				throw firstError;
+			}
+		}
+	}
+}
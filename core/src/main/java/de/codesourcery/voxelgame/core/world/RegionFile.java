@@ -0,0 +1,372 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import de.codesourcery.voxelgame.core.world.Chunk.ChunkKey;
+
+/**
+ * Stores the data of {@link #REGION_SIZE}<sup>3</sup> adjacent chunks in a single file.
+ *
+ * <p>The file starts with a header that holds one entry per chunk (first sector of the chunk's data and data length in bytes),
+ * followed by the chunk data itself. Chunk data is stored in sectors of {@link #SECTOR_SIZE} bytes, each chunk
+ * occupying a contiguous run of sectors. Sectors of chunks that got relocated because their data grew
+ * are re-used when writing other chunks.</p>
+ *
+ * <p>The underlying file is kept open until {@link #close()} is called so loading/saving a chunk boils
+ * down to a single positioned read/write. Alternatively, chunks may be read through a read-only memory mapping
+ * of the file (see {@link #readChunkMapped(int, byte[])}) that is created on demand and kept until
+ * {@link #unmap()} is called.</p>
+ *
+ * <p>This class is thread-safe, concurrent reads are permitted.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ * @see RegionChunkStorage
+ */
+public final class RegionFile
+{
+	// number of chunks along each axis
+	public static final int REGION_SIZE = 16;
+
+	// log2( REGION_SIZE )
+	public static final int REGION_SHIFT = 4;
+
+	private static final int REGION_MASK = REGION_SIZE-1;
+
+	public static final int CHUNKS_PER_REGION = REGION_SIZE*REGION_SIZE*REGION_SIZE;
+
+	public static final int SECTOR_SIZE = 4096;
+
+	// header entry: int firstSector , int lengthInBytes
+	private static final int HEADER_ENTRY_SIZE = 8;
+
+	private static final int HEADER_SIZE = CHUNKS_PER_REGION * HEADER_ENTRY_SIZE;
+
+	private static final int HEADER_SECTORS = HEADER_SIZE / SECTOR_SIZE;
+
+	/**
+	 * Orders chunks by region , then by position inside the region file.
+	 */
+	public static final Comparator<ChunkKey> STORAGE_ORDER = new Comparator<ChunkKey>() {
+
+		@Override
+		public int compare(ChunkKey k1, ChunkKey k2)
+		{
+			int result = Integer.compare( getRegionCoordinate( k1.z ) , getRegionCoordinate( k2.z ) );
+			if ( result == 0 ) {
+				result = Integer.compare( getRegionCoordinate( k1.y ) , getRegionCoordinate( k2.y ) );
+				if ( result == 0 ) {
+					result = Integer.compare( getRegionCoordinate( k1.x ) , getRegionCoordinate( k2.x ) );
+					if ( result == 0 ) {
+						result = Integer.compare( getLocalIndex( k1.x , k1.y , k1.z ) , getLocalIndex( k2.x , k2.y , k2.z ) );
+					}
+				}
+			}
+			return result;
+		}
+	};
+
+	private final File file;
+	private final FileChannel channel;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// @GuardedBy( lock )
+	private final int[] firstSectors = new int[ CHUNKS_PER_REGION ]; // 0 => chunk not stored in this file
+	// @GuardedBy( lock )
+	private final int[] lengths = new int[ CHUNKS_PER_REGION ];
+	// @GuardedBy( lock )
+	private final BitSet usedSectors = new BitSet();
+	// @GuardedBy( lock )
+	private int sectorCount;
+
+	// @GuardedBy( this )
+	private MappedByteBuffer mapping;
+
+	public RegionFile(File file) throws IOException
+	{
+		this.file = file;
+		this.channel = FileChannel.open( file.toPath() , StandardOpenOption.CREATE , StandardOpenOption.READ , StandardOpenOption.WRITE );
+		try {
+			readHeader();
+		}
+		catch(final IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void readHeader() throws IOException
+	{
+		final long fileSize = channel.size();
+		final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+		if ( fileSize == 0 )
+		{
+			writeFully( header , 0 );
+			header.clear();
+			sectorCount = HEADER_SECTORS;
+		}
+		else
+		{
+			if ( fileSize < HEADER_SIZE ) {
+				throw new IOException("Region file "+file.getAbsolutePath()+" is truncated, size: "+fileSize);
+			}
+			readFully( header , 0 );
+			header.flip();
+			sectorCount = (int) ( (fileSize + SECTOR_SIZE - 1 ) / SECTOR_SIZE );
+		}
+
+		usedSectors.set( 0 , HEADER_SECTORS );
+		for ( int i = 0 ; i < CHUNKS_PER_REGION ; i++ )
+		{
+			final int firstSector = header.getInt();
+			final int length = header.getInt();
+			if ( firstSector != 0 )
+			{
+				final int count = sectorsRequired( length );
+				if ( firstSector < HEADER_SECTORS || firstSector+count > sectorCount ) {
+					throw new IOException("Region file "+file.getAbsolutePath()+" is corrupted, invalid entry for chunk #"+i);
+				}
+				firstSectors[i] = firstSector;
+				lengths[i] = length;
+				usedSectors.set( firstSector , firstSector + count );
+			}
+		}
+	}
+
+	/**
+	 * Returns the region coordinate for a given chunk coordinate.
+	 *
+	 * @param chunkCoordinate
+	 * @return
+	 */
+	public static int getRegionCoordinate(int chunkCoordinate) {
+		return chunkCoordinate >> REGION_SHIFT; // arithmetic shift, rounds towards negative infinity
+	}
+
+	/**
+	 * Returns the index of a chunk inside the region file it belongs to.
+	 *
+	 * @param chunkX
+	 * @param chunkY
+	 * @param chunkZ
+	 * @return
+	 */
+	public static int getLocalIndex(int chunkX,int chunkY,int chunkZ) {
+		return (chunkX & REGION_MASK) + REGION_SIZE*(chunkY & REGION_MASK) + (REGION_SIZE*REGION_SIZE)*(chunkZ & REGION_MASK);
+	}
+
+	private static int sectorsRequired(int lengthInBytes) {
+		return lengthInBytes <= 0 ? 1 : (lengthInBytes + SECTOR_SIZE - 1 ) / SECTOR_SIZE;
+	}
+
+	public boolean containsChunk(int localIndex)
+	{
+		lock.readLock().lock();
+		try {
+			return firstSectors[localIndex] != 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads a chunk's data.
+	 *
+	 * @param localIndex
+	 * @param buffer buffer to read data into, must be large enough to hold all of the chunk's data
+	 * @return number of bytes read or -1 if this file holds no data for the chunk
+	 * @throws IOException
+	 * @see #getLocalIndex(int, int, int)
+	 */
+	public int readChunk(int localIndex,byte[] buffer) throws IOException
+	{
+		lock.readLock().lock();
+		try
+		{
+			final int firstSector = firstSectors[localIndex];
+			if ( firstSector == 0 ) {
+				return -1;
+			}
+			final int length = lengths[localIndex];
+			if ( length > buffer.length ) {
+				throw new IOException("Buffer too small, chunk #"+localIndex+" in "+file.getAbsolutePath()+" has "+length+" bytes");
+			}
+			readFully( ByteBuffer.wrap( buffer , 0 , length ) , firstSector * (long) SECTOR_SIZE );
+			return length;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads a chunk's data through a memory mapping of this file.
+	 *
+	 * <p>The mapping is created on first use and re-created when
+	 * the chunk's data lies beyond the end of the current mapping (because
+	 * the file grew since it was mapped).</p>
+	 *
+	 * @param localIndex
+	 * @param buffer buffer to copy data into, must be large enough to hold all of the chunk's data
+	 * @return number of bytes read or -1 if this file holds no data for the chunk
+	 * @throws IOException
+	 * @see #unmap()
+	 */
+	public int readChunkMapped(int localIndex,byte[] buffer) throws IOException
+	{
+		lock.readLock().lock();
+		try
+		{
+			final int firstSector = firstSectors[localIndex];
+			if ( firstSector == 0 ) {
+				return -1;
+			}
+			final int length = lengths[localIndex];
+			if ( length > buffer.length ) {
+				throw new IOException("Buffer too small, chunk #"+localIndex+" in "+file.getAbsolutePath()+" has "+length+" bytes");
+			}
+			final int offset = firstSector * SECTOR_SIZE;
+			final ByteBuffer src = getMapping( offset + length ).duplicate();
+			src.position( offset );
+			src.get( buffer , 0 , length );
+			return length;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private synchronized MappedByteBuffer getMapping(int minSize) throws IOException
+	{
+		if ( mapping == null || mapping.capacity() < minSize )
+		{
+			// writes go through the channel and end up in the same (OS) page cache
+			// the mapping is backed by, so we only need to re-map when the file grew
+			mapping = channel.map( MapMode.READ_ONLY , 0 , channel.size() );
+		}
+		return mapping;
+	}
+
+	/**
+	 * Discards the memory mapping of this file (if any).
+	 *
+	 * <p>Note that the JVM only releases the mapping after it has been garbage collected.</p>
+	 */
+	public synchronized void unmap() {
+		mapping = null;
+	}
+
+	/**
+	 * Writes a chunk's data.
+	 *
+	 * @param localIndex
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 * @see #getLocalIndex(int, int, int)
+	 */
+	public void writeChunk(int localIndex,byte[] data,int offset,int length) throws IOException
+	{
+		final int sectorsRequired = sectorsRequired( length );
+
+		lock.writeLock().lock();
+		try
+		{
+			int firstSector = firstSectors[localIndex];
+			if ( firstSector != 0 )
+			{
+				final int sectorsUsed = sectorsRequired( lengths[localIndex] );
+				if ( sectorsUsed >= sectorsRequired ) {
+					// data still fits, release any sectors we no longer need
+					usedSectors.clear( firstSector + sectorsRequired , firstSector + sectorsUsed );
+				} else {
+					usedSectors.clear( firstSector , firstSector + sectorsUsed );
+					firstSector = allocateSectors( sectorsRequired );
+				}
+			} else {
+				firstSector = allocateSectors( sectorsRequired );
+			}
+
+			writeFully( ByteBuffer.wrap( data , offset , length ) , firstSector * (long) SECTOR_SIZE );
+
+			firstSectors[localIndex] = firstSector;
+			lengths[localIndex] = length;
+
+			final ByteBuffer entry = ByteBuffer.allocate( HEADER_ENTRY_SIZE );
+			entry.putInt( firstSector ).putInt( length ).flip();
+			writeFully( entry , localIndex * (long) HEADER_ENTRY_SIZE );
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// @GuardedBy( lock.writeLock() )
+	private int allocateSectors(int count)
+	{
+		// first-fit
+		int start = usedSectors.nextClearBit( HEADER_SECTORS );
+		while ( start < sectorCount )
+		{
+			final int end = usedSectors.nextSetBit( start );
+			if ( end == -1 || end - start >= count ) {
+				break;
+			}
+			start = usedSectors.nextClearBit( end );
+		}
+		usedSectors.set( start , start + count );
+		if ( start + count > sectorCount ) {
+			sectorCount = start + count;
+		}
+		return start;
+	}
+
+	private void readFully(ByteBuffer buffer,long position) throws IOException
+	{
+		while ( buffer.hasRemaining() )
+		{
+			final int read = channel.read( buffer , position );
+			if ( read == -1 ) {
+				throw new IOException("Premature end of file "+file.getAbsolutePath()+" at offset "+position);
+			}
+			position += read;
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer,long position) throws IOException
+	{
+		while ( buffer.hasRemaining() ) {
+			position += channel.write( buffer , position );
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public void close() throws IOException
+	{
+		lock.writeLock().lock();
+		try {
+			unmap();
+			channel.close();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RegionFile[ "+file.getAbsolutePath()+" ]";
+	}
+}
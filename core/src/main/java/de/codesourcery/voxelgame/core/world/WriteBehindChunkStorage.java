@@ -0,0 +1,319 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.codesourcery.voxelgame.core.Constants;
+import de.codesourcery.voxelgame.core.world.Chunk.ChunkKey;
+
+/**
+ * Chunk storage that defers writing chunks to a dedicated I/O thread.
+ *
+ * <p>{@link #saveChunk(Chunk)} only queues a copy of the chunk's (brick- and palette-compressed) block types, saving the same chunk
+ * again before the I/O thread got around to writing it just replaces the queued copy. Queued chunks are
+ * encoded and written in batches, ordered by region and chunk position so that writes to the same
+ * file (see {@link RegionFile}) are as sequential as possible. Loading a chunk that is still queued
+ * returns the queued data without touching the disk.</p>
+ *
+ * <p>If the total size of all queued chunks exceeds a configurable limit, {@link #saveChunk(Chunk)}
+ * blocks until the I/O thread caught up.</p>
+ *
+ * <p>Chunks that could not be written stay queued and get retried after a delay , the error is reported
+ * by the next call to {@link #saveChunk(Chunk)} or {@link #flush()}.</p>
+ *
+ * @author tobias.gierke@voipfuture.com
+ */
+public class WriteBehindChunkStorage implements IChunkStorage
+{
+	private static final boolean DEBUG_PERFORMANCE = false;
+
+	// time to wait before retrying chunks that could not be written
+	private static final long RETRY_DELAY_MILLIS = 1000;
+
+	private static final class PendingWrite
+	{
+		public final BrickBlockStorage blockTypes;
+		public final int[] edits;
+		public final int sizeInBytes;
+
+		public PendingWrite(BrickBlockStorage blockTypes, int[] edits)
+		{
+			this.blockTypes = blockTypes;
+			this.edits = edits;
+			this.sizeInBytes = blockTypes.getSizeInBytes() + ( edits == null ? 0 : edits.length * 4 );
+		}
+	}
+
+	private final AbstractChunkStorage delegate;
+	private final long maxQueuedBytes;
+	private final Thread writerThread;
+
+	// @GuardedBy( queue )
+	private final Map<ChunkKey,PendingWrite> queue = new HashMap<>();
+	// @GuardedBy( queue )
+	private long queuedBytes;
+	// @GuardedBy( queue )
+	private boolean closed;
+	// @GuardedBy( queue )
+	private IOException writeError;
+
+	public WriteBehindChunkStorage(AbstractChunkStorage delegate)
+	{
+		this(delegate, Constants.WRITE_BEHIND_QUEUE_SIZE_BYTES );
+	}
+
+	public WriteBehindChunkStorage(AbstractChunkStorage delegate,long maxQueuedBytes)
+	{
+		this.delegate = delegate;
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.writerThread = new Thread("chunk-writer")
+		{
+			@Override
+			public void run()
+			{
+				try {
+					writeLoop();
+				}
+				catch (final InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		writerThread.setDaemon( true );
+		writerThread.start();
+	}
+
+	@Override
+	public Chunk loadChunk(int chunkX, int chunkY, int chunkZ) throws IOException
+	{
+		if ( ! Constants.USE_PERSISTENT_STORAGE ) {
+			return delegate.loadChunk( chunkX , chunkY , chunkZ );
+		}
+
+		final PendingWrite queued;
+		synchronized( queue ) {
+			queued = queue.get( new ChunkKey( chunkX , chunkY , chunkZ ) );
+		}
+		if ( queued != null )
+		{
+			// queued data is never modified
+			final Chunk result = delegate.chunkFactory.getChunkFromPool( chunkX , chunkY , chunkZ );
+			result.setBlockTypes( queued.blockTypes );
+			result.setEditLog( queued.edits );
+			return result;
+		}
+
+		Chunk result = null;
+		try {
+			result = delegate.tryLoadFromDisk( chunkX , chunkY , chunkZ );
+		}
+		catch(final IOException e) {
+			e.printStackTrace();
+		}
+		if ( result == null )
+		{
+			result = delegate.chunkFactory.createChunk( chunkX , chunkY , chunkZ );
+			if ( ! Constants.USE_DELTA_PERSISTENCE ) {
+				enqueue( result );
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void saveChunk(Chunk chunk) throws IOException
+	{
+		if ( Constants.USE_PERSISTENT_STORAGE && chunk.hasChangedSinceLoad() )
+		{
+			enqueue( chunk );
+			chunk.setChangedSinceLoad(false);
+		}
+	}
+
+	private void enqueue(Chunk chunk) throws IOException
+	{
+		final PendingWrite snapshot = new PendingWrite( chunk.copyBlockTypes() , chunk.getEditLog() );
+		final ChunkKey key = new ChunkKey( chunk.x , chunk.y , chunk.z );
+		synchronized( queue )
+		{
+			if ( closed ) {
+				throw new IOException("Storage already closed");
+			}
+
+			// back-pressure
+			while ( true )
+			{
+				// don't wait for a writer that fails to make progress
+				rethrowWriteError();
+				if ( queuedBytes == 0 || queuedBytes + snapshot.sizeInBytes <= maxQueuedBytes ) {
+					break;
+				}
+				try {
+					queue.wait();
+				}
+				catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for chunk writer");
+				}
+			}
+
+			final PendingWrite previous = queue.put( key , snapshot );
+			if ( previous != null ) {
+				queuedBytes -= previous.sizeInBytes;
+			}
+			queuedBytes += snapshot.sizeInBytes;
+			queue.notifyAll();
+		}
+	}
+
+	private void writeLoop() throws InterruptedException
+	{
+		final List<ChunkKey> batch = new ArrayList<>();
+		final List<PendingWrite> snapshots = new ArrayList<>();
+		while ( true )
+		{
+			synchronized( queue )
+			{
+				while ( queue.isEmpty() && ! closed ) {
+					queue.wait();
+				}
+				if ( queue.isEmpty() ) {
+					return; // closed
+				}
+				batch.addAll( queue.keySet() );
+			}
+
+			Collections.sort( batch , RegionFile.STORAGE_ORDER );
+			synchronized( queue ) {
+				for ( final ChunkKey key : batch ) {
+					snapshots.add( queue.get( key ) );
+				}
+			}
+
+			long time = -System.currentTimeMillis();
+			long bytesWritten = 0;
+			boolean failed = false;
+			for ( int i = 0 ; i < batch.size() ; i++ )
+			{
+				final ChunkKey key = batch.get(i);
+				final PendingWrite snapshot = snapshots.get(i);
+				try {
+					final byte[] record = delegate.encode( key.x , key.y , key.z , snapshot.blockTypes , snapshot.edits );
+					if ( record != null ) {
+						delegate.writeRecord( key.x , key.y , key.z , record , 0 , record.length );
+						bytesWritten += record.length;
+					}
+				}
+				catch(final IOException e)
+				{
+					// keep the chunk queued , it's the only copy of its data
+					e.printStackTrace();
+					failed = true;
+					synchronized( queue ) {
+						writeError = e;
+						queue.notifyAll();
+					}
+					continue;
+				}
+
+				synchronized( queue )
+				{
+					// chunk might've been queued again while we were writing it
+					if ( queue.get( key ) == snapshot ) {
+						queue.remove( key );
+						queuedBytes -= snapshot.sizeInBytes;
+					}
+					queue.notifyAll();
+				}
+			}
+			time += System.currentTimeMillis();
+
+			if ( DEBUG_PERFORMANCE ) {
+				System.out.println("Chunk writer: Wrote "+batch.size()+" chunks ("+bytesWritten+" bytes) in "+time+" ms");
+			}
+			batch.clear();
+			snapshots.clear();
+
+			if ( failed )
+			{
+				final long retryTime = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+				synchronized( queue )
+				{
+					// chunks getting queued wake us up as well , so keep waiting until it's time to retry
+					long remaining;
+					while ( ! closed && ( remaining = retryTime - System.currentTimeMillis() ) > 0 ) {
+						queue.wait( remaining );
+					}
+					if ( closed ) {
+						return; // close() already reported the error
+					}
+				}
+			}
+		}
+	}
+
+	// @GuardedBy( queue )
+	private void rethrowWriteError() throws IOException
+	{
+		if ( writeError != null )
+		{
+			final IOException e = writeError;
+			writeError = null;
+			throw new IOException("Writing chunks failed: "+e.getMessage(),e);
+		}
+	}
+
+	/**
+	 * Blocks until all chunks queued so far have been written.
+	 *
+	 * @throws IOException if writing any of the chunks failed , chunks that failed stay queued
+	 */
+	public void flush() throws IOException
+	{
+		synchronized( queue )
+		{
+			while ( ! queue.isEmpty() && writeError == null && writerThread.isAlive() ) {
+				try {
+					queue.wait();
+				}
+				catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for chunk writer");
+				}
+			}
+			rethrowWriteError();
+		}
+	}
+
+	@Override
+	public void releaseChunk(Chunk chunk) throws IOException {
+		delegate.releaseChunk( chunk );
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try {
+			flush();
+		}
+		finally
+		{
+			synchronized( queue )
+			{
+				closed = true;
+				queue.notifyAll();
+			}
+			try {
+				writerThread.join();
+			}
+			catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			delegate.close();
+		}
+	}
+}
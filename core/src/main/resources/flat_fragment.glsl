@@ -2,17 +2,22 @@
 #line 1
 
 uniform sampler2D color_texture;
+
+// texture atlas layout (tile offset , tile stride , tile size)
+uniform vec3 u_atlasLayout;
  	
 in float v_lightFactor;
 
 smooth in vec2 vTexCoord;
+flat in vec2 v_tileOrigin;
 smooth in vec3 rotatedSurfaceNormal;
 smooth in vec3 v_lightDir;
 
 void main()                                   
 {
    // phong shading
-   vec4 v_color = texture2D(color_texture, vTexCoord );
+   // texture coordinates are given in tiles , repeat the tile across faces spanning multiple blocks
+   vec4 v_color = texture2D(color_texture, v_tileOrigin + fract( vTexCoord ) * u_atlasLayout.z );
    v_color.rgb = v_color.rgb * v_lightFactor;
 
    float dotProduct = dot(normalize(rotatedSurfaceNormal),normalize(v_lightDir));
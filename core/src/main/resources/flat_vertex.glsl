@@ -6,19 +6,28 @@ in vec4 a_position;
 in vec4 a_normal;
 in vec2 a_texCoord;
 in float a_lightFactor;
+in float a_tile;
       
 uniform mat4 u_modelView;
 uniform mat4 u_modelViewProjection;
 uniform mat3 u_cameraRotation;
 uniform vec4 u_cameraPosition;
 
+// chunk origin and block size , vertex positions are given in blocks relative to the chunk origin
+uniform vec3 u_chunkOrigin;
+uniform vec3 u_blockSize;
+
 // lighting
 uniform vec4 u_lightColor;
 
+// texture atlas layout (tile offset , tile stride , tile size) , see BlockRenderer#setupTextureCoordinates()
+uniform vec3 u_atlasLayout;
+
 // shader output
 smooth out vec3 rotatedSurfaceNormal;
 smooth out vec3 v_lightDir;
 smooth out vec2 vTexCoord;
+flat out vec2 v_tileOrigin;
 
 out float v_lightFactor;
 
@@ -27,15 +36,23 @@ void main()
    // apply camera rotation to vertex normal
    rotatedSurfaceNormal = u_cameraRotation * a_normal.xyz;
    
+   vec4 position = vec4( u_chunkOrigin + a_position.xyz * u_blockSize , 1.0 );
+
    // transform vertex to eye coordinates
-   vec4 eyeVertex = u_modelView * a_position;
+   vec4 eyeVertex = u_modelView * position;
    vec3 eyeVertexNormalized = eyeVertex.xyz / eyeVertex.w;     
    vec3 lightPos = u_cameraRotation * vec3(0,10000,0);
       
    // normal vector to light source
    v_lightDir = normalize(lightPos - eyeVertex.xyz);
    
-   gl_Position =  u_modelViewProjection * a_position;
+   gl_Position =  u_modelViewProjection * position;
    vTexCoord = a_texCoord;
+
+   // the atlas holds one row per block type with one tile per face
+   float tile = floor( a_tile + 0.5 );
+   float face = mod( tile , 6.0 );
+   float blockType = floor( tile / 6.0 );
+   v_tileOrigin = u_atlasLayout.xx + vec2( face , blockType ) * u_atlasLayout.y;
    v_lightFactor = a_lightFactor;
 }
\ No newline at end of file
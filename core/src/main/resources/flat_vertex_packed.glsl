@@ -0,0 +1,73 @@
+#version 330
+#line 1
+
+// per-vertex attributes , packed vertex format (see BlockRenderer#PACKED_INTS_PER_VERTEX)
+in vec4 a_position; // X , Y , Z (in blocks , relative to the chunk origin) , face
+in vec4 a_data; // block type , light level , unused , unused
+      
+uniform mat4 u_modelView;
+uniform mat4 u_modelViewProjection;
+uniform mat3 u_cameraRotation;
+uniform vec4 u_cameraPosition;
+
+// chunk origin and block size
+uniform vec3 u_chunkOrigin;
+uniform vec3 u_blockSize;
+
+// lighting
+uniform vec4 u_lightColor;
+
+// texture atlas layout (tile offset , tile stride , tile size) , see BlockRenderer#setupTextureCoordinates()
+uniform vec3 u_atlasLayout;
+
+// face normals , in the order of BlockRenderer.FACE_* constants (FRONT BACK LEFT RIGHT TOP BOTTOM)
+const vec3 NORMALS[6] = vec3[6]( vec3(0,0,1) , vec3(0,0,-1) , vec3(-1,0,0) , vec3(1,0,0) , vec3(0,1,0) , vec3(0,-1,0) );
+
+// shader output
+smooth out vec3 rotatedSurfaceNormal;
+smooth out vec3 v_lightDir;
+smooth out vec2 vTexCoord;
+flat out vec2 v_tileOrigin;
+
+out float v_lightFactor;
+
+void main()                   
+{	
+   int face = int( a_position.w + 0.5 );
+   vec3 blockPosition = a_position.xyz;
+
+   // apply camera rotation to vertex normal
+   rotatedSurfaceNormal = u_cameraRotation * NORMALS[face];
+   
+   vec4 position = vec4( u_chunkOrigin + blockPosition * u_blockSize , 1.0 );
+
+   // transform vertex to eye coordinates
+   vec4 eyeVertex = u_modelView * position;
+   vec3 lightPos = u_cameraRotation * vec3(0,10000,0);
+      
+   // normal vector to light source
+   v_lightDir = normalize(lightPos - eyeVertex.xyz);
+   
+   gl_Position =  u_modelViewProjection * position;
+
+   // texture coordinates in blocks , the fragment shader only uses the fractional part so
+   // they can be derived from the position (matches orientation used in MeshBuilder#addBox())
+   if ( face == 0 ) {
+      vTexCoord = vec2( blockPosition.x , -blockPosition.y ); // front
+   } else if ( face == 1 ) {
+      vTexCoord = vec2( -blockPosition.x , -blockPosition.y ); // back
+   } else if ( face == 2 ) {
+      vTexCoord = vec2( blockPosition.z , -blockPosition.y ); // left
+   } else if ( face == 3 ) {
+      vTexCoord = vec2( -blockPosition.z , -blockPosition.y ); // right
+   } else {
+      vTexCoord = blockPosition.xz; // top / bottom
+   }
+
+   // the atlas holds one row per block type with one tile per face
+   float blockType = a_data.x;
+   v_tileOrigin = u_atlasLayout.xx + vec2( float(face) , blockType ) * u_atlasLayout.y;
+
+   // side faces are always fully lit , must match MeshBuilder#lightFactor()
+   v_lightFactor = face < 4 ? 1.0 : 0.3 + a_data.y * ( 0.7 / 16.0 );
+}
@@ -11,6 +11,10 @@ uniform mat4 u_modelViewProjection;
 uniform mat3 u_cameraRotation;
 uniform vec4 u_cameraPosition;
 
+// chunk origin and block size , vertex positions are given in blocks relative to the chunk origin
+uniform vec3 u_chunkOrigin;
+uniform vec3 u_blockSize;
+
 // lighting
 uniform vec4 u_lightColor;
 
@@ -19,6 +23,8 @@ smooth out vec2 vTexCoord;
 
 void main()                   
 {   
-   gl_Position =  u_modelViewProjection * a_position;
+   // packed vertices store the face index in a_position.w , so don't use it
+   vec4 position = vec4( u_chunkOrigin + a_position.xyz * u_blockSize , 1.0 );
+   gl_Position =  u_modelViewProjection * position;
    vTexCoord = a_texCoord;
 }
\ No newline at end of file
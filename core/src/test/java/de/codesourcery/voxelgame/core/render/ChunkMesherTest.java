@@ -0,0 +1,212 @@
+package de.codesourcery.voxelgame.core.render;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import de.codesourcery.voxelgame.core.Block;
+import de.codesourcery.voxelgame.core.render.BlockRenderer.MeshData;
+import de.codesourcery.voxelgame.core.world.Chunk;
+import de.codesourcery.voxelgame.core.world.ChunkSnapshot;
+
+public class ChunkMesherTest extends TestCase {
+
+	public void testEmptyChunk()
+	{
+		assertMergedQuads( 0 , new byte[ Chunk.BLOCK_COUNT ] , fullLight() );
+	}
+
+	public void testFlatFloor()
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int x = 0 ; x < Chunk.BLOCKS_X ; x++ ) {
+			for ( int z = 0 ; z < Chunk.BLOCKS_Z ; z++ ) {
+				blocks[ Chunk.blockIndex( x , 0 , z ) ] = Block.Type.SOLID;
+			}
+		}
+		// top , bottom and one strip per side
+		final MeshData mesh = assertMergedQuads( 6 , blocks , fullLight() );
+		assertEquals( 1 , countQuads( mesh , BlockRenderer.FACE_TOP ) );
+		assertEquals( 1 , countQuads( mesh , BlockRenderer.FACE_BOTTOM ) );
+	}
+
+	public void testCheckerboard()
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int x = 0 ; x < Chunk.BLOCKS_X ; x++ ) {
+			for ( int z = 0 ; z < Chunk.BLOCKS_Z ; z++ ) {
+				if ( ( ( x + z ) & 1 ) == 0 ) {
+					blocks[ Chunk.blockIndex( x , 0 , z ) ] = Block.Type.SOLID;
+				}
+			}
+		}
+		// nothing can be merged , all faces of all blocks are visible
+		assertMergedQuads( Chunk.BLOCKS_X * Chunk.BLOCKS_Z / 2 * 6 , blocks , fullLight() );
+	}
+
+	public void testTwoTypesSideBySide()
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int x = 0 ; x < Chunk.BLOCKS_X ; x++ ) {
+			for ( int z = 0 ; z < Chunk.BLOCKS_Z ; z++ ) {
+				blocks[ Chunk.blockIndex( x , 0 , z ) ] = x < Chunk.BLOCKS_X / 2 ? Block.Type.SOLID : Block.Type.WATER;
+			}
+		}
+		// both halves: top , bottom and one strip per side except where they touch , water faces next to water are hidden
+		final MeshData mesh = assertMergedQuads( 11 , blocks , fullLight() );
+		assertEquals( 2 , countQuads( mesh , BlockRenderer.FACE_TOP ) );
+	}
+
+	public void testLightStepsOnTopFaces()
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		final byte[] skyLight = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int x = 0 ; x < Chunk.BLOCKS_X ; x++ ) {
+			for ( int z = 0 ; z < Chunk.BLOCKS_Z ; z++ ) {
+				blocks[ Chunk.blockIndex( x , 0 , z ) ] = Block.Type.SOLID;
+				skyLight[ Chunk.blockIndex( x , 0 , z ) ] = (byte) ( x / 8 );
+			}
+		}
+		// top and bottom faces are split into one quad per light level , side faces ignore light
+		final MeshData mesh = assertMergedQuads( 4 + 4 + 4 , blocks , skyLight );
+		assertEquals( 4 , countQuads( mesh , BlockRenderer.FACE_TOP ) );
+		assertEquals( 4 , countQuads( mesh , BlockRenderer.FACE_BOTTOM ) );
+	}
+
+	public void testFullRowAlongX()
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int x = 0 ; x < Chunk.BLOCKS_X ; x++ ) {
+			blocks[ Chunk.blockIndex( x , 3 , 5 ) ] = Block.Type.SOLID;
+		}
+		assertMergedQuads( 6 , blocks , fullLight() );
+	}
+
+	public void testFullRowAlongZ()
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int z = 0 ; z < Chunk.BLOCKS_Z ; z++ ) {
+			blocks[ Chunk.blockIndex( 5 , 3 , z ) ] = Block.Type.SOLID;
+		}
+		assertMergedQuads( 6 , blocks , fullLight() );
+	}
+
+	public void testSolidChunk()
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		Arrays.fill( blocks , Block.Type.SOLID );
+		assertMergedQuads( 6 , blocks , fullLight() );
+	}
+
+	private static byte[] fullLight()
+	{
+		final byte[] result = new byte[ Chunk.BLOCK_COUNT ];
+		Arrays.fill( result , Block.MAX_LIGHT_LEVEL );
+		return result;
+	}
+
+	/*
+	 * Checks that greedy meshing produces the expected number of quads and covers exactly the same block faces
+	 * as adding faces block by block.
+	 */
+	private static MeshData assertMergedQuads(int expectedQuads,byte[] blocks,byte[] skyLight)
+	{
+		final Chunk chunk = new Chunk( 0 , 0 , 0 , null );
+		chunk.setBlockTypes( blocks );
+		final ChunkSnapshot snapshot = chunk.snapshot();
+
+		final MeshData perBlock = buildMesh( chunk , snapshot , skyLight , false );
+		final MeshData merged = buildMesh( chunk , snapshot , skyLight , true );
+		assertEquals( expectedQuads , merged.getQuadCount() );
+
+		final int[] expected = coveredFaces( chunk , snapshot , skyLight , perBlock );
+		final int[] actual = coveredFaces( chunk , snapshot , skyLight , merged );
+		for ( int i = 0 ; i < expected.length ; i++ )
+		{
+			if ( expected[i] != actual[i] ) {
+				fail("Face "+( i % BlockRenderer.FACES_PER_BLOCK )+" of block "+( i / BlockRenderer.FACES_PER_BLOCK )+
+						" covered "+actual[i]+" times , expected "+expected[i]);
+			}
+		}
+		return merged;
+	}
+
+	private static MeshData buildMesh(Chunk chunk,ChunkSnapshot snapshot,byte[] skyLight,boolean greedy)
+	{
+		final MeshBuilder builder = MeshBuilder.get().begin( false );
+		ChunkMesher.buildMesh( chunk , snapshot , skyLight , null , null , null , null , null , null , builder , greedy );
+		return builder.end();
+	}
+
+	private static int countQuads(MeshData mesh,int face)
+	{
+		int result = 0;
+		for ( int quad = 0 ; quad < mesh.getQuadCount() ; quad++ ) {
+			if ( getTile( mesh , quad * 4 ) % BlockRenderer.FACES_PER_BLOCK == face ) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	private static int getTile(MeshData mesh,int vertex) {
+		return (int) mesh.vertices[ vertex * BlockRenderer.ELEMENTS_PER_VERTEX + 9 ];
+	}
+
+	/*
+	 * Returns how often each block face is covered by a quad , indexed by ( blockIndex * FACES_PER_BLOCK + face ).
+	 * Fails if a quad covers a block with a different block type or light level.
+	 */
+	private static int[] coveredFaces(Chunk chunk,ChunkSnapshot snapshot,byte[] skyLight,MeshData mesh)
+	{
+		final int[] result = new int[ Chunk.BLOCK_COUNT * BlockRenderer.FACES_PER_BLOCK ];
+		for ( int quad = 0 ; quad < mesh.getQuadCount() ; quad++ )
+		{
+			final int[] min = { Integer.MAX_VALUE , Integer.MAX_VALUE , Integer.MAX_VALUE };
+			final int[] max = { Integer.MIN_VALUE , Integer.MIN_VALUE , Integer.MIN_VALUE };
+			for ( int vertex = quad * 4 ; vertex < quad * 4 + 4 ; vertex++ )
+			{
+				assertEquals( getTile( mesh , quad * 4 ) , getTile( mesh , vertex ) );
+				for ( int axis = 0 ; axis < 3 ; axis++ )
+				{
+					final int value = (int) mesh.vertices[ vertex * BlockRenderer.ELEMENTS_PER_VERTEX + axis ];
+					min[axis] = Math.min( min[axis] , value );
+					max[axis] = Math.max( max[axis] , value );
+				}
+			}
+
+			final int tile = getTile( mesh , quad * 4 );
+			final int face = tile % BlockRenderer.FACES_PER_BLOCK;
+			final byte blockType = (byte) ( tile / BlockRenderer.FACES_PER_BLOCK );
+			final float lightFactor = mesh.vertices[ quad * 4 * BlockRenderer.ELEMENTS_PER_VERTEX + 8 ];
+
+			// quads lie on the face of the blocks they cover , pointing away from them
+			final int axis = face == BlockRenderer.FACE_LEFT || face == BlockRenderer.FACE_RIGHT ? 0 :
+				face == BlockRenderer.FACE_TOP || face == BlockRenderer.FACE_BOTTOM ? 1 : 2;
+			final boolean positive = face == BlockRenderer.FACE_RIGHT || face == BlockRenderer.FACE_TOP || face == BlockRenderer.FACE_FRONT;
+			assertEquals( min[axis] , max[axis] );
+			final int layer = positive ? max[axis] - 1 : min[axis];
+			min[axis] = layer;
+			max[axis] = layer + 1;
+
+			for ( int x = min[0] ; x < max[0] ; x++ )
+			{
+				for ( int y = min[1] ; y < max[1] ; y++ )
+				{
+					for ( int z = min[2] ; z < max[2] ; z++ )
+					{
+						final int blockIndex = Chunk.blockIndex( x , y , z );
+						assertEquals( snapshot.getBlockType( blockIndex ) , blockType );
+						if ( axis == 1 ) {
+							final int lightLevel = Math.max( skyLight[ blockIndex ] , chunk.getBlockLightLevel( blockIndex ) );
+							assertEquals( MeshBuilder.lightFactor( lightLevel ) , lightFactor , 0.00001f );
+						} else {
+							assertEquals( 1.0f , lightFactor , 0.00001f );
+						}
+						result[ blockIndex * BlockRenderer.FACES_PER_BLOCK + face ]++;
+					}
+				}
+			}
+		}
+		return result;
+	}
+}
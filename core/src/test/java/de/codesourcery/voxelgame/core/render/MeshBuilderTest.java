@@ -0,0 +1,95 @@
+package de.codesourcery.voxelgame.core.render;
+
+import junit.framework.TestCase;
+import de.codesourcery.voxelgame.core.Block;
+import de.codesourcery.voxelgame.core.render.BlockRenderer.MeshData;
+import de.codesourcery.voxelgame.core.world.Chunk;
+
+public class MeshBuilderTest extends TestCase {
+
+	// coordinates range from 0 to 32 (inclusive) , the far corner of a box may lie on the chunk's border
+	private static final int[] COORDINATES = { 0 , 1 , 31 , 32 };
+
+	private static final byte[] BLOCK_TYPES = { Block.Type.AIR , Block.Type.SOLID , Block.Type.WATER , 127 , (byte) 128 , (byte) 200 , (byte) 255 };
+
+	public void testPackPositionRoundTrip()
+	{
+		for ( final int x : COORDINATES ) {
+			for ( final int y : COORDINATES ) {
+				for ( final int z : COORDINATES ) {
+					for ( int face = BlockRenderer.FACE_FRONT ; face <= BlockRenderer.FACE_BOTTOM ; face++ )
+					{
+						final int packed = BlockRenderer.packPosition( x , y , z , face );
+						assertEquals( x , unpackByte( packed , 0 ) );
+						assertEquals( y , unpackByte( packed , 1 ) );
+						assertEquals( z , unpackByte( packed , 2 ) );
+						assertEquals( face , unpackByte( packed , 3 ) );
+					}
+				}
+			}
+		}
+	}
+
+	public void testPackDataRoundTrip()
+	{
+		for ( final byte blockType : BLOCK_TYPES ) {
+			for ( int lightLevel = Block.MIN_LIGHT_LEVEL ; lightLevel <= Block.MAX_LIGHT_LEVEL ; lightLevel++ )
+			{
+				final int packed = BlockRenderer.packData( blockType , lightLevel );
+				assertEquals( blockType & 0xff , unpackByte( packed , 0 ) ); // unsigned
+				assertEquals( lightLevel , unpackByte( packed , 1 ) );
+				assertEquals( 0 , unpackByte( packed , 2 ) );
+				assertEquals( 0 , unpackByte( packed , 3 ) );
+			}
+		}
+	}
+
+	public void testPackedAndRegularVerticesDescribeSameQuads()
+	{
+		final MeshData regular = buildMesh( false );
+		final MeshData packed = buildMesh( true );
+		assertFalse( regular.isPacked() );
+		assertTrue( packed.isPacked() );
+		assertEquals( regular.vertexCount , packed.vertexCount );
+		assertEquals( regular.getQuadCount() , packed.getQuadCount() );
+
+		for ( int vertex = 0 ; vertex < regular.vertexCount ; vertex++ )
+		{
+			final int offset = vertex * BlockRenderer.ELEMENTS_PER_VERTEX;
+			final int position = packed.packedVertices[ vertex * BlockRenderer.PACKED_INTS_PER_VERTEX ];
+			final int data = packed.packedVertices[ vertex * BlockRenderer.PACKED_INTS_PER_VERTEX + 1 ];
+
+			for ( int axis = 0 ; axis < 3 ; axis++ ) {
+				assertEquals( (int) regular.vertices[ offset + axis ] , unpackByte( position , axis ) );
+			}
+
+			// see flat_vertex_packed.glsl
+			final int face = unpackByte( position , 3 );
+			final int blockType = unpackByte( data , 0 );
+			final int lightLevel = unpackByte( data , 1 );
+			final int tile = (int) regular.vertices[ offset + 9 ];
+			assertEquals( tile % BlockRenderer.FACES_PER_BLOCK , face );
+			assertEquals( tile / BlockRenderer.FACES_PER_BLOCK , blockType );
+
+			final float lightFactor = face == BlockRenderer.FACE_TOP || face == BlockRenderer.FACE_BOTTOM ? MeshBuilder.lightFactor( lightLevel ) : 1.0f;
+			assertEquals( regular.vertices[ offset + 8 ] , lightFactor , 0.00001f );
+		}
+	}
+
+	private static MeshData buildMesh(boolean packed)
+	{
+		final MeshBuilder builder = MeshBuilder.get().begin( packed );
+		builder.addBlock( 0 , 0 , 0 , Block.MIN_LIGHT_LEVEL , Block.Type.SOLID , BlockRenderer.ALL_SIDES );
+		builder.addBlock( 31 , 31 , 31 , Block.MAX_LIGHT_LEVEL , (byte) 200 , BlockRenderer.ALL_SIDES );
+		builder.addBox( 0 , 5 , 7 , Chunk.BLOCKS_X , 1 , 3 , 7 , (byte) 255 , BlockRenderer.ALL_SIDES );
+		builder.addBox( 2 , 0 , 0 , 1 , Chunk.BLOCKS_Y , Chunk.BLOCKS_Z , Block.MAX_LIGHT_LEVEL , (byte) 128 , BlockRenderer.SIDE_TOP | BlockRenderer.SIDE_LEFT );
+		return builder.end();
+	}
+
+	/*
+	 * Returns one of the unsigned bytes a packed int is made up of , lowest byte first (see BlockRenderer#PACKED_INTS_PER_VERTEX).
+	 */
+	private static int unpackByte(int packed,int index) {
+		return ( packed >>> ( index * 8 ) ) & 0xff;
+	}
+}
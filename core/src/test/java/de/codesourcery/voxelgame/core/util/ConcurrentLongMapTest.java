@@ -0,0 +1,125 @@
+package de.codesourcery.voxelgame.core.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class ConcurrentLongMapTest extends TestCase {
+
+	public void testPutGetRemove()
+	{
+		final ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+		assertTrue( map.isEmpty() );
+		assertNull( map.put( 0 , "a" ) );
+		assertNull( map.put( -1 , "b" ) );
+		assertEquals( "a" , map.put( 0 , "c" ) );
+		assertEquals( 2 , map.size() );
+		assertEquals( "c" , map.get( 0 ) );
+		assertEquals( "b" , map.get( -1 ) );
+		assertNull( map.get( 1 ) );
+
+		assertEquals( "c" , map.remove( 0 ) );
+		assertNull( map.remove( 0 ) );
+		assertFalse( map.containsKey( 0 ) );
+		assertEquals( 1 , map.size() );
+	}
+
+	public void testPutIfAbsent()
+	{
+		final ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+		assertNull( map.putIfAbsent( 42 , "a" ) );
+		assertEquals( "a" , map.putIfAbsent( 42 , "b" ) );
+		assertEquals( "a" , map.get( 42 ) );
+	}
+
+	public void testRemoveExpectedValue()
+	{
+		final ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+		final String value = "a";
+		map.put( 42 , value );
+		assertNull( map.remove( 42 , new String("a") ) );
+		assertEquals( value , map.remove( 42 , value ) );
+		assertTrue( map.isEmpty() );
+	}
+
+	public void testValuesSnapshotIsNotModified()
+	{
+		final ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+		map.put( 1 , "a" );
+		final List<String> snapshot = map.values();
+		assertSame( snapshot , map.values() );
+
+		map.put( 2 , "b" );
+		assertEquals( 1 , snapshot.size() );
+		assertEquals( 2 , map.values().size() );
+	}
+
+	public void testRandomOperationsMatchHashMap()
+	{
+		final ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(1);
+		final Map<Long,Long> expected = new HashMap<>();
+		final Random rnd = new Random( 0xdeadbeef );
+		for ( int i = 0 ; i < 100000 ; i++ )
+		{
+			final long key = rnd.nextInt( 500 ) - 250;
+			if ( rnd.nextBoolean() ) {
+				assertEquals( expected.put( key , (long) i ) , map.put( key , (long) i ) );
+			} else {
+				assertEquals( expected.remove( key ) , map.remove( key ) );
+			}
+			assertEquals( expected.size() , map.size() );
+		}
+		for ( long key = -250 ; key < 250 ; key++ ) {
+			assertEquals( expected.get( key ) , map.get( key ) );
+		}
+		assertEquals( expected.size() , map.values().size() );
+	}
+
+	public void testConcurrentReadsAlwaysFindStableKeys() throws Exception
+	{
+		final ConcurrentLongMap<Long> map = new ConcurrentLongMap<>();
+		for ( long key = 0 ; key < 100 ; key++ ) {
+			map.put( key , key );
+		}
+
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<String> error = new AtomicReference<>();
+		final Thread reader = new Thread() {
+			@Override
+			public void run()
+			{
+				while ( ! stop.get() )
+				{
+					for ( long key = 0 ; key < 100 ; key++ )
+					{
+						final Long value = map.get( key );
+						if ( value == null || value.longValue() != key ) {
+							error.set( "Got "+value+" for key "+key );
+							return;
+						}
+					}
+				}
+			}
+		};
+		reader.start();
+
+		// keep adding and removing other keys , forcing tombstones and rehashing
+		for ( int i = 0 ; i < 200000 && error.get() == null ; i++ )
+		{
+			final long key = 100 + ( i % 1000 );
+			if ( ( i / 1000 ) % 2 == 0 ) {
+				map.put( key , key );
+			} else {
+				map.remove( key );
+			}
+		}
+		stop.set( true );
+		reader.join();
+		assertNull( error.get() );
+	}
+}
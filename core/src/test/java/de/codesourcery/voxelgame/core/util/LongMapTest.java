@@ -0,0 +1,88 @@
+package de.codesourcery.voxelgame.core.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LongMapTest extends TestCase {
+
+	public void testPutGetRemove()
+	{
+		final LongMap<String> map = new LongMap<>();
+		assertTrue( map.isEmpty() );
+		assertNull( map.put( 0 , "a" ) );
+		assertNull( map.put( Long.MIN_VALUE , "b" ) );
+		assertNull( map.put( -1 , "c" ) );
+		assertEquals( 3 , map.size() );
+
+		assertEquals( "a" , map.get( 0 ) );
+		assertEquals( "b" , map.get( Long.MIN_VALUE ) );
+		assertEquals( "c" , map.get( -1 ) );
+		assertNull( map.get( 1 ) );
+
+		assertEquals( "a" , map.put( 0 , "d" ) );
+		assertEquals( 3 , map.size() );
+		assertEquals( "d" , map.remove( 0 ) );
+		assertNull( map.remove( 0 ) );
+		assertFalse( map.containsKey( 0 ) );
+		assertEquals( 2 , map.size() );
+	}
+
+	public void testNullValueIsRejected()
+	{
+		try {
+			new LongMap<String>().put( 1 , null );
+			fail("Should've failed");
+		} catch(final IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+	public void testClear()
+	{
+		final LongMap<String> map = new LongMap<>();
+		map.put( 42 , "a" );
+		map.clear();
+		assertTrue( map.isEmpty() );
+		assertNull( map.get( 42 ) );
+	}
+
+	public void testValues()
+	{
+		final LongMap<Integer> map = new LongMap<>();
+		for ( int i = 0 ; i < 100 ; i++ ) {
+			map.put( i * 1000L , i );
+		}
+		final List<Integer> values = new ArrayList<>();
+		map.values( values );
+		assertEquals( 100 , values.size() );
+		for ( int i = 0 ; i < 100 ; i++ ) {
+			assertTrue( values.contains( i ) );
+		}
+	}
+
+	public void testRandomOperationsMatchHashMap()
+	{
+		final LongMap<Long> map = new LongMap<>(1);
+		final Map<Long,Long> expected = new HashMap<>();
+		final Random rnd = new Random( 0xdeadbeef );
+		for ( int i = 0 ; i < 100000 ; i++ )
+		{
+			// small key range so that the same keys get inserted and removed over and over
+			final long key = rnd.nextInt( 500 ) - 250;
+			if ( rnd.nextBoolean() ) {
+				assertEquals( expected.put( key , (long) i ) , map.put( key , (long) i ) );
+			} else {
+				assertEquals( expected.remove( key ) , map.remove( key ) );
+			}
+			assertEquals( expected.size() , map.size() );
+		}
+		for ( long key = -250 ; key < 250 ; key++ ) {
+			assertEquals( expected.get( key ) , map.get( key ) );
+		}
+	}
+}
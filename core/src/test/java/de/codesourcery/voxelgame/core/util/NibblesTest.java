@@ -0,0 +1,63 @@
+package de.codesourcery.voxelgame.core.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class NibblesTest extends TestCase {
+
+	public void testBytesRequired()
+	{
+		assertEquals( 0 , Nibbles.bytesRequired( 0 ) );
+		assertEquals( 1 , Nibbles.bytesRequired( 1 ) );
+		assertEquals( 1 , Nibbles.bytesRequired( 2 ) );
+		assertEquals( 2 , Nibbles.bytesRequired( 3 ) );
+	}
+
+	public void testSetDoesNotTouchAdjacentNibble()
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate( 1 );
+		Nibbles.set( buffer , 0 , (byte) 15 );
+		Nibbles.set( buffer , 1 , (byte) 7 );
+		assertEquals( 15 , Nibbles.get( buffer , 0 ) );
+		assertEquals( 7 , Nibbles.get( buffer , 1 ) );
+
+		Nibbles.set( buffer , 0 , (byte) 0 );
+		assertEquals( 0 , Nibbles.get( buffer , 0 ) );
+		assertEquals( 7 , Nibbles.get( buffer , 1 ) );
+	}
+
+	public void testPackUnpack()
+	{
+		for ( final int count : new int[] { 1 , 2 , 33 , 32768 } )
+		{
+			final byte[] values = new byte[ count ];
+			final Random rnd = new Random( count );
+			for ( int i = 0 ; i < count ; i++ ) {
+				values[i] = (byte) rnd.nextInt( 16 );
+			}
+			final ByteBuffer buffer = ByteBuffer.allocateDirect( Nibbles.bytesRequired( count ) );
+			Nibbles.pack( values , buffer , count );
+			assertEquals( 0 , buffer.position() );
+
+			for ( int i = 0 ; i < count ; i++ ) {
+				assertEquals( values[i] , Nibbles.get( buffer , i ) );
+			}
+			final byte[] unpacked = new byte[ count ];
+			Nibbles.unpack( buffer , unpacked , count );
+			assertTrue( Arrays.equals( values , unpacked ) );
+		}
+	}
+
+	public void testFill()
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate( 3 );
+		Nibbles.fill( buffer , 5 , (byte) 9 );
+		for ( int i = 0 ; i < 5 ; i++ ) {
+			assertEquals( 9 , Nibbles.get( buffer , i ) );
+		}
+		assertEquals( 0 , Nibbles.get( buffer , 5 ) );
+	}
+}
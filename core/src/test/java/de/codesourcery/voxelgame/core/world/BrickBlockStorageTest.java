@@ -0,0 +1,128 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class BrickBlockStorageTest extends TestCase {
+
+	public void testInitiallyUniform()
+	{
+		final BrickBlockStorage storage = new BrickBlockStorage( (byte) 1 );
+		assertTrue( storage.isUniform() );
+		assertEquals( -1L , storage.getOccupiedBricks() );
+		assertEquals( 1 , storage.get( 0 ) );
+		assertEquals( 1 , storage.get( Chunk.BLOCK_COUNT - 1 ) );
+
+		storage.fill( (byte) 0 );
+		assertTrue( storage.isUniform() );
+		assertEquals( 0L , storage.getOccupiedBricks() );
+	}
+
+	public void testSetAllGetAllRoundTrip()
+	{
+		final Random rnd = new Random(0xdeadbeef);
+		final byte[] values = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int i = 0 ; i < values.length ; i++ ) {
+			values[i] = (byte) rnd.nextInt( 5 );
+		}
+		final BrickBlockStorage storage = new BrickBlockStorage( (byte) 0 );
+		storage.setAll( values );
+		assertContents( values , storage );
+		assertFalse( storage.isUniform() );
+	}
+
+	public void testSetUpdatesSingleBrick()
+	{
+		final BrickBlockStorage storage = new BrickBlockStorage( (byte) 0 );
+		final byte[] expected = new byte[ Chunk.BLOCK_COUNT ];
+
+		final int index = Chunk.blockIndex( 9 , 17 , 31 );
+		storage.set( index , (byte) 7 );
+		expected[ index ] = 7;
+		assertContents( expected , storage );
+
+		final int brick = BrickBlockStorage.brickIndex( 1 , 2 , 3 );
+		assertEquals( brick , BrickBlockStorage.brickIndex( index ) );
+		assertEquals( 1L << brick , storage.getOccupiedBricks() );
+		assertFalse( storage.isUniform() );
+	}
+
+	public void testUniformBricksAreNotSharedAcrossStorages()
+	{
+		final BrickBlockStorage storage1 = new BrickBlockStorage( (byte) 0 );
+		final BrickBlockStorage storage2 = new BrickBlockStorage( (byte) 0 );
+		storage1.set( 0 , (byte) 1 );
+		assertEquals( 1 , storage1.get( 0 ) );
+		assertEquals( 0 , storage2.get( 0 ) );
+		assertEquals( 0 , new BrickBlockStorage( (byte) 0 ).get( 0 ) );
+	}
+
+	public void testLayeredChunkOccupancy()
+	{
+		// solid below y=8 , air above
+		final byte[] values = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int i = 0 ; i < values.length ; i++ ) {
+			values[i] = (byte) ( ( ( i / Chunk.BLOCKS_X ) % Chunk.BLOCKS_Y ) < 8 ? 1 : 0 );
+		}
+		final BrickBlockStorage storage = new BrickBlockStorage( (byte) 0 );
+		storage.setAll( values );
+		assertContents( values , storage );
+
+		long expected = 0;
+		for ( int x = 0 ; x < BrickBlockStorage.BRICKS_X ; x++ ) {
+			for ( int z = 0 ; z < BrickBlockStorage.BRICKS_Z ; z++ ) {
+				expected |= 1L << BrickBlockStorage.brickIndex( x , 0 , z );
+			}
+		}
+		assertEquals( expected , storage.getOccupiedBricks() );
+		// all bricks are uniform
+		assertEquals( BrickBlockStorage.BRICK_COUNT * 4 , storage.getSizeInBytes() );
+	}
+
+	public void testCopyIsIndependent()
+	{
+		final BrickBlockStorage storage = new BrickBlockStorage( (byte) 0 );
+		storage.set( 10 , (byte) 1 );
+		final BrickBlockStorage copy = storage.copy();
+		storage.set( 10 , (byte) 2 );
+		storage.set( 20000 , (byte) 3 );
+		assertEquals( 1 , copy.get( 10 ) );
+		assertEquals( 0 , copy.get( 20000 ) );
+
+		storage.setAll( copy );
+		assertEquals( 1 , storage.get( 10 ) );
+		assertEquals( 0 , storage.get( 20000 ) );
+	}
+
+	public void testSnapshotIsIndependent()
+	{
+		final BrickBlockStorage storage = new BrickBlockStorage( (byte) 0 );
+		storage.set( 10 , (byte) 1 );
+		storage.set( 11 , (byte) 1 );
+
+		final BrickBlockStorage snapshot = storage.snapshot();
+		storage.set( 10 , (byte) 2 );
+		storage.set( 20000 , (byte) 3 );
+		assertEquals( 1 , snapshot.get( 10 ) );
+		assertEquals( 1 , snapshot.get( 11 ) );
+		assertEquals( 0 , snapshot.get( 20000 ) );
+
+		// modifying the snapshot must not affect the original either
+		snapshot.set( 11 , (byte) 4 );
+		assertEquals( 2 , storage.get( 10 ) );
+		assertEquals( 1 , storage.get( 11 ) );
+		assertEquals( 3 , storage.get( 20000 ) );
+	}
+
+	private static void assertContents(byte[] expected,BrickBlockStorage storage)
+	{
+		for ( int i = 0 ; i < Chunk.BLOCK_COUNT ; i++ ) {
+			assertEquals( "Mismatch at index "+i , expected[i] , storage.get( i ) );
+		}
+		final byte[] actual = new byte[ Chunk.BLOCK_COUNT ];
+		storage.getAll( actual );
+		assertTrue( Arrays.equals( expected , actual ) );
+	}
+}
@@ -0,0 +1,65 @@
+package de.codesourcery.voxelgame.core.world;
+
+import junit.framework.TestCase;
+
+public class ChunkClockTest extends TestCase {
+
+	public void testEmptyRing()
+	{
+		final ChunkClock clock = new ChunkClock();
+		assertNull( clock.evict() );
+		assertEquals( 0 , clock.size() );
+	}
+
+	public void testEvictsUnreferencedChunkFirst()
+	{
+		final ChunkClock clock = new ChunkClock(1);
+		final Chunk[] chunks = new Chunk[4];
+		for ( int i = 0 ; i < chunks.length ; i++ )
+		{
+			chunks[i] = new Chunk( i , 0 , 0 );
+			chunks[i].touch();
+			clock.add( chunks[i] );
+		}
+		// first pass clears all reference bits
+		assertSame( chunks[0] , clock.evict() );
+		assertFalse( clock.contains( chunks[0] ) );
+
+		chunks[1].touch();
+		chunks[3].touch();
+		final Chunk evicted = clock.evict();
+		assertSame( chunks[2] , evicted );
+		assertEquals( 2 , clock.size() );
+	}
+
+	public void testAddAndRemoveAreIdempotent()
+	{
+		final ChunkClock clock = new ChunkClock();
+		final Chunk chunk1 = new Chunk( 1 , 0 , 0 );
+		final Chunk chunk2 = new Chunk( 2 , 0 , 0 );
+		clock.add( chunk1 );
+		clock.add( chunk1 );
+		clock.add( chunk2 );
+		assertEquals( 2 , clock.size() );
+
+		clock.remove( chunk1 );
+		clock.remove( chunk1 );
+		assertEquals( 1 , clock.size() );
+		assertFalse( clock.contains( chunk1 ) );
+		assertTrue( clock.contains( chunk2 ) );
+
+		// removed chunks are never evicted
+		assertSame( chunk2 , clock.evict() );
+		assertNull( clock.evict() );
+	}
+
+	public void testClear()
+	{
+		final ChunkClock clock = new ChunkClock();
+		final Chunk chunk = new Chunk( 1 , 0 , 0 );
+		clock.add( chunk );
+		clock.clear();
+		assertFalse( clock.contains( chunk ) );
+		assertNull( clock.evict() );
+	}
+}
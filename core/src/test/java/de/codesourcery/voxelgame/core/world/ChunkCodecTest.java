@@ -0,0 +1,137 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ChunkCodecTest extends TestCase {
+
+	private static final ChunkCodec[] CODECS = { ChunkCodec.RAW , ChunkCodec.RUN_LENGTH , ChunkCodec.PALETTE };
+
+	public void testUniformChunk() throws IOException
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		Arrays.fill( blocks , (byte) 3 );
+		assertRoundTrip( blocks );
+
+		final byte[] record = ChunkFormat.encode( blocks );
+		assertEquals( ChunkFormat.UNIFORM_RECORD_SIZE , record.length );
+		assertTrue( ChunkFormat.isUniform( ByteBuffer.wrap( record ) ) );
+
+		final byte[] decoded = new byte[ Chunk.BLOCK_COUNT ];
+		assertNull( ChunkFormat.decode( ByteBuffer.wrap( record ) , decoded ) );
+		assertTrue( Arrays.equals( blocks , decoded ) );
+	}
+
+	public void testLayeredChunk() throws IOException
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int i = 0 ; i < blocks.length ; i++ ) {
+			final int y = ( i / Chunk.BLOCKS_X ) % Chunk.BLOCKS_Y;
+			blocks[i] = (byte) ( y < 10 ? 1 : y < 20 ? 2 : 0 );
+		}
+		assertRoundTrip( blocks );
+	}
+
+	public void testRandomChunks() throws IOException
+	{
+		final Random rnd = new Random(0xdeadbeef);
+		for ( final int typeCount : new int[] { 2 , 3 , 4 , 5 , 16 , 17 , 256 } )
+		{
+			final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+			for ( int i = 0 ; i < blocks.length ; i++ ) {
+				blocks[i] = (byte) rnd.nextInt( typeCount );
+			}
+			assertRoundTrip( blocks );
+		}
+	}
+
+	public void testLegacyRecord() throws IOException
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		new Random(42).nextBytes( blocks );
+
+		final byte[] decoded = new byte[ Chunk.BLOCK_COUNT ];
+		assertSame( ChunkCodec.RAW , ChunkFormat.decode( ByteBuffer.wrap( blocks.clone() ) , decoded ) );
+		assertTrue( Arrays.equals( blocks , decoded ) );
+	}
+
+	public void testEncodedRecordNeverLooksLikeLegacyRecord() throws IOException
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		new Random(42).nextBytes( blocks );
+		final byte[] record = ChunkFormat.encode( blocks );
+		assertFalse( record.length == ChunkFormat.LEGACY_RECORD_SIZE );
+		assertEquals( ChunkFormat.MAX_RECORD_SIZE , record.length );
+	}
+
+	public void testDeltaRecord() throws IOException
+	{
+		final int[] edits = { 0 << 8 | 1 , ( Chunk.BLOCK_COUNT - 1 ) << 8 | 0xff , 12345 << 8 | 7 };
+		final byte[] record = ChunkFormat.encodeDelta( edits );
+		assertTrue( ChunkFormat.isDelta( ByteBuffer.wrap( record ) ) );
+		assertFalse( ChunkFormat.isDelta( ByteBuffer.wrap( ChunkFormat.encode( new byte[ Chunk.BLOCK_COUNT ] ) ) ) );
+		assertTrue( Arrays.equals( edits , ChunkFormat.decodeDelta( ByteBuffer.wrap( record ) ) ) );
+
+		try {
+			ChunkFormat.decode( ByteBuffer.wrap( record ) , new byte[ Chunk.BLOCK_COUNT ] );
+			fail("Should've failed");
+		} catch(final IOException e) {
+			// ok
+		}
+	}
+
+	public void testBadMagic()
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		blocks[0] = 1;
+		final byte[] record = ChunkFormat.encode( blocks );
+		record[0] ^= 0xff;
+		try {
+			ChunkFormat.decode( ByteBuffer.wrap( record ) , new byte[ Chunk.BLOCK_COUNT ] );
+			fail("Should've failed");
+		} catch(final IOException e) {
+			// ok
+		}
+	}
+
+	public void testTruncatedRecord()
+	{
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int i = 0 ; i < blocks.length ; i++ ) {
+			blocks[i] = (byte) ( ( i / 100 ) % 7 );
+		}
+		for ( final ChunkCodec codec : new ChunkCodec[] { ChunkCodec.RUN_LENGTH , ChunkCodec.PALETTE } )
+		{
+			final byte[] record = ChunkFormat.encode( blocks , codec );
+			try {
+				ChunkFormat.decode( ByteBuffer.wrap( record , 0 , record.length - 1 ) , new byte[ Chunk.BLOCK_COUNT ] );
+				fail("Should've failed for codec "+codec);
+			} catch(final IOException e) {
+				// ok
+			}
+		}
+	}
+
+	private static void assertRoundTrip(byte[] blocks) throws IOException
+	{
+		for ( final ChunkCodec codec : CODECS )
+		{
+			final byte[] record = ChunkFormat.encode( blocks , codec );
+			if ( record == null ) {
+				continue; // encoded data too large
+			}
+			final byte[] decoded = new byte[ blocks.length ];
+			assertSame( codec , ChunkFormat.decode( ByteBuffer.wrap( record ) , decoded ) );
+			assertTrue( "Round-trip failed for codec "+codec , Arrays.equals( blocks , decoded ) );
+		}
+
+		final byte[] record = ChunkFormat.encode( blocks );
+		final byte[] decoded = new byte[ blocks.length ];
+		ChunkFormat.decode( ByteBuffer.wrap( record ) , decoded );
+		assertTrue( Arrays.equals( blocks , decoded ) );
+	}
+}
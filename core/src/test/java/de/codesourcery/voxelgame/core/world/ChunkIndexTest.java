@@ -0,0 +1,51 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class ChunkIndexTest extends TestCase {
+
+	public void testPackDistinguishesNegativeCoordinates()
+	{
+		assertFalse( ChunkIndex.pack( -1 , 0 , 0 ) == ChunkIndex.pack( 0 , -1 , 0 ) );
+		assertFalse( ChunkIndex.pack( 0 , 0 , -1 ) == ChunkIndex.pack( 0 , -1 , 0 ) );
+		assertFalse( ChunkIndex.pack( 1 , 0 , 0 ) == ChunkIndex.pack( 0 , 1 , 0 ) );
+	}
+
+	public void testAddAndContains()
+	{
+		final ChunkIndex index = new ChunkIndex();
+		assertFalse( index.contains( 1 , -2 , 3 ) );
+		assertTrue( index.add( 1 , -2 , 3 ) );
+		assertFalse( index.add( 1 , -2 , 3 ) );
+		assertTrue( index.contains( 1 , -2 , 3 ) );
+		assertFalse( index.contains( 1 , 2 , 3 ) );
+		assertEquals( 1 , index.size() );
+	}
+
+	public void testSaveAndLoad() throws IOException
+	{
+		final File file = File.createTempFile( "chunkindex" , ".idx" );
+		try
+		{
+			final ChunkIndex index = new ChunkIndex();
+			for ( int x = -5 ; x < 5 ; x++ ) {
+				index.add( x , x*2 , -x*3 );
+			}
+			index.save( file );
+
+			final ChunkIndex loaded = new ChunkIndex();
+			loaded.add( 100 , 100 , 100 );
+			loaded.load( file );
+			assertEquals( 10 , loaded.size() );
+			assertFalse( loaded.contains( 100 , 100 , 100 ) );
+			for ( int x = -5 ; x < 5 ; x++ ) {
+				assertTrue( loaded.contains( x , x*2 , -x*3 ) );
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
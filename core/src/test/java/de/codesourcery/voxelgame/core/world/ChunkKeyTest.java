@@ -0,0 +1,29 @@
+package de.codesourcery.voxelgame.core.world;
+
+import junit.framework.TestCase;
+
+public class ChunkKeyTest extends TestCase {
+
+	public void testKeysDoNotCollide()
+	{
+		// used to be the same key
+		assertTrue( Chunk.calcChunkKey( 0 , 1 , 0 ) != Chunk.calcChunkKey( 1 , -30 , 0 ) );
+		assertTrue( Chunk.calcChunkKey( 0 , 0 , -1 ) != Chunk.calcChunkKey( 0 , -1 , 0 ) );
+	}
+
+	public void testUnpackKey()
+	{
+		final int[] coords = { 0 , 1 , -1 , 31 , -30 , 12345 , -54321 , Chunk.MIN_CHUNK_COORDINATE , Chunk.MAX_CHUNK_COORDINATE };
+		for ( final int x : coords ) {
+			for ( final int y : coords ) {
+				for ( final int z : coords )
+				{
+					final long key = Chunk.calcChunkKey( x , y , z );
+					assertEquals( x , Chunk.chunkKeyX( key ) );
+					assertEquals( y , Chunk.chunkKeyY( key ) );
+					assertEquals( z , Chunk.chunkKeyZ( key ) );
+				}
+			}
+		}
+	}
+}
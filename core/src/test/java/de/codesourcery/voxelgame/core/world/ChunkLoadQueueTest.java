@@ -0,0 +1,107 @@
+package de.codesourcery.voxelgame.core.world;
+
+import junit.framework.TestCase;
+
+public class ChunkLoadQueueTest extends TestCase {
+
+	// priority is the key itself , keys >= 100 get cancelled
+	private static final ChunkLoadQueue.IPriorityFunction BY_KEY = new ChunkLoadQueue.IPriorityFunction() {
+
+		@Override
+		public int getPriority(long chunkKey) {
+			return chunkKey < 100 ? (int) chunkKey : -1;
+		}
+	};
+
+	// reverse order
+	private static final ChunkLoadQueue.IPriorityFunction REVERSED = new ChunkLoadQueue.IPriorityFunction() {
+
+		@Override
+		public int getPriority(long chunkKey) {
+			return 1000 - (int) chunkKey;
+		}
+	};
+
+	public void testTakeInPriorityOrder() throws Exception
+	{
+		final ChunkLoadQueue queue = new ChunkLoadQueue();
+		final long[] keys = { 5 , 3 , 99 , 0 , 42 , 7 , 150 };
+		assertEquals( 0 , queue.update( keys , keys.length , BY_KEY ) );
+		assertEquals( 6 , queue.size() );
+
+		final long[] expected = { 0 , 3 , 5 , 7 , 42 , 99 };
+		for ( final long key : expected ) {
+			assertEquals( key , queue.take() );
+		}
+		assertTrue( queue.isEmpty() );
+	}
+
+	public void testReprioritize() throws Exception
+	{
+		final ChunkLoadQueue queue = new ChunkLoadQueue();
+		final long[] keys = { 1 , 2 , 3 };
+		queue.update( keys , keys.length , BY_KEY );
+		assertEquals( 0 , queue.reprioritize( REVERSED ) );
+		assertEquals( 3 , queue.take() );
+		assertEquals( 2 , queue.take() );
+		assertEquals( 1 , queue.take() );
+	}
+
+	public void testCancelOutOfRange() throws Exception
+	{
+		final ChunkLoadQueue queue = new ChunkLoadQueue();
+		final long[] keys = { 1 , 2 , 3 };
+		queue.update( keys , keys.length , REVERSED );
+		assertEquals( 3 , queue.size() );
+
+		// 'BY_KEY' would still load all of them
+		final ChunkLoadQueue.IPriorityFunction onlyTwo = new ChunkLoadQueue.IPriorityFunction() {
+
+			@Override
+			public int getPriority(long chunkKey) {
+				return chunkKey == 2 ? 0 : -1;
+			}
+		};
+		assertEquals( 2 , queue.reprioritize( onlyTwo ) );
+		assertEquals( 1 , queue.size() );
+		assertEquals( 2 , queue.take() );
+	}
+
+	public void testChunksAreOnlyQueuedOnce() throws Exception
+	{
+		final ChunkLoadQueue queue = new ChunkLoadQueue();
+		final long[] keys = { 1 , 2 };
+		queue.update( keys , keys.length , BY_KEY );
+		queue.update( keys , keys.length , BY_KEY );
+		assertEquals( 2 , queue.size() );
+
+		// in flight
+		assertEquals( 1 , queue.take() );
+		queue.update( keys , keys.length , BY_KEY );
+		assertEquals( 1 , queue.size() );
+
+		queue.done( 1 );
+		queue.update( keys , keys.length , BY_KEY );
+		assertEquals( 2 , queue.size() );
+	}
+
+	public void testManyKeys() throws Exception
+	{
+		final ChunkLoadQueue queue = new ChunkLoadQueue();
+		final long[] keys = new long[ 729 ];
+		for ( int i = 0 ; i < keys.length ; i++ ) {
+			keys[i] = ( i * 37 ) % keys.length;
+		}
+		final ChunkLoadQueue.IPriorityFunction identity = new ChunkLoadQueue.IPriorityFunction() {
+
+			@Override
+			public int getPriority(long chunkKey) {
+				return (int) chunkKey;
+			}
+		};
+		queue.update( keys , keys.length , identity );
+		for ( int i = 0 ; i < keys.length ; i++ ) {
+			assertEquals( i , queue.take() );
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package de.codesourcery.voxelgame.core.world;
+
+import junit.framework.TestCase;
+import de.codesourcery.voxelgame.core.Block;
+import de.codesourcery.voxelgame.core.render.BlockRenderer.MeshData;
+import de.codesourcery.voxelgame.core.util.OffHeapSlabAllocator;
+
+public class ChunkMemoryUsageTest extends TestCase {
+
+	public void testInsert()
+	{
+		final ChunkMemoryUsage usage = new ChunkMemoryUsage();
+		final Chunk chunk1 = new Chunk( 1 , 0 , 0 );
+		final Chunk chunk2 = new Chunk( 2 , 0 , 0 );
+		usage.update( chunk1 );
+		usage.update( chunk2 );
+		assertEquals( chunk1.getBlockStorageSizeInBytes() + chunk2.getBlockStorageSizeInBytes() , usage.getBlockDataBytes() );
+		assertEquals( usage.getBlockDataBytes() , usage.getDataBytes() );
+		assertEquals( 0 , usage.getMeshAndBufferBytes() );
+
+		// accounting the same chunk again does not count it twice
+		usage.update( chunk1 );
+		assertEquals( chunk1.getBlockStorageSizeInBytes() + chunk2.getBlockStorageSizeInBytes() , usage.getBlockDataBytes() );
+	}
+
+	public void testRebuild()
+	{
+		final ChunkMemoryUsage usage = new ChunkMemoryUsage();
+		final Chunk chunk = new Chunk( 1 , 0 , 0 );
+		usage.update( chunk );
+
+		chunk.blockRenderer.publish( new MeshData( new float[ 1000 ] ) );
+		usage.update( chunk );
+		assertEquals( 4000 , usage.getMeshBytes() );
+
+		chunk.blockRenderer.publish( new MeshData( new float[ 100 ] ) );
+		usage.update( chunk );
+		assertEquals( 400 , usage.getMeshBytes() );
+		// VBO size is reported for the mesh waiting to be uploaded as well
+		assertEquals( 400 , usage.getBufferBytes() );
+		assertEquals( 800 , usage.getMeshAndBufferBytes() );
+	}
+
+	public void testBlockEdits()
+	{
+		final ChunkMemoryUsage usage = new ChunkMemoryUsage();
+		final Chunk chunk = new Chunk( 1 , 0 , 0 );
+		usage.update( chunk );
+		final long uniform = usage.getBlockDataBytes();
+
+		final byte[] blocks = new byte[ Chunk.BLOCK_COUNT ];
+		for ( int i = 0 ; i < blocks.length ; i += 3 ) {
+			blocks[i] = Block.Type.SOLID;
+		}
+		chunk.setBlockTypes( blocks );
+		usage.update( chunk );
+		assertTrue( usage.getBlockDataBytes() > uniform );
+		assertEquals( chunk.getBlockStorageSizeInBytes() , usage.getBlockDataBytes() );
+
+		chunk.setBlockTypes( new byte[ Chunk.BLOCK_COUNT ] );
+		usage.update( chunk );
+		assertEquals( uniform , usage.getBlockDataBytes() );
+	}
+
+	public void testOffHeapLightLevels()
+	{
+		final ChunkMemoryUsage usage = new ChunkMemoryUsage();
+		final Chunk chunk = new Chunk( 1 , 0 , 0 , new OffHeapSlabAllocator() );
+		final byte[] levels = new byte[ Chunk.BLOCK_COUNT ];
+		levels[0] = Block.MAX_LIGHT_LEVEL;
+		chunk.setSkyLightLevels( levels );
+		usage.update( chunk );
+		assertTrue( usage.getOffHeapBytes() > 0 );
+		assertEquals( chunk.getBlockStorageSizeInBytes() + chunk.getOffHeapSizeInBytes() , usage.getDataBytes() );
+	}
+
+	public void testReleaseMesh()
+	{
+		final ChunkMemoryUsage usage = new ChunkMemoryUsage();
+		final Chunk chunk = new Chunk( 1 , 0 , 0 );
+		chunk.blockRenderer.publish( new MeshData( new float[ 1000 ] ) );
+		usage.update( chunk );
+		final long blockData = usage.getBlockDataBytes();
+
+		chunk.blockRenderer.releaseMeshData();
+		usage.update( chunk );
+		assertEquals( 0 , usage.getMeshAndBufferBytes() );
+		assertEquals( blockData , usage.getBlockDataBytes() );
+	}
+
+	public void testEvict()
+	{
+		final ChunkMemoryUsage usage = new ChunkMemoryUsage();
+		final Chunk chunk1 = new Chunk( 1 , 0 , 0 );
+		final Chunk chunk2 = new Chunk( 2 , 0 , 0 );
+		chunk1.blockRenderer.publish( new MeshData( new float[ 1000 ] ) );
+		usage.update( chunk1 );
+		usage.update( chunk2 );
+
+		usage.remove( chunk1 );
+		assertEquals( chunk2.getBlockStorageSizeInBytes() , usage.getBlockDataBytes() );
+		assertEquals( 0 , usage.getMeshAndBufferBytes() );
+
+		// removing twice does not subtract anything
+		usage.remove( chunk1 );
+		assertEquals( chunk2.getBlockStorageSizeInBytes() , usage.getBlockDataBytes() );
+
+		usage.remove( chunk2 );
+		assertEquals( 0 , usage.getDataBytes() );
+		assertEquals( 0 , usage.getMeshAndBufferBytes() );
+	}
+}
@@ -0,0 +1,84 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.voxelgame.core.Block;
+
+public class OpacityMaskTest extends TestCase {
+
+	public void testEmptyMask()
+	{
+		final OpacityMask mask = new OpacityMask();
+		for ( int row = 0 ; row < OpacityMask.ROWS ; row++ ) {
+			assertEquals( 0 , mask.getOpaqueRow( row ) );
+			assertEquals( 0 , mask.getTranslucentRow( row ) );
+		}
+		assertFalse( mask.hasTranslucentBlocks() );
+		assertEquals( 0 , mask.getSizeInBytes() );
+	}
+
+	public void testFill()
+	{
+		final OpacityMask mask = new OpacityMask();
+		mask.fill( Block.Type.SOLID );
+		assertEquals( 0xffffffff , mask.getOpaqueRow( OpacityMask.rowIndex( 5 , 7 ) ) );
+		assertEquals( 0 , mask.getSizeInBytes() );
+
+		mask.fill( Block.Type.WATER );
+		assertEquals( 0 , mask.getOpaqueRow( 0 ) );
+		assertEquals( 0xffffffff , mask.getTranslucentRow( 0 ) );
+	}
+
+	public void testSetDoesNotModifySharedMasks()
+	{
+		final OpacityMask mask1 = new OpacityMask();
+		final OpacityMask mask2 = new OpacityMask();
+		mask1.set( Chunk.blockIndex( 3 , 1 , 2 ) , Block.Type.SOLID );
+
+		assertEquals( 1 << 3 , mask1.getOpaqueRow( OpacityMask.rowIndex( 1 , 2 ) ) );
+		assertEquals( 0 , mask2.getOpaqueRow( OpacityMask.rowIndex( 1 , 2 ) ) );
+
+		mask1.set( Chunk.blockIndex( 3 , 1 , 2 ) , Block.Type.AIR );
+		assertEquals( 0 , mask1.getOpaqueRow( OpacityMask.rowIndex( 1 , 2 ) ) );
+	}
+
+	public void testSnapshotIsIndependent()
+	{
+		final OpacityMask mask = new OpacityMask();
+		mask.set( 0 , Block.Type.SOLID );
+		mask.set( 1 , Block.Type.WATER );
+
+		final OpacityMask snapshot = mask.snapshot();
+		mask.set( 0 , Block.Type.AIR );
+		mask.set( 1 , Block.Type.AIR );
+		assertEquals( 1 , snapshot.getOpaqueRow( 0 ) );
+		assertEquals( 2 , snapshot.getTranslucentRow( 0 ) );
+		assertEquals( 0 , mask.getOpaqueRow( 0 ) );
+		assertEquals( 0 , mask.getTranslucentRow( 0 ) );
+	}
+
+	public void testSetAllMatchesBlockTypes()
+	{
+		final byte[] types = new byte[ Chunk.BLOCK_COUNT ];
+		final Random rnd = new Random( 0xdeadbeef );
+		for ( int i = 0 ; i < types.length ; i++ ) {
+			types[i] = (byte) rnd.nextInt( Block.Type.MAX + 1 );
+		}
+
+		final OpacityMask mask = new OpacityMask();
+		mask.setAll( types );
+		assertTrue( mask.hasTranslucentBlocks() );
+		for ( int x = 0 ; x < Chunk.BLOCKS_X ; x++ ) {
+			for ( int y = 0 ; y < Chunk.BLOCKS_Y ; y++ ) {
+				for ( int z = 0 ; z < Chunk.BLOCKS_Z ; z++ )
+				{
+					final byte type = types[ Chunk.blockIndex( x , y , z ) ];
+					final int row = OpacityMask.rowIndex( y , z );
+					assertEquals( Block.isNoTranslucentBlock( type ) , ( mask.getOpaqueRow( row ) & ( 1 << x ) ) != 0 );
+					assertEquals( type == Block.Type.WATER , ( mask.getTranslucentRow( row ) & ( 1 << x ) ) != 0 );
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package de.codesourcery.voxelgame.core.world;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class PaletteBlockStorageTest extends TestCase {
+
+	private static final int SIZE = 4096;
+
+	public void testInitiallyUniform()
+	{
+		final PaletteBlockStorage storage = new PaletteBlockStorage( SIZE , (byte) 5 );
+		assertTrue( storage.isUniform() );
+		assertEquals( 0 , storage.getBitsPerEntry() );
+		for ( int i = 0 ; i < SIZE ; i++ ) {
+			assertEquals( 5 , storage.get( i ) );
+		}
+	}
+
+	public void testPaletteGrowsOnSet()
+	{
+		final PaletteBlockStorage storage = new PaletteBlockStorage( SIZE , (byte) 0 );
+		final byte[] expected = new byte[ SIZE ];
+		final Random rnd = new Random(0xdeadbeef);
+		for ( int value = 1 ; value < 256 ; value++ )
+		{
+			for ( int j = 0 ; j < 20 ; j++ )
+			{
+				final int index = rnd.nextInt( SIZE );
+				storage.set( index , (byte) value );
+				expected[ index ] = (byte) value;
+			}
+			if ( value == 1 ) {
+				assertEquals( 1 , storage.getBitsPerEntry() );
+			} else if ( value == 3 ) {
+				assertEquals( 2 , storage.getBitsPerEntry() );
+			} else if ( value == 15 ) {
+				assertEquals( 4 , storage.getBitsPerEntry() );
+			} else if ( value == 16 ) {
+				assertEquals( 8 , storage.getBitsPerEntry() );
+			}
+			assertContents( expected , storage );
+		}
+	}
+
+	public void testSetAllUsesSmallestPalette()
+	{
+		final PaletteBlockStorage storage = new PaletteBlockStorage( SIZE , (byte) 0 );
+		final byte[] values = new byte[ SIZE ];
+		for ( int i = 0 ; i < SIZE ; i++ ) {
+			values[i] = (byte) ( i % 3 == 0 ? 7 : -2 );
+		}
+		storage.setAll( values );
+		assertEquals( 1 , storage.getBitsPerEntry() );
+		assertEquals( 2 , storage.getPaletteSize() );
+		assertContents( values , storage );
+
+		Arrays.fill( values , (byte) 9 );
+		storage.setAll( values );
+		assertTrue( storage.isUniform() );
+		assertContents( values , storage );
+	}
+
+	public void testCopyIsIndependent()
+	{
+		final PaletteBlockStorage storage = new PaletteBlockStorage( SIZE , (byte) 0 );
+		storage.set( 10 , (byte) 1 );
+		final PaletteBlockStorage copy = storage.copy();
+		storage.set( 10 , (byte) 2 );
+		storage.set( 11 , (byte) 3 );
+		assertEquals( 1 , copy.get( 10 ) );
+		assertEquals( 0 , copy.get( 11 ) );
+
+		storage.setAll( copy );
+		assertEquals( 1 , storage.get( 10 ) );
+		assertEquals( 0 , storage.get( 11 ) );
+	}
+
+	public void testIndexOutOfRange()
+	{
+		final PaletteBlockStorage storage = new PaletteBlockStorage( SIZE , (byte) 0 );
+		try {
+			storage.set( SIZE , (byte) 1 );
+			fail("Should've failed");
+		} catch(final ArrayIndexOutOfBoundsException e) {
+			// ok
+		}
+	}
+
+	private static void assertContents(byte[] expected,PaletteBlockStorage storage)
+	{
+		for ( int i = 0 ; i < SIZE ; i++ ) {
+			assertEquals( "Mismatch at index "+i , expected[i] , storage.get( i ) );
+		}
+		final byte[] actual = new byte[ SIZE ];
+		storage.getAll( actual );
+		assertTrue( Arrays.equals( expected , actual ) );
+	}
+}